@@ -0,0 +1,180 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks;
+import java.io.File;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.Hashtable;
+
+import org.apache.tools.ant.Project;
+/**
+ * Retains the history and dependency tables of each object directory
+ * between executions of the cc task within the same virtual machine.
+ *
+ * Disabled unless enabled by a long-lived host such as
+ * net.sf.antcontrib.cpptasks.daemon.BuildDaemon, in which case a later
+ * build reuses the tables instead of parsing history.xml and
+ * dependencies.xml again. A table is only reused if its file has not been
+ * changed by another process since last read or written, and its records
+ * are revalidated against the file system before reuse.
+ *
+ * A SourceWatcher may also be retained for each object directory so that
+ * modification times of unchanged files are not read again by later builds.
+ */
+public final class BuildStateCache {
+    private static boolean enabled;
+    /** TargetHistoryTable's keyed by canonical output directory. */
+    private static final Hashtable histories = new Hashtable();
+    /** DependencyTable's keyed by canonical base directory. */
+    private static final Hashtable dependencies = new Hashtable();
+    /** SourceWatcher's keyed by canonical object directory. */
+    private static final Hashtable watchers = new Hashtable();
+
+    private BuildStateCache() {
+    }
+    /**
+     * Enables or disables retention of tables, disabling discards any
+     * retained tables.
+     *
+     * @param value true to retain tables between builds
+     */
+    public static synchronized void setEnabled(final boolean value) {
+        enabled = value;
+        if (!value) {
+            clear();
+        }
+    }
+    public static synchronized boolean isEnabled() {
+        return enabled;
+    }
+    /**
+     * Discards all retained tables and stops all retained watchers.
+     */
+    public static synchronized void clear() {
+        histories.clear();
+        dependencies.clear();
+        final Enumeration watcherEnum = watchers.elements();
+        while (watcherEnum.hasMoreElements()) {
+            ((SourceWatcher) watcherEnum.nextElement()).close();
+        }
+        watchers.clear();
+    }
+    private static String getKey(final File dir) {
+        try {
+            return dir.getCanonicalPath();
+        } catch (final IOException ex) {
+            return dir.getAbsolutePath();
+        }
+    }
+    /**
+     * Gets the target history table for an output directory.
+     *
+     * @param task task providing the options of the build, not null
+     * @param outputDir output directory
+     * @param fileState file states of the current build
+     * @return history table, newly loaded unless retained and still current
+     */
+    public static synchronized TargetHistoryTable getTargetHistoryTable(
+            final CCTask task, final File outputDir,
+            final FileStateCache fileState) {
+        TargetHistoryTable table = null;
+        if (enabled) {
+            final String key = getKey(outputDir);
+            table = (TargetHistoryTable) histories.get(key);
+            if (table != null && table.isCurrent()) {
+                task.log("Reusing history for " + key, Project.MSG_VERBOSE);
+                table.setTask(task);
+                table.setFileStateCache(fileState);
+                table.revalidate();
+            } else {
+                table = new TargetHistoryTable(task, outputDir, fileState);
+                histories.put(key, table);
+            }
+        } else {
+            table = new TargetHistoryTable(task, outputDir, fileState);
+        }
+        table.setContentHash(task.getContentHash());
+        return table;
+    }
+    /**
+     * Gets the dependency table for a base directory, loading it from
+     * dependencies.xml if not retained or no longer current.
+     *
+     * @param task task providing the options of the build, not null
+     * @param baseDir base directory
+     * @param fileState file states of the current build
+     * @return dependency table
+     */
+    public static synchronized DependencyTable getDependencyTable(
+            final CCTask task, final File baseDir,
+            final FileStateCache fileState) {
+        final String key = getKey(baseDir);
+        DependencyTable table = null;
+        if (enabled) {
+            table = (DependencyTable) dependencies.get(key);
+            if (table != null && table.isCurrent()
+                    && table.isBinary() == task.getBinaryDependencies()) {
+                task.log("Reusing dependencies for " + key,
+                        Project.MSG_VERBOSE);
+                table.setFileStateCache(fileState);
+                table.setContentHash(task.getContentHash());
+                table.revalidate();
+                return table;
+            }
+        }
+        table = new DependencyTable(baseDir);
+        table.setBinary(task.getBinaryDependencies());
+        table.setFileStateCache(fileState);
+        table.setContentHash(task.getContentHash());
+        try {
+            table.load(task);
+        } catch (final Exception ex) {
+            task.log("Problem reading dependencies: " + ex.toString());
+        }
+        if (enabled) {
+            dependencies.put(key, table);
+        }
+        return table;
+    }
+    /**
+     * Gets the watcher retained for an object directory.
+     *
+     * @param task task used for logging
+     * @param objDir object directory
+     * @return watcher, or null if not enabled or the file system can not be
+     *         watched
+     */
+    public static synchronized SourceWatcher getWatcher(final CCTask task,
+            final File objDir) {
+        if (!enabled) {
+            return null;
+        }
+        final String key = getKey(objDir);
+        SourceWatcher watcher = (SourceWatcher) watchers.get(key);
+        if (watcher == null) {
+            try {
+                watcher = new SourceWatcher();
+            } catch (final IOException ex) {
+                task.log("Unable to watch files: " + ex.toString(),
+                        Project.MSG_WARN);
+                return null;
+            }
+            watchers.put(key, watcher);
+        }
+        return watcher;
+    }
+}
@@ -17,10 +17,14 @@
 package net.sf.antcontrib.cpptasks;
 import java.io.File;
 import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.*;
 
+import net.sf.antcontrib.cpptasks.cache.ObjectCache;
+import net.sf.antcontrib.cpptasks.cache.RemoteObjectCache;
 import net.sf.antcontrib.cpptasks.compiler.AbstractLinker;
 import net.sf.antcontrib.cpptasks.compiler.CompilerConfiguration;
 import net.sf.antcontrib.cpptasks.compiler.LinkType;
@@ -28,6 +32,7 @@ import net.sf.antcontrib.cpptasks.compiler.Linker;
 import net.sf.antcontrib.cpptasks.compiler.LinkerConfiguration;
 import net.sf.antcontrib.cpptasks.compiler.Processor;
 import net.sf.antcontrib.cpptasks.compiler.ProcessorConfiguration;
+import net.sf.antcontrib.cpptasks.distributer.Distributer;
 import net.sf.antcontrib.cpptasks.ide.ProjectDef;
 import net.sf.antcontrib.cpptasks.types.CompilerArgument;
 import net.sf.antcontrib.cpptasks.types.ConditionalFileSet;
@@ -246,6 +251,80 @@ public class CCTask extends Task {
      * files as possible before throwing a BuildException
      */
     private boolean relentless;
+    /**
+     * Maximum number of concurrent compiler invocations.
+     */
+    private int jobs = Runtime.getRuntime().availableProcessors();
+    /**
+     * if true, file changes are tracked with a SourceWatcher
+     */
+    private boolean watch;
+    /**
+     * if true, rebuild whenever a watched file changes
+     */
+    private boolean continuous;
+    /**
+     * if true, sources are compared by content identity
+     */
+    private boolean contentHash;
+    /**
+     * if true, dependencies are stored in dependencies.bin
+     */
+    private boolean binaryDependencies;
+    /**
+     * if true, conditional directives are evaluated using the defines
+     */
+    private boolean evaluateConditionals;
+    /**
+     * if true, compilers that can write dependency files report the
+     * dependencies of the sources they compile
+     */
+    private boolean dependencyFiles;
+    /**
+     * Directory of the object cache, null if not used.
+     */
+    private File cacheDir;
+    /**
+     * Maximum size of the object cache in megabytes.
+     */
+    private long cacheSize = 5120;
+    /**
+     * if true, cached objects are hard linked rather than copied
+     */
+    private boolean cacheLink;
+    /**
+     * Object cache of the current build, may be null.
+     */
+    private ObjectCache objectCache;
+    /**
+     * URL of the remote object cache, null if not used.
+     */
+    private URL remoteCache;
+    /**
+     * Timeout in milliseconds of the remote object cache.
+     */
+    private int remoteCacheTimeout = 5000;
+    /**
+     * if false, objects are only downloaded from the remote object cache
+     */
+    private boolean remoteCacheUpload = true;
+    /**
+     * Remote object cache of the current build, may be null.
+     */
+    private RemoteObjectCache remoteObjectCache;
+    /**
+     * Distributer of the current build, may be null.
+     */
+    private Distributer distributer;
+    /**
+     * Dependency information loaded by the last dependency analysis, may be
+     * null.
+     */
+    private DependencyTable dependencyTable;
+    /**
+     * File states of the current build, may be null.
+     */
+    private FileStateCache fileState;
     public CCTask() {
     }
     /**
@@ -405,22 +484,43 @@ public class CCTask extends Task {
         if (potentialTargets > 0) {
             log("Starting dependency analysis for "
                     + Integer.toString(potentialTargets) + " files.");
-            final DependencyTable dependencyTable = new DependencyTable(_objDir);
-            try {
-                dependencyTable.load();
-            } catch (final Exception ex) {
-                log("Problem reading dependencies.xml: " + ex.toString());
-            }
-            targetEnum = targets.elements();
-            while (targetEnum.hasMoreElements()) {
-                final TargetInfo target = (TargetInfo) targetEnum.nextElement();
-                if (!target.getRebuild()) {
-                    if (dependencyTable.needsRebuild(this, target,
-                            dependencyDepth)) {
-                        target.mustRebuild();
+            dependencyTable = BuildStateCache.getDependencyTable(this,
+                    _objDir, getFileStateCache());
+            if (jobs > 1 && dependencyDepth < 0) {
+                //
+                //   parse the files without dependency info concurrently,
+                //      the checks below then only look them up
+                //
+                final Vector candidates = new Vector(potentialTargets);
+                targetEnum = targets.elements();
+                while (targetEnum.hasMoreElements()) {
+                    final TargetInfo target = (TargetInfo) targetEnum
+                            .nextElement();
+                    if (!target.getRebuild()) {
+                        candidates.addElement(target);
                     }
                 }
+                dependencyTable.parseIncludes(this, candidates, jobs);
             }
+            //
+            //   a header that redefines a macro of the defines makes
+            //      the checks of earlier targets unreliable if their
+            //      conditionals were evaluated on it, check them again
+            //
+            dependencyTable.checkRedefinedMacros();
+            do {
+                targetEnum = targets.elements();
+                while (targetEnum.hasMoreElements()) {
+                    final TargetInfo target = (TargetInfo) targetEnum
+                            .nextElement();
+                    if (!target.getRebuild()) {
+                        if (dependencyTable.needsRebuild(this, target,
+                                dependencyDepth)) {
+                            target.mustRebuild();
+                        }
+                    }
+                }
+            } while (dependencyTable.checkRedefinedMacros());
             dependencyTable.commit(this);
         }
         //
@@ -444,6 +544,147 @@ public class CCTask extends Task {
         log(Integer.toString(currentTargets) + " total files to be compiled.");
         return currentTargets;
     }
+    /**
+     * Adds a node for every target that must be rebuilt to the executor
+     * along with the prerequisites that must complete before it starts.
+     *
+     * A target depends on the generation of the precompiled header used by
+     * its configuration, and on any target whose output is one of its
+     * sources or is included by one of its sources. Targets whose output can
+     * not be consumed by the linker (for example headers and sources created
+     * by code generators) are treated as generators. If such generators are
+     * being rebuilt, targets with no recorded dependency information depend
+     * on all of them since they may include the generated files.
+     *
+     * Each node is given the compile duration recorded in the object
+     * history and is marked as edited if its source is newer than its
+     * output so the executor can order the ready nodes.
+     *
+     * The link step depends on every node and is performed once the
+     * executor completes.
+     */
+    protected void addCompileNodes(final CompileExecutor executor,
+            final Hashtable targets, final LinkerConfiguration linkerConfig,
+            final Hashtable precompileGenerators,
+            final TargetHistoryTable objHistory) {
+        //
+        //   one node per source and configuration, a generator that
+        //      produces several outputs from one source runs once
+        //
+        final Hashtable nodesBySource = new Hashtable();
+        final Hashtable nodesByOutput = new Hashtable();
+        final Hashtable nodesByConfig = new Hashtable();
+        final Vector generators = new Vector();
+        Enumeration targetEnum = targets.elements();
+        while (targetEnum.hasMoreElements()) {
+            final TargetInfo target = (TargetInfo) targetEnum.nextElement();
+            if (target.getRebuild()) {
+                final CompilerConfiguration config = (CompilerConfiguration) target
+                        .getConfiguration();
+                final File source = target.getSources()[0];
+                final String key = config.getIdentifier() + '\u0000'
+                        + source.toString();
+                CompileExecutor.Node node = (CompileExecutor.Node) nodesBySource
+                        .get(key);
+                if (node == null) {
+                    node = executor.add(config, source.toString());
+                    //
+                    //   prefer sources changed since their object file
+                    //      was built and otherwise the slowest
+                    //
+                    final File output = target.getOutput();
+                    node.setDuration(objHistory.getDuration(output.getName()));
+                    final FileStateCache fileState = getFileStateCache();
+                    final long outputLastModified = fileState.lastModified(output);
+                    node.setEdited(outputLastModified == 0
+                            || CUtil.isSignificantlyAfter(
+                                    fileState.lastModified(source),
+                                    outputLastModified));
+                    nodesBySource.put(key, node);
+                    Vector configNodes = (Vector) nodesByConfig.get(config);
+                    if (configNodes == null) {
+                        configNodes = new Vector();
+                        nodesByConfig.put(config, configNodes);
+                    }
+                    configNodes.addElement(node);
+                }
+                nodesByOutput.put(target.getOutput().getAbsoluteFile(), node);
+                if (linkerConfig != null
+                        && linkerConfig.bid(target.getOutput().toString()) <= 0
+                        && !generators.contains(node)) {
+                    generators.addElement(node);
+                }
+            }
+        }
+        //
+        //   consumers of a precompiled header
+        //      depend on its generation
+        //
+        final Enumeration configEnum = nodesByConfig.keys();
+        while (configEnum.hasMoreElements()) {
+            final Object config = configEnum.nextElement();
+            final Object generator = precompileGenerators.get(config);
+            if (generator != null) {
+                final Vector prerequisites = (Vector) nodesByConfig.get(generator);
+                if (prerequisites != null) {
+                    final Vector consumers = (Vector) nodesByConfig.get(config);
+                    for (int i = 0; i < consumers.size(); i++) {
+                        for (int j = 0; j < prerequisites.size(); j++) {
+                            executor.addDependency(
+                                    (CompileExecutor.Node) consumers.elementAt(i),
+                                    (CompileExecutor.Node) prerequisites.elementAt(j));
+                        }
+                    }
+                }
+            }
+        }
+        if (generators.size() == 0) {
+            return;
+        }
+        //
+        //   consumers of generated files depend on the generator
+        //
+        if (dependencyTable == null) {
+            dependencyTable = BuildStateCache.getDependencyTable(this,
+                    _objDir, getFileStateCache());
+        }
+        final Enumeration nodeEnum = nodesBySource.elements();
+        while (nodeEnum.hasMoreElements()) {
+            final CompileExecutor.Node node = (CompileExecutor.Node) nodeEnum
+                    .nextElement();
+            final File source = new File(node.getSource()).getAbsoluteFile();
+            final CompileExecutor.Node sourceGenerator = (CompileExecutor.Node) nodesByOutput
+                    .get(source);
+            if (sourceGenerator != null) {
+                executor.addDependency(node, sourceGenerator);
+            }
+            final DependencyInfo dependInfo = dependencyTable.getDependencyInfo(
+                    getFileStateCache().getRelativePath(
+                            dependencyTable.getBaseDirPath(), source),
+                    node.getConfiguration().getIncludePathIdentifier());
+            if (dependInfo == null) {
+                if (!generators.contains(node)) {
+                    for (int i = 0; i < generators.size(); i++) {
+                        executor.addDependency(node,
+                                (CompileExecutor.Node) generators.elementAt(i));
+                    }
+                }
+            } else {
+                final String[] includes = dependInfo.getIncludes();
+                for (int i = 0; i < includes.length; i++) {
+                    File include = new File(includes[i]);
+                    if (!include.isAbsolute()) {
+                        include = new File(_objDir, includes[i]);
+                    }
+                    final CompileExecutor.Node includeGenerator = (CompileExecutor.Node) nodesByOutput
+                            .get(include.getAbsoluteFile());
+                    if (includeGenerator != null) {
+                        executor.addDependency(node, includeGenerator);
+                    }
+                }
+            }
+        }
+    }
     protected LinkerConfiguration collectExplicitObjectFiles(
             final Vector objectFiles, final Vector sysObjectFiles, final VersionInfo versionInfo) {
         //
@@ -591,7 +832,102 @@ public class CCTask extends Task {
         if (!_objDir.exists()) {
             throw new BuildException("Object directory does not exist");
         }
-        final TargetHistoryTable objHistory = new TargetHistoryTable(this, _objDir);
+        if (!watch && !continuous) {
+            build(null);
+            return;
+        }
+        //
+        //   a continuous build is a long-lived host
+        //      so retain tables and watchers between builds
+        //
+        final boolean enabledCache = continuous
+                && !BuildStateCache.isEnabled();
+        if (enabledCache) {
+            BuildStateCache.setEnabled(true);
+        }
+        SourceWatcher watcher = BuildStateCache.getWatcher(this, _objDir);
+        boolean ownWatcher = false;
+        if (watcher == null) {
+            try {
+                watcher = new SourceWatcher();
+                ownWatcher = true;
+            } catch (final IOException ex) {
+                log("Unable to watch files: " + ex.toString(),
+                        Project.MSG_WARN);
+            }
+        }
+        try {
+            if (!continuous) {
+                build(watcher);
+                return;
+            }
+            while (true) {
+                try {
+                    build(watcher);
+                } catch (final BuildException ex) {
+                    log(ex.getMessage(), Project.MSG_ERR);
+                }
+                if (watcher == null) {
+                    break;
+                }
+                log("Waiting for changes.");
+                final String[] changed = watcher.waitForChanges(
+                        new File[]{_objDir}, 200);
+                if (changed.length == 0) {
+                    break;
+                }
+                for (int i = 0; i < changed.length; i++) {
+                    log(changed[i] + " changed", Project.MSG_VERBOSE);
+                }
+            }
+        } finally {
+            if (ownWatcher) {
+                watcher.close();
+            }
+            if (enabledCache) {
+                BuildStateCache.setEnabled(false);
+            }
+        }
+    }
+    /**
+     * Compiles and links the targets.
+     *
+     * @param watcher
+     *            source of file modification times, may be null
+     * @throws BuildException
+     *             if the build fails
+     */
+    private void build(final SourceWatcher watcher) throws BuildException {
+        if (watcher != null) {
+            //
+            //   make sure changes made before the build are seen
+            //
+            watcher.sync(_objDir);
+            final int changeCount = watcher.drainChanges().length;
+            if (changeCount > 0) {
+                log(Integer.toString(changeCount)
+                        + " files changed since last build.",
+                        Project.MSG_VERBOSE);
+            }
+        }
+        //
+        //   file states are read at most once per build
+        //
+        fileState = new FileStateCache(watcher);
+        final TargetHistoryTable objHistory = BuildStateCache
+                .getTargetHistoryTable(this, _objDir, fileState);
+        dependencyTable = null;
+        objectCache = null;
+        if (cacheDir != null) {
+            objectCache = new ObjectCache(cacheDir, cacheSize * 1024 * 1024,
+                    cacheLink);
+        }
+        remoteObjectCache = null;
+        if (remoteCache != null) {
+            remoteObjectCache = new RemoteObjectCache(remoteCache,
+                    remoteCacheTimeout, jobs, remoteCacheUpload);
+        }
+        distributer = createDistributer();
 
         //
         //   get the first active version info
@@ -623,7 +959,9 @@ public class CCTask extends Task {
         //   Assemble hashtable of all files
         //       that we know how to compile (keyed by output file name)
         //
-        final Hashtable targets = getTargets(linkerConfig, objectFiles, versionInfo, _outfile); // getTargets(..) -> createConfiguration(..) -> addImpliedArgs(..)
+        final Hashtable precompileGenerators = new Hashtable();
+        final Hashtable targets = getTargets(linkerConfig, objectFiles, versionInfo, _outfile,
+                precompileGenerators); // getTargets(..) -> createConfiguration(..) -> addImpliedArgs(..)
         TargetInfo linkTarget = null;
         //
         //   if output file is not specified,
@@ -666,6 +1004,20 @@ public class CCTask extends Task {
         //        whose source last modification time is not
         //        the same as the history to be rebuilt
         //
+        if (watcher != null) {
+            //
+            //   watch the directories of all sources so changes
+            //      to them are noticed, even those rebuilt anyway
+            //
+            final Enumeration sourceEnum = targets.elements();
+            while (sourceEnum.hasMoreElements()) {
+                final File[] sources = ((TargetInfo) sourceEnum.nextElement())
+                        .getSources();
+                for (int i = 0; i < sources.length; i++) {
+                    watcher.watch(sources[i].getAbsoluteFile().getParentFile());
+                }
+            }
+        }
         objHistory.markForRebuild(targets);
         final CCTaskProgressMonitor monitor = new CCTaskProgressMonitor(objHistory, versionInfo);
         //
@@ -673,76 +1025,33 @@ public class CCTask extends Task {
         //
         final int rebuildCount = checkForChangedIncludeFiles(targets);
         if (rebuildCount > 0) {
-            BuildException compileException = null;
             //
             //    compile all targets with getRebuild() == true
+            //       each as soon as its prerequisites are complete
             //
-            final Hashtable targetsByConfig = getTargetsToBuildByConfiguration(targets);
-            //
-            //    build array containing Vectors with precompiled generation
-            //       steps going first
-            //
-            final Vector[] targetVectors = new Vector[targetsByConfig.size()];
-            int index = 0;
-            Enumeration targetVectorEnum = targetsByConfig.elements();
-            while (targetVectorEnum.hasMoreElements()) {
-                final Vector targetsForConfig = (Vector) targetVectorEnum
-                        .nextElement();
-                //
-                //    get the configuration from the first entry
-                //
-                final CompilerConfiguration config = (CompilerConfiguration) ((TargetInfo) targetsForConfig
-                        .elementAt(0)).getConfiguration();
-                if (config.isPrecompileGeneration()) {
-                    targetVectors[index++] = targetsForConfig;
-                }
+            final CompileExecutor executor = new CompileExecutor(this,
+                    _objDir, jobs, relentless, monitor);
+            addCompileNodes(executor, targets, linkerConfig,
+                    precompileGenerators, objHistory);
+            if (jobs > 1) {
+                log("Compiling with up to " + Integer.toString(jobs)
+                        + " concurrent jobs.", Project.MSG_VERBOSE);
             }
-            targetVectorEnum = targetsByConfig.elements();
-            while (targetVectorEnum.hasMoreElements()) {
-                final Vector targetsForConfig = (Vector) targetVectorEnum
-                        .nextElement();
-                for (int i = 0; i < targetVectors.length; i++) {
-                    if (targetVectors[i] == targetsForConfig) {
-                        break;
-                    }
-                    if (targetVectors[i] == null) {
-                        targetVectors[i] = targetsForConfig;
-                        break;
-                    }
-                }
+            final BuildException compileException = executor.execute();
+            if (objectCache != null) {
+                objectCache.finish(this);
             }
-            for (int i = 0; i < targetVectors.length; i++) {
-                //
-                //    get the targets for this configuration
-                //
-                final Vector targetsForConfig = targetVectors[i];
-                //
-                //    get the configuration from the first entry
-                //
-                final CompilerConfiguration config = (CompilerConfiguration) ((TargetInfo) targetsForConfig
-                        .elementAt(0)).getConfiguration();
-                //
-                //    prepare the list of source files
-                //
-                final String[] sourceFiles = new String[targetsForConfig.size()];
-                final Enumeration targetsEnum = targetsForConfig.elements();
-                index = 0;
-                while (targetsEnum.hasMoreElements()) {
-                    final TargetInfo targetInfo = ((TargetInfo) targetsEnum
-                            .nextElement());
-                    sourceFiles[index++] = targetInfo.getSources()[0]
-                            .toString();
-                }
-                try {
-                    config.compile(this, _objDir, sourceFiles, relentless,
-                            monitor);
-                } catch (final BuildException ex) {
-                    if (compileException == null) {
-                        compileException = ex;
-                    }
-                    if (!relentless)
-                        break;
-                }
+            if (remoteObjectCache != null) {
+                remoteObjectCache.finish(this, 60000);
+            }
+            if (distributer != null) {
+                distributer.finish(this);
+            }
+            //
+            //   keep includes parsed to compute cache keys
+            //
+            if (dependencyTable != null) {
+                dependencyTable.commit(this);
             }
             //
             //   save the details of the object file compilation
@@ -830,6 +1139,39 @@ public class CCTask extends Task {
             }
         }
     }
+    /**
+     * Creates the distributer for the first active distributer definition.
+     *
+     * @return distributer, null if none is active or its protocol is not
+     *         supported
+     */
+    private Distributer createDistributer() {
+        final Enumeration distributerEnum = distributers.elements();
+        while (distributerEnum.hasMoreElements()) {
+            final DistributerDef def = (DistributerDef) distributerEnum
+                    .nextElement();
+            if (def.isActive()) {
+                final DistributerProtocolEnum protocol = def.getProtocol();
+                if (protocol != null
+                        && "ssh".equals(protocol.getValue())) {
+                    log("Distributer protocol " + protocol.getValue()
+                            + " is not supported, compiling locally.",
+                            Project.MSG_WARN);
+                    return null;
+                }
+                return new Distributer(def);
+            }
+        }
+        return null;
+    }
+    /**
+     * Gets the distributer of the current build.
+     *
+     * @return distributer, null if compiling locally
+     */
+    public Distributer getDistributer() {
+        return distributer;
+    }
     /**
      * Gets the dataset.
      *
@@ -847,7 +1189,8 @@ public class CCTask extends Task {
         if (_objDir.equals(outputFileDir)) {
             return objHistory;
         }
-        return new TargetHistoryTable(this, outputFileDir);
+        return BuildStateCache.getTargetHistoryTable(this, outputFileDir,
+                getFileStateCache());
     }
     protected TargetInfo getLinkTarget(final LinkerConfiguration linkerConfig,
             final Vector objectFiles, final Vector sysObjectFiles,
@@ -897,9 +1240,12 @@ public class CCTask extends Task {
      * the <cc>and nested <compiler>elements. The TargetInfo's contain the
      * appropriate compiler configurations for their possible compilation
      *
+     * Configurations that consume a precompiled header are added to
+     * precompileGenerators, mapped to the configuration that generates it.
      */
     private Hashtable getTargets(final LinkerConfiguration linkerConfig,
-            final Vector objectFiles, final VersionInfo versionInfo, final File outputFile) {
+            final Vector objectFiles, final VersionInfo versionInfo, final File outputFile,
+            final Hashtable precompileGenerators) {
         final Hashtable targets = new Hashtable(1000);
         final TargetDef targetPlatform = getTargetPlatform();
         //
@@ -960,6 +1306,7 @@ public class CCTask extends Task {
                         //   only the configuration that uses the
                         //      precompiled header gets added to the bidding list
                         biddingProcessors.addElement(configs[1]);
+                        precompileGenerators.put(configs[1], configs[0]);
                         localConfigs = new ProcessorConfiguration[2];
                         localConfigs[0] = configs[1];
                         localConfigs[1] = config;
@@ -972,8 +1319,9 @@ public class CCTask extends Task {
                 if (currentCompilerDef.hasFileSets()) {
                     final TargetMatcher matcher = new TargetMatcher(this, _objDir,
                             localConfigs, linkerConfig, objectFiles, targets,
-							versionInfo);
-                    currentCompilerDef.visitFiles(matcher);
+							versionInfo, jobs);
+                    currentCompilerDef.visitFiles(matcher, jobs);
+                    matcher.finish();
                 }
                 biddingProcessors.addElement(config);
             }
@@ -991,8 +1339,9 @@ public class CCTask extends Task {
         //   bid out the <fileset>'s in the cctask
         //
         final TargetMatcher matcher = new TargetMatcher(this, _objDir, bidders,
-                linkerConfig, objectFiles, targets, versionInfo);
-        compilerDef.visitFiles(matcher);
+                linkerConfig, objectFiles, targets, versionInfo, jobs);
+        compilerDef.visitFiles(matcher, jobs);
+        matcher.finish();
 
         if (outputFile != null && versionInfo != null) {
         	final boolean isDebug = linkerConfig.isDebug();
@@ -1385,6 +1734,261 @@ public class CCTask extends Task {
     public void setRelentless(final boolean relentless) {
         this.relentless = relentless;
     }
+    /**
+     * Sets the maximum number of compiler invocations that may run
+     * concurrently. Files are compiled in parallel both within and across
+     * compiler configurations. Defaults to the number of available
+     * processors, a value of 1 compiles sequentially.
+     *
+     * @param jobs
+     *            maximum number of concurrent compiler invocations
+     */
+    public void setJobs(final int jobs) {
+        if (jobs < 1) {
+            throw new BuildException("jobs must be at least 1");
+        }
+        this.jobs = jobs;
+    }
+    /**
+     * Gets the maximum number of concurrent compiler invocations.
+     * @return number of jobs
+     */
+    public int getJobs() {
+        return jobs;
+    }
+    /**
+     * Enables tracking of changes to source, header and object files with
+     * the file system's change notification, so that modification times
+     * of files that have not changed are not read again. Times are only
+     * remembered between builds when the task is run by the build daemon
+     * or continuously. Defaults to false.
+     *
+     * @param watch
+     *            if true, watch files for changes
+     */
+    public void setWatch(final boolean watch) {
+        this.watch = watch;
+    }
+    public boolean getWatch() {
+        return watch;
+    }
+    /**
+     * Sets whether the task should, after building, wait for changes to
+     * the watched files and build again, until the build is interrupted.
+     * Compilation and link failures are logged rather than ending the
+     * task. Implies watch. Defaults to false.
+     *
+     * @param continuous
+     *            if true, build continuously
+     */
+    public void setContinuous(final boolean continuous) {
+        this.continuous = continuous;
+    }
+    public boolean getContinuous() {
+        return continuous;
+    }
+    /**
+     * Sets whether the size, high resolution modification time, file key
+     * and content hash of sources and headers are recorded, so that files
+     * rewritten with the same content, such as by a version control
+     * checkout, do not cause recompilation. Files are only hashed when their
+     * modification time, size or file key changed. Defaults to false.
+     *
+     * @param contentHash
+     *            if true, compare files by content
+     */
+    public void setContentHash(final boolean contentHash) {
+        this.contentHash = contentHash;
+    }
+    public boolean getContentHash() {
+        return contentHash;
+    }
+    /**
+     * Sets whether the dependency analysis evaluates simple #if, #ifdef,
+     * #ifndef, #elif and #else directives on the macros of the defineset
+     * elements, so that includes in branches excluded by them are not
+     * dependencies. Other macros may be defined by included files and are
+     * not evaluated, so a macro the compiler predefines, such as _WIN32,
+     * needs an undefine element to exclude its branches. A macro of the
+     * defineset that any parsed file defines or undefines is not evaluated
+     * either. Defaults to false.
+     *
+     * @param evaluateConditionals
+     *            if true, evaluate conditional directives
+     */
+    public void setEvaluateConditionals(final boolean evaluateConditionals) {
+        this.evaluateConditionals = evaluateConditionals;
+    }
+    public boolean getEvaluateConditionals() {
+        return evaluateConditionals;
+    }
+    /**
+     * Sets whether compilers that can write make style dependency files,
+     * such as gcc, g++, clang and clang++ with -MD, do so when compiling,
+     * and the dependencies they report replace those parsed from the
+     * sources. The reported dependencies account for macros and include
+     * paths exactly, and sources are only parsed if never compiled. Other
+     * compilers are not affected. Defaults to false.
+     *
+     * @param dependencyFiles
+     *            if true, record the dependencies reported by the compiler
+     */
+    public void setDependencyFiles(final boolean dependencyFiles) {
+        this.dependencyFiles = dependencyFiles;
+    }
+    public boolean getDependencyFiles() {
+        return dependencyFiles;
+    }
+    /**
+     * Sets whether the dependencies of sources are stored in the compact
+     * binary dependencies.bin rather than dependencies.xml. The binary file
+     * is loaded much faster, and records are only checked when used. An
+     * existing dependencies.xml is converted by the first build. Defaults
+     * to false.
+     *
+     * @param binaryDependencies
+     *            if true, use dependencies.bin
+     */
+    public void setBinaryDependencies(final boolean binaryDependencies) {
+        this.binaryDependencies = binaryDependencies;
+    }
+    public boolean getBinaryDependencies() {
+        return binaryDependencies;
+    }
+    /**
+     * Sets the directory of a cache of object files that is shared between
+     * builds and projects. A compilation whose configuration, source and
+     * include files are identical to an earlier cached compilation copies
+     * the cached object file instead of running the compiler. Builds may
+     * use the same cache directory concurrently. Not used by default.
+     *
+     * @param cacheDir
+     *            cache directory
+     */
+    public void setCacheDir(final File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+    public File getCacheDir() {
+        return cacheDir;
+    }
+    /**
+     * Sets the maximum size of the object cache in megabytes, the least
+     * recently used objects are removed when exceeded. Defaults to 5120.
+     *
+     * @param cacheSize
+     *            maximum size in megabytes
+     */
+    public void setCacheSize(final long cacheSize) {
+        if (cacheSize <= 0) {
+            throw new BuildException("cachesize must be positive");
+        }
+        this.cacheSize = cacheSize;
+    }
+    public long getCacheSize() {
+        return cacheSize;
+    }
+    /**
+     * Sets whether objects are hard linked to the object cache rather than
+     * copied, where the file system permits. Objects are deleted before
+     * being compiled so the compiler does not write into the cache, but
+     * other tools that modify object files in place must not be used.
+     * Defaults to false.
+     *
+     * @param cacheLink
+     *            if true, hard link cached objects
+     */
+    public void setCacheLink(final boolean cacheLink) {
+        this.cacheLink = cacheLink;
+    }
+    public boolean getCacheLink() {
+        return cacheLink;
+    }
+    /**
+     * Gets the object cache of the current build.
+     *
+     * @return object cache, null if not used
+     */
+    public ObjectCache getObjectCache() {
+        return objectCache;
+    }
+    /**
+     * Sets the URL of a shared object cache on an HTTP server, such as one
+     * filled by continuous integration builds. Objects are downloaded with
+     * GET requests instead of being compiled and the objects of local
+     * compilations are uploaded with PUT requests. Sources are compiled
+     * locally when the server does not respond within the timeout. Not used
+     * by default.
+     *
+     * @param remoteCache
+     *            base URL of the cache
+     */
+    public void setRemoteCache(final String remoteCache) {
+        String url = remoteCache;
+        if (!url.endsWith("/")) {
+            url += "/";
+        }
+        try {
+            this.remoteCache = new URL(url);
+        } catch (final MalformedURLException ex) {
+            throw new BuildException("Invalid remotecache URL: " + remoteCache);
+        }
+    }
+    /**
+     * Sets the time in milliseconds to wait for the remote object cache
+     * before compiling locally. Defaults to 5000.
+     *
+     * @param remoteCacheTimeout
+     *            timeout in milliseconds
+     */
+    public void setRemoteCacheTimeout(final int remoteCacheTimeout) {
+        if (remoteCacheTimeout <= 0) {
+            throw new BuildException("remotecachetimeout must be positive");
+        }
+        this.remoteCacheTimeout = remoteCacheTimeout;
+    }
+    /**
+     * Sets whether objects compiled locally are uploaded to the remote
+     * object cache. Defaults to true.
+     *
+     * @param remoteCacheUpload
+     *            if false, only download from the remote object cache
+     */
+    public void setRemoteCacheUpload(final boolean remoteCacheUpload) {
+        this.remoteCacheUpload = remoteCacheUpload;
+    }
+    /**
+     * Gets the remote object cache of the current build.
+     *
+     * @return remote object cache, null if not used
+     */
+    public RemoteObjectCache getRemoteObjectCache() {
+        return remoteObjectCache;
+    }
+    /**
+     * Gets the dependency table of the object directory, loading it if not
+     * yet loaded by the current build.
+     *
+     * @return dependency table, never null
+     */
+    public synchronized DependencyTable getDependencyTable() {
+        if (dependencyTable == null) {
+            dependencyTable = BuildStateCache.getDependencyTable(this,
+                    _objDir, getFileStateCache());
+        }
+        return dependencyTable;
+    }
+    /**
+     * Gets the file states of the current build, reading each file's
+     * attributes and canonical path at most once.
+     *
+     * @return file state cache, never null
+     */
+    public synchronized FileStateCache getFileStateCache() {
+        if (fileState == null) {
+            fileState = new FileStateCache();
+        }
+        return fileState;
+    }
     /**
      * Sets the type of runtime library, possible values "dynamic", "static".
      */
@@ -1470,7 +2074,8 @@ public class CCTask extends Task {
         targetPlatforms.addElement(target);
     }
     /**
-     * Adds a distributer definition or reference (Non-functional prototype).
+     * Adds a distributer definition or reference. The first active
+     * distributer is used to compile on remote hosts.
      *
      * @param distributer
      *            distributer
@@ -15,44 +15,53 @@
  *  limitations under the License.
  */
 package net.sf.antcontrib.cpptasks;
-import java.io.IOException;
-
 import net.sf.antcontrib.cpptasks.compiler.ProcessorConfiguration;
 import net.sf.antcontrib.cpptasks.compiler.ProgressMonitor;
+/**
+ * Records the history of completed compilations.
+ *
+ * May be shared by compilations running on several threads, the
+ * configuration passed to start() is tracked per thread.
+ *
+ * The time elapsed since start() or the previous call to progress() on the
+ * same thread is recorded, divided evenly between the reported sources,
+ * as the compile duration used to order later builds. Sources taken from
+ * a cache keep the duration recorded when they were last compiled.
+ *
+ * The history table appends the records of each reported batch to its
+ * journal, history.xml is written once the task completes.
+ */
 public class CCTaskProgressMonitor implements ProgressMonitor {
-    private ProcessorConfiguration config;
+    private final ThreadLocal config = new ThreadLocal();
+    private final ThreadLocal lastProgress = new ThreadLocal();
     private TargetHistoryTable history;
     private VersionInfo versionInfo;
-    private long lastCommit = -1;
     public CCTaskProgressMonitor(TargetHistoryTable history, VersionInfo versionInfo) {
         this.history = history;
         this.versionInfo = versionInfo;
     }
-    public void finish(ProcessorConfiguration config, boolean normal) {
-        long current = System.currentTimeMillis();
-        if ((current - lastCommit) > 120000) {
-            try {
-                history.commit();
-                lastCommit = System.currentTimeMillis();
-            } catch (IOException ex) {
-            }
-        }
+    public synchronized void finish(ProcessorConfiguration config, boolean normal) {
+        this.config.set(null);
+        this.lastProgress.set(null);
     }
-    public void progress(String[] sources) {
-        history.update(config, sources, versionInfo);
+    public synchronized void progress(String[] sources) {
         long current = System.currentTimeMillis();
-        if ((current - lastCommit) > 120000) {
-            try {
-                history.commit();
-                lastCommit = current;
-            } catch (IOException ex) {
-            }
+        long duration = -1;
+        Long previous = (Long) lastProgress.get();
+        if (previous != null && sources.length > 0) {
+            duration = (current - previous.longValue()) / sources.length;
         }
+        lastProgress.set(Long.valueOf(current));
+        history.update((ProcessorConfiguration) config.get(), sources,
+                versionInfo, duration);
     }
-    public void start(ProcessorConfiguration config) {
-        if (lastCommit < 0) {
-            lastCommit = System.currentTimeMillis();
-        }
-        this.config = config;
+    public synchronized void progressCached(String[] sources) {
+        lastProgress.set(Long.valueOf(System.currentTimeMillis()));
+        history.update((ProcessorConfiguration) config.get(), sources,
+                versionInfo, -1);
+    }
+    public synchronized void start(ProcessorConfiguration config) {
+        this.config.set(config);
+        this.lastProgress.set(Long.valueOf(System.currentTimeMillis()));
     }
 }
@@ -184,13 +184,6 @@ public class CUtil {
      */
     public static String getRelativePath(final String base, final File targetFile) {
         try {
-            //
-            //   remove trailing file separator
-            //
-            String canonicalBase = base;
-            if (base.charAt(base.length() - 1) != File.separatorChar) {
-                canonicalBase = base + File.separatorChar;
-            }
             //
             //   get canonical name of target
             //
@@ -199,82 +192,104 @@ public class CUtil {
                 canonicalTarget = targetFile.getPath();
             else
                 canonicalTarget = targetFile.getCanonicalPath();
-            if (canonicalBase.startsWith(canonicalTarget + File.separatorChar)) {
-                canonicalTarget = canonicalTarget + File.separator;
-            }
-            if (canonicalTarget.equals(canonicalBase)) {
-                return ".";
-            }
-            //
-            //  see if the prefixes are the same
+            return toRelativePath(base, canonicalTarget);
+        } catch (IOException ex) {
+        }
+        return targetFile.toString();
+    }
+    /**
+     * Returns a relative path for a canonical target path relative to the
+     * base directory.
+     *
+     * @param base
+     *            base directory as returned by File.getCanonicalPath()
+     * @param target
+     *            target path as returned by File.getCanonicalPath()
+     * @return relative path of target. Returns target if there were no
+     *         commonalities between the base and the target
+     */
+    public static String toRelativePath(final String base, final String target) {
+        //
+        //   remove trailing file separator
+        //
+        String canonicalBase = base;
+        if (base.charAt(base.length() - 1) != File.separatorChar) {
+            canonicalBase = base + File.separatorChar;
+        }
+        String canonicalTarget = target;
+        if (canonicalBase.startsWith(canonicalTarget + File.separatorChar)) {
+            canonicalTarget = canonicalTarget + File.separator;
+        }
+        if (canonicalTarget.equals(canonicalBase)) {
+            return ".";
+        }
+        //
+        //  see if the prefixes are the same
+        //
+        if (canonicalBase.substring(0, 2).equals("\\\\")) {
             //
-            if (canonicalBase.substring(0, 2).equals("\\\\")) {
-                //
-                //  UNC file name, if target file doesn't also start with same
-                //      server name, don't go there
-                int endPrefix = canonicalBase.indexOf('\\', 2);
+            //  UNC file name, if target file doesn't also start with same
+            //      server name, don't go there
+            int endPrefix = canonicalBase.indexOf('\\', 2);
+            String prefix1 = canonicalBase.substring(0, endPrefix);
+            String prefix2 = canonicalTarget.substring(0, endPrefix);
+            if (!prefix1.equals(prefix2)) {
+                return canonicalTarget;
+            }
+        } else {
+            if (canonicalBase.substring(1, 3).equals(":\\")) {
+                int endPrefix = 2;
                 String prefix1 = canonicalBase.substring(0, endPrefix);
                 String prefix2 = canonicalTarget.substring(0, endPrefix);
                 if (!prefix1.equals(prefix2)) {
                     return canonicalTarget;
                 }
             } else {
-                if (canonicalBase.substring(1, 3).equals(":\\")) {
-                    int endPrefix = 2;
-                    String prefix1 = canonicalBase.substring(0, endPrefix);
-                    String prefix2 = canonicalTarget.substring(0, endPrefix);
-                    if (!prefix1.equals(prefix2)) {
+                if (canonicalBase.charAt(0) == '/') {
+                    if (canonicalTarget.charAt(0) != '/') {
                         return canonicalTarget;
                     }
-                } else {
-                    if (canonicalBase.charAt(0) == '/') {
-                        if (canonicalTarget.charAt(0) != '/') {
-                            return canonicalTarget;
-                        }
-                    }
                 }
             }
-            char separator = File.separatorChar;
-            int lastCommonSeparator = -1;
-            int minLength = canonicalBase.length();
-            if (canonicalTarget.length() < minLength) {
-                minLength = canonicalTarget.length();
-            }
-            //
-            //  walk to the shorter of the two paths
-            //      finding the last separator they have in common
-            for (int i = 0; i < minLength; i++) {
-                if (canonicalTarget.charAt(i) == canonicalBase.charAt(i)) {
-                    if (canonicalTarget.charAt(i) == separator) {
-                        lastCommonSeparator = i;
-                    }
-                } else {
-                    break;
-                }
-            }
-            StringBuffer relativePath = new StringBuffer(50);
-            //
-            //   walk from the first difference to the end of the base
-            //      adding "../" for each separator encountered
-            //
-            for (int i = lastCommonSeparator + 1; i < canonicalBase.length(); i++) {
-                if (canonicalBase.charAt(i) == separator) {
-                    if (relativePath.length() > 0) {
-                        relativePath.append(separator);
-                    }
-                    relativePath.append("..");
+        }
+        char separator = File.separatorChar;
+        int lastCommonSeparator = -1;
+        int minLength = canonicalBase.length();
+        if (canonicalTarget.length() < minLength) {
+            minLength = canonicalTarget.length();
+        }
+        //
+        //  walk to the shorter of the two paths
+        //      finding the last separator they have in common
+        for (int i = 0; i < minLength; i++) {
+            if (canonicalTarget.charAt(i) == canonicalBase.charAt(i)) {
+                if (canonicalTarget.charAt(i) == separator) {
+                    lastCommonSeparator = i;
                 }
+            } else {
+                break;
             }
-            if (canonicalTarget.length() > lastCommonSeparator + 1) {
+        }
+        StringBuffer relativePath = new StringBuffer(50);
+        //
+        //   walk from the first difference to the end of the base
+        //      adding "../" for each separator encountered
+        //
+        for (int i = lastCommonSeparator + 1; i < canonicalBase.length(); i++) {
+            if (canonicalBase.charAt(i) == separator) {
                 if (relativePath.length() > 0) {
                     relativePath.append(separator);
                 }
-                relativePath.append(canonicalTarget.substring(lastCommonSeparator + 1));
+                relativePath.append("..");
             }
-            return relativePath.toString();
-        } catch (IOException ex) {
         }
-        return targetFile.toString();
+        if (canonicalTarget.length() > lastCommonSeparator + 1) {
+            if (relativePath.length() > 0) {
+                relativePath.append(separator);
+            }
+            relativePath.append(canonicalTarget.substring(lastCommonSeparator + 1));
+        }
+        return relativePath.toString();
     }
     public static boolean isActive(Project p, String ifCond, String unlessCond)
             throws BuildException {
@@ -437,28 +452,52 @@ public class CUtil {
      *
      */
     public static String xmlAttribEncode(String attrValue) {
-    	StringBuffer buf = new StringBuffer (attrValue);
-    	int quotePos;
-    	
-        for (quotePos = -1; (quotePos = buf.indexOf("\"", quotePos + 1)) >= 0;) {
-        	buf.deleteCharAt(quotePos);
-        	buf.insert (quotePos, "&quot;");
-        	quotePos += 5;
-        }
-        
-        for (quotePos = -1; (quotePos = buf.indexOf("<", quotePos + 1)) >= 0;) {
-        	buf.deleteCharAt(quotePos);
-        	buf.insert (quotePos, "&lt;");
-        	quotePos += 3;
-        }
-        
-        for (quotePos = -1; (quotePos = buf.indexOf(">", quotePos + 1)) >= 0;) {
-        	buf.deleteCharAt(quotePos);
-        	buf.insert (quotePos, "&gt;");
-        	quotePos += 3;
-        }
-        
-        return buf.toString();
+        //
+        //   most values need no replacement and are returned as is
+        //
+        int length = attrValue.length();
+        for (int i = 0; i < length; i++) {
+            char c = attrValue.charAt(i);
+            if (c == '\"' || c == '<' || c == '>') {
+                StringBuffer buf = new StringBuffer(length + 16);
+                xmlAttribEncode(buf, attrValue);
+                return buf.toString();
+            }
+        }
+        return attrValue;
+    }
+    /**
+     * Appends a string to a buffer, replacing any embedded quotes so that
+     * the value can be placed in an attribute in an XML file.
+     *
+     * @param buf
+     *            buffer positioned within an attribute value
+     * @param attrValue
+     *            value to be expressed
+     */
+    public static void xmlAttribEncode(StringBuffer buf, String attrValue) {
+        int length = attrValue.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            String entity;
+            switch (attrValue.charAt(i)) {
+            case '\"':
+                entity = "&quot;";
+                break;
+            case '<':
+                entity = "&lt;";
+                break;
+            case '>':
+                entity = "&gt;";
+                break;
+            default:
+                continue;
+            }
+            buf.append(attrValue, start, i);
+            buf.append(entity);
+            start = i + 1;
+        }
+        buf.append(attrValue, start, length);
     }
 
     public final static int FILETIME_EPSILON = 500;
@@ -0,0 +1,468 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks;
+import java.io.File;
+import java.util.Hashtable;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.antcontrib.cpptasks.compiler.CompilerConfiguration;
+import net.sf.antcontrib.cpptasks.compiler.ProgressMonitor;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+/**
+ * Runs the compile steps of a CCTask as a graph on a bounded pool of worker
+ * threads.
+ *
+ * Each node compiles one source file with one configuration. A node is
+ * started as soon as all of its prerequisites (for example the generation
+ * of a precompiled header it consumes) have completed, independent of any
+ * other node in the build.
+ *
+ * With a single job, nodes are compiled on the calling thread and all ready
+ * nodes that share a configuration are passed to the compiler in one
+ * invocation, which reproduces the original sequential behavior. With more
+ * than one job, every node is compiled in its own invocation. When an
+ * invocation for several nodes fails, only the nodes whose outputs were not
+ * produced are considered failed.
+ *
+ * If not relentless, the first failure prevents any node that has not yet
+ * started from being compiled. Nodes already running are allowed to finish.
+ * Nodes whose prerequisites failed are never compiled.
+ *
+ * Ready nodes are started in critical path order: nodes for recently edited
+ * sources first, since they are the most likely to fail, then the nodes
+ * with the longest expected duration through to the end of the graph, so a
+ * few slow compilations do not leave a long single-threaded tail. Nodes
+ * without a recorded duration are assumed to take the average time.
+ */
+public final class CompileExecutor {
+    /**
+     * A source file to be compiled and the nodes that must complete first.
+     */
+    public static final class Node {
+        private final CompilerConfiguration config;
+        private final String source;
+        /** Nodes that can not start until this node completes. */
+        private final Vector dependents = new Vector();
+        /** Number of prerequisites that have not yet completed. */
+        private int waiting;
+        /** Set if this node or one of its prerequisites failed. */
+        private boolean failed;
+        /** Order of addition, breaks ties between equal priorities. */
+        private final int index;
+        /** Expected duration in milliseconds, -1 if unknown. */
+        private long duration = -1;
+        /** Set if the source was edited since it was last compiled. */
+        private boolean edited;
+        /** Expected duration of this node and its longest dependent chain. */
+        private long pathDuration = -1;
+        private Node(final CompilerConfiguration config, final String source,
+                final int index) {
+            this.config = config;
+            this.source = source;
+            this.index = index;
+        }
+        public CompilerConfiguration getConfiguration() {
+            return config;
+        }
+        public String getSource() {
+            return source;
+        }
+        /**
+         * Sets the expected time to compile the node.
+         * @param duration duration in milliseconds, -1 if unknown
+         */
+        public void setDuration(final long duration) {
+            this.duration = duration;
+        }
+        public long getDuration() {
+            return duration;
+        }
+        /**
+         * Specifies that the source was edited since last compiled and
+         * should be compiled ahead of other ready nodes.
+         * @param edited true if edited
+         */
+        public void setEdited(final boolean edited) {
+            this.edited = edited;
+        }
+        public boolean isEdited() {
+            return edited;
+        }
+        /**
+         * Returns true if this node should be started before the other.
+         */
+        private boolean precedes(final Node other) {
+            if (edited != other.edited) {
+                return edited;
+            }
+            if (pathDuration != other.pathDuration) {
+                return pathDuration > other.pathDuration;
+            }
+            return index < other.index;
+        }
+    }
+    private final CCTask task;
+    private final File outputDir;
+    private final int jobs;
+    private final boolean relentless;
+    private final ProgressMonitor monitor;
+    private final Vector nodes = new Vector();
+    /** Nodes whose prerequisites have all completed. */
+    private final Vector ready = new Vector();
+    /** Number of compiler invocations in progress. */
+    private int running;
+    /** Number of nodes that have been compiled or skipped. */
+    private int done;
+    /** First failure. */
+    private BuildException exception;
+    /** Set on failure when not relentless, skips nodes not yet started. */
+    private boolean cancelled;
+
+    /**
+     * Constructor.
+     *
+     * @param task task used for logging and command execution
+     * @param outputDir object directory
+     * @param jobs maximum number of concurrent compiler invocations
+     * @param relentless if true, continue compiling after a failure
+     * @param monitor progress monitor, may be null
+     */
+    public CompileExecutor(final CCTask task, final File outputDir,
+            final int jobs, final boolean relentless,
+            final ProgressMonitor monitor) {
+        if (jobs < 1) {
+            throw new IllegalArgumentException("jobs");
+        }
+        this.task = task;
+        this.outputDir = outputDir;
+        this.jobs = jobs;
+        this.relentless = relentless;
+        this.monitor = monitor;
+    }
+    /**
+     * Gets the maximum number of concurrent compiler invocations.
+     * @return number of jobs
+     */
+    public int getJobs() {
+        return jobs;
+    }
+    /**
+     * Adds a source file to be compiled.
+     *
+     * @param config compiler configuration
+     * @param source source file
+     * @return new node
+     */
+    public Node add(final CompilerConfiguration config, final String source) {
+        if (config == null) {
+            throw new NullPointerException("config");
+        }
+        if (source == null) {
+            throw new NullPointerException("source");
+        }
+        final Node node = new Node(config, source, nodes.size());
+        nodes.addElement(node);
+        return node;
+    }
+    /**
+     * Specifies that a node may not be started until another has completed.
+     *
+     * @param node dependent node
+     * @param prerequisite node that must complete first
+     */
+    public void addDependency(final Node node, final Node prerequisite) {
+        if (node == prerequisite || prerequisite.dependents.contains(node)) {
+            return;
+        }
+        prerequisite.dependents.addElement(node);
+        node.waiting++;
+    }
+    /**
+     * Gets the number of nodes in the graph.
+     * @return node count
+     */
+    public int size() {
+        return nodes.size();
+    }
+    /**
+     * Compiles every node, waiting for all compilations to complete.
+     *
+     * @return the first compilation failure, or null if every node was
+     *         compiled successfully
+     */
+    public BuildException execute() {
+        estimatePathDurations();
+        for (int i = 0; i < nodes.size(); i++) {
+            final Node node = (Node) nodes.elementAt(i);
+            if (node.waiting == 0) {
+                enqueue(node);
+            }
+        }
+        if (jobs == 1) {
+            while (!ready.isEmpty() && !cancelled) {
+                compile(take());
+            }
+        } else {
+            final ExecutorService pool = new ThreadPoolExecutor(jobs, jobs, 0L,
+                    TimeUnit.MILLISECONDS, new LinkedBlockingQueue(),
+                    new DaemonThreadFactory("cpptasks-compile"));
+            try {
+                synchronized (this) {
+                    dispatch(pool);
+                    boolean interrupted = false;
+                    while (running > 0) {
+                        try {
+                            wait();
+                        } catch (final InterruptedException ex) {
+                            interrupted = true;
+                            cancelled = true;
+                        }
+                        dispatch(pool);
+                    }
+                    if (interrupted) {
+                        Thread.currentThread().interrupt();
+                        fail(new BuildException("Compilation interrupted",
+                                task.getLocation()));
+                    }
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        if (exception == null && done < nodes.size()) {
+            //
+            //   nothing left to run but some nodes never became ready
+            //
+            exception = new BuildException(
+                    "Circular dependency between compilation targets",
+                    task.getLocation());
+        }
+        return exception;
+    }
+    /**
+     * Computes for each node the expected duration of the longest chain of
+     * compilations that starts with it.
+     */
+    private void estimatePathDurations() {
+        long total = 0;
+        int known = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            final Node node = (Node) nodes.elementAt(i);
+            if (node.duration >= 0) {
+                total += node.duration;
+                known++;
+            }
+        }
+        final long average = known > 0 ? total / known : 0;
+        //
+        //   visit dependents before the nodes that wait on them
+        //      using an explicit stack since chains can be long,
+        //      a node found again while still on the stack is part
+        //      of a cycle which execute() will report
+        //
+        final Vector stack = new Vector();
+        final Hashtable onStack = new Hashtable();
+        for (int i = 0; i < nodes.size(); i++) {
+            final Node root = (Node) nodes.elementAt(i);
+            if (root.pathDuration >= 0) {
+                continue;
+            }
+            stack.addElement(root);
+            onStack.put(root, root);
+            while (!stack.isEmpty()) {
+                final Node node = (Node) stack.lastElement();
+                Node next = null;
+                long longest = 0;
+                for (int j = 0; j < node.dependents.size(); j++) {
+                    final Node dependent = (Node) node.dependents.elementAt(j);
+                    if (dependent.pathDuration < 0) {
+                        if (!onStack.containsKey(dependent)) {
+                            next = dependent;
+                            break;
+                        }
+                    } else if (dependent.pathDuration > longest) {
+                        longest = dependent.pathDuration;
+                    }
+                }
+                if (next != null) {
+                    stack.addElement(next);
+                    onStack.put(next, next);
+                } else {
+                    if (node.duration >= 0) {
+                        node.pathDuration = node.duration + longest;
+                    } else {
+                        node.pathDuration = average + longest;
+                    }
+                    stack.removeElementAt(stack.size() - 1);
+                    onStack.remove(node);
+                }
+            }
+        }
+    }
+    /**
+     * Adds a node to the ready queue in priority order. Caller must hold the
+     * lock.
+     */
+    private void enqueue(final Node node) {
+        int pos = ready.size();
+        while (pos > 0 && node.precedes((Node) ready.elementAt(pos - 1))) {
+            pos--;
+        }
+        ready.insertElementAt(node, pos);
+    }
+    /**
+     * Removes the next node from the ready queue and, when compiling
+     * sequentially, any other ready nodes with the same configuration.
+     */
+    private synchronized Node[] take() {
+        final Node first = (Node) ready.elementAt(0);
+        ready.removeElementAt(0);
+        if (jobs > 1) {
+            return new Node[]{first};
+        }
+        final Vector batch = new Vector();
+        batch.addElement(first);
+        for (int i = 0; i < ready.size();) {
+            final Node node = (Node) ready.elementAt(i);
+            if (node.config == first.config) {
+                batch.addElement(node);
+                ready.removeElementAt(i);
+            } else {
+                i++;
+            }
+        }
+        final Node[] retval = new Node[batch.size()];
+        batch.copyInto(retval);
+        return retval;
+    }
+    /**
+     * Starts ready nodes while there are idle workers. Caller must hold the
+     * lock.
+     */
+    private void dispatch(final ExecutorService pool) {
+        while (running < jobs && !ready.isEmpty() && !cancelled) {
+            final Node[] batch = take();
+            running++;
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        compile(batch);
+                    } finally {
+                        synchronized (CompileExecutor.this) {
+                            running--;
+                            CompileExecutor.this.notifyAll();
+                        }
+                    }
+                }
+            });
+        }
+    }
+    private void compile(final Node[] batch) {
+        final String[] sourceFiles = new String[batch.length];
+        for (int i = 0; i < batch.length; i++) {
+            sourceFiles[i] = batch[i].source;
+        }
+        //
+        //   a failed invocation may still have compiled some of the
+        //      batch, outputs are removed first so those found
+        //      afterwards were produced by this invocation
+        //
+        if (batch.length > 1) {
+            for (int i = 0; i < batch.length; i++) {
+                final String[] outputNames = batch[i].config
+                        .getOutputFileNames(batch[i].source, null);
+                for (int j = 0; j < outputNames.length; j++) {
+                    new File(outputDir, outputNames[j]).delete();
+                }
+            }
+        }
+        boolean succeeded = false;
+        try {
+            batch[0].config.compile(task, outputDir, sourceFiles, relentless,
+                    monitor);
+            succeeded = true;
+        } catch (final BuildException ex) {
+            fail(ex);
+        } catch (final RuntimeException ex) {
+            fail(new BuildException(ex, task.getLocation()));
+        }
+        synchronized (this) {
+            for (int i = 0; i < batch.length; i++) {
+                complete(batch[i], !succeeded
+                        && (batch.length == 1 || !hasOutputs(batch[i])));
+            }
+        }
+    }
+    /**
+     * Returns true if every output of a node exists.
+     */
+    private boolean hasOutputs(final Node node) {
+        final String[] outputNames = node.config.getOutputFileNames(
+                node.source, null);
+        for (int i = 0; i < outputNames.length; i++) {
+            if (!new File(outputDir, outputNames[i]).exists()) {
+                return false;
+            }
+        }
+        return outputNames.length > 0;
+    }
+    /**
+     * Marks a node as done and releases its dependents. Caller must hold
+     * the lock.
+     */
+    private void complete(final Node node, final boolean failed) {
+        done++;
+        for (int i = 0; i < node.dependents.size(); i++) {
+            final Node dependent = (Node) node.dependents.elementAt(i);
+            if (failed) {
+                dependent.failed = true;
+            }
+            if (--dependent.waiting == 0) {
+                if (dependent.failed) {
+                    task.log("Skipping " + dependent.source
+                            + " since a prerequisite failed to compile",
+                            Project.MSG_VERBOSE);
+                    complete(dependent, true);
+                } else {
+                    enqueue(dependent);
+                }
+            }
+        }
+    }
+    private synchronized void fail(final BuildException ex) {
+        if (exception == null) {
+            exception = ex;
+        }
+        if (!relentless) {
+            cancelled = true;
+        }
+    }
+    /**
+     * Returns true if a failure has stopped further compilation.
+     * @return true if cancelled
+     */
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+}
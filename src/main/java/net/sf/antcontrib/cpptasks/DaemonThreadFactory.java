@@ -0,0 +1,42 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks;
+import java.util.concurrent.ThreadFactory;
+/**
+ * Creates numbered daemon threads for the worker pools of the cc task, so
+ * that an abandoned pool never keeps the virtual machine alive.
+ */
+public final class DaemonThreadFactory implements ThreadFactory {
+    private final String prefix;
+    private int count;
+
+    /**
+     * Constructor.
+     *
+     * @param prefix thread name prefix, such as "cpptasks-compile"
+     */
+    public DaemonThreadFactory(final String prefix) {
+        this.prefix = prefix;
+    }
+    @Override
+    public synchronized Thread newThread(final Runnable runnable) {
+        final Thread thread = new Thread(runnable, prefix + "-"
+                + Integer.toString(++count));
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -32,6 +32,35 @@ public final class DependencyInfo {
     private/* final */String source;
     private/* final */long sourceLastModified;
     private/* final */String[] sysIncludes;
+    /**
+     * Identity of the source content when parsed, null if not recorded.
+     */
+    private FileIdentity identity;
+    /**
+     * Guard against repeated inclusion, null if not guarded.
+     */
+    private String guard;
+    /**
+     * Set if the includes are every file the source depends on directly or
+     * indirectly, as reported by the compiler, rather than those it includes
+     * directly.
+     */
+    private boolean complete;
+    /**
+     * Names of the included files as they appear in the source, which do
+     * not depend on the include path, null if not recorded.
+     */
+    private String[] includeNames;
+    /**
+     * Macros of the defines that the source defines or undefines, which
+     * are unknown to conditionals of the files including it.
+     */
+    private String[] definedMacros = new String[0];
+    /**
+     * Macros of the defines whose values were used to evaluate the
+     * conditionals of the source.
+     */
+    private String[] assumedMacros = new String[0];
     public DependencyInfo(String includePathIdentifier, String source,
             long sourceLastModified, Vector includes, Vector sysIncludes) {
         if (source == null) {
@@ -63,9 +92,67 @@ public final class DependencyInfo {
     public long getCompositeLastModified() {
         return compositeLastModified;
     }
+    /**
+     * Gets the identity of the source content when parsed.
+     *
+     * @return identity, null if not recorded
+     */
+    public FileIdentity getIdentity() {
+        return identity;
+    }
+    /**
+     * Gets the guard against repeated inclusion, the macro of a classic
+     * include guard or "#pragma once".
+     *
+     * @return guard, null if the file is not known to be guarded
+     */
+    public String getGuard() {
+        return guard;
+    }
+    /**
+     * Determines if the includes are every file the source depends on, so
+     * that the included files need not be parsed.
+     *
+     * @return true if reported by the compiler
+     */
+    public boolean isComplete() {
+        return complete;
+    }
     public String getIncludePathIdentifier() {
         return includePathIdentifier;
     }
+    /**
+     * Gets the names of the included files as they appear in the include
+     * directives of the source, which may be resolved again for another
+     * include path while the source is unchanged.
+     *
+     * @return names, null if not recorded
+     */
+    public String[] getIncludeNames() {
+        if (includeNames == null) {
+            return null;
+        }
+        return (String[]) includeNames.clone();
+    }
+    /**
+     * Gets the macros of the defines that the source defines or undefines,
+     * recorded when conditional directives are evaluated.
+     *
+     * @return macro names
+     */
+    public String[] getDefinedMacros() {
+        return (String[]) definedMacros.clone();
+    }
+    /**
+     * Gets the macros of the defines whose values were used to evaluate
+     * the conditional directives of the source, the includes are not valid
+     * for a translation unit in which any of them is redefined.
+     *
+     * @return macro names
+     */
+    public String[] getAssumedMacros() {
+        return (String[]) assumedMacros.clone();
+    }
     public String[] getIncludes() {
         String[] includesClone = (String[]) includes.clone();
         return includesClone;
@@ -80,7 +167,47 @@ public final class DependencyInfo {
         String[] sysIncludesClone = (String[]) sysIncludes.clone();
         return sysIncludesClone;
     }
+    /**
+     * Sets the identity of the source content, which must be the content
+     * that was parsed.
+     *
+     * @param identity
+     *            identity, may be null
+     */
+    public void setIdentity(FileIdentity identity) {
+        this.identity = identity;
+    }
+    public void setGuard(String guard) {
+        this.guard = guard;
+    }
+    public void setIncludeNames(String[] includeNames) {
+        if (includeNames == null) {
+            this.includeNames = null;
+        } else {
+            this.includeNames = (String[]) includeNames.clone();
+        }
+    }
+    public void setDefinedMacros(String[] definedMacros) {
+        this.definedMacros = (String[]) definedMacros.clone();
+    }
+    public void setAssumedMacros(String[] assumedMacros) {
+        this.assumedMacros = (String[]) assumedMacros.clone();
+    }
+    public void setComplete(boolean complete) {
+        this.complete = complete;
+    }
     public void setCompositeLastModified(long lastMod) {
         compositeLastModified = lastMod;
     }
+    /**
+     * Discards the composite lastModified time, which may have been
+     * invalidated by changes to included files.
+     */
+    public void resetCompositeLastModified() {
+        if (includes.length == 0) {
+            compositeLastModified = sourceLastModified;
+        } else {
+            compositeLastModified = Long.MIN_VALUE;
+        }
+    }
 }
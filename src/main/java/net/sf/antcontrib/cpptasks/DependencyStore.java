@@ -0,0 +1,426 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Hashtable;
+import java.util.Vector;
+/**
+ * Binary form of the dependency table, dependencies.bin, read through a
+ * memory mapped buffer.
+ *
+ * The file consists of a header giving the number of strings, records and
+ * include indexes, the end offsets of the strings, fixed size records for
+ * each DependencyInfo, the string indexes of the includes, system includes,
+ * include names, defined macros and assumed macros of all records and the
+ * UTF-8 encoded strings. Each distinct path
+ * is stored once. Strings and records are only decoded when requested, so
+ * records of sources not built are never materialized.
+ */
+final class DependencyStore {
+    private static final int MAGIC = 0x43505444;
+    private static final int VERSION = 4;
+    private static final int HEADER_SIZE = 20;
+    private static final int RECORD_SIZE = 72;
+    private static final int IDENTITY = 1;
+    private static final int COMPLETE = 2;
+    private static final int SCANNED = 4;
+    private static final int NONE = -1;
+    /**
+     * Windows can not replace a file while it is mapped, and a mapping is
+     * only released when garbage collected, so there the file is read.
+     */
+    private static final boolean MAPPED = System.getProperty("os.name")
+            .indexOf("Windows") < 0;
+    private final ByteBuffer buffer;
+    private final int stringCount;
+    private final int recordCount;
+    private final int indexCount;
+    private final int recordsStart;
+    private final int indexesStart;
+    private final int stringsStart;
+    private final String[] strings;
+
+    private DependencyStore(final ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a dependencies file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Dependencies file version "
+                    + Integer.toString(buffer.getInt(4)) + " not supported");
+        }
+        stringCount = buffer.getInt(8);
+        recordCount = buffer.getInt(12);
+        indexCount = buffer.getInt(16);
+        final long stringsOffset = HEADER_SIZE + 4L * stringCount
+                + (long) RECORD_SIZE * recordCount + 4L * indexCount;
+        if (stringCount < 0 || recordCount < 0 || indexCount < 0
+                || stringsOffset > buffer.limit()) {
+            throw new IOException("Truncated dependencies file");
+        }
+        recordsStart = HEADER_SIZE + 4 * stringCount;
+        indexesStart = recordsStart + RECORD_SIZE * recordCount;
+        stringsStart = (int) stringsOffset;
+        if (stringCount > 0
+                && getStringEnd(stringCount - 1) > buffer.limit()
+                        - stringsStart) {
+            throw new IOException("Truncated dependencies file");
+        }
+        strings = new String[stringCount];
+    }
+    /**
+     * Maps a dependencies file, or reads it where a mapped file can not be
+     * replaced by write().
+     *
+     * @param file
+     *            file written by write()
+     * @return store
+     * @throws IOException
+     *             if the file could not be read or is not a dependencies
+     *             file
+     */
+    public static DependencyStore read(final File file) throws IOException {
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            final FileChannel channel = in.getChannel();
+            if (MAPPED) {
+                //
+                //   the mapping remains valid after the channel is closed
+                //
+                return new DependencyStore(channel.map(
+                        FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate((int) channel
+                    .size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            }
+            buffer.flip();
+            return new DependencyStore(buffer);
+        } finally {
+            in.close();
+        }
+    }
+    public int getRecordCount() {
+        return recordCount;
+    }
+    private int getStringEnd(final int index) {
+        return buffer.getInt(HEADER_SIZE + 4 * index);
+    }
+    private String getString(final int index) throws IOException {
+        if (index < 0 || index >= stringCount) {
+            throw new IOException("Invalid string index");
+        }
+        String value = strings[index];
+        if (value == null) {
+            final int start;
+            if (index == 0) {
+                start = 0;
+            } else {
+                start = getStringEnd(index - 1);
+            }
+            final int end = getStringEnd(index);
+            if (start < 0 || end < start) {
+                throw new IOException("Invalid string offset");
+            }
+            final byte[] bytes = new byte[end - start];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(stringsStart + start + i);
+            }
+            value = new String(bytes, "UTF-8");
+            strings[index] = value;
+        }
+        return value;
+    }
+    private int getField(final int record, final int offset) {
+        return buffer.getInt(recordsStart + RECORD_SIZE * record + offset);
+    }
+    /**
+     * Gets the source of a record, as used as key of the dependency table.
+     *
+     * @param record
+     *            record index
+     * @return source name
+     * @throws IOException
+     *             if the file is corrupt
+     */
+    public String getSource(final int record) throws IOException {
+        return getString(getField(record, 0));
+    }
+    /**
+     * Gets the macros of the defines that the source of a record defines or
+     * undefines, without materializing the record.
+     *
+     * @param record
+     *            record index
+     * @return macro names
+     * @throws IOException
+     *             if the file is corrupt
+     */
+    public String[] getDefinedMacros(final int record) throws IOException {
+        final int base = recordsStart + RECORD_SIZE * record;
+        return getStrings(base, buffer.getInt(base + 20)
+                + buffer.getInt(base + 24) + buffer.getInt(base + 60),
+                buffer.getInt(base + 64));
+    }
+    /**
+     * Decodes strings of the include indexes of a record.
+     *
+     * @param base
+     *            offset of the record
+     * @param offset
+     *            index of the first string in the indexes of the record
+     * @param count
+     *            number of strings
+     */
+    private String[] getStrings(final int base, final int offset,
+            final int count) throws IOException {
+        final int first = buffer.getInt(base + 16);
+        if (first < 0 || offset < 0 || count < 0
+                || (long) first + offset + count > indexCount) {
+            throw new IOException("Invalid include index");
+        }
+        final String[] values = new String[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = getString(buffer.getInt(indexesStart + 4
+                    * (first + offset + i)));
+        }
+        return values;
+    }
+    /**
+     * Materializes a record.
+     *
+     * @param record
+     *            record index
+     * @return dependency info
+     * @throws IOException
+     *             if the file is corrupt
+     */
+    public DependencyInfo getDependencyInfo(final int record)
+            throws IOException {
+        final int base = recordsStart + RECORD_SIZE * record;
+        final String source = getString(buffer.getInt(base));
+        final String includePath = getString(buffer.getInt(base + 4));
+        final long sourceLastModified = buffer.getLong(base + 8);
+        final int first = buffer.getInt(base + 16);
+        final int includeCount = buffer.getInt(base + 20);
+        final int sysIncludeCount = buffer.getInt(base + 24);
+        final int nameCount = buffer.getInt(base + 60);
+        final int definedCount = buffer.getInt(base + 64);
+        final int assumedCount = buffer.getInt(base + 68);
+        if (first < 0 || includeCount < 0 || sysIncludeCount < 0
+                || nameCount < 0 || definedCount < 0 || assumedCount < 0
+                || (long) first + includeCount + sysIncludeCount + nameCount
+                        + definedCount + assumedCount > indexCount) {
+            throw new IOException("Invalid include index");
+        }
+        final Vector includes = new Vector(includeCount);
+        for (int i = 0; i < includeCount; i++) {
+            includes.addElement(getString(buffer.getInt(indexesStart + 4
+                    * (first + i))));
+        }
+        final Vector sysIncludes = new Vector(sysIncludeCount);
+        for (int i = 0; i < sysIncludeCount; i++) {
+            sysIncludes.addElement(getString(buffer.getInt(indexesStart + 4
+                    * (first + includeCount + i))));
+        }
+        final DependencyInfo dependInfo = new DependencyInfo(includePath,
+                source, sourceLastModified, includes, sysIncludes);
+        if ((buffer.getInt(base + 28) & IDENTITY) != 0) {
+            final int key = buffer.getInt(base + 48);
+            final int hash = buffer.getInt(base + 52);
+            dependInfo.setIdentity(new FileIdentity(buffer.getLong(base + 32),
+                    buffer.getLong(base + 40), key == NONE ? null
+                            : getString(key), hash == NONE ? null
+                            : getString(hash)));
+        }
+        dependInfo.setComplete((buffer.getInt(base + 28) & COMPLETE) != 0);
+        if ((buffer.getInt(base + 28) & SCANNED) != 0) {
+            final String[] names = new String[nameCount];
+            for (int i = 0; i < nameCount; i++) {
+                names[i] = getString(buffer.getInt(indexesStart + 4
+                        * (first + includeCount + sysIncludeCount + i)));
+            }
+            dependInfo.setIncludeNames(names);
+        }
+        final int macros = includeCount + sysIncludeCount + nameCount;
+        dependInfo.setDefinedMacros(getStrings(base, macros, definedCount));
+        dependInfo.setAssumedMacros(getStrings(base, macros + definedCount,
+                assumedCount));
+        final int guard = buffer.getInt(base + 56);
+        if (guard != NONE) {
+            dependInfo.setGuard(getString(guard));
+        }
+        return dependInfo;
+    }
+    private static int intern(final String value, final Hashtable indexes,
+            final Vector strings) {
+        if (value == null) {
+            return NONE;
+        }
+        Integer index = (Integer) indexes.get(value);
+        if (index == null) {
+            index = Integer.valueOf(strings.size());
+            indexes.put(value, index);
+            strings.addElement(value);
+        }
+        return index.intValue();
+    }
+    /**
+     * Writes a dependencies file. The file is replaced once completely
+     * written.
+     *
+     * @param file
+     *            file
+     * @param dependInfos
+     *            vector of DependencyInfo
+     * @throws IOException
+     *             if the file could not be written
+     */
+    public static void write(final File file, final Vector dependInfos)
+            throws IOException {
+        final Hashtable indexes = new Hashtable();
+        final Vector strings = new Vector();
+        final int[] records = new int[dependInfos.size() * 8];
+        final Vector includeIndexes = new Vector();
+        for (int i = 0; i < dependInfos.size(); i++) {
+            final DependencyInfo dependInfo = (DependencyInfo) dependInfos
+                    .elementAt(i);
+            records[i * 8] = intern(dependInfo.getSource(), indexes, strings);
+            records[i * 8 + 1] = intern(dependInfo
+                    .getIncludePathIdentifier(), indexes, strings);
+            records[i * 8 + 2] = includeIndexes.size();
+            final String[] includes = dependInfo.getIncludes();
+            for (int j = 0; j < includes.length; j++) {
+                includeIndexes.addElement(Integer.valueOf(intern(includes[j],
+                        indexes, strings)));
+            }
+            records[i * 8 + 3] = includes.length;
+            final String[] sysIncludes = dependInfo.getSysIncludes();
+            for (int j = 0; j < sysIncludes.length; j++) {
+                includeIndexes.addElement(Integer.valueOf(intern(sysIncludes[j],
+                        indexes, strings)));
+            }
+            records[i * 8 + 4] = sysIncludes.length;
+            final String[] includeNames = dependInfo.getIncludeNames();
+            if (includeNames != null) {
+                for (int j = 0; j < includeNames.length; j++) {
+                    includeIndexes.addElement(Integer.valueOf(intern(
+                            includeNames[j], indexes, strings)));
+                }
+                records[i * 8 + 5] = includeNames.length;
+            }
+            final String[] definedMacros = dependInfo.getDefinedMacros();
+            for (int j = 0; j < definedMacros.length; j++) {
+                includeIndexes.addElement(Integer.valueOf(intern(
+                        definedMacros[j], indexes, strings)));
+            }
+            records[i * 8 + 6] = definedMacros.length;
+            final String[] assumedMacros = dependInfo.getAssumedMacros();
+            for (int j = 0; j < assumedMacros.length; j++) {
+                includeIndexes.addElement(Integer.valueOf(intern(
+                        assumedMacros[j], indexes, strings)));
+            }
+            records[i * 8 + 7] = assumedMacros.length;
+            final FileIdentity identity = dependInfo.getIdentity();
+            if (identity != null) {
+                intern(identity.getKey(), indexes, strings);
+                intern(identity.getHash(), indexes, strings);
+            }
+            intern(dependInfo.getGuard(), indexes, strings);
+        }
+        final byte[][] encoded = new byte[strings.size()][];
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = ((String) strings.elementAt(i)).getBytes("UTF-8");
+        }
+        final File temp = File.createTempFile(file.getName(), ".tmp", file
+                .getAbsoluteFile().getParentFile());
+        try {
+            final DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp),
+                            65536));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(encoded.length);
+                out.writeInt(dependInfos.size());
+                out.writeInt(includeIndexes.size());
+                int end = 0;
+                for (int i = 0; i < encoded.length; i++) {
+                    end += encoded[i].length;
+                    out.writeInt(end);
+                }
+                for (int i = 0; i < dependInfos.size(); i++) {
+                    final DependencyInfo dependInfo =
+                            (DependencyInfo) dependInfos.elementAt(i);
+                    out.writeInt(records[i * 8]);
+                    out.writeInt(records[i * 8 + 1]);
+                    out.writeLong(dependInfo.getSourceLastModified());
+                    out.writeInt(records[i * 8 + 2]);
+                    out.writeInt(records[i * 8 + 3]);
+                    out.writeInt(records[i * 8 + 4]);
+                    final FileIdentity identity = dependInfo.getIdentity();
+                    int flags = dependInfo.isComplete() ? COMPLETE : 0;
+                    if (dependInfo.getIncludeNames() != null) {
+                        flags |= SCANNED;
+                    }
+                    if (identity == null) {
+                        out.writeInt(flags);
+                        out.writeLong(0);
+                        out.writeLong(0);
+                        out.writeInt(NONE);
+                        out.writeInt(NONE);
+                    } else {
+                        out.writeInt(flags | IDENTITY);
+                        out.writeLong(identity.getModified());
+                        out.writeLong(identity.getSize());
+                        out.writeInt(intern(identity.getKey(), indexes,
+                                strings));
+                        out.writeInt(intern(identity.getHash(), indexes,
+                                strings));
+                    }
+                    out.writeInt(intern(dependInfo.getGuard(), indexes,
+                            strings));
+                    out.writeInt(records[i * 8 + 5]);
+                    out.writeInt(records[i * 8 + 6]);
+                    out.writeInt(records[i * 8 + 7]);
+                }
+                for (int i = 0; i < includeIndexes.size(); i++) {
+                    out.writeInt(((Integer) includeIndexes.elementAt(i))
+                            .intValue());
+                }
+                for (int i = 0; i < encoded.length; i++) {
+                    out.write(encoded[i]);
+                }
+            } finally {
+                out.close();
+            }
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            temp.delete();
+        }
+    }
+}
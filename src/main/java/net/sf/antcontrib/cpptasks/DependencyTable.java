@@ -24,6 +24,8 @@ import java.io.UnsupportedEncodingException;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
@@ -48,6 +50,13 @@ public final class DependencyTable {
         private Vector includes;
         private String source;
         private long sourceLastModified;
+        private FileIdentity identity;
+        private String guard;
+        private boolean complete;
+        private Vector includeNames;
+        private boolean scanned;
+        private Vector definedMacros;
+        private Vector assumedMacros;
         private Vector sysIncludes;
         /**
          * Constructor
@@ -63,6 +72,9 @@ public final class DependencyTable {
             this.baseDir = baseDir;
             includes = new Vector();
             sysIncludes = new Vector();
+            includeNames = new Vector();
+            definedMacros = new Vector();
+            assumedMacros = new Vector();
             source = null;
         }
         public void endElement(String namespaceURI, String localName,
@@ -70,31 +82,30 @@ public final class DependencyTable {
             //
             //   if </source> then
             //       create Dependency object and add to hashtable
-            //           if corresponding source file exists and
-            //           has the same timestamp
             //
             if (qName.equals("source")) {
                 if (source != null && includePath != null) {
-                    File existingFile = new File(baseDir, source);
                     //
-                    //   if the file exists and the time stamp is right
-                    //       preserve the dependency info
-                    if (existingFile.exists()) {
-                        //
-                        //   would have expected exact matches
-                        //       but was seeing some unexpected difference by
-                        //       a few tens of milliseconds, as long
-                        //       as the times are within a second
-                        long existingLastModified = existingFile.lastModified();
-                        if (!CUtil.isSignificantlyAfter(existingLastModified, sourceLastModified) &&
-                                        !CUtil.isSignificantlyBefore(existingLastModified, sourceLastModified)) {
-                            DependencyInfo dependInfo = new DependencyInfo(
-                                    includePath, source, sourceLastModified,
-                                    includes, sysIncludes);
-                            dependencyTable.putDependencyInfo(source,
-                                    dependInfo);
-                        }
+                    //   checked against the file when first requested
+                    //
+                    DependencyInfo dependInfo = new DependencyInfo(
+                            includePath, source, sourceLastModified,
+                            includes, sysIncludes);
+                    dependInfo.setIdentity(identity);
+                    dependInfo.setGuard(guard);
+                    dependInfo.setComplete(complete);
+                    if (scanned) {
+                        String[] names = new String[includeNames.size()];
+                        includeNames.copyInto(names);
+                        dependInfo.setIncludeNames(names);
                     }
+                    String[] macros = new String[definedMacros.size()];
+                    definedMacros.copyInto(macros);
+                    dependInfo.setDefinedMacros(macros);
+                    macros = new String[assumedMacros.size()];
+                    assumedMacros.copyInto(macros);
+                    dependInfo.setAssumedMacros(macros);
+                    dependencyTable.addStoredRecord(source, dependInfo);
                     source = null;
                     includes.setSize(0);
                 }
@@ -118,6 +129,12 @@ public final class DependencyTable {
             //
             if (qName.equals("include")) {
                 includes.addElement(atts.getValue("file"));
+            } else if (qName.equals("includeName")) {
+                includeNames.addElement(atts.getValue("name"));
+            } else if (qName.equals("definedMacro")) {
+                definedMacros.addElement(atts.getValue("name"));
+            } else if (qName.equals("assumedMacro")) {
+                assumedMacros.addElement(atts.getValue("name"));
             } else {
                 if (qName.equals("sysinclude")) {
                     sysIncludes.addElement(atts.getValue("file"));
@@ -131,8 +148,15 @@ public final class DependencyTable {
                         source = atts.getValue("file");
                         sourceLastModified = Long.parseLong(atts
                                 .getValue("lastModified"), 16);
+                        identity = FileIdentity.parse(atts);
+                        guard = atts.getValue("guard");
+                        complete = "true".equals(atts.getValue("complete"));
+                        scanned = "true".equals(atts.getValue("scanned"));
                         includes.setSize(0);
                         sysIncludes.setSize(0);
+                        includeNames.setSize(0);
+                        definedMacros.setSize(0);
+                        assumedMacros.setSize(0);
                     } else {
                         if (qName.equals("includePath")) {
                             includePath = atts.getValue("signature");
@@ -236,6 +260,33 @@ public final class DependencyTable {
     private/* final */File dependenciesFile;
     /** Flag indicating whether the cache should be written back to file. */
     private boolean dirty;
+    /** Last modification time of dependenciesFile when last read or written. */
+    private long dependenciesLastModified;
+    /** Length of dependenciesFile when last read or written. */
+    private long dependenciesLength;
+    /** File states of the current build. */
+    private FileStateCache fileState = new FileStateCache();
+    /** If true, sources are compared by content identity. */
+    private boolean contentHash;
+    /** Set when a recorded identity is replaced by the current one. */
+    private boolean identitiesChanged;
+    /** If true, stored in dependencies.bin instead of dependencies.xml. */
+    private boolean binary;
+    /** Binary dependencies file as loaded, null if not loaded from one. */
+    private DependencyStore store;
+    /**
+     * Records not yet materialized keyed by source, as int[] of indexes in
+     * store or DependencyInfo[] parsed from dependencies.xml.
+     */
+    private final Hashtable storedRecords = new Hashtable();
+    /**
+     * Macros of the defines that any parsed file defines or undefines,
+     * which are unknown when evaluating the conditionals of any file, since
+     * the file may be included before it.
+     */
+    private final Hashtable redefinedMacros = new Hashtable();
+    /** Set when a macro is added to redefinedMacros after loading. */
+    private boolean macrosRedefined;
     /**
      * Creates a target history table from dependencies.xml in the prject
      * directory, if it exists. Otherwise, initializes the dependencies empty.
@@ -262,12 +313,23 @@ public final class DependencyTable {
         //
         //   if not dirty, no need to update file
         //
-        if (dirty) {
+        if (dirty && binary) {
+            try {
+                DependencyStore.write(dependenciesFile,
+                        getAllDependencyInfos());
+                dependenciesLastModified = dependenciesFile.lastModified();
+                dependenciesLength = dependenciesFile.length();
+                dirty = false;
+            } catch (IOException ex) {
+                task.log("Error writing " + dependenciesFile.toString() + ":"
+                        + ex.toString());
+            }
+        } else if (dirty) {
             //
-            //   walk through dependencies to get vector of include paths
-            // identifiers
+            //   walk through dependencies once to group them
+            //      by include path identifier
             //
-            Vector includePaths = getIncludePaths();
+            Hashtable includePaths = getIncludePaths();
             //
             //
             //   write dependency file
@@ -293,14 +355,19 @@ public final class DependencyTable {
                 writer.write(encodingName);
                 writer.write("'?>\n");
                 writer.write("<dependencies>\n");
-                StringBuffer buf = new StringBuffer();
-                Enumeration includePathEnum = includePaths.elements();
+                StringBuffer buf = new StringBuffer(8192);
+                Enumeration includePathEnum = includePaths.keys();
                 while (includePathEnum.hasMoreElements()) {
-                    writeIncludePathDependencies((String) includePathEnum
-                            .nextElement(), writer, buf);
+                    String includePath = (String) includePathEnum
+                            .nextElement();
+                    writeIncludePathDependencies(includePath,
+                            (Vector) includePaths.get(includePath), writer,
+                            buf);
                 }
                 writer.write("</dependencies>\n");
                 writer.close();
+                dependenciesLastModified = dependenciesFile.lastModified();
+                dependenciesLength = dependenciesFile.length();
                 dirty = false;
             } catch (IOException ex) {
                 task.log("Error writing " + dependenciesFile.toString() + ":"
@@ -308,19 +375,219 @@ public final class DependencyTable {
             }
         }
     }
+    /**
+     * Gets the dependency infos to be written, including records of the
+     * loaded file that were not used, which are carried forward unchecked.
+     */
+    private Vector getAllDependencyInfos() {
+        Vector dependInfos = new Vector();
+        Enumeration dependenciesEnum = dependencies.elements();
+        while (dependenciesEnum.hasMoreElements()) {
+            DependencyInfo[] infos = (DependencyInfo[]) dependenciesEnum
+                    .nextElement();
+            for (int i = 0; i < infos.length; i++) {
+                dependInfos.addElement(infos[i]);
+            }
+        }
+        Enumeration recordsEnum = storedRecords.elements();
+        while (recordsEnum.hasMoreElements()) {
+            Object records = recordsEnum.nextElement();
+            if (records instanceof DependencyInfo[]) {
+                DependencyInfo[] infos = (DependencyInfo[]) records;
+                for (int i = 0; i < infos.length; i++) {
+                    dependInfos.addElement(infos[i]);
+                }
+            } else {
+                int[] indexes = (int[]) records;
+                for (int i = 0; i < indexes.length; i++) {
+                    try {
+                        dependInfos.addElement(store
+                                .getDependencyInfo(indexes[i]));
+                    } catch (IOException ex) {
+                    }
+                }
+            }
+        }
+        return dependInfos;
+    }
+    /**
+     * Gets the canonical path of the directory that relative source names
+     * are resolved against.
+     */
+    public String getBaseDirPath() {
+        return baseDirPath;
+    }
+    /**
+     * Sets the file states used when loading and checking whether targets
+     * are up to date, typically at the start of each build.
+     *
+     * @param fileState
+     *            file states of the current build
+     */
+    public void setFileStateCache(FileStateCache fileState) {
+        if (fileState == null) {
+            throw new NullPointerException("fileState");
+        }
+        this.fileState = fileState;
+    }
+    /**
+     * Sets whether the table is stored in the binary dependencies.bin
+     * instead of dependencies.xml. An existing dependencies.xml is read if
+     * there is no dependencies.bin yet. Must be set before loading.
+     *
+     * @param binary
+     *            true to use the binary format
+     */
+    public void setBinary(boolean binary) {
+        this.binary = binary;
+        if (binary) {
+            dependenciesFile = new File(baseDir, "dependencies.bin");
+        } else {
+            dependenciesFile = new File(baseDir, "dependencies.xml");
+        }
+    }
+    public boolean isBinary() {
+        return binary;
+    }
+    /**
+     * Sets whether the identity of parsed files is recorded and compared,
+     * so that files rewritten with the same content are not parsed again
+     * and do not cause rebuilds. Must be set before loading.
+     *
+     * @param contentHash
+     *            true to compare files by content
+     */
+    public void setContentHash(boolean contentHash) {
+        this.contentHash = contentHash;
+    }
+    private long lastModified(File file) {
+        return fileState.lastModified(file);
+    }
+    /**
+     * Determines if recorded dependency information is still valid because
+     * the file it was parsed from is unchanged. If compared by content, the
+     * identity of the information is updated to that of the file.
+     */
+    private boolean isUnchanged(File file, DependencyInfo dependInfo) {
+        long existingLastModified = lastModified(file);
+        if (existingLastModified == 0) {
+            return false;
+        }
+        long sourceLastModified = dependInfo.getSourceLastModified();
+        FileIdentity identity = dependInfo.getIdentity();
+        if (!contentHash || identity == null) {
+            //
+            //   would have expected exact matches
+            //       but was seeing some unexpected difference by
+            //       a few tens of milliseconds, as long
+            //       as the times are within a second
+            if (CUtil.isSignificantlyAfter(existingLastModified, sourceLastModified)
+                    || CUtil.isSignificantlyBefore(existingLastModified, sourceLastModified)) {
+                return false;
+            }
+            if (contentHash && existingLastModified == sourceLastModified) {
+                identity = fileState.getContentIdentity(file);
+                if (identity != null) {
+                    dependInfo.setIdentity(identity);
+                    identitiesChanged = true;
+                }
+            }
+            return true;
+        }
+        FileIdentity current = fileState.getUnchangedIdentity(file, identity);
+        if (current == null) {
+            return false;
+        }
+        if (current != identity) {
+            //
+            //   rewritten with the same content, the recorded
+            //      modification time still dates the content
+            //
+            dependInfo.setIdentity(current);
+            identitiesChanged = true;
+        }
+        return true;
+    }
     /**
      * Returns an enumerator of DependencyInfo's
      */
     public Enumeration elements() {
+        Vector keys = new Vector();
+        Enumeration keysEnum = storedRecords.keys();
+        while (keysEnum.hasMoreElements()) {
+            keys.addElement(keysEnum.nextElement());
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            materialize((String) keys.elementAt(i));
+        }
         return dependencies.elements();
     }
+    /**
+     * Adds a record of the loaded file, to be checked when its source is
+     * first requested.
+     */
+    private void addStoredRecord(String key, DependencyInfo dependInfo) {
+        addRedefinedMacros(dependInfo.getDefinedMacros());
+        DependencyInfo[] records = (DependencyInfo[]) storedRecords.get(key);
+        if (records == null) {
+            records = new DependencyInfo[]{dependInfo};
+        } else {
+            DependencyInfo[] combined = new DependencyInfo[records.length + 1];
+            System.arraycopy(records, 0, combined, 0, records.length);
+            combined[records.length] = dependInfo;
+            records = combined;
+        }
+        storedRecords.put(key, records);
+    }
+    /**
+     * Adds the records of a source from the loaded file to the table,
+     * provided the source is unchanged.
+     */
+    private void materialize(String key) {
+        Object records = storedRecords.remove(key);
+        if (records == null) {
+            return;
+        }
+        File existingFile = new File(key);
+        if (!existingFile.isAbsolute()) {
+            existingFile = new File(baseDir, key);
+        }
+        DependencyInfo[] dependInfos;
+        if (records instanceof DependencyInfo[]) {
+            dependInfos = (DependencyInfo[]) records;
+        } else {
+            int[] indexes = (int[]) records;
+            dependInfos = new DependencyInfo[indexes.length];
+            for (int i = 0; i < indexes.length; i++) {
+                try {
+                    dependInfos[i] = store.getDependencyInfo(indexes[i]);
+                } catch (IOException ex) {
+                }
+            }
+        }
+        for (int i = 0; i < dependInfos.length; i++) {
+            DependencyInfo dependInfo = dependInfos[i];
+            if (dependInfo != null && !isAssumingRedefined(dependInfo)
+                    && isUnchanged(existingFile, dependInfo)) {
+                addDependencyInfo(key, dependInfo);
+            } else {
+                dirty = true;
+            }
+        }
+        if (identitiesChanged) {
+            identitiesChanged = false;
+            dirty = true;
+        }
+    }
     /**
      * This method returns a DependencyInfo for the specific source file and
      * include path identifier
      *
      */
-    public DependencyInfo getDependencyInfo(String sourceRelativeName,
+    public synchronized DependencyInfo getDependencyInfo(
+            String sourceRelativeName,
             String includePathIdentifier) {
+        materialize(sourceRelativeName);
         DependencyInfo dependInfo = null;
         DependencyInfo[] dependInfos = (DependencyInfo[]) dependencies
                 .get(sourceRelativeName);
@@ -335,48 +602,131 @@ public final class DependencyTable {
         }
         return null;
     }
-    private Vector getIncludePaths() {
-        Vector includePaths = new Vector();
-        DependencyInfo[] dependInfos;
-        Enumeration dependenciesEnum = dependencies.elements();
-        while (dependenciesEnum.hasMoreElements()) {
-            dependInfos = (DependencyInfo[]) dependenciesEnum.nextElement();
-            for (int i = 0; i < dependInfos.length; i++) {
-                DependencyInfo dependInfo = dependInfos[i];
-                boolean matchesExisting = false;
-                final String dependIncludePath = dependInfo
-                        .getIncludePathIdentifier();
-                Enumeration includePathEnum = includePaths.elements();
-                while (includePathEnum.hasMoreElements()) {
-                    if (dependIncludePath.equals(includePathEnum.nextElement())) {
-                        matchesExisting = true;
-                        break;
-                    }
-                }
-                if (!matchesExisting) {
-                    includePaths.addElement(dependIncludePath);
-                }
+    /**
+     * Groups the dependency infos by include path identifier.
+     *
+     * @return Vector's of DependencyInfo keyed by include path identifier
+     */
+    private Hashtable getIncludePaths() {
+        Hashtable includePaths = new Hashtable();
+        Vector dependInfos = getAllDependencyInfos();
+        for (int i = 0; i < dependInfos.size(); i++) {
+            DependencyInfo dependInfo = (DependencyInfo) dependInfos
+                    .elementAt(i);
+            final String dependIncludePath = dependInfo
+                    .getIncludePathIdentifier();
+            Vector group = (Vector) includePaths.get(dependIncludePath);
+            if (group == null) {
+                group = new Vector();
+                includePaths.put(dependIncludePath, group);
             }
+            group.addElement(dependInfo);
         }
         return includePaths;
     }
     public void load() throws IOException, ParserConfigurationException,
             SAXException {
+        load(null);
+    }
+    /**
+     * Loads dependencies.bin or dependencies.xml. A dependencies.bin that
+     * can not be read, such as one written by another version, is replaced
+     * on the next commit by the records of dependencies.xml if there is
+     * one, otherwise by those of the files parsed.
+     *
+     * @param task
+     *            task for diagnostic output, may be null
+     */
+    public void load(CCTask task) throws IOException,
+            ParserConfigurationException, SAXException {
         dependencies.clear();
-        if (dependenciesFile.exists()) {
+        storedRecords.clear();
+        redefinedMacros.clear();
+        store = null;
+        File xmlFile = new File(baseDir, "dependencies.xml");
+        if (binary && dependenciesFile.exists()) {
+            try {
+                store = DependencyStore.read(dependenciesFile);
+            } catch (IOException ex) {
+                if (task != null) {
+                    task.log("Ignoring " + dependenciesFile.toString() + ": "
+                            + ex.getMessage(), Project.MSG_VERBOSE);
+                }
+            }
+        }
+        if (store != null) {
+            //
+            //   only the sources are decoded, records are checked
+            //      and materialized when first requested
+            //
+            int recordCount = store.getRecordCount();
+            for (int i = 0; i < recordCount; i++) {
+                String source = store.getSource(i);
+                addRedefinedMacros(store.getDefinedMacros(i));
+                int[] records = (int[]) storedRecords.get(source);
+                if (records == null) {
+                    records = new int[]{i};
+                } else {
+                    int[] combined = new int[records.length + 1];
+                    System.arraycopy(records, 0, combined, 0, records.length);
+                    combined[records.length] = i;
+                    records = combined;
+                }
+                storedRecords.put(source, records);
+            }
+            dirty = false;
+        } else if (xmlFile.exists()) {
             SAXParserFactory factory = SAXParserFactory.newInstance();
             factory.setValidating(false);
             SAXParser parser = factory.newSAXParser();
-            parser.parse(dependenciesFile, new DependencyTableHandler(this,
+            parser.parse(xmlFile, new DependencyTableHandler(this,
                     baseDir));
-            dirty = false;
+            //
+            //   a binary table is written on the first commit
+            //
+            dirty = binary;
+        } else {
+            dirty = binary && dependenciesFile.exists();
         }
+        dependenciesLastModified = dependenciesFile.lastModified();
+        dependenciesLength = dependenciesFile.length();
+    }
+    /**
+     * Determines if dependencies.xml is unchanged since it was last read or
+     * written by this table, so the table may be reused by a later build.
+     *
+     * @return true if the table reflects the dependencies file
+     */
+    public boolean isCurrent() {
+        return dependenciesFile.lastModified() == dependenciesLastModified
+                && dependenciesFile.length() == dependenciesLength;
+    }
+    /**
+     * Prepares a table kept from an earlier build for reuse.
+     *
+     * The dependency info of each file is checked again when first
+     * requested, as is done when loading the dependencies file, and the
+     * composite modification times are discarded.
+     */
+    public void revalidate() {
+        Enumeration keys = dependencies.keys();
+        while (keys.hasMoreElements()) {
+            String key = (String) keys.nextElement();
+            DependencyInfo[] dependInfos = (DependencyInfo[]) dependencies
+                    .get(key);
+            for (int i = 0; i < dependInfos.length; i++) {
+                dependInfos[i].resetCompositeLastModified();
+            }
+            storedRecords.put(key, dependInfos);
+        }
+        dependencies.clear();
     }
     /**
      * Determines if the specified target needs to be rebuilt.
      *
      * This task may result in substantial IO as files are parsed to determine
-     * their dependencies
+     * their dependencies. Unless limited by dependencyDepth, the composite
+     * modification time of each file is only computed once per build.
      */
     public boolean needsRebuild(CCTask task, TargetInfo target,
             int dependencyDepth) {
@@ -389,7 +739,7 @@ public final class DependencyTable {
         String includePathIdentifier = compiler.getIncludePathIdentifier();
         File[] sources = target.getSources();
         DependencyInfo[] dependInfos = new DependencyInfo[sources.length];
-        long outputLastModified = target.getOutput().lastModified();
+        long outputLastModified = lastModified(target.getOutput());
         //
         //   try to solve problem using existing dependency info
         //      (not parsing any new files)
@@ -406,33 +756,487 @@ public final class DependencyTable {
                 rebuildOnStackExhaustion);
         for (int i = 0; i < sources.length && !mustRebuild; i++) {
             File source = sources[i];
-            String relative = CUtil.getRelativePath(baseDirPath, source);
+            String relative = fileState.getRelativePath(baseDirPath, source);
             DependencyInfo dependInfo = getDependencyInfo(relative,
                     includePathIdentifier);
             if (dependInfo == null) {
+                if (isReportedWhenCompiled(task, source, outputLastModified)) {
+                    mustRebuild = true;
+                    break;
+                }
                 task.log("Parsing " + relative, Project.MSG_VERBOSE);
                 dependInfo = parseIncludes(task, compiler, source);
             }
-            walkDependencies(task, dependInfo, compiler, stack, checker);
-            mustRebuild = checker.getMustRebuild();
+            if (dependencyDepth >= 0 && !dependInfo.isComplete()) {
+                walkDependencies(task, dependInfo, compiler, stack, checker);
+                mustRebuild = checker.getMustRebuild();
+            } else {
+                //
+                //   a changed source needs no look at its includes,
+                //      otherwise the composite time is computed once
+                //      and shared by all targets including the same files
+                //
+                mustRebuild = CUtil.isSignificantlyAfter(dependInfo
+                        .getSourceLastModified(), outputLastModified)
+                        || CUtil.isSignificantlyAfter(getCompositeLastModified(
+                                task, compiler, dependInfo),
+                                outputLastModified);
+            }
         }
         return mustRebuild;
     }
+    /**
+     * A file being visited by getCompositeLastModified.
+     */
+    private static final class IncludeNode {
+        private final DependencyInfo dependInfo;
+        private final String[] includes;
+        private int next;
+        private final int index;
+        private int lowLink;
+        private boolean onStack = true;
+        /** Latest modification time found so far. */
+        private long composite;
+        public IncludeNode(DependencyInfo dependInfo, int index) {
+            this.dependInfo = dependInfo;
+            this.index = index;
+            lowLink = index;
+            includes = dependInfo.getIncludes();
+            composite = dependInfo.getSourceLastModified();
+        }
+    }
+    /**
+     * Gets the composite modification time of a file, the latest of its own
+     * and those of the files it includes directly or indirectly, parsing any
+     * included file not parsed yet.
+     *
+     * The include graph is walked depth first finding its strongly connected
+     * components, files that include each other, as in Tarjan's algorithm.
+     * Components are completed in topological order, each once those it
+     * includes are, and all files of a component are given its composite
+     * time. Composite times are kept, so later targets including the same
+     * files only look them up.
+     *
+     * @return composite modification time
+     */
+    long getCompositeLastModified(CCTask task,
+            CompilerConfiguration compiler, DependencyInfo dependInfo) {
+        if (dependInfo.getCompositeLastModified() != Long.MIN_VALUE) {
+            return dependInfo.getCompositeLastModified();
+        }
+        if (dependInfo.isComplete()) {
+            return getCompleteLastModified(dependInfo);
+        }
+        String includePathIdentifier = compiler.getIncludePathIdentifier();
+        Hashtable nodes = new Hashtable();
+        Vector path = new Vector();
+        Vector component = new Vector();
+        IncludeNode root = new IncludeNode(dependInfo, 0);
+        nodes.put(dependInfo, root);
+        path.addElement(root);
+        component.addElement(root);
+        while (!path.isEmpty()) {
+            IncludeNode node = (IncludeNode) path.lastElement();
+            if (node.next < node.includes.length) {
+                String include = node.includes[node.next++];
+                DependencyInfo includeInfo = getDependencyInfo(include,
+                        includePathIdentifier);
+                if (includeInfo == null) {
+                    task.log("Parsing " + include, Project.MSG_VERBOSE);
+                    //
+                    //   If the include filepath is relative
+                    //      then anchor it the base directory
+                    File src = new File(include);
+                    if (!src.isAbsolute()) {
+                        src = new File(baseDir, include);
+                    }
+                    includeInfo = parseIncludes(task, compiler, src);
+                }
+                if (includeInfo.isComplete()) {
+                    getCompleteLastModified(includeInfo);
+                }
+                long includeComposite = includeInfo
+                        .getCompositeLastModified();
+                IncludeNode includeNode = (IncludeNode) nodes.get(includeInfo);
+                if (includeComposite != Long.MIN_VALUE) {
+                    //
+                    //   completed earlier or by a previous target
+                    //
+                    node.composite = Math.max(node.composite,
+                            includeComposite);
+                } else if (includeNode == null) {
+                    includeNode = new IncludeNode(includeInfo, nodes.size());
+                    nodes.put(includeInfo, includeNode);
+                    path.addElement(includeNode);
+                    component.addElement(includeNode);
+                } else if (includeNode.onStack) {
+                    //
+                    //   include cycle, the file is completed
+                    //       with the component of includeNode
+                    //
+                    node.lowLink = Math.min(node.lowLink, includeNode.index);
+                }
+                continue;
+            }
+            path.removeElementAt(path.size() - 1);
+            if (node.lowLink == node.index) {
+                //
+                //   node is the first visited file of a component,
+                //      its composite time includes those of the others
+                //
+                IncludeNode member;
+                do {
+                    member = (IncludeNode) component.lastElement();
+                    component.removeElementAt(component.size() - 1);
+                    member.onStack = false;
+                    member.dependInfo.setCompositeLastModified(node.composite);
+                } while (member != node);
+            }
+            if (!path.isEmpty()) {
+                IncludeNode parent = (IncludeNode) path.lastElement();
+                parent.lowLink = Math.min(parent.lowLink, node.lowLink);
+                parent.composite = Math.max(parent.composite, node.composite);
+            }
+        }
+        return dependInfo.getCompositeLastModified();
+    }
+    /**
+     * Gets the composite modification time of a file whose includes are
+     * every file it depends on, without looking at their own includes.
+     * A missing include dates the file in the future.
+     *
+     * @return composite modification time
+     */
+    private long getCompleteLastModified(DependencyInfo dependInfo) {
+        long composite = dependInfo.getSourceLastModified();
+        String[] includes = dependInfo.getIncludes();
+        for (int i = 0; i < includes.length; i++) {
+            File include = new File(includes[i]);
+            if (!include.isAbsolute()) {
+                include = new File(baseDir, includes[i]);
+            }
+            long includeLastModified = lastModified(include);
+            if (includeLastModified == 0) {
+                composite = Long.MAX_VALUE;
+                break;
+            }
+            composite = Math.max(composite, includeLastModified);
+        }
+        dependInfo.setCompositeLastModified(composite);
+        return composite;
+    }
+    /**
+     * Determines if a source without dependency info need not be parsed,
+     * because it is newer than its output and the compiler reports its
+     * dependencies when compiling it.
+     */
+    private boolean isReportedWhenCompiled(CCTask task, File source,
+            long outputLastModified) {
+        return task != null && task.getDependencyFiles()
+                && CUtil.isSignificantlyAfter(lastModified(source),
+                        outputLastModified);
+    }
+    /**
+     * Parses a file if it has no dependency info yet, then the files it
+     * includes, each on a thread of the pool.
+     */
+    private final class ParseAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final CCTask task;
+        private final CompilerConfiguration compiler;
+        private final File file;
+        private final String key;
+        private final long outputLastModified;
+        private final Hashtable visited;
+        /**
+         * Constructor.
+         *
+         * @param key
+         *            file name relative to the base directory
+         * @param outputLastModified
+         *            modification time of the output of a source, the
+         *            includes of a newer source are not parsed as its
+         *            target is rebuilt anyway, 0 for included files
+         * @param visited
+         *            files already visited by any action
+         */
+        public ParseAction(final CCTask task,
+                final CompilerConfiguration compiler, final File file,
+                final String key, final long outputLastModified,
+                final Hashtable visited) {
+            this.task = task;
+            this.compiler = compiler;
+            this.file = file;
+            this.key = key;
+            this.outputLastModified = outputLastModified;
+            this.visited = visited;
+        }
+        protected void compute() {
+            final String includePathIdentifier = compiler
+                    .getIncludePathIdentifier();
+            if (visited.put(includePathIdentifier + '\n' + key, key) != null) {
+                return;
+            }
+            DependencyInfo dependInfo = getDependencyInfo(key,
+                    includePathIdentifier);
+            if (dependInfo == null) {
+                if (outputLastModified != 0
+                        && isReportedWhenCompiled(task, file,
+                                outputLastModified)) {
+                    return;
+                }
+                task.log("Parsing " + key, Project.MSG_VERBOSE);
+                dependInfo = parseIncludes(task, compiler, file);
+            }
+            if (dependInfo.isComplete() || outputLastModified != 0
+                    && CUtil.isSignificantlyAfter(dependInfo
+                            .getSourceLastModified(), outputLastModified)) {
+                return;
+            }
+            final String[] includes = dependInfo.getIncludes();
+            final Vector actions = new Vector(includes.length);
+            for (int i = 0; i < includes.length; i++) {
+                File include = new File(includes[i]);
+                if (!include.isAbsolute()) {
+                    include = new File(baseDir, includes[i]);
+                }
+                actions.addElement(new ParseAction(task, compiler, include,
+                        includes[i], 0, visited));
+            }
+            invokeAll(actions);
+        }
+    }
+    /**
+     * Runs a set of actions and waits for them to complete.
+     */
+    private static final class InvokeAllAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Vector actions;
+        public InvokeAllAction(final Vector actions) {
+            this.actions = actions;
+        }
+        protected void compute() {
+            invokeAll(actions);
+        }
+    }
+    /**
+     * Parses the sources of targets, and the files they include, that have
+     * no dependency info yet on up to jobs threads, so that needsRebuild
+     * finds them parsed.
+     *
+     * @param task
+     *            task for any diagnostic output
+     * @param targets
+     *            TargetInfo's of compilations
+     * @param jobs
+     *            number of threads
+     */
+    public void parseIncludes(final CCTask task, final Vector targets,
+            final int jobs) {
+        final Hashtable visited = new Hashtable();
+        final Vector actions = new Vector();
+        for (int i = 0; i < targets.size(); i++) {
+            final TargetInfo target = (TargetInfo) targets.elementAt(i);
+            final CompilerConfiguration compiler = (CompilerConfiguration) target
+                    .getConfiguration();
+            final long outputLastModified = Math.max(1,
+                    lastModified(target.getOutput()));
+            final File[] sources = target.getSources();
+            for (int j = 0; j < sources.length; j++) {
+                actions.addElement(new ParseAction(task, compiler, sources[j],
+                        fileState.getRelativePath(baseDirPath, sources[j]),
+                        outputLastModified, visited));
+            }
+        }
+        final ForkJoinPool pool = new ForkJoinPool(jobs);
+        try {
+            pool.invoke(new InvokeAllAction(actions));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+    /**
+     * Gets the dependency info of a source for the include path of a
+     * compiler configuration, resolving the include names recorded for
+     * another include path if the source is unchanged, otherwise parsing
+     * it.
+     */
     public DependencyInfo parseIncludes(CCTask task,
             CompilerConfiguration compiler, File source) {
-        DependencyInfo dependInfo = compiler.parseIncludes(task, baseDir,
-                source);
-        String relativeSource = CUtil.getRelativePath(baseDirPath, source);
-        putDependencyInfo(relativeSource, dependInfo);
+        DependencyInfo dependInfo = null;
+        DependencyInfo scanned = getScannedDependencyInfo(source);
+        if (scanned != null) {
+            dependInfo = compiler.resolveIncludes(task, baseDir, source,
+                    scanned.getIncludeNames(), scanned.getGuard());
+        }
+        if (dependInfo != null) {
+            putDependencyInfo(source, dependInfo);
+            return dependInfo;
+        }
+        //
+        //   parsed again if another file redefined a macro
+        //      the conditionals were evaluated on meanwhile
+        //
+        do {
+            dependInfo = compiler.parseIncludes(task, baseDir, source);
+        } while (!putDependencyInfo(source, dependInfo));
         return dependInfo;
     }
-    private void putDependencyInfo(String key, DependencyInfo dependInfo) {
+    /**
+     * Gets the macros of the defines that any file parsed or loaded
+     * defines or undefines, whose values must not be used to evaluate
+     * conditionals.
+     *
+     * @return macro names
+     */
+    public synchronized String[] getRedefinedMacros() {
+        String[] macros = new String[redefinedMacros.size()];
+        Enumeration macroEnum = redefinedMacros.keys();
+        for (int i = 0; i < macros.length; i++) {
+            macros[i] = (String) macroEnum.nextElement();
+        }
+        return macros;
+    }
+    /**
+     * Determines if a file parsed since the last call redefined a macro of
+     * the defines that was not known to be redefined, so that targets
+     * found up to date since may depend on files not found then.
+     *
+     * @return true if targets should be checked again
+     */
+    public synchronized boolean checkRedefinedMacros() {
+        boolean redefined = macrosRedefined;
+        macrosRedefined = false;
+        return redefined;
+    }
+    /**
+     * Adds macros to redefinedMacros.
+     *
+     * @return true if any was not yet known to be redefined
+     */
+    private boolean addRedefinedMacros(String[] macros) {
+        boolean added = false;
+        for (int i = 0; i < macros.length; i++) {
+            if (redefinedMacros.put(macros[i], macros[i]) == null) {
+                added = true;
+            }
+        }
+        return added;
+    }
+    /**
+     * Determines if the conditionals of a file were evaluated on the value
+     * of a macro some file redefines.
+     */
+    private boolean isAssumingRedefined(DependencyInfo dependInfo) {
+        String[] macros = dependInfo.getAssumedMacros();
+        for (int i = 0; i < macros.length; i++) {
+            if (redefinedMacros.containsKey(macros[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+    /**
+     * Discards the dependency info of files whose conditionals were
+     * evaluated on a macro now known to be redefined, and the composite
+     * modification times that may have been computed from them.
+     */
+    private void discardAssumingRedefined() {
+        Vector keys = new Vector();
+        Enumeration keysEnum = dependencies.keys();
+        while (keysEnum.hasMoreElements()) {
+            keys.addElement(keysEnum.nextElement());
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            String key = (String) keys.elementAt(i);
+            DependencyInfo[] dependInfos = (DependencyInfo[]) dependencies
+                    .get(key);
+            Vector kept = new Vector(dependInfos.length);
+            for (int j = 0; j < dependInfos.length; j++) {
+                dependInfos[j].resetCompositeLastModified();
+                if (!isAssumingRedefined(dependInfos[j])) {
+                    kept.addElement(dependInfos[j]);
+                }
+            }
+            if (kept.size() == 0) {
+                dependencies.remove(key);
+            } else if (kept.size() < dependInfos.length) {
+                DependencyInfo[] keptInfos = new DependencyInfo[kept.size()];
+                kept.copyInto(keptInfos);
+                dependencies.put(key, keptInfos);
+            }
+        }
+    }
+    /**
+     * Finds dependency info of an unchanged source, for any include path,
+     * that records the include names.
+     *
+     * @return dependency info, null if none
+     */
+    private synchronized DependencyInfo getScannedDependencyInfo(
+            File source) {
+        String key = fileState.getRelativePath(baseDirPath, source);
+        materialize(key);
+        DependencyInfo[] dependInfos = (DependencyInfo[]) dependencies
+                .get(key);
+        if (dependInfos != null) {
+            for (int i = 0; i < dependInfos.length; i++) {
+                if (dependInfos[i].getIncludeNames() != null) {
+                    return dependInfos[i];
+                }
+            }
+        }
+        return null;
+    }
+    /**
+     * Adds or replaces the dependency info of a source, parsed or reported
+     * by the compiler.
+     *
+     * @param source
+     *            source file
+     * @param dependInfo
+     *            dependency info
+     * @return false if the info was discarded as its conditionals were
+     *         evaluated on a macro redefined by a file parsed meanwhile
+     */
+    public boolean putDependencyInfo(File source, DependencyInfo dependInfo) {
+        //
+        //   files with unresolved includes are dated in the future
+        //      so they are parsed again, do not let the identity
+        //      keep them
+        //
+        if (contentHash && dependInfo.getSourceLastModified() == lastModified(source)) {
+            dependInfo.setIdentity(fileState.getContentIdentity(source));
+        }
+        String relativeSource = fileState.getRelativePath(baseDirPath, source);
+        return putDependencyInfo(relativeSource, dependInfo);
+    }
+    /**
+     * Adds or replaces the dependency info of a source.
+     *
+     * @param key
+     *            source name relative to the base directory
+     */
+    synchronized boolean putDependencyInfo(String key,
+            DependencyInfo dependInfo) {
+        if (isAssumingRedefined(dependInfo)) {
+            return false;
+        }
+        materialize(key);
+        if (addRedefinedMacros(dependInfo.getDefinedMacros())) {
+            discardAssumingRedefined();
+            macrosRedefined = true;
+        }
+        addDependencyInfo(key, dependInfo);
+        dirty = true;
+        return true;
+    }
+    private void addDependencyInfo(String key, DependencyInfo dependInfo) {
         //
         //   optimistic, add new value
         //
         DependencyInfo[] old = (DependencyInfo[]) dependencies.put(key,
                 new DependencyInfo[]{dependInfo});
-        dirty = true;
         //
         //   something was already there
         //
@@ -466,6 +1270,20 @@ public final class DependencyTable {
     public void walkDependencies(CCTask task, DependencyInfo dependInfo,
             CompilerConfiguration compiler, DependencyInfo[] stack,
             DependencyVisitor visitor) throws BuildException {
+        walkDependencies(task, dependInfo, compiler, stack, visitor,
+                new Hashtable());
+    }
+    /**
+     * Walks the dependencies of a translation unit.
+     *
+     * @param guarded
+     *            stack depth of the guarded headers already walked, keyed
+     *            by DependencyInfo
+     */
+    private void walkDependencies(CCTask task, DependencyInfo dependInfo,
+            CompilerConfiguration compiler, DependencyInfo[] stack,
+            DependencyVisitor visitor, Hashtable guarded)
+            throws BuildException {
         //
         //   visit this node
         //       if visit returns true then
@@ -495,6 +1313,19 @@ public final class DependencyTable {
                 return;
             }
             //
+            //   the preprocessor skips a guarded header included again,
+            //      so there is nothing new below it unless it was
+            //      walked deeper in the stack than now
+            //
+            if (dependInfo.getGuard() != null) {
+                Integer walked = (Integer) guarded.get(dependInfo);
+                if (walked != null && walked.intValue() <= stackPosition) {
+                    stack[stackPosition] = null;
+                    return;
+                }
+                guarded.put(dependInfo, Integer.valueOf(stackPosition));
+            }
+            //
             //   locate dependency infos
             //
             String[] includes = dependInfo.getIncludes();
@@ -540,15 +1371,18 @@ public final class DependencyTable {
                     for (int i = 0; i < includeInfos.length; i++) {
                         DependencyInfo includeInfo = includeInfos[i];
                         walkDependencies(task, includeInfo, compiler, stack,
-                                visitor);
+                                visitor, guarded);
                     }
                 }
             }
             stack[stackPosition] = null;
         }
     }
-    private void writeDependencyInfo(BufferedWriter writer, StringBuffer buf,
-            DependencyInfo dependInfo) throws IOException {
+    /**
+     * Appends the source element of a dependency info.
+     */
+    private void writeDependencyInfo(StringBuffer buf,
+            DependencyInfo dependInfo) {
         String[] includes = dependInfo.getIncludes();
         String[] sysIncludes = dependInfo.getSysIncludes();
         //
@@ -556,55 +1390,81 @@ public final class DependencyTable {
         //       it is not worth our time saving it
         //       and trying to distiguish between files with
         //       no dependencies and those with undetermined dependencies
-        buf.setLength(0);
         buf.append("      <source file=\"");
-        buf.append(CUtil.xmlAttribEncode(dependInfo.getSource()));
+        CUtil.xmlAttribEncode(buf, dependInfo.getSource());
         buf.append("\" lastModified=\"");
         buf.append(Long.toHexString(dependInfo.getSourceLastModified()));
-        buf.append("\">\n");
-        writer.write(buf.toString());
+        buf.append('\"');
+        FileIdentity identity = dependInfo.getIdentity();
+        if (identity != null) {
+            identity.appendAttributes(buf);
+        }
+        if (dependInfo.getGuard() != null) {
+            buf.append(" guard=\"");
+            CUtil.xmlAttribEncode(buf, dependInfo.getGuard());
+            buf.append('\"');
+        }
+        if (dependInfo.isComplete()) {
+            buf.append(" complete=\"true\"");
+        }
+        String[] includeNames = dependInfo.getIncludeNames();
+        if (includeNames != null) {
+            buf.append(" scanned=\"true\"");
+        }
+        buf.append(">\n");
         for (int i = 0; i < includes.length; i++) {
-            buf.setLength(0);
             buf.append("         <include file=\"");
-            buf.append(CUtil.xmlAttribEncode(includes[i]));
+            CUtil.xmlAttribEncode(buf, includes[i]);
             buf.append("\"/>\n");
-            writer.write(buf.toString());
         }
         for (int i = 0; i < sysIncludes.length; i++) {
-            buf.setLength(0);
             buf.append("         <sysinclude file=\"");
-            buf.append(CUtil.xmlAttribEncode(sysIncludes[i]));
+            CUtil.xmlAttribEncode(buf, sysIncludes[i]);
             buf.append("\"/>\n");
-            writer.write(buf.toString());
         }
-        writer.write("      </source>\n");
-        return;
+        if (includeNames != null) {
+            for (int i = 0; i < includeNames.length; i++) {
+                buf.append("         <includeName name=\"");
+                CUtil.xmlAttribEncode(buf, includeNames[i]);
+                buf.append("\"/>\n");
+            }
+        }
+        String[] macros = dependInfo.getDefinedMacros();
+        for (int i = 0; i < macros.length; i++) {
+            buf.append("         <definedMacro name=\"");
+            CUtil.xmlAttribEncode(buf, macros[i]);
+            buf.append("\"/>\n");
+        }
+        macros = dependInfo.getAssumedMacros();
+        for (int i = 0; i < macros.length; i++) {
+            buf.append("         <assumedMacro name=\"");
+            CUtil.xmlAttribEncode(buf, macros[i]);
+            buf.append("\"/>\n");
+        }
+        buf.append("      </source>\n");
     }
     private void writeIncludePathDependencies(String includePathIdentifier,
-            BufferedWriter writer, StringBuffer buf) throws IOException {
+            Vector dependInfos, BufferedWriter writer, StringBuffer buf)
+            throws IOException {
         //
         //  include path element
         //
         buf.setLength(0);
         buf.append("   <includePath signature=\"");
-        buf.append(CUtil.xmlAttribEncode(includePathIdentifier));
+        CUtil.xmlAttribEncode(buf, includePathIdentifier);
         buf.append("\">\n");
-        writer.write(buf.toString());
-        Enumeration dependenciesEnum = dependencies.elements();
-        while (dependenciesEnum.hasMoreElements()) {
-            DependencyInfo[] dependInfos = (DependencyInfo[]) dependenciesEnum
-                    .nextElement();
-            for (int i = 0; i < dependInfos.length; i++) {
-                DependencyInfo dependInfo = dependInfos[i];
-                //
-                //   if this is for the same include path
-                //      then output the info
-                if (dependInfo.getIncludePathIdentifier().equals(
-                        includePathIdentifier)) {
-                    writeDependencyInfo(writer, buf, dependInfo);
-                }
+        for (int i = 0; i < dependInfos.size(); i++) {
+            writeDependencyInfo(buf, (DependencyInfo) dependInfos
+                    .elementAt(i));
+            //
+            //   write in large pieces rather than per line
+            //
+            if (buf.length() > 8192) {
+                writer.write(buf.toString());
+                buf.setLength(0);
             }
         }
-        writer.write("   </includePath>\n");
+        buf.append("   </includePath>\n");
+        writer.write(buf.toString());
     }
 }
@@ -22,7 +22,13 @@ import org.apache.tools.ant.types.Reference;
 import java.util.Vector;
 
 /**
- * Distributed build information (Non-functional prototype).
+ * Distributed build information.
+ *
+ * With the distcc protocol, sources of gcc compatible compilers are
+ * preprocessed locally and compiled by the distccd servers listed in hosts,
+ * using the same host syntax as DISTCC_HOSTS. With the cpptasks protocol,
+ * the hosts run net.sf.antcontrib.cpptasks.distributer.CompileWorker
+ * instead, which listens on port 3641 by default.
  *
  */
 public final class DistributerDef
@@ -50,7 +56,7 @@ public final class DistributerDef
   private DistributerProtocolEnum protocol;
 
   /**
-   * Not sure what this is.
+   * If nonzero, requests are sent in one piece, as with TCP_CORK.
    */
   private int tcpCork;
 
@@ -189,7 +195,9 @@ public final class DistributerDef
   }
 
   /**
-   * Sets hosts.
+   * Sets hosts, separated by white space, each as host[:port][/limit]
+   * where limit is the number of concurrent compilations on the host,
+   * 4 by default.
    * @param value new value
    */
   public void setHosts(final String value) {
@@ -221,6 +229,38 @@ public final class DistributerDef
     protocol = value;
   }
 
+  /**
+   * Gets local to remote filename maps.
+   * @return maps, may be empty.
+   *
+   */
+  public DistributerMap[] getMaps() {
+    if (isReference()) {
+      DistributerDef refDistributer = (DistributerDef)
+          getCheckedRef(DistributerDef.class,
+                        "DistributerDef");
+      return refDistributer.getMaps();
+    }
+    DistributerMap[] array = new DistributerMap[maps.size()];
+    maps.copyInto(array);
+    return array;
+  }
+
+  /**
+   * Gets remote user name.
+   * @return user name, may be null.
+   *
+   */
+  public String getUser() {
+    if (isReference()) {
+      DistributerDef refDistributer = (DistributerDef)
+          getCheckedRef(DistributerDef.class,
+                        "DistributerDef");
+      return refDistributer.getUser();
+    }
+    return user;
+  }
+
   /**
    *  Local to remote filename maps.
    * @return new map
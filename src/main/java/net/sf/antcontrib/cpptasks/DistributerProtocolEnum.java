@@ -45,6 +45,7 @@ public final class DistributerProtocolEnum
   public String[] getValues() {
     return new String[] {
         "distcc",
-        "ssh"};
+        "ssh",
+        "cpptasks"};
   }
 }
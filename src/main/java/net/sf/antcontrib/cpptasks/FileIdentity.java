@@ -0,0 +1,168 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks;
+import org.xml.sax.Attributes;
+/**
+ * High resolution identity of a file's content: modification time in
+ * nanoseconds, size, file key (device and inode where available) and,
+ * optionally, a hash of the content.
+ *
+ * A file whose modification time, size and key are unchanged is assumed
+ * unchanged. Otherwise the content hash decides, so that files rewritten
+ * with identical content, for example by a version control checkout, are
+ * not considered modified.
+ */
+public final class FileIdentity {
+    private final long modified;
+    private final long size;
+    private final String key;
+    private final String hash;
+
+    /**
+     * Constructor.
+     *
+     * @param modified
+     *            modification time in nanoseconds since the epoch
+     * @param size
+     *            size in bytes
+     * @param key
+     *            file key as reported by BasicFileAttributes.fileKey(), may
+     *            be null
+     * @param hash
+     *            content hash, may be null if not computed
+     */
+    public FileIdentity(final long modified, final long size,
+            final String key, final String hash) {
+        this.modified = modified;
+        this.size = size;
+        this.key = key;
+        this.hash = hash;
+    }
+    /**
+     * Reads an identity from the size, modified, key and hash attributes of
+     * a history or dependencies element.
+     *
+     * @param atts
+     *            element attributes
+     * @return identity, null if not recorded
+     */
+    public static FileIdentity parse(final Attributes atts) {
+        final String sizeAttr = atts.getValue("size");
+        final String modifiedAttr = atts.getValue("modified");
+        if (sizeAttr == null || modifiedAttr == null) {
+            return null;
+        }
+        try {
+            return new FileIdentity(Long.parseLong(modifiedAttr, 16), Long
+                    .parseLong(sizeAttr, 16), atts.getValue("key"), atts
+                    .getValue("hash"));
+        } catch (final NumberFormatException ex) {
+            return null;
+        }
+    }
+    /**
+     * Appends the attributes read by parse().
+     *
+     * @param buf
+     *            buffer positioned within an element start tag
+     */
+    public void appendAttributes(final StringBuffer buf) {
+        buf.append(" size=\"");
+        buf.append(Long.toHexString(size));
+        buf.append("\" modified=\"");
+        buf.append(Long.toHexString(modified));
+        buf.append('\"');
+        if (key != null) {
+            buf.append(" key=\"");
+            CUtil.xmlAttribEncode(buf, key);
+            buf.append('\"');
+        }
+        if (hash != null) {
+            buf.append(" hash=\"");
+            buf.append(hash);
+            buf.append('\"');
+        }
+    }
+    public String getHash() {
+        return hash;
+    }
+    public String getKey() {
+        return key;
+    }
+    /**
+     * Gets the modification time.
+     *
+     * @return modification time in nanoseconds since the epoch
+     */
+    public long getModified() {
+        return modified;
+    }
+    /**
+     * Gets the modification time at the resolution of File.lastModified().
+     *
+     * @return modification time in milliseconds since the epoch
+     */
+    public long getLastModified() {
+        return Math.floorDiv(modified, 1000000L);
+    }
+    public long getSize() {
+        return size;
+    }
+    /**
+     * Determines if the modification time, size and file key are the same,
+     * ignoring the content hash.
+     *
+     * @param other
+     *            other identity, may be null
+     * @return true if the attributes match
+     */
+    public boolean hasSameAttributes(final FileIdentity other) {
+        if (other == null || modified != other.modified || size != other.size) {
+            return false;
+        }
+        if (key == null) {
+            return other.key == null;
+        }
+        return key.equals(other.key);
+    }
+    /**
+     * Determines if the content described by another identity is known to
+     * be the same, either because the attributes match or the content
+     * hashes do.
+     *
+     * @param other
+     *            other identity, may be null
+     * @return true if the content is known to be the same
+     */
+    public boolean hasSameContent(final FileIdentity other) {
+        if (hasSameAttributes(other)) {
+            return true;
+        }
+        return other != null && size == other.size && hash != null
+                && hash.equals(other.hash);
+    }
+    /**
+     * Creates a copy with a content hash.
+     *
+     * @param hash
+     *            content hash
+     * @return new identity
+     */
+    public FileIdentity withHash(final String hash) {
+        return new FileIdentity(modified, size, key, hash);
+    }
+}
@@ -0,0 +1,415 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Hashtable;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+/**
+ * Snapshot of file states and canonical paths for the duration of a build.
+ *
+ * The existence, modification time and identity of each file is read once
+ * with a single readAttributes call and reused by later queries, as are
+ * content hashes and canonical and relative paths. Directories searched
+ * for included files are listed once into an index of their entries, so
+ * that looking up an include on a long include path costs no system calls
+ * after the first lookup in each directory. Names that only match an entry
+ * ignoring case are checked with the file system, since whether case is
+ * ignored depends on the volume. Files written by the build must be
+ * invalidated before being examined again.
+ *
+ * May be shared by several threads.
+ */
+public final class FileStateCache {
+    /** State of a file that does not exist. */
+    private static final Long MISSING = Long.valueOf(0);
+    /** Identity of a file that does not exist. */
+    private static final FileIdentity NO_IDENTITY = new FileIdentity(0, -1,
+            null, null);
+    /**
+     * Entry names of a directory.
+     */
+    private static final class Listing {
+        /** Entry names. */
+        private final Hashtable names;
+        /** Entry names keyed by their lower case form. */
+        private final Hashtable folded;
+        private Listing(final String[] entries) {
+            names = new Hashtable(entries.length * 2);
+            folded = new Hashtable(entries.length * 2);
+            for (int i = 0; i < entries.length; i++) {
+                names.put(entries[i], entries[i]);
+                folded.put(fold(entries[i]), entries[i]);
+            }
+        }
+    }
+    /** Listing of a path that is not a readable directory. */
+    private static final Listing NO_ENTRIES = new Listing(new String[0]);
+    /** Whether relative paths are computed as on OS/400. */
+    private static final boolean OS400 = "OS/400".equals(System
+            .getProperty("os.name"));
+    /** Algorithm of content hashes. */
+    private static final String HASH_ALGORITHM = "SHA-1";
+    /** Source of modification times, may be null. */
+    private final SourceWatcher watcher;
+    /** Modification times keyed by absolute path, MISSING if absent. */
+    private final Hashtable lastModified = new Hashtable();
+    /** FileIdentity's keyed by absolute path, NO_IDENTITY if absent. */
+    private final Hashtable identities = new Hashtable();
+    /** Content hashes keyed by absolute path. */
+    private final Hashtable hashes = new Hashtable();
+    /** Canonical paths keyed by absolute path. */
+    private final Hashtable canonicalPaths = new Hashtable();
+    /** Relative paths keyed by base and canonical target path. */
+    private final Hashtable relativePaths = new Hashtable();
+    /** Entry names of directories keyed by absolute path. */
+    private final Hashtable listings = new Hashtable();
+
+    /**
+     * Creates a cache that reads the file system directly.
+     */
+    public FileStateCache() {
+        this(null);
+    }
+    /**
+     * Creates a cache.
+     *
+     * @param watcher
+     *            source of modification times for files not yet cached, or
+     *            null to read the file system directly
+     */
+    public FileStateCache(final SourceWatcher watcher) {
+        this.watcher = watcher;
+    }
+    /**
+     * Gets the modification time of a file, as File.lastModified().
+     *
+     * @param file
+     *            file
+     * @return modification time, 0 if the file does not exist
+     */
+    public long lastModified(final File file) {
+        final String key = file.getAbsolutePath();
+        Long value = (Long) lastModified.get(key);
+        if (value == null) {
+            value = MISSING;
+            if (watcher != null) {
+                final long time = watcher.lastModified(file);
+                if (time != 0) {
+                    value = Long.valueOf(time);
+                }
+            } else {
+                final FileIdentity identity = getIdentity(file);
+                if (identity != null) {
+                    value = Long.valueOf(identity.getLastModified());
+                }
+            }
+            lastModified.put(key, value);
+        }
+        return value.longValue();
+    }
+    /**
+     * Gets the modification time, size and file key of a file.
+     *
+     * @param file
+     *            file
+     * @return identity without content hash, null if the file does not
+     *         exist
+     */
+    public FileIdentity getIdentity(final File file) {
+        final String key = file.getAbsolutePath();
+        FileIdentity identity = (FileIdentity) identities.get(key);
+        if (identity == null) {
+            identity = readIdentity(file);
+            identities.put(key, identity);
+        }
+        if (identity == NO_IDENTITY) {
+            return null;
+        }
+        return identity;
+    }
+    private static FileIdentity readIdentity(final File file) {
+        try {
+            final BasicFileAttributes attrs = Files.readAttributes(file
+                    .toPath(), BasicFileAttributes.class);
+            final Object fileKey = attrs.fileKey();
+            return new FileIdentity(attrs.lastModifiedTime().to(
+                    TimeUnit.NANOSECONDS), attrs.size(), fileKey == null
+                    ? null
+                    : fileKey.toString(), null);
+        } catch (final IOException ex) {
+        } catch (final InvalidPathException ex) {
+        }
+        return NO_IDENTITY;
+    }
+    /**
+     * Gets the identity of a file including a hash of its content.
+     *
+     * The hash is only returned if the file was not modified since its
+     * identity was first read during this build, so that it always
+     * describes the content seen by earlier decisions.
+     *
+     * @param file
+     *            file
+     * @return identity with content hash, null if the file does not exist
+     *         or was modified
+     */
+    public FileIdentity getContentIdentity(final File file) {
+        final FileIdentity identity = getIdentity(file);
+        if (identity == null) {
+            return null;
+        }
+        final String key = file.getAbsolutePath();
+        String hash = (String) hashes.get(key);
+        if (hash == null) {
+            try {
+                hash = computeHash(file);
+            } catch (final IOException ex) {
+                return null;
+            }
+            //
+            //   discard the hash if the file changed while being read
+            //
+            if (!identity.hasSameAttributes(readIdentity(file))) {
+                return null;
+            }
+            hashes.put(key, hash);
+        }
+        return identity.withHash(hash);
+    }
+    /**
+     * Determines if a file's content is unchanged since an identity was
+     * recorded. The content is only hashed if the modification time, size
+     * or file key differ.
+     *
+     * @param file
+     *            file
+     * @param recorded
+     *            recorded identity
+     * @return recorded if the attributes are unchanged, the current identity
+     *         if only the attributes changed, or null if the content changed
+     *         or can not be compared
+     */
+    public FileIdentity getUnchangedIdentity(final File file,
+            final FileIdentity recorded) {
+        final FileIdentity current = getIdentity(file);
+        if (recorded.hasSameAttributes(current)) {
+            return recorded;
+        }
+        if (current == null || current.getSize() != recorded.getSize()
+                || recorded.getHash() == null) {
+            return null;
+        }
+        final FileIdentity content = getContentIdentity(file);
+        if (recorded.hasSameContent(content)) {
+            return content;
+        }
+        return null;
+    }
+    /**
+     * Computes the hash of a file's content.
+     *
+     * @param file
+     *            file
+     * @return hexadecimal hash
+     * @throws IOException
+     *             if the file can not be read
+     */
+    public static String computeHash(final File file) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new IOException(ex.toString());
+        }
+        final FileChannel channel;
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        } catch (final InvalidPathException ex) {
+            throw new IOException(ex.toString());
+        }
+        try {
+            final ByteBuffer buf = ByteBuffer.allocate(65536);
+            while (channel.read(buf) >= 0) {
+                buf.flip();
+                digest.update(buf);
+                buf.clear();
+            }
+        } finally {
+            channel.close();
+        }
+        final byte[] bytes = digest.digest();
+        final StringBuffer hex = new StringBuffer(bytes.length * 2);
+        for (int i = 0; i < bytes.length; i++) {
+            hex.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(bytes[i] & 0xF, 16));
+        }
+        return hex.toString();
+    }
+    /**
+     * Determines if a file exists.
+     *
+     * @param file
+     *            file
+     * @return true if the file exists
+     */
+    public boolean exists(final File file) {
+        return lastModified(file) != 0;
+    }
+    /**
+     * Determines if a file exists relative to a directory, as
+     * new File(dir, name).exists(), using the index of directory entries.
+     *
+     * Each directory along the name, such as "boost" of "boost/config.hpp",
+     * is listed when first needed. Names that are absolute or contain "."
+     * or ".." are checked directly.
+     *
+     * @param dir
+     *            directory
+     * @param name
+     *            relative name of the file
+     * @return true if the file exists
+     */
+    public boolean exists(final File dir, final String name) {
+        final int length = name.length();
+        if (length == 0 || new File(name).isAbsolute()) {
+            return exists(new File(dir, name));
+        }
+        File parent = dir;
+        int start = 0;
+        for (;;) {
+            int end = start;
+            while (end < length && name.charAt(end) != '/'
+                    && name.charAt(end) != File.separatorChar) {
+                end++;
+            }
+            final String entry = name.substring(start, end);
+            if (entry.length() == 0 || entry.equals(".")
+                    || entry.equals("..")) {
+                return exists(new File(dir, name));
+            }
+            final Listing listing = getListing(parent);
+            if (!listing.names.containsKey(entry)) {
+                //
+                //   a name differing only in case exists if the volume
+                //      ignores case
+                //
+                if (listing.folded.containsKey(fold(entry))) {
+                    return exists(new File(dir, name));
+                }
+                return false;
+            }
+            if (end == length) {
+                return true;
+            }
+            parent = new File(parent, entry);
+            start = end + 1;
+        }
+    }
+    private Listing getListing(final File dir) {
+        final String key = dir.getAbsolutePath();
+        Listing listing = (Listing) listings.get(key);
+        if (listing == null) {
+            final String[] names = dir.list();
+            if (names == null || names.length == 0) {
+                listing = NO_ENTRIES;
+            } else {
+                listing = new Listing(names);
+            }
+            listings.put(key, listing);
+        }
+        return listing;
+    }
+    private static String fold(final String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+    /**
+     * Gets the canonical path of a file, as File.getCanonicalPath().
+     *
+     * @param file
+     *            file
+     * @return canonical path
+     * @throws IOException
+     *             if the path can not be canonicalized
+     */
+    public String getCanonicalPath(final File file) throws IOException {
+        final String key = file.getAbsolutePath();
+        String canonical = (String) canonicalPaths.get(key);
+        if (canonical == null) {
+            canonical = file.getCanonicalPath();
+            canonicalPaths.put(key, canonical);
+        }
+        return canonical;
+    }
+    /**
+     * Gets the path of a file relative to a base directory, as
+     * CUtil.getRelativePath().
+     *
+     * @param base
+     *            base directory as returned by File.getCanonicalPath()
+     * @param targetFile
+     *            target file
+     * @return relative path of target file
+     */
+    public String getRelativePath(final String base, final File targetFile) {
+        if (OS400) {
+            return CUtil.getRelativePath(base, targetFile);
+        }
+        final String canonicalTarget;
+        try {
+            canonicalTarget = getCanonicalPath(targetFile);
+        } catch (final IOException ex) {
+            return targetFile.toString();
+        }
+        final String key = base + '\u0000' + canonicalTarget;
+        String relative = (String) relativePaths.get(key);
+        if (relative == null) {
+            relative = CUtil.toRelativePath(base, canonicalTarget);
+            relativePaths.put(key, relative);
+        }
+        return relative;
+    }
+    /**
+     * Discards the state of a file and the listing of its directory, which
+     * should be called after the file is written.
+     *
+     * @param file
+     *            file
+     */
+    public void invalidate(final File file) {
+        final String key = file.getAbsolutePath();
+        lastModified.remove(key);
+        identities.remove(key);
+        hashes.remove(key);
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            listings.remove(parent.getAbsolutePath());
+        }
+        if (watcher != null) {
+            watcher.invalidate(file);
+        }
+    }
+}
@@ -18,6 +18,13 @@ package net.sf.antcontrib.cpptasks;
 import java.io.File;
 import java.lang.reflect.Method;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import net.sf.antcontrib.cpptasks.compiler.LinkType;
 import net.sf.antcontrib.cpptasks.compiler.Processor;
 import net.sf.antcontrib.cpptasks.compiler.ProcessorConfiguration;
@@ -642,14 +649,88 @@ public abstract class ProcessorDef extends DataType {
      *            object whose visit method is called for every file
      */
     public void visitFiles(FileVisitor visitor) {
-    	Project p = getProject();
+        visitFiles(visitor, 1);
+    }
+    /**
+     * This method calls the FileVistor's visit function for every file in the
+     * processors definition.
+     * 
+     * With more than one job, the file sets are scanned concurrently. Files
+     * are still visited on the calling thread in the order of the file sets.
+     * 
+     * @param visitor
+     *            object whose visit method is called for every file
+     * @param jobs
+     *            maximum number of file sets scanned at once
+     */
+    public void visitFiles(FileVisitor visitor, int jobs) {
+    	final Project p = getProject();
         if (p == null) {
             throw new java.lang.IllegalStateException(
                     "project must be set before this call");
         }
+        Vector activeSrcSets = new Vector();
+        addActiveSrcSets(activeSrcSets);
+        DirectoryScanner[] scanners = new DirectoryScanner[activeSrcSets.size()];
+        if (jobs <= 1 || scanners.length <= 1) {
+            for (int i = 0; i < scanners.length; i++) {
+                scanners[i] = ((ConditionalFileSet) activeSrcSets.elementAt(i))
+                        .getDirectoryScanner(p);
+            }
+        } else {
+            int threads = Math.min(jobs, scanners.length);
+            ExecutorService pool = new ThreadPoolExecutor(threads, threads, 0L,
+                    TimeUnit.MILLISECONDS, new LinkedBlockingQueue(),
+                    new DaemonThreadFactory("cpptasks-scan"));
+            try {
+                Future[] futures = new Future[scanners.length];
+                for (int i = 0; i < scanners.length; i++) {
+                    final ConditionalFileSet srcSet = (ConditionalFileSet) activeSrcSets
+                            .elementAt(i);
+                    futures[i] = pool.submit(new Callable() {
+                        @Override
+                        public Object call() {
+                            return srcSet.getDirectoryScanner(p);
+                        }
+                    });
+                }
+                for (int i = 0; i < scanners.length; i++) {
+                    try {
+                        scanners[i] = (DirectoryScanner) futures[i].get();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new BuildException("Interrupted while scanning files");
+                    } catch (ExecutionException ex) {
+                        Throwable cause = ex.getCause();
+                        if (cause instanceof RuntimeException) {
+                            throw (RuntimeException) cause;
+                        }
+                        throw new BuildException(cause);
+                    }
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        for (int i = 0; i < scanners.length; i++) {
+            // Check each source file - see if it needs compilation
+            DirectoryScanner scanner = scanners[i];
+            String[] fileNames = scanner.getIncludedFiles();
+            File parentDir = scanner.getBasedir();
+            for (int j = 0; j < fileNames.length; j++) {
+                String currentFile = fileNames[j];
+                visitor.visit(parentDir, currentFile);
+            }
+        }
+    }
+    /**
+     * Collects the active file sets of this definition in the order they
+     * are visited, those of any referenced or extended definition first.
+     */
+    private void addActiveSrcSets(Vector activeSrcSets) {
         if (isReference()) {
             ((ProcessorDef) getCheckedRef(ProcessorDef.class, "ProcessorDef"))
-                    .visitFiles(visitor);
+                    .addActiveSrcSets(activeSrcSets);
         }
         //
         //   if this processor extends another,
@@ -657,22 +738,14 @@ public abstract class ProcessorDef extends DataType {
         //
         ProcessorDef extendsDef = getExtends();
         if (extendsDef != null) {
-            extendsDef.visitFiles(visitor);
+            extendsDef.addActiveSrcSets(activeSrcSets);
         }
         
         for (int i = 0; i < srcSets.size(); i++) {
             ConditionalFileSet srcSet = (ConditionalFileSet) srcSets
                     .elementAt(i);
             if (srcSet.isActive()) {
-                // Find matching source files
-                DirectoryScanner scanner = srcSet.getDirectoryScanner(p);
-                // Check each source file - see if it needs compilation
-                String[] fileNames = scanner.getIncludedFiles();
-                File parentDir = scanner.getBasedir();
-                for (int j = 0; j < fileNames.length; j++) {
-                    String currentFile = fileNames[j];
-                    visitor.visit(parentDir, currentFile);
-                }
+                activeSrcSets.addElement(srcSet);
             }
         }
     }
@@ -25,15 +25,27 @@ import java.io.IOException;
 public final class SourceHistory {
     private/* final */long lastModified;
     private/* final */String relativePath;
+    private/* final */FileIdentity identity;
     /**
      * Constructor
      */
     public SourceHistory(String relativePath, long lastModified) {
+        this(relativePath, lastModified, null);
+    }
+    /**
+     * Constructor
+     *
+     * @param identity
+     *            identity of the source content, may be null
+     */
+    public SourceHistory(String relativePath, long lastModified,
+            FileIdentity identity) {
         if (relativePath == null) {
             throw new NullPointerException("relativePath");
         }
         this.relativePath = relativePath;
         this.lastModified = lastModified;
+        this.identity = identity;
     }
     public String getAbsolutePath(File baseDir) {
         try {
@@ -42,6 +54,14 @@ public final class SourceHistory {
         }
         return relativePath;
     }
+    /**
+     * Gets the identity of the source content when the target was built.
+     *
+     * @return identity, null if not recorded
+     */
+    public FileIdentity getIdentity() {
+        return identity;
+    }
     public long getLastModified() {
         return lastModified;
     }
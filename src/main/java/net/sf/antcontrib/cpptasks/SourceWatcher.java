@@ -0,0 +1,366 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Vector;
+/**
+ * Watches the directories of source, header and object files for changes
+ * so their modification times need not be read again until they change.
+ *
+ * A directory is registered with a WatchService the first time the
+ * modification time of a file within it is requested, before the file is
+ * examined. Later requests are answered from memory until an event is
+ * received for the file. Paths reported by events since the last call to
+ * drainChanges() form the dirty set used to trigger continuous builds.
+ *
+ * Events are delivered asynchronously, so sync() should be called before
+ * relying on the remembered times. It creates a marker file and waits for
+ * its event, after which all earlier events have been processed on
+ * platforms that report all events through one queue, such as Linux. On
+ * platforms where the WatchService polls the file system, remembered times
+ * are never used.
+ */
+public final class SourceWatcher {
+    /** Prefix of the marker files created by sync(). */
+    private static final String COOKIE_PREFIX = ".cpptasks-sync";
+    private final WatchService service;
+    /** True if remembered modification times may be used. */
+    private final boolean trusted;
+    /** Watched directory keyed by WatchKey. */
+    private final Hashtable directories = new Hashtable();
+    /** WatchKey keyed by watched directory. */
+    private final Hashtable keys = new Hashtable();
+    /** Remembered modification times keyed by absolute path. */
+    private final Hashtable lastModified = new Hashtable();
+    /** Paths changed since the last call to drainChanges(). */
+    private final Hashtable changes = new Hashtable();
+    /** Incremented for each event to detect changes during a stat. */
+    private long generation;
+    private String pendingCookie;
+    private boolean cookieSeen;
+    private boolean closed;
+
+    /**
+     * Creates a watcher using the default file system.
+     *
+     * @throws IOException if the file system does not support watching
+     */
+    public SourceWatcher() throws IOException {
+        service = FileSystems.getDefault().newWatchService();
+        trusted = !service.getClass().getName().endsWith(
+                "PollingWatchService");
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                processEvents();
+            }
+        }, "cpptasks-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    private static Path toPath(final File file) {
+        return file.toPath().toAbsolutePath().normalize();
+    }
+    /**
+     * Watches a directory for changes.
+     *
+     * @param dir directory
+     * @return true if the directory is being watched
+     */
+    public boolean watch(final File dir) {
+        return register(toPath(dir));
+    }
+    private boolean register(final Path dir) {
+        if (dir == null) {
+            return false;
+        }
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            if (keys.containsKey(dir)) {
+                return true;
+            }
+        }
+        try {
+            final WatchKey key = dir.register(service, new WatchEvent.Kind[]{
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY});
+            synchronized (this) {
+                keys.put(dir, key);
+                directories.put(key, dir);
+            }
+            return true;
+        } catch (final IOException ex) {
+            return false;
+        } catch (final ClosedWatchServiceException ex) {
+            return false;
+        }
+    }
+    /**
+     * Gets the modification time of a file, as File.lastModified().
+     *
+     * @param file file
+     * @return modification time, 0 if the file does not exist
+     */
+    public long lastModified(final File file) {
+        final Path path = toPath(file);
+        final String name = path.toString();
+        long startGeneration;
+        synchronized (this) {
+            if (trusted) {
+                final Long value = (Long) lastModified.get(name);
+                if (value != null) {
+                    return value.longValue();
+                }
+            }
+            startGeneration = generation;
+        }
+        final boolean watched = register(path.getParent());
+        final long value = file.lastModified();
+        if (watched && trusted) {
+            synchronized (this) {
+                //
+                //   only remember the value if no event arrived
+                //      while reading it
+                //
+                if (generation == startGeneration && !closed) {
+                    lastModified.put(name, Long.valueOf(value));
+                }
+            }
+        }
+        return value;
+    }
+    /**
+     * Forgets the modification time of a file, for example after it was
+     * written by the build.
+     *
+     * @param file file
+     */
+    public synchronized void invalidate(final File file) {
+        lastModified.remove(toPath(file).toString());
+    }
+    /**
+     * Waits until all events for changes made before the call have been
+     * processed. If that can not be confirmed, all remembered times are
+     * discarded.
+     *
+     * @param dir writable directory used for the marker file
+     */
+    public void sync(final File dir) {
+        if (!trusted || !watch(dir)) {
+            return;
+        }
+        //
+        //   name the marker before creating it so its event
+        //      can not be missed
+        //
+        final File cookie = new File(dir, COOKIE_PREFIX
+                + Long.toHexString(System.nanoTime()));
+        synchronized (this) {
+            pendingCookie = toPath(cookie).toString();
+            cookieSeen = false;
+        }
+        try {
+            if (!cookie.createNewFile()) {
+                throw new IOException("Unable to create " + cookie.toString());
+            }
+        } catch (final IOException ex) {
+            synchronized (this) {
+                pendingCookie = null;
+                lastModified.clear();
+            }
+            return;
+        }
+        try {
+            synchronized (this) {
+                final long deadline = System.currentTimeMillis() + 2000;
+                long remaining = 2000;
+                while (!cookieSeen && !closed && remaining > 0) {
+                    try {
+                        wait(remaining);
+                    } catch (final InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    remaining = deadline - System.currentTimeMillis();
+                }
+                if (!cookieSeen) {
+                    lastModified.clear();
+                }
+                pendingCookie = null;
+            }
+        } finally {
+            cookie.delete();
+        }
+    }
+    /**
+     * Returns and clears the paths changed since the last call.
+     *
+     * @return absolute paths of changed files and directories
+     */
+    public synchronized String[] drainChanges() {
+        final String[] retval = new String[changes.size()];
+        final Enumeration changeEnum = changes.keys();
+        for (int i = 0; i < retval.length; i++) {
+            retval[i] = (String) changeEnum.nextElement();
+        }
+        changes.clear();
+        return retval;
+    }
+    /**
+     * Waits for a change outside of the ignored directories, then for
+     * changes to stop arriving for a short time so that a save of several
+     * files triggers a single build.
+     *
+     * @param ignored directories whose changes, typically made by the build
+     *            itself, are discarded
+     * @param settle milliseconds without further changes before returning
+     * @return changed paths, or an empty array if closed or interrupted
+     */
+    public synchronized String[] waitForChanges(final File[] ignored,
+            final long settle) {
+        final String[] prefixes = new String[ignored.length];
+        for (int i = 0; i < ignored.length; i++) {
+            prefixes[i] = toPath(ignored[i]).toString() + File.separator;
+        }
+        try {
+            while (!closed) {
+                final Vector discarded = new Vector();
+                final Enumeration changeEnum = changes.keys();
+                while (changeEnum.hasMoreElements()) {
+                    final String changed = (String) changeEnum.nextElement();
+                    for (int i = 0; i < prefixes.length; i++) {
+                        if (changed.startsWith(prefixes[i])) {
+                            discarded.addElement(changed);
+                            break;
+                        }
+                    }
+                }
+                for (int i = 0; i < discarded.size(); i++) {
+                    changes.remove(discarded.elementAt(i));
+                }
+                if (changes.isEmpty()) {
+                    wait();
+                } else {
+                    long lastGeneration;
+                    do {
+                        lastGeneration = generation;
+                        wait(settle);
+                    } while (generation != lastGeneration && !closed);
+                    return drainChanges();
+                }
+            }
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return new String[0];
+    }
+    /**
+     * Stops watching and releases the WatchService.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            lastModified.clear();
+            notifyAll();
+        }
+        try {
+            service.close();
+        } catch (final IOException ex) {
+        }
+    }
+    private void processEvents() {
+        while (true) {
+            final WatchKey key;
+            try {
+                key = service.take();
+            } catch (final InterruptedException ex) {
+                return;
+            } catch (final ClosedWatchServiceException ex) {
+                return;
+            }
+            final Vector created = new Vector();
+            synchronized (this) {
+                generation++;
+                final Path dir = (Path) directories.get(key);
+                final List events = key.pollEvents();
+                for (int i = 0; i < events.size(); i++) {
+                    final WatchEvent event = (WatchEvent) events.get(i);
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                            || dir == null) {
+                        lastModified.clear();
+                        continue;
+                    }
+                    final Path path = dir.resolve((Path) event.context());
+                    final String name = path.toString();
+                    if (name.equals(pendingCookie)) {
+                        cookieSeen = true;
+                        continue;
+                    }
+                    if (path.getFileName().toString().startsWith(COOKIE_PREFIX)) {
+                        continue;
+                    }
+                    lastModified.remove(name);
+                    changes.put(name, name);
+                    if (event.kind() != StandardWatchEventKinds.ENTRY_MODIFY
+                            && keys.containsKey(path)) {
+                        //
+                        //   a watched directory was replaced or removed,
+                        //      times of files within it are not reliable
+                        //
+                        lastModified.clear();
+                    } else if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                        created.addElement(path);
+                    }
+                }
+                if (!key.reset()) {
+                    directories.remove(key);
+                    if (dir != null) {
+                        keys.remove(dir);
+                    }
+                    lastModified.clear();
+                }
+                notifyAll();
+            }
+            //
+            //   watch new subdirectories so files added
+            //      to them trigger continuous builds
+            //
+            for (int i = 0; i < created.size(); i++) {
+                final Path path = (Path) created.elementAt(i);
+                if (Files.isDirectory(path, new LinkOption[]{LinkOption.NOFOLLOW_LINKS})) {
+                    register(path);
+                }
+            }
+        }
+    }
+}
@@ -23,11 +23,22 @@ public final class TargetHistory {
     private/* final */String output;
     private/* final */long outputLastModified;
     private/* final */SourceHistory[] sources;
+    private/* final */long duration;
     /**
      * Constructor from build step
      */
     public TargetHistory(String config, String output, long outputLastModified,
             SourceHistory[] sources) {
+        this(config, output, outputLastModified, sources, -1);
+    }
+    /**
+     * Constructor from build step
+     *
+     * @param duration
+     *            time in milliseconds taken to build the output, -1 if unknown
+     */
+    public TargetHistory(String config, String output, long outputLastModified,
+            SourceHistory[] sources, long duration) {
         if (config == null) {
             throw new NullPointerException("config");
         }
@@ -41,6 +52,15 @@ public final class TargetHistory {
         this.output = output;
         this.outputLastModified = outputLastModified;
         this.sources = (SourceHistory[]) sources.clone();
+        this.duration = duration;
+    }
+    /**
+     * Gets the time taken to build the output.
+     *
+     * @return duration in milliseconds, -1 if unknown
+     */
+    public long getDuration() {
+        return duration;
     }
     public String getOutput() {
         return output;
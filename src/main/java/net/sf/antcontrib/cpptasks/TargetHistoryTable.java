@@ -16,11 +16,18 @@
  */
 package net.sf.antcontrib.cpptasks;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
+import java.io.SequenceInputStream;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Vector;
@@ -31,13 +38,19 @@ import javax.xml.parsers.SAXParserFactory;
 import net.sf.antcontrib.cpptasks.compiler.ProcessorConfiguration;
 
 import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
 import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 /**
  * A history of the compiler and linker settings used to build the files in the
  * same directory as the history.
  *
+ * Records are appended to history.journal as they are updated and the whole
+ * history is only written to history.xml by commit(), so an interrupted
+ * build keeps the records of the files it produced.
+ *
  * @author Curt Arnold
  */
 public final class TargetHistoryTable {
@@ -46,60 +59,39 @@ public final class TargetHistoryTable {
      * SAX parse events
      */
     private class TargetHistoryTableHandler extends DefaultHandler {
-        private final File baseDir;
         private String config;
         private final Hashtable history;
         private String output;
         private long outputLastModified;
+        private long duration;
         private final Vector sources = new Vector();
         /**
          * Constructor
          *
          * @param history
          *            hashtable of TargetHistory keyed by output name
-         * @param outputFiles
-         *            existing files in output directory
          */
-        private TargetHistoryTableHandler(Hashtable history, File baseDir) {
+        private TargetHistoryTableHandler(Hashtable history) {
             this.history = history;
             config = null;
             output = null;
-            this.baseDir = baseDir;
         }
         public void endElement(String namespaceURI, String localName,
                 String qName) throws SAXException {
             //
             //   if </target> then
-            //       create TargetHistory object and add to hashtable
-            //           if corresponding output file exists and
-            //           has the same timestamp
+            //       create TargetHistory object and add to hashtable,
+            //           the output file is checked when first requested
             //
             if (qName.equals("target")) {
                 if (config != null && output != null) {
-                    File existingFile = new File(baseDir, output);
-                    //
-                    //   if the corresponding files doesn't exist or has a
-                    // different
-                    //      modification time, then discard this record
-                    if (existingFile.exists()) {
-                        //
-                        //   would have expected exact time stamps
-                        //      but have observed slight differences
-                        //      in return value for multiple evaluations of
-                        //      lastModified(). Check if times are within
-                        //      a second
-                        long existingLastModified = existingFile.lastModified();
-                        if (!CUtil.isSignificantlyBefore(existingLastModified, outputLastModified)
-                        		&& !CUtil.isSignificantlyAfter(existingLastModified, outputLastModified)) {
-                            SourceHistory[] sourcesArray = new SourceHistory[sources
-                                    .size()];
-                            sources.copyInto(sourcesArray);
-                            TargetHistory targetHistory = new TargetHistory(
-                                    config, output, outputLastModified,
-                                    sourcesArray);
-                            history.put(output, targetHistory);
-                        }
-                    }
+                    SourceHistory[] sourcesArray = new SourceHistory[sources
+                            .size()];
+                    sources.copyInto(sourcesArray);
+                    TargetHistory targetHistory = new TargetHistory(config,
+                            output, outputLastModified, sourcesArray,
+                            duration);
+                    history.put(output, targetHistory);
                 }
                 output = null;
                 sources.setSize(0);
@@ -126,7 +118,7 @@ public final class TargetHistoryTable {
                 long sourceLastModified = Long.parseLong(atts
                         .getValue("lastModified"), 16);
                 sources.addElement(new SourceHistory(sourceFile,
-                        sourceLastModified));
+                        sourceLastModified, FileIdentity.parse(atts)));
             } else {
                 //
                 //   if <target> element,
@@ -138,6 +130,15 @@ public final class TargetHistoryTable {
                     output = atts.getValue("file");
                     outputLastModified = Long.parseLong(atts
                             .getValue("lastModified"), 16);
+                    //
+                    //   duration is absent from histories
+                    //      written by earlier versions
+                    //
+                    String durationAttr = atts.getValue("duration");
+                    duration = -1;
+                    if (durationAttr != null) {
+                        duration = Long.parseLong(durationAttr, 16);
+                    }
                 } else {
                     //
                     //   if <processor> element,
@@ -156,10 +157,31 @@ public final class TargetHistoryTable {
      * a hashtable of TargetHistory's keyed by output file name
      */
     private final Hashtable history = new Hashtable();
+    /**
+     * TargetHistory's keyed by output file name that were loaded but not
+     * yet checked against their output file.
+     */
+    private final Hashtable loaded = new Hashtable();
     /** The file the cache was loaded from. */
     private/* final */File historyFile;
+    /** Last modification time of historyFile when last read or written. */
+    private long historyLastModified;
+    /** Length of historyFile when last read or written. */
+    private long historyLength;
+    /** Journal of records not yet written to historyFile. */
+    private/* final */File journalFile;
+    /** Length of journalFile when last read or written. */
+    private long journalLength;
+    /** Set when writing the journal failed, stops journaling. */
+    private boolean journalFailed;
+    /** Task used for logging, may be null. */
+    private CCTask task;
     private/* final */File outputDir;
     private String outputDirPath;
+    /** File states of the current build. */
+    private FileStateCache fileState;
+    /** If true, sources are compared by content identity. */
+    private boolean contentHash;
     /**
      * Creates a target history table from history.xml in the output directory,
      * if it exists. Otherwise, initializes the history table empty.
@@ -171,6 +193,26 @@ public final class TargetHistoryTable {
      */
     public TargetHistoryTable(CCTask task, File outputDir)
             throws BuildException {
+        this(task, outputDir, new FileStateCache());
+    }
+    /**
+     * Creates a target history table from history.xml in the output directory,
+     * if it exists. Otherwise, initializes the history table empty.
+     *
+     * @param task
+     *            task used for logging history load errors
+     * @param outputDir
+     *            output directory for task
+     * @param fileState
+     *            file states of the current build
+     */
+    public TargetHistoryTable(CCTask task, File outputDir,
+            FileStateCache fileState) throws BuildException {
+        if (fileState == null) {
+            throw new NullPointerException("fileState");
+        }
+        this.fileState = fileState;
+        this.task = task;
         if (outputDir == null) {
             throw new NullPointerException("outputDir");
         }
@@ -187,10 +229,9 @@ public final class TargetHistoryTable {
             outputDirPath = outputDir.toString();
         }
         //
-        //   load any existing history from file
-        //       suppressing any records whose corresponding
-        //       file does not exist, is zero-length or
-        //          last modified dates differ
+        //   load any existing history from file, records whose
+        //       corresponding file does not exist or whose last
+        //       modified dates differ are suppressed when requested
         historyFile = new File(outputDir, "history.xml");
         if (historyFile.exists()) {
             SAXParserFactory factory = SAXParserFactory.newInstance();
@@ -198,7 +239,7 @@ public final class TargetHistoryTable {
             try {
                 SAXParser parser = factory.newSAXParser();
                 parser.parse(historyFile, new TargetHistoryTableHandler(
-                        history, outputDir));
+                        loaded));
             } catch (Exception ex) {
                 //
                 //   a failure on loading this history is not critical
@@ -224,91 +265,315 @@ public final class TargetHistoryTable {
                 throw new BuildException("Can't create history file", ex);
             }
         }
+        journalFile = new File(outputDir, "history.journal");
+        if (journalFile.exists()) {
+            replayJournal(task);
+        }
+        journalLength = journalFile.length();
+        historyLastModified = historyFile.lastModified();
+        historyLength = historyFile.length();
     }
-    public void commit() throws IOException {
+    /**
+     * Writes the history to history.xml if changed, which then contains any
+     * records of the journal, and deletes the journal.
+     *
+     * @throws IOException
+     *             if history.xml could not be written
+     */
+    public synchronized void commit() throws IOException {
         //
         //   if not dirty, no need to update file
         //
         if (dirty) {
             //
-            //   build (small) hashtable of config id's in history
+            //   group the records by config id in a single pass,
+            //      records that were not requested are carried forward
             //
             Hashtable configs = new Hashtable(20);
-            Enumeration elements = history.elements();
-            while (elements.hasMoreElements()) {
-                TargetHistory targetHistory = (TargetHistory) elements
-                        .nextElement();
-                String configId = targetHistory.getProcessorConfiguration();
-                if (configs.get(configId) == null) {
-                    configs.put(configId, configId);
+            Hashtable[] tables = new Hashtable[]{history, loaded};
+            for (int i = 0; i < tables.length; i++) {
+                Enumeration elements = tables[i].elements();
+                while (elements.hasMoreElements()) {
+                    TargetHistory targetHistory = (TargetHistory) elements
+                            .nextElement();
+                    String configId = targetHistory
+                            .getProcessorConfiguration();
+                    Vector targets = (Vector) configs.get(configId);
+                    if (targets == null) {
+                        targets = new Vector();
+                        configs.put(configId, targets);
+                    }
+                    targets.addElement(targetHistory);
                 }
             }
-            FileOutputStream outStream = new FileOutputStream(historyFile);
-            OutputStreamWriter outWriter;
             //
-            //   early VM's don't support UTF-8 encoding
-            //       try and fallback to the default encoding
-            //           otherwise
-            String encodingName = "UTF-8";
+            //   write to a temporary file so that an interrupted
+            //      commit leaves the previous history and journal intact
+            //
+            File tempFile = File.createTempFile("history", ".tmp",
+                    outputDir);
             try {
-                outWriter = new OutputStreamWriter(outStream, "UTF-8");
-            } catch (UnsupportedEncodingException ex) {
-                outWriter = new OutputStreamWriter(outStream);
-                encodingName = outWriter.getEncoding();
-            }
-            BufferedWriter writer = new BufferedWriter(outWriter);
-            writer.write("<?xml version='1.0' encoding='");
-            writer.write(encodingName);
-            writer.write("'?>\n");
-            writer.write("<history>\n");
-            StringBuffer buf = new StringBuffer(200);
-            Enumeration configEnum = configs.elements();
-            while (configEnum.hasMoreElements()) {
-                String configId = (String) configEnum.nextElement();
-                buf.setLength(0);
-                buf.append("   <processor signature=\"");
-                buf.append(CUtil.xmlAttribEncode(configId));
-                buf.append("\">\n");
-                writer.write(buf.toString());
-                elements = history.elements();
-                while (elements.hasMoreElements()) {
-                    TargetHistory targetHistory = (TargetHistory) elements
-                            .nextElement();
-                    if (targetHistory.getProcessorConfiguration().equals(
-                            configId)) {
-                        buf.setLength(0);
-                        buf.append("      <target file=\"");
-                        buf.append(CUtil.xmlAttribEncode(targetHistory
-                                .getOutput()));
-                        buf.append("\" lastModified=\"");
-                        buf.append(Long.toHexString(targetHistory
-                                .getOutputLastModified()));
-                        buf.append("\">\n");
-                        writer.write(buf.toString());
-                        SourceHistory[] sourceHistories = targetHistory
-                                .getSources();
-                        for (int i = 0; i < sourceHistories.length; i++) {
-                            buf.setLength(0);
-                            buf.append("         <source file=\"");
-                            buf.append(CUtil.xmlAttribEncode(sourceHistories[i]
-                                    .getRelativePath()));
-                            buf.append("\" lastModified=\"");
-                            buf.append(Long.toHexString(sourceHistories[i]
-                                    .getLastModified()));
-                            buf.append("\"/>\n");
+                FileOutputStream outStream = new FileOutputStream(tempFile);
+                OutputStreamWriter outWriter;
+                //
+                //   early VM's don't support UTF-8 encoding
+                //       try and fallback to the default encoding
+                //           otherwise
+                String encodingName = "UTF-8";
+                try {
+                    outWriter = new OutputStreamWriter(outStream, "UTF-8");
+                } catch (UnsupportedEncodingException ex) {
+                    outWriter = new OutputStreamWriter(outStream);
+                    encodingName = outWriter.getEncoding();
+                }
+                BufferedWriter writer = new BufferedWriter(outWriter);
+                writer.write("<?xml version='1.0' encoding='");
+                writer.write(encodingName);
+                writer.write("'?>\n");
+                writer.write("<history>\n");
+                StringBuffer buf = new StringBuffer(200);
+                Enumeration configEnum = configs.keys();
+                while (configEnum.hasMoreElements()) {
+                    String configId = (String) configEnum.nextElement();
+                    buf.setLength(0);
+                    buf.append("   <processor signature=\"");
+                    CUtil.xmlAttribEncode(buf, configId);
+                    buf.append("\">\n");
+                    Vector targets = (Vector) configs.get(configId);
+                    for (int i = 0; i < targets.size(); i++) {
+                        appendTarget(buf, (TargetHistory) targets.elementAt(i));
+                        //
+                        //   write in large pieces rather than per line
+                        //
+                        if (buf.length() > 8192) {
                             writer.write(buf.toString());
+                            buf.setLength(0);
                         }
-                        writer.write("      </target>\n");
                     }
+                    buf.append("   </processor>\n");
+                    writer.write(buf.toString());
                 }
-                writer.write("   </processor>\n");
+                writer.write("</history>\n");
+                writer.close();
+                Files.move(tempFile.toPath(), historyFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                tempFile.delete();
             }
-            writer.write("</history>\n");
-            writer.close();
+            journalFile.delete();
+            journalLength = 0;
+            historyLastModified = historyFile.lastModified();
+            historyLength = historyFile.length();
             dirty = false;
         }
     }
-    public TargetHistory get(String configId, String outputName) {
+    /**
+     * Appends the target element of a history record.
+     */
+    private static void appendTarget(StringBuffer buf,
+            TargetHistory targetHistory) {
+        buf.append("      <target file=\"");
+        CUtil.xmlAttribEncode(buf, targetHistory.getOutput());
+        buf.append("\" lastModified=\"");
+        buf.append(Long.toHexString(targetHistory.getOutputLastModified()));
+        if (targetHistory.getDuration() >= 0) {
+            buf.append("\" duration=\"");
+            buf.append(Long.toHexString(targetHistory.getDuration()));
+        }
+        buf.append("\">\n");
+        SourceHistory[] sourceHistories = targetHistory.getSources();
+        for (int i = 0; i < sourceHistories.length; i++) {
+            buf.append("         <source file=\"");
+            CUtil.xmlAttribEncode(buf, sourceHistories[i]
+                    .getRelativePath());
+            buf.append("\" lastModified=\"");
+            buf.append(Long.toHexString(sourceHistories[i].getLastModified()));
+            buf.append('\"');
+            FileIdentity identity = sourceHistories[i].getIdentity();
+            if (identity != null) {
+                identity.appendAttributes(buf);
+            }
+            buf.append("/>\n");
+        }
+        buf.append("      </target>\n");
+    }
+    /**
+     * Appends records to the journal, each as a processor element holding
+     * a single target, so that they survive an interrupted build without
+     * rewriting history.xml. If the journal can not be written, a warning
+     * is logged and journaling stops for the rest of the build.
+     *
+     * @param records
+     *            TargetHistory's to append
+     */
+    private void journal(Vector records) {
+        if (records.size() == 0 || journalFailed) {
+            return;
+        }
+        StringBuffer buf = new StringBuffer(200 * records.size());
+        for (int i = 0; i < records.size(); i++) {
+            TargetHistory targetHistory = (TargetHistory) records.elementAt(i);
+            buf.append("   <processor signature=\"");
+            CUtil.xmlAttribEncode(buf, targetHistory
+                    .getProcessorConfiguration());
+            buf.append("\">\n");
+            appendTarget(buf, targetHistory);
+            buf.append("   </processor>\n");
+        }
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(
+                    journalFile, true), "UTF-8");
+            try {
+                writer.write(buf.toString());
+            } finally {
+                writer.close();
+            }
+        } catch (IOException ex) {
+            //
+            //   not critical, the records are still
+            //      written to history.xml by commit
+            //
+            journalFailed = true;
+            if (task != null) {
+                task.log("Unable to write history.journal: " + ex.toString(),
+                        Project.MSG_WARN);
+            }
+        }
+        journalLength = journalFile.length();
+    }
+    /**
+     * Adds the records of a journal left by an earlier table, most likely
+     * by an interrupted build. The last record may be incomplete.
+     */
+    private void replayJournal(CCTask task) {
+        try {
+            InputStream in = new SequenceInputStream(new ByteArrayInputStream(
+                    "<history>".getBytes("UTF-8")), new SequenceInputStream(
+                    new FileInputStream(journalFile), new ByteArrayInputStream(
+                            "</history>".getBytes("UTF-8"))));
+            try {
+                InputSource source = new InputSource(in);
+                source.setEncoding("UTF-8");
+                SAXParserFactory factory = SAXParserFactory.newInstance();
+                factory.setValidating(false);
+                SAXParser parser = factory.newSAXParser();
+                parser.parse(source, new TargetHistoryTableHandler(loaded));
+            } finally {
+                in.close();
+            }
+        } catch (Exception ex) {
+            //
+            //   records before an incomplete one have been added
+            //
+            if (task != null) {
+                task.log("Ignoring end of history.journal: " + ex.toString(),
+                        Project.MSG_VERBOSE);
+            }
+        }
+        //
+        //   compact on the next commit
+        //
+        dirty = true;
+    }
+    /**
+     * Determines if history.xml is unchanged since it was last read or
+     * written by this table, so the table may be reused by a later build.
+     *
+     * @return true if the table reflects the history file
+     */
+    public synchronized boolean isCurrent() {
+        return historyFile.exists()
+                && historyFile.lastModified() == historyLastModified
+                && historyFile.length() == historyLength
+                && journalFile.length() == journalLength;
+    }
+    /**
+     * Prepares a table kept from an earlier build for reuse. Each record is
+     * checked against its output file again when first requested, as is
+     * done when loading the history file.
+     */
+    public synchronized void revalidate() {
+        Enumeration elements = history.elements();
+        while (elements.hasMoreElements()) {
+            TargetHistory targetHistory = (TargetHistory) elements
+                    .nextElement();
+            loaded.put(targetHistory.getOutput(), targetHistory);
+        }
+        history.clear();
+    }
+    /**
+     * Moves a loaded record to the history if its output file exists and
+     * is unchanged since recorded, otherwise discards it.
+     */
+    private void validate(String outputName) {
+        TargetHistory targetHistory = (TargetHistory) loaded
+                .remove(outputName);
+        if (targetHistory == null) {
+            return;
+        }
+        File existingFile = new File(outputDir, outputName);
+        //
+        //   would have expected exact time stamps
+        //      but have observed slight differences
+        //      in return value for multiple evaluations of
+        //      lastModified(). Check if times are within
+        //      a second
+        long existingLastModified = lastModified(existingFile);
+        if (existingLastModified != 0
+                && !CUtil.isSignificantlyBefore(existingLastModified,
+                        targetHistory.getOutputLastModified())
+                && !CUtil.isSignificantlyAfter(existingLastModified,
+                        targetHistory.getOutputLastModified())) {
+            history.put(outputName, targetHistory);
+        } else {
+            dirty = true;
+        }
+    }
+    /**
+     * Sets the file states used when checking whether targets are up to
+     * date, typically at the start of each build.
+     *
+     * @param fileState
+     *            file states of the current build
+     */
+    public synchronized void setFileStateCache(FileStateCache fileState) {
+        if (fileState == null) {
+            throw new NullPointerException("fileState");
+        }
+        this.fileState = fileState;
+    }
+    private synchronized FileStateCache getFileStateCache() {
+        return fileState;
+    }
+    /**
+     * Sets the task used for logging, typically at the start of each build.
+     * Resumes journaling if it was stopped by an error in an earlier build.
+     *
+     * @param task
+     *            task of the current build
+     */
+    public synchronized void setTask(CCTask task) {
+        this.task = task;
+        journalFailed = false;
+    }
+    /**
+     * Sets whether the identity of sources is recorded and compared, so
+     * that sources rewritten with the same content are not rebuilt.
+     *
+     * @param contentHash
+     *            true to compare sources by content
+     */
+    public synchronized void setContentHash(boolean contentHash) {
+        this.contentHash = contentHash;
+    }
+    public synchronized boolean getContentHash() {
+        return contentHash;
+    }
+    private long lastModified(File file) {
+        return getFileStateCache().lastModified(file);
+    }
+    public synchronized TargetHistory get(String configId, String outputName) {
+        validate(outputName);
         TargetHistory targetHistory = (TargetHistory) history.get(outputName);
         if (targetHistory != null) {
             if (!targetHistory.getProcessorConfiguration().equals(configId)) {
@@ -317,6 +582,22 @@ public final class TargetHistoryTable {
         }
         return targetHistory;
     }
+    /**
+     * Gets the time taken by the last recorded build of an output, even if
+     * built with a different configuration.
+     *
+     * @param outputName
+     *            output file name
+     * @return duration in milliseconds, -1 if unknown
+     */
+    public synchronized long getDuration(String outputName) {
+        validate(outputName);
+        TargetHistory targetHistory = (TargetHistory) history.get(outputName);
+        if (targetHistory != null) {
+            return targetHistory.getDuration();
+        }
+        return -1;
+    }
     public void markForRebuild(Hashtable targetInfos) {
         Enumeration targetInfoEnum = targetInfos.elements();
         while (targetInfoEnum.hasMoreElements()) {
@@ -338,10 +619,12 @@ public final class TargetHistoryTable {
                 if (sourceHistories.length != sources.length) {
                     targetInfo.mustRebuild();
                 } else {
+                    FileStateCache fileState = getFileStateCache();
+                    SourceHistory[] refreshed = null;
                     Hashtable sourceMap = new Hashtable(sources.length);
                     for (int i = 0; i < sources.length; i++) {
                       try {
-                        sourceMap.put(sources[i].getCanonicalPath(), sources[i]);
+                        sourceMap.put(fileState.getCanonicalPath(sources[i]), sources[i]);
                       } catch(IOException ex) {
                         sourceMap.put(sources[i].getAbsolutePath(), sources[i]);
                       }
@@ -355,76 +638,206 @@ public final class TargetHistoryTable {
                         File match = (File) sourceMap.get(absPath);
                         if (match != null) {
                           try {
-                            match = (File) sourceMap.get(new File(absPath).getCanonicalPath());
+                            match = (File) sourceMap.get(fileState.getCanonicalPath(new File(absPath)));
                           } catch(IOException ex) {
                             targetInfo.mustRebuild();
                             break;
                           }
                         }
-                        if (match == null || match.lastModified() != sourceHistories[i].getLastModified()) {
+                        SourceHistory current = null;
+                        if (match != null) {
+                            current = checkSource(fileState, match,
+                                    sourceHistories[i]);
+                        }
+                        if (current == null) {
                           targetInfo.mustRebuild();
                           break;
                         }
+                        if (current != sourceHistories[i]) {
+                            if (refreshed == null) {
+                                refreshed = (SourceHistory[]) sourceHistories
+                                        .clone();
+                            }
+                            refreshed[i] = current;
+                        }
+                    }
+                    if (refreshed != null && !targetInfo.getRebuild()) {
+                        refresh(history, refreshed);
                     }
                 }
             }
         }
     }
-    public void update(ProcessorConfiguration config, String[] sources, VersionInfo versionInfo) {
+    /**
+     * Determines if a source is unchanged since its history was recorded.
+     *
+     * @return the history, a replacement recording the current identity of
+     *         an unchanged source, or null if the source changed
+     */
+    private SourceHistory checkSource(FileStateCache fileState, File source,
+            SourceHistory recorded) {
+        long lastModified = fileState.lastModified(source);
+        FileIdentity identity = recorded.getIdentity();
+        if (!getContentHash()) {
+            if (lastModified != recorded.getLastModified()) {
+                return null;
+            }
+            return recorded;
+        }
+        if (identity == null) {
+            if (lastModified != recorded.getLastModified()) {
+                return null;
+            }
+            //
+            //   unchanged history from before content hashing was
+            //      enabled, record the identity for later builds
+            //
+            identity = fileState.getContentIdentity(source);
+            if (identity == null) {
+                return recorded;
+            }
+            return new SourceHistory(recorded.getRelativePath(),
+                    lastModified, identity);
+        }
+        FileIdentity current = fileState.getUnchangedIdentity(source,
+                identity);
+        if (current == null) {
+            return null;
+        }
+        if (current == identity) {
+            return recorded;
+        }
+        //
+        //   rewritten with the same content, remember the new
+        //      identity so it is not hashed again
+        //
+        return new SourceHistory(recorded.getRelativePath(), lastModified,
+                current);
+    }
+    private synchronized void refresh(TargetHistory targetHistory,
+            SourceHistory[] sources) {
+        String outputName = targetHistory.getOutput();
+        if (history.get(outputName) == targetHistory) {
+            history.put(outputName, new TargetHistory(targetHistory
+                    .getProcessorConfiguration(), outputName, targetHistory
+                    .getOutputLastModified(), sources, targetHistory
+                    .getDuration()));
+            dirty = true;
+        }
+    }
+    /**
+     * Adds or replaces a record without checking its output.
+     */
+    synchronized void put(TargetHistory targetHistory) {
+        loaded.remove(targetHistory.getOutput());
+        history.put(targetHistory.getOutput(), targetHistory);
+        dirty = true;
+    }
+    public synchronized void update(ProcessorConfiguration config, String[] sources, VersionInfo versionInfo) {
+        update(config, sources, versionInfo, -1);
+    }
+    /**
+     * Records the compilation of source files, appending the records to the
+     * journal.
+     *
+     * @param duration
+     *            time in milliseconds taken to compile each source file,
+     *            -1 if unknown, in which case any recorded duration is kept
+     */
+    public synchronized void update(ProcessorConfiguration config,
+            String[] sources, VersionInfo versionInfo, long duration) {
         String configId = config.getIdentifier();
         String[] onesource = new String[1];
         String[] outputNames;
+        Vector records = new Vector(sources.length);
         for (int i = 0; i < sources.length; i++) {
             onesource[0] = sources[i];
             outputNames = config.getOutputFileNames(sources[i], versionInfo);
             for (int j = 0; j < outputNames.length; j++) {
-            	update(configId, outputNames[j], onesource);
+                TargetHistory record = update(configId, outputNames[j],
+                        onesource, duration);
+                if (record != null) {
+                    records.addElement(record);
+                }
             }
         }
+        journal(records);
     }
-    private void update(String configId, String outputName, String[] sources) {
+    /**
+     * Records the compilation of an output.
+     *
+     * @return new record, null if the output was not written
+     */
+    private TargetHistory update(String configId, String outputName,
+            String[] sources, long duration) {
         File outputFile = new File(outputDir, outputName);
         //
+        //   output was just written, do not use any state read before
+        //
+        fileState.invalidate(outputFile);
+        long outputLastModified = fileState.lastModified(outputFile);
+        //
         //   if output file doesn't exist or predates the start of the
         //        compile step (most likely a compilation error) then
         //        do not write add a history entry
         //
-        if (outputFile.exists() &&
-        		!CUtil.isSignificantlyBefore(outputFile.lastModified(), historyFile.lastModified())) {
+        if (outputLastModified != 0 &&
+        		!CUtil.isSignificantlyBefore(outputLastModified, historyFile.lastModified())) {
             dirty = true;
-            history.remove(outputName);
+            TargetHistory previous = (TargetHistory) history
+                    .remove(outputName);
+            if (previous == null) {
+                previous = (TargetHistory) loaded.remove(outputName);
+            } else {
+                loaded.remove(outputName);
+            }
+            if (duration < 0 && previous != null) {
+                duration = previous.getDuration();
+            }
             SourceHistory[] sourceHistories = new SourceHistory[sources.length];
             for (int i = 0; i < sources.length; i++) {
                 File sourceFile = new File(sources[i]);
-                long lastModified = sourceFile.lastModified();
-                String relativePath = CUtil.getRelativePath(outputDirPath,
+                long lastModified = fileState.lastModified(sourceFile);
+                String relativePath = fileState.getRelativePath(outputDirPath,
                         sourceFile);
+                FileIdentity identity = null;
+                if (contentHash) {
+                    identity = fileState.getContentIdentity(sourceFile);
+                }
                 sourceHistories[i] = new SourceHistory(relativePath,
-                        lastModified);
+                        lastModified, identity);
             }
             TargetHistory newHistory = new TargetHistory(configId, outputName,
-                    outputFile.lastModified(), sourceHistories);
+                    outputLastModified, sourceHistories, duration);
             history.put(outputName, newHistory);
+            return newHistory;
         }
+        return null;
     }
-    public void update(TargetInfo linkTarget) {
+    public synchronized void update(TargetInfo linkTarget) {
         File outputFile = linkTarget.getOutput();
         String outputName = outputFile.getName();
+        fileState.invalidate(outputFile);
+        long outputLastModified = fileState.lastModified(outputFile);
         //
         //   if output file doesn't exist or predates the start of the
         //        compile or link step (most likely a compilation error) then
         //        do not write add a history entry
         //
-        if (outputFile.exists()
-                && !CUtil.isSignificantlyBefore(outputFile.lastModified(),historyFile.lastModified())) {
+        if (outputLastModified != 0
+                && !CUtil.isSignificantlyBefore(outputLastModified,historyFile.lastModified())) {
             dirty = true;
             history.remove(outputName);
+            loaded.remove(outputName);
             SourceHistory[] sourceHistories = linkTarget
                     .getSourceHistories(outputDirPath);
             TargetHistory newHistory = new TargetHistory(linkTarget
-                    .getConfiguration().getIdentifier(), outputName, outputFile
-                    .lastModified(), sourceHistories);
+                    .getConfiguration().getIdentifier(), outputName,
+                    outputLastModified, sourceHistories);
             history.put(outputName, newHistory);
+            Vector records = new Vector(1);
+            records.addElement(newHistory);
+            journal(records);
         }
     }
 }
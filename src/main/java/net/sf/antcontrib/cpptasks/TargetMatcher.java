@@ -18,6 +18,13 @@ package net.sf.antcontrib.cpptasks;
 import java.io.File;
 import java.util.Hashtable;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import net.sf.antcontrib.cpptasks.compiler.LinkerConfiguration;
 import net.sf.antcontrib.cpptasks.compiler.ProcessorConfiguration;
@@ -26,21 +33,64 @@ import org.apache.tools.ant.BuildException;
 /**
  * This class matches each visited file with an appropriate compiler
  *
+ * When created for more than one job, visited files are matched in batches
+ * on a pool of threads and finish() must be called after the last file has
+ * been visited. The targets are added in the order the files were visited
+ * so that output filename conflicts are reported as in a serial scan.
+ *
  * @author Curt Arnold
  */
 public final class TargetMatcher implements FileVisitor {
+    /** Number of files matched by one task. */
+    private static final int BATCH_SIZE = 256;
+    /**
+     * Outcome of the bidding for one file.
+     */
+    private static final class Match {
+        private final File fullPath;
+        private final String filename;
+        /** Winning compiler, null if no compiler bid. */
+        private ProcessorConfiguration compiler;
+        /** Targets in the order of outputFileNames. */
+        private TargetInfo[] targets;
+        private String[] outputFileNames;
+        private int linkerBid;
+        public Match(final File fullPath, final String filename) {
+            this.fullPath = fullPath;
+            this.filename = filename;
+        }
+    }
     private final LinkerConfiguration linker;
     private final Vector objectFiles;
     private final File outputDir;
     private final ProcessorConfiguration[] processors;
-    private final File sourceFiles[] = new File[1];
     private final Hashtable targets;
     private final VersionInfo versionInfo;
     private final CCTask task;
+    private final int jobs;
+    private ExecutorService pool;
+    /** Futures of submitted batches, in visit order. */
+    private final Vector batches = new Vector();
+    private Vector batchDirs = new Vector(BATCH_SIZE);
+    private Vector batchNames = new Vector(BATCH_SIZE);
     public TargetMatcher(final CCTask task, final File outputDir,
             final ProcessorConfiguration[] processors, final LinkerConfiguration linker,
             final Vector objectFiles, final Hashtable targets,
 			final VersionInfo versionInfo) {
+        this(task, outputDir, processors, linker, objectFiles, targets,
+                versionInfo, 1);
+    }
+    /**
+     * Constructor.
+     *
+     * @param jobs
+     *            number of threads matching files, finish() must be called
+     *            if greater than 1
+     */
+    public TargetMatcher(final CCTask task, final File outputDir,
+            final ProcessorConfiguration[] processors, final LinkerConfiguration linker,
+            final Vector objectFiles, final Hashtable targets,
+            final VersionInfo versionInfo, final int jobs) {
         this.task = task;
         this.outputDir = outputDir;
         this.processors = processors;
@@ -48,9 +98,85 @@ public final class TargetMatcher implements FileVisitor {
         this.linker = linker;
         this.objectFiles = objectFiles;
         this.versionInfo = versionInfo;
+        this.jobs = jobs;
     }
     public void visit(final File parentDir, final String filename) throws BuildException {
+        if (jobs <= 1) {
+            add(match(parentDir, filename));
+            return;
+        }
+        batchDirs.addElement(parentDir);
+        batchNames.addElement(filename);
+        if (batchNames.size() >= BATCH_SIZE) {
+            submitBatch();
+        }
+    }
+    /**
+     * Adds the targets of all visited files still being matched.
+     *
+     * @throws BuildException
+     *             if two files would produce the same output file
+     */
+    public void finish() throws BuildException {
+        if (batchNames.size() > 0) {
+            submitBatch();
+        }
+        try {
+            for (int i = 0; i < batches.size(); i++) {
+                final Match[] matches;
+                try {
+                    matches = (Match[]) ((Future) batches.elementAt(i)).get();
+                } catch (final InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new BuildException("Interrupted while matching files");
+                } catch (final ExecutionException ex) {
+                    final Throwable cause = ex.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new BuildException(cause);
+                }
+                for (int j = 0; j < matches.length; j++) {
+                    add(matches[j]);
+                }
+            }
+        } finally {
+            batches.setSize(0);
+            if (pool != null) {
+                pool.shutdownNow();
+                pool = null;
+            }
+        }
+    }
+    private void submitBatch() {
+        if (pool == null) {
+            pool = new ThreadPoolExecutor(jobs, jobs, 0L,
+                    TimeUnit.MILLISECONDS, new LinkedBlockingQueue(),
+                    new DaemonThreadFactory("cpptasks-match"));
+        }
+        final Vector dirs = batchDirs;
+        final Vector names = batchNames;
+        batches.addElement(pool.submit(new Callable() {
+            @Override
+            public Object call() {
+                final Match[] matches = new Match[names.size()];
+                for (int i = 0; i < matches.length; i++) {
+                    matches[i] = match((File) dirs.elementAt(i),
+                            (String) names.elementAt(i));
+                }
+                return matches;
+            }
+        }));
+        batchDirs = new Vector(BATCH_SIZE);
+        batchNames = new Vector(BATCH_SIZE);
+    }
+    /**
+     * Selects the processor for a file and creates its targets, without
+     * changing any shared state.
+     */
+    private Match match(final File parentDir, final String filename) {
         final File fullPath = new File(parentDir, filename);
+        final Match match = new Match(fullPath, filename);
         //
         //   see if any processor wants to bid
         //       on this one
@@ -65,19 +191,9 @@ public final class TargetMatcher implements FileVisitor {
                 }
             }
         }
-        //
-        //   no processor interested in file
-        //      log diagnostic message
         if (bid <= 0) {
             if (linker != null) {
-                final int linkerbid = linker.bid(filename);
-                if (linkerbid > 0) {
-                    objectFiles.addElement(fullPath);
-                    if (linkerbid == 1) {
-                        task.log("Unrecognized file type " + fullPath.toString()
-                                + " will be passed to linker");
-                    }
-                }
+                match.linkerBid = linker.bid(filename);
             }
         } else {
             //
@@ -85,7 +201,34 @@ public final class TargetMatcher implements FileVisitor {
             //
             final String[] outputFileNames = selectedCompiler
                     .getOutputFileNames(filename, versionInfo);
-            sourceFiles[0] = fullPath;
+            final File[] sourceFiles = new File[]{fullPath};
+            match.compiler = selectedCompiler;
+            match.outputFileNames = outputFileNames;
+            match.targets = new TargetInfo[outputFileNames.length];
+            for (int i = 0; i < outputFileNames.length; i++) {
+                match.targets[i] = new TargetInfo(
+                        selectedCompiler, sourceFiles, null, new File(
+                        outputDir, outputFileNames[i]), outputFileNames[i],
+                        selectedCompiler.getRebuild());
+            }
+        }
+        return match;
+    }
+    private void add(final Match match) throws BuildException {
+        final File fullPath = match.fullPath;
+        //
+        //   no processor interested in file
+        //      log diagnostic message
+        if (match.compiler == null) {
+            if (match.linkerBid > 0) {
+                objectFiles.addElement(fullPath);
+                if (match.linkerBid == 1) {
+                    task.log("Unrecognized file type " + fullPath.toString()
+                            + " will be passed to linker");
+                }
+            }
+        } else {
+            final String[] outputFileNames = match.outputFileNames;
             //
             //   if there is some output for this task
             //      (that is a source file and not an header file)
@@ -97,14 +240,9 @@ public final class TargetMatcher implements FileVisitor {
                 final TargetInfo previousTarget = (TargetInfo) targets
                         .get(outputFileNames[i]);
                 if (previousTarget == null) {
-                    targets.put( outputFileNames[i],
-                            new TargetInfo (
-                                selectedCompiler, sourceFiles, null, new File(
-                                outputDir, outputFileNames[i]), outputFileNames[i],
-                                selectedCompiler.getRebuild() )
-                               );
+                    targets.put(outputFileNames[i], match.targets[i]);
                 } else {
-                    if (!previousTarget.getSources()[0].equals(sourceFiles[0])) {
+                    if (!previousTarget.getSources()[0].equals(fullPath)) {
                         final StringBuffer builder = new StringBuffer(
                                 "Output filename conflict: ");
                         builder.append(outputFileNames[i]);
@@ -112,7 +250,7 @@ public final class TargetMatcher implements FileVisitor {
                         builder.append(previousTarget.getSources()[0]
                                 .toString());
                         builder.append(" and ");
-                        builder.append(filename);
+                        builder.append(match.filename);
                         throw new BuildException(builder.toString());
                     }
                 }
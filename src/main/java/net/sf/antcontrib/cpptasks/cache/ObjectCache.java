@@ -0,0 +1,610 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks.cache;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import net.sf.antcontrib.cpptasks.CCTask;
+import net.sf.antcontrib.cpptasks.DependencyInfo;
+import net.sf.antcontrib.cpptasks.DependencyTable;
+import net.sf.antcontrib.cpptasks.FileIdentity;
+import net.sf.antcontrib.cpptasks.FileStateCache;
+import net.sf.antcontrib.cpptasks.compiler.CommandLineCompilerConfiguration;
+import net.sf.antcontrib.cpptasks.compiler.CompilerConfiguration;
+
+import org.apache.tools.ant.Project;
+/**
+ * Local cache of compiler outputs.
+ *
+ * Entries are keyed by a hash of the compiler identifier and arguments, the
+ * path and content of the source file and the paths and contents of every
+ * include file recorded for it in the dependency table, so an entry is only
+ * reused for a compilation that would see exactly the same input. Include
+ * files that could not be resolved are assumed to belong to the compiler,
+ * whose version is part of its identifier. Paths under the project base
+ * directory are made relative to it, so checkouts at different locations
+ * share entries.
+ *
+ * Each entry is a directory named by its key, holding the output files. An
+ * entry is assembled in a temporary directory and renamed into place, so
+ * builds sharing the cache directory never see a partial entry. The
+ * modification time of an entry is updated when it is used and the least
+ * recently used entries are removed when the cache exceeds its maximum
+ * size.
+ *
+ * May be shared by compilations running on several threads.
+ */
+public final class ObjectCache {
+    /** Changed whenever the composition of keys changes. */
+    private static final String KEY_VERSION = "cpptasks-objectcache-2";
+    /** Replaces the project base directory in keys. */
+    private static final String ROOT = "${basedir}";
+    /** Algorithm of keys. */
+    private static final String HASH_ALGORITHM = "SHA-1";
+    /** Name of the directory holding entries being assembled or removed. */
+    private static final String TEMP_DIR = "tmp";
+    /** Age after which abandoned temporary directories are removed. */
+    private static final long TEMP_EXPIRY = 3600000;
+    private final File dir;
+    private final long maxSize;
+    private final boolean hardLink;
+    private int hits;
+    private int misses;
+    private int stores;
+    private long storedSize;
+    private int tempCount;
+
+    /**
+     * Constructor.
+     *
+     * @param dir
+     *            cache directory, created if necessary
+     * @param maxSize
+     *            maximum size of the cache in bytes
+     * @param hardLink
+     *            if true, outputs are hard linked to cache entries where
+     *            possible instead of copied
+     */
+    public ObjectCache(final File dir, final long maxSize,
+            final boolean hardLink) {
+        if (dir == null) {
+            throw new NullPointerException("dir");
+        }
+        this.dir = dir;
+        this.maxSize = maxSize;
+        this.hardLink = hardLink;
+    }
+    public File getDirectory() {
+        return dir;
+    }
+    public synchronized int getHits() {
+        return hits;
+    }
+    public synchronized int getMisses() {
+        return misses;
+    }
+    public synchronized int getStores() {
+        return stores;
+    }
+    /**
+     * Computes the key of the compilation of a source file, parsing the
+     * source and its include files if not current in the dependency table.
+     *
+     * @param task
+     *            task
+     * @param config
+     *            compiler configuration
+     * @param sourceFile
+     *            source file
+     * @return key, null if the source file or one of its include files could
+     *         not be read
+     */
+    public static String getKey(final CCTask task,
+            final CompilerConfiguration config, final String sourceFile) {
+        final DependencyTable table = task.getDependencyTable();
+        final FileStateCache fileState = task.getFileStateCache();
+        final String baseDirPath = table.getBaseDirPath();
+        final File baseDir = new File(baseDirPath);
+        final String includePathIdentifier = config.getIncludePathIdentifier();
+        final String rootPath = getRootPath(task, fileState);
+        final File source = new File(sourceFile);
+        final Hashtable hashes = new Hashtable();
+        final Vector pending = new Vector();
+        pending.addElement(source);
+        //
+        //   the dependency table is not safe for concurrent use
+        //
+        synchronized (table) {
+            while (pending.size() > 0) {
+                final File file = (File) pending.remove(pending.size() - 1);
+                final String relative = fileState.getRelativePath(baseDirPath,
+                        file);
+                final String keyPath = getKeyPath(fileState, rootPath, file);
+                if (hashes.containsKey(keyPath)) {
+                    continue;
+                }
+                final FileIdentity identity = fileState
+                        .getContentIdentity(file);
+                if (identity == null) {
+                    return null;
+                }
+                hashes.put(keyPath, identity.getHash());
+                //
+                //   parse again unless recorded from the current content,
+                //      files with unresolved includes are always parsed
+                //      again since the includes may now be found
+                //
+                DependencyInfo dependInfo = table.getDependencyInfo(relative,
+                        includePathIdentifier);
+                if (dependInfo == null
+                        || dependInfo.getSourceLastModified() != fileState
+                                .lastModified(file)) {
+                    task.log("Parsing " + relative, Project.MSG_DEBUG);
+                    dependInfo = table.parseIncludes(task, config, file);
+                }
+                if (dependInfo == null) {
+                    return null;
+                }
+                //
+                //   the includes reported by the compiler are every file
+                //      the source depends on, they are hashed but not
+                //      parsed
+                //
+                final String[] includes = dependInfo.getIncludes();
+                for (int i = 0; i < includes.length; i++) {
+                    File include = new File(includes[i]);
+                    if (!include.isAbsolute()) {
+                        include = new File(baseDir, includes[i]);
+                    }
+                    if (!dependInfo.isComplete()) {
+                        pending.addElement(include);
+                        continue;
+                    }
+                    final String includeKeyPath = getKeyPath(fileState,
+                            rootPath, include);
+                    if (!hashes.containsKey(includeKeyPath)) {
+                        final FileIdentity includeIdentity = fileState
+                                .getContentIdentity(include);
+                        if (includeIdentity == null) {
+                            return null;
+                        }
+                        hashes.put(includeKeyPath, includeIdentity.getHash());
+                    }
+                }
+                //
+                //   system includes are hashed but not followed
+                //
+                final String[] sysIncludes = dependInfo.getSysIncludes();
+                for (int i = 0; i < sysIncludes.length; i++) {
+                    File include = new File(sysIncludes[i]);
+                    if (!include.isAbsolute()) {
+                        include = new File(baseDir, sysIncludes[i]);
+                    }
+                    final String sysKeyPath = getKeyPath(fileState, rootPath,
+                            include);
+                    if (!hashes.containsKey(sysKeyPath)) {
+                        final FileIdentity sysIdentity = fileState
+                                .getContentIdentity(include);
+                        if (sysIdentity == null) {
+                            return null;
+                        }
+                        hashes.put(sysKeyPath, sysIdentity.getHash());
+                    }
+                }
+            }
+        }
+        final StringBuffer buf = new StringBuffer(KEY_VERSION);
+        buf.append('\n');
+        buf.append(getKeyIdentifier(config, rootPath));
+        buf.append('\n');
+        buf.append(getKeyPath(fileState, rootPath, source));
+        buf.append('\n');
+        final String[] names = new String[hashes.size()];
+        hashes.keySet().toArray(names);
+        Arrays.sort(names);
+        for (int i = 0; i < names.length; i++) {
+            buf.append(names[i]);
+            buf.append(' ');
+            buf.append(hashes.get(names[i]));
+            buf.append('\n');
+        }
+        return hash(buf.toString());
+    }
+    private static String getRootPath(final CCTask task,
+            final FileStateCache fileState) {
+        final File baseDir = task.getProject().getBaseDir();
+        try {
+            return fileState.getCanonicalPath(baseDir);
+        } catch (final IOException ex) {
+            return baseDir.getAbsolutePath();
+        }
+    }
+    /**
+     * Returns the path of a file in a key, relative to the project base
+     * directory if within it, otherwise absolute.
+     */
+    private static String getKeyPath(final FileStateCache fileState,
+            final String rootPath, final File file) {
+        String path;
+        try {
+            path = fileState.getCanonicalPath(file);
+        } catch (final IOException ex) {
+            path = file.getAbsolutePath();
+        }
+        return replaceRoot(path, rootPath).replace(File.separatorChar, '/');
+    }
+    /**
+     * Returns the identifier of a configuration in a key. The identifier of
+     * a command line configuration is assembled from its arguments, whose
+     * include directories are absolute, since the relative paths of its
+     * configuration identifier depend on the location of the project when
+     * they leave the project base directory.
+     */
+    private static String getKeyIdentifier(
+            final CompilerConfiguration config, final String rootPath) {
+        if (!(config instanceof CommandLineCompilerConfiguration)) {
+            return replaceRoot(config.getIdentifier(), rootPath);
+        }
+        final CommandLineCompilerConfiguration commandLineConfig =
+                (CommandLineCompilerConfiguration) config;
+        final StringBuffer buf = new StringBuffer(commandLineConfig
+                .getCompiler().getIdentifier());
+        final String[] preArgs = commandLineConfig.getPreArguments();
+        for (int i = 0; i < preArgs.length; i++) {
+            buf.append(' ');
+            buf.append(replaceRoot(preArgs[i], rootPath));
+        }
+        final String[] endArgs = commandLineConfig.getEndArguments();
+        for (int i = 0; i < endArgs.length; i++) {
+            buf.append(' ');
+            buf.append(replaceRoot(endArgs[i], rootPath));
+        }
+        return buf.toString();
+    }
+    /**
+     * Replaces every occurrence of the root path followed by a separator
+     * or the end of the value.
+     */
+    private static String replaceRoot(final String value,
+            final String rootPath) {
+        final StringBuffer buf = new StringBuffer();
+        int start = 0;
+        int index = value.indexOf(rootPath);
+        while (index >= 0) {
+            final int end = index + rootPath.length();
+            if (end == value.length() || value.charAt(end) == '/'
+                    || value.charAt(end) == File.separatorChar) {
+                buf.append(value.substring(start, index));
+                buf.append(ROOT);
+                start = end;
+            }
+            index = value.indexOf(rootPath, end);
+        }
+        buf.append(value.substring(start));
+        return buf.toString();
+    }
+    /**
+     * Deletes outputs that may be hard linked to cache entries, so a
+     * compiler writing them does not write into a cache entry.
+     *
+     * @param outputDir
+     *            output directory
+     * @param outputNames
+     *            names of the output files
+     * @param linked
+     *            if true, outputs are deleted even if the number of links
+     *            can not be determined
+     */
+    public static void unlinkOutputs(final File outputDir,
+            final String[] outputNames, final boolean linked) {
+        for (int i = 0; i < outputNames.length; i++) {
+            final File output = new File(outputDir, outputNames[i]);
+            boolean delete = linked;
+            try {
+                final Object links = Files.getAttribute(output.toPath(),
+                        "unix:nlink");
+                delete = ((Number) links).intValue() > 1;
+            } catch (final IOException ex) {
+                //
+                //   output does not exist
+                //
+                delete = false;
+            } catch (final UnsupportedOperationException ex) {
+            } catch (final IllegalArgumentException ex) {
+            }
+            if (delete) {
+                output.delete();
+            }
+        }
+    }
+    private static String hash(final String value) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(HASH_ALGORITHM);
+            final byte[] bytes = digest.digest(value.getBytes("UTF-8"));
+            final StringBuffer hex = new StringBuffer(bytes.length * 2);
+            for (int i = 0; i < bytes.length; i++) {
+                hex.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(bytes[i] & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex.toString());
+        } catch (final IOException ex) {
+            throw new IllegalStateException(ex.toString());
+        }
+    }
+    private File getEntry(final String key) {
+        return new File(new File(dir, key.substring(0, 2)), key);
+    }
+    /**
+     * Materializes the outputs of a cached compilation.
+     *
+     * If the entry is not available, any existing outputs are deleted when
+     * hard linking is enabled so the compiler does not write through a link
+     * into a cache entry.
+     *
+     * @param key
+     *            key as returned by getKey()
+     * @param outputDir
+     *            output directory
+     * @param outputNames
+     *            names of the output files
+     * @return true if all outputs were materialized
+     */
+    public boolean fetch(final String key, final File outputDir,
+            final String[] outputNames) {
+        final File entry = getEntry(key);
+        boolean found = outputNames.length > 0;
+        for (int i = 0; i < outputNames.length && found; i++) {
+            final File cached = new File(entry, outputNames[i]);
+            final File output = new File(outputDir, outputNames[i]);
+            try {
+                materialize(cached, output);
+            } catch (final IOException ex) {
+                //
+                //   missing or being evicted by another build
+                //
+                found = false;
+            }
+        }
+        if (!found) {
+            if (hardLink) {
+                for (int i = 0; i < outputNames.length; i++) {
+                    new File(outputDir, outputNames[i]).delete();
+                }
+            }
+            synchronized (this) {
+                misses++;
+            }
+            return false;
+        }
+        entry.setLastModified(System.currentTimeMillis());
+        synchronized (this) {
+            hits++;
+        }
+        return true;
+    }
+    private void materialize(final File cached, final File output)
+            throws IOException {
+        output.delete();
+        boolean linked = false;
+        if (hardLink) {
+            try {
+                Files.createLink(output.toPath(), cached.toPath());
+                linked = true;
+            } catch (final IOException ex) {
+            } catch (final UnsupportedOperationException ex) {
+            }
+        }
+        if (!linked) {
+            Files.copy(cached.toPath(), output.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        //
+        //   outputs older than the history file are not recorded
+        //
+        output.setLastModified(System.currentTimeMillis());
+    }
+    /**
+     * Adds the outputs of a successful compilation to the cache. Failures
+     * are logged and otherwise ignored.
+     *
+     * @param task
+     *            task used for logging
+     * @param key
+     *            key as returned by getKey()
+     * @param outputDir
+     *            output directory
+     * @param outputNames
+     *            names of the output files
+     */
+    public void store(final CCTask task, final String key,
+            final File outputDir, final String[] outputNames) {
+        final File entry = getEntry(key);
+        if (entry.exists() || outputNames.length == 0) {
+            return;
+        }
+        final File temp = createTempDir();
+        long size = 0;
+        try {
+            for (int i = 0; i < outputNames.length; i++) {
+                final File output = new File(outputDir, outputNames[i]);
+                final File cached = new File(temp, outputNames[i]);
+                cached.getParentFile().mkdirs();
+                Files.copy(output.toPath(), cached.toPath());
+                size += cached.length();
+            }
+            entry.getParentFile().mkdirs();
+            //
+            //   fails if another build added the same entry first
+            //
+            if (!temp.renameTo(entry)) {
+                return;
+            }
+        } catch (final IOException ex) {
+            task.log("Unable to cache " + outputNames[0] + ": "
+                    + ex.toString(), Project.MSG_VERBOSE);
+            return;
+        } finally {
+            delete(temp);
+        }
+        synchronized (this) {
+            stores++;
+            storedSize += size;
+        }
+    }
+    private File createTempDir() {
+        final File tempDir = new File(dir, TEMP_DIR);
+        tempDir.mkdirs();
+        while (true) {
+            final int count;
+            synchronized (this) {
+                count = ++tempCount;
+            }
+            final File temp = new File(tempDir, Long.toString(System
+                    .nanoTime(), 36)
+                    + "-" + Integer.toString(count, 36));
+            if (temp.mkdir()) {
+                return temp;
+            }
+        }
+    }
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (int i = 0; i < children.length; i++) {
+                delete(children[i]);
+            }
+        }
+        file.delete();
+    }
+    /**
+     * Logs the hit and miss counts and, if anything was stored, removes the
+     * least recently used entries until the cache is within its maximum
+     * size.
+     *
+     * @param task
+     *            task used for logging
+     */
+    public void finish(final CCTask task) {
+        final int hitCount;
+        final int missCount;
+        final int storeCount;
+        final long stored;
+        synchronized (this) {
+            hitCount = hits;
+            missCount = misses;
+            storeCount = stores;
+            stored = storedSize;
+            hits = 0;
+            misses = 0;
+            stores = 0;
+            storedSize = 0;
+        }
+        if (hitCount + missCount > 0) {
+            task.log("Object cache: " + Integer.toString(hitCount)
+                    + " hits, " + Integer.toString(missCount) + " misses, "
+                    + Integer.toString(storeCount) + " stored.");
+        }
+        if (stored > 0) {
+            trim(task);
+        }
+    }
+    /**
+     * Removes the least recently used entries until the cache is within its
+     * maximum size, and temporary directories abandoned by earlier builds.
+     *
+     * @param task
+     *            task used for logging
+     */
+    public void trim(final CCTask task) {
+        final Vector entries = new Vector();
+        long totalSize = 0;
+        final File[] subdirs = dir.listFiles();
+        if (subdirs == null) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < subdirs.length; i++) {
+            if (subdirs[i].getName().equals(TEMP_DIR)) {
+                final File[] temps = subdirs[i].listFiles();
+                for (int j = 0; temps != null && j < temps.length; j++) {
+                    if (now - temps[j].lastModified() > TEMP_EXPIRY) {
+                        delete(temps[j]);
+                    }
+                }
+                continue;
+            }
+            final File[] keyDirs = subdirs[i].listFiles();
+            for (int j = 0; keyDirs != null && j < keyDirs.length; j++) {
+                final File[] files = keyDirs[j].listFiles();
+                if (files == null) {
+                    continue;
+                }
+                long size = 0;
+                for (int k = 0; k < files.length; k++) {
+                    size += files[k].length();
+                }
+                totalSize += size;
+                entries.addElement(new Object[]{keyDirs[j],
+                        Long.valueOf(keyDirs[j].lastModified()),
+                        Long.valueOf(size)});
+            }
+        }
+        if (totalSize <= maxSize) {
+            return;
+        }
+        //
+        //   evict oldest first down to 90% so every later store
+        //      does not trigger another eviction
+        //
+        final Object[] sorted = entries.toArray();
+        Arrays.sort(sorted, new Comparator() {
+            public int compare(final Object o1, final Object o2) {
+                final long t1 = ((Long) ((Object[]) o1)[1]).longValue();
+                final long t2 = ((Long) ((Object[]) o2)[1]).longValue();
+                return t1 < t2 ? -1 : (t1 > t2 ? 1 : 0);
+            }
+        });
+        final long target = maxSize - maxSize / 10;
+        int evicted = 0;
+        for (int i = 0; i < sorted.length && totalSize > target; i++) {
+            final Object[] entry = (Object[]) sorted[i];
+            //
+            //   rename first so no build sees a partially deleted entry
+            //
+            final File temp = createTempDir();
+            final File removed = new File(temp, "entry");
+            if (((File) entry[0]).renameTo(removed)) {
+                totalSize -= ((Long) entry[2]).longValue();
+                evicted++;
+            }
+            delete(temp);
+        }
+        task.log("Object cache: removed " + Integer.toString(evicted)
+                + " least recently used entries.", Project.MSG_VERBOSE);
+    }
+}
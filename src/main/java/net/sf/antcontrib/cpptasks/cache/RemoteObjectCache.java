@@ -0,0 +1,399 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks.cache;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import net.sf.antcontrib.cpptasks.CCTask;
+import net.sf.antcontrib.cpptasks.DaemonThreadFactory;
+
+import org.apache.tools.ant.Project;
+/**
+ * Shared cache of compiler outputs on an HTTP server.
+ *
+ * Uses the keys of ObjectCache. Each output file is a resource named
+ * key/filename relative to the base URL, read with GET and written with
+ * PUT, so any HTTP server that accepts PUT requests, such as a WebDAV
+ * enabled web server, may host the cache. A missing resource must be
+ * reported as 404.
+ *
+ * Downloads run on a bounded pool and are abandoned when they do not
+ * complete within the timeout, in which case the source is compiled
+ * locally. Uploads run in the background and are awaited by finish(). The
+ * cache is not used for the rest of the build after the server could not be
+ * reached.
+ *
+ * May be shared by compilations running on several threads.
+ */
+public final class RemoteObjectCache {
+    private final URL baseURL;
+    private final int timeout;
+    private final boolean upload;
+    private final ExecutorService downloads;
+    private final ExecutorService uploads;
+    private boolean available = true;
+    private int hits;
+    private int misses;
+    private int timeouts;
+    private int pendingUploads;
+    private int uploaded;
+    private int failedUploads;
+
+    /**
+     * Constructor.
+     *
+     * @param baseURL
+     *            URL of the cache, ending with a slash
+     * @param timeout
+     *            timeout in milliseconds for connecting and for completing
+     *            the downloads of a compilation
+     * @param downloadThreads
+     *            maximum number of concurrent downloads
+     * @param upload
+     *            if false, outputs of local compilations are not uploaded
+     */
+    public RemoteObjectCache(final URL baseURL, final int timeout,
+            final int downloadThreads, final boolean upload) {
+        if (baseURL == null) {
+            throw new NullPointerException("baseURL");
+        }
+        this.baseURL = baseURL;
+        this.timeout = timeout;
+        this.upload = upload;
+        downloads = Executors.newFixedThreadPool(Math.max(1, downloadThreads),
+                new DaemonThreadFactory("cpptasks-cache-download"));
+        uploads = Executors.newSingleThreadExecutor(new DaemonThreadFactory(
+                "cpptasks-cache-upload"));
+    }
+    public synchronized int getHits() {
+        return hits;
+    }
+    public synchronized int getMisses() {
+        return misses;
+    }
+    public synchronized int getTimeouts() {
+        return timeouts;
+    }
+    public synchronized int getUploads() {
+        return uploaded;
+    }
+    public synchronized boolean isAvailable() {
+        return available;
+    }
+    private synchronized void setUnavailable(final CCTask task,
+            final Throwable ex) {
+        if (available) {
+            available = false;
+            if (task != null) {
+                task.log("Remote object cache " + baseURL + " not used: "
+                        + ex.toString(), Project.MSG_WARN);
+            }
+        }
+    }
+    private URL getURL(final String key, final String outputName)
+            throws IOException {
+        return new URL(baseURL, key + "/" + outputName);
+    }
+    private HttpURLConnection open(final URL url) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) url
+                .openConnection();
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        connection.setUseCaches(false);
+        return connection;
+    }
+    /**
+     * Downloads an output file. Responses are read completely so that the
+     * connection may be reused.
+     *
+     * @return content, null if not in the cache
+     */
+    private byte[] download(final String key, final String outputName)
+            throws IOException {
+        final HttpURLConnection connection = open(getURL(key, outputName));
+        final int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            readFully(connection.getErrorStream());
+            if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                return null;
+            }
+            throw new IOException("GET " + connection.getURL()
+                    + " returned " + Integer.toString(status));
+        }
+        return readFully(connection.getInputStream());
+    }
+    private static byte[] readFully(final InputStream in) throws IOException {
+        if (in == null) {
+            return null;
+        }
+        try {
+            final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            final byte[] bytes = new byte[65536];
+            int count;
+            while ((count = in.read(bytes)) >= 0) {
+                buf.write(bytes, 0, count);
+            }
+            return buf.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+    private void put(final String key, final String outputName,
+            final byte[] content) throws IOException {
+        final HttpURLConnection connection = open(getURL(key, outputName));
+        connection.setRequestMethod("PUT");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(content.length);
+        connection.setRequestProperty("Content-Type",
+                "application/octet-stream");
+        final OutputStream out = connection.getOutputStream();
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+        final int status = connection.getResponseCode();
+        if (status < 200 || status >= 300) {
+            readFully(connection.getErrorStream());
+            throw new IOException("PUT " + connection.getURL() + " returned "
+                    + Integer.toString(status));
+        }
+        readFully(connection.getInputStream());
+    }
+    /**
+     * Materializes the outputs of cached compilations, the downloads of all
+     * sources proceeding concurrently.
+     *
+     * @param task
+     *            task used for logging, may be null
+     * @param keys
+     *            keys as returned by ObjectCache.getKey(), null elements are
+     *            not looked up
+     * @param outputDir
+     *            output directory
+     * @param outputNames
+     *            names of the output files of each key
+     * @return true for each key whose outputs were all materialized
+     */
+    public boolean[] fetch(final CCTask task, final String[] keys,
+            final File outputDir, final String[][] outputNames) {
+        final boolean[] found = new boolean[keys.length];
+        if (!isAvailable()) {
+            return found;
+        }
+        final Future[] futures = new Future[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null && outputNames[i].length > 0) {
+                final String key = keys[i];
+                final String[] names = outputNames[i];
+                futures[i] = downloads.submit(new Callable() {
+                    public Object call() throws IOException {
+                        final byte[][] contents = new byte[names.length][];
+                        for (int j = 0; j < names.length; j++) {
+                            contents[j] = download(key, names[j]);
+                            if (contents[j] == null) {
+                                return null;
+                            }
+                        }
+                        return contents;
+                    }
+                });
+            }
+        }
+        //
+        //   the timeout applies to the whole batch so a slow server
+        //      delays compilation by at most the timeout
+        //
+        final long deadline = System.currentTimeMillis() + timeout;
+        for (int i = 0; i < keys.length; i++) {
+            if (futures[i] == null) {
+                continue;
+            }
+            byte[][] contents = null;
+            try {
+                contents = (byte[][]) futures[i].get(Math.max(0, deadline
+                        - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (final TimeoutException ex) {
+                futures[i].cancel(true);
+                synchronized (this) {
+                    timeouts++;
+                }
+            } catch (final ExecutionException ex) {
+                setUnavailable(task, ex.getCause());
+            } catch (final InterruptedException ex) {
+                futures[i].cancel(true);
+                Thread.currentThread().interrupt();
+            }
+            if (contents != null) {
+                try {
+                    for (int j = 0; j < contents.length; j++) {
+                        write(new File(outputDir, outputNames[i][j]),
+                                contents[j]);
+                    }
+                    found[i] = true;
+                } catch (final IOException ex) {
+                    if (task != null) {
+                        task.log("Unable to write " + outputNames[i][0]
+                                + ": " + ex.toString(), Project.MSG_VERBOSE);
+                    }
+                }
+            }
+            synchronized (this) {
+                if (found[i]) {
+                    hits++;
+                } else {
+                    misses++;
+                }
+            }
+        }
+        return found;
+    }
+    /**
+     * Writes a file by renaming a temporary file so that a partial file is
+     * never seen under its final name.
+     */
+    private static void write(final File file, final byte[] content)
+            throws IOException {
+        final File temp = File.createTempFile(file.getName(), ".tmp", file
+                .getParentFile());
+        try {
+            final FileOutputStream out = new FileOutputStream(temp);
+            try {
+                out.write(content);
+            } finally {
+                out.close();
+            }
+            file.delete();
+            if (!temp.renameTo(file)) {
+                throw new IOException("Unable to rename " + temp + " to "
+                        + file);
+            }
+        } finally {
+            temp.delete();
+        }
+    }
+    /**
+     * Uploads the outputs of a successful compilation in the background.
+     * The outputs are read before returning.
+     *
+     * @param task
+     *            task used for logging, may be null
+     * @param key
+     *            key as returned by ObjectCache.getKey()
+     * @param outputDir
+     *            output directory
+     * @param outputNames
+     *            names of the output files
+     */
+    public void store(final CCTask task, final String key,
+            final File outputDir, final String[] outputNames) {
+        if (!upload || !isAvailable() || outputNames.length == 0) {
+            return;
+        }
+        final byte[][] contents = new byte[outputNames.length][];
+        try {
+            for (int i = 0; i < outputNames.length; i++) {
+                contents[i] = Files.readAllBytes(new File(outputDir,
+                        outputNames[i]).toPath());
+            }
+        } catch (final IOException ex) {
+            return;
+        }
+        synchronized (this) {
+            pendingUploads++;
+        }
+        uploads.execute(new Runnable() {
+            public void run() {
+                boolean success = false;
+                try {
+                    if (isAvailable()) {
+                        for (int i = 0; i < outputNames.length; i++) {
+                            put(key, outputNames[i], contents[i]);
+                        }
+                        success = true;
+                    }
+                } catch (final IOException ex) {
+                    if (task != null) {
+                        task.log("Unable to upload " + outputNames[0] + ": "
+                                + ex.toString(), Project.MSG_VERBOSE);
+                    }
+                } finally {
+                    synchronized (RemoteObjectCache.this) {
+                        pendingUploads--;
+                        if (success) {
+                            uploaded++;
+                        } else {
+                            failedUploads++;
+                        }
+                        RemoteObjectCache.this.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+    /**
+     * Waits for pending uploads, logs the hit and miss counts and stops the
+     * worker threads.
+     *
+     * @param task
+     *            task used for logging
+     * @param uploadTimeout
+     *            maximum time in milliseconds to wait for pending uploads
+     */
+    public void finish(final CCTask task, final long uploadTimeout) {
+        final long deadline = System.currentTimeMillis() + uploadTimeout;
+        synchronized (this) {
+            long remaining = uploadTimeout;
+            while (pendingUploads > 0 && remaining > 0) {
+                try {
+                    wait(remaining);
+                } catch (final InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+            if (hits + misses + uploaded + failedUploads + pendingUploads > 0) {
+                task.log("Remote object cache: " + Integer.toString(hits)
+                        + " hits, " + Integer.toString(misses) + " misses, "
+                        + Integer.toString(timeouts) + " timeouts, "
+                        + Integer.toString(uploaded) + " uploaded.");
+            }
+            if (failedUploads + pendingUploads > 0) {
+                task.log("Remote object cache: "
+                        + Integer.toString(failedUploads + pendingUploads)
+                        + " uploads failed or abandoned.", Project.MSG_VERBOSE);
+            }
+        }
+        downloads.shutdownNow();
+        uploads.shutdownNow();
+    }
+}
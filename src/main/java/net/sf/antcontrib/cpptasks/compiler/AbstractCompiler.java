@@ -15,20 +15,22 @@
  *  limitations under the License.
  */
 package net.sf.antcontrib.cpptasks.compiler;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.Reader;
+import java.util.Hashtable;
 import java.util.Vector;
 import net.sf.antcontrib.cpptasks.CCTask;
 import net.sf.antcontrib.cpptasks.CUtil;
 import net.sf.antcontrib.cpptasks.CompilerDef;
 import net.sf.antcontrib.cpptasks.DependencyInfo;
+import net.sf.antcontrib.cpptasks.FileStateCache;
 import net.sf.antcontrib.cpptasks.ProcessorDef;
+import net.sf.antcontrib.cpptasks.parser.CParser;
+import net.sf.antcontrib.cpptasks.parser.MakeDependencyParser;
 import net.sf.antcontrib.cpptasks.parser.Parser;
 import net.sf.antcontrib.cpptasks.TargetDef;
 import net.sf.antcontrib.cpptasks.VersionInfo;
+import net.sf.antcontrib.cpptasks.types.UndefineArgument;
 
 /**
  * An abstract compiler implementation.
@@ -139,43 +141,172 @@ public abstract class AbstractCompiler extends AbstractProcessor
     public final DependencyInfo parseIncludes(final CCTask task, final File source,
             final File[] includePath, final File[] sysIncludePath, final File[] envIncludePath,
             final File baseDir, final String includePathIdentifier) {
+        return parseIncludes(task, source, includePath, sysIncludePath,
+                envIncludePath, baseDir, includePathIdentifier, null, null);
+    }
+    /**
+     * Parses source file for dependencies, skipping includes in
+     * conditional branches excluded by the defines.
+     *
+     * @param defines
+     *            defines and undefines of the command line, which must be
+     *            part of the includePathIdentifier, null to not evaluate
+     *            conditional directives
+     * @param unknownMacros
+     *            macros of the defines that some file redefines, whose
+     *            values are not used, may be null
+     */
+    public final DependencyInfo parseIncludes(final CCTask task, final File source,
+            final File[] includePath, final File[] sysIncludePath, final File[] envIncludePath,
+            final File baseDir, final String includePathIdentifier,
+            final UndefineArgument[] defines, final String[] unknownMacros) {
+        String[] includes = emptyIncludeArray;
+        String guard = null;
+        boolean parsed = true;
+        String[] definedMacros = null;
+        String[] assumedMacros = null;
+        if (canParse(source)) {
+            final Parser parser = createParser(source);
+            final Hashtable defineNames = new Hashtable();
+            if (defines != null && parser instanceof CParser) {
+                final Vector names = new Vector();
+                final Vector values = new Vector();
+                for (int i = 0; i < defines.length; i++) {
+                    defineNames.put(defines[i].getName(), defines[i]);
+                    if (contains(unknownMacros, defines[i].getName())) {
+                        continue;
+                    }
+                    names.addElement(defines[i].getName());
+                    String value = null;
+                    if (defines[i].isDefine()) {
+                        value = defines[i].getValue();
+                        if (value == null) {
+                            value = "1";
+                        }
+                    }
+                    values.addElement(value);
+                }
+                final String[] nameArray = new String[names.size()];
+                final String[] valueArray = new String[values.size()];
+                names.copyInto(nameArray);
+                values.copyInto(valueArray);
+                ((CParser) parser).setDefines(nameArray, valueArray);
+            }
+            try {
+                parser.parse(source);
+                includes = parser.getIncludes();
+                guard = parser.getGuard();
+                if (defines != null && parser instanceof CParser) {
+                    //
+                    //   only the macros of the defines may make the
+                    //      conditionals of including files unknown
+                    //
+                    final String[] macros = ((CParser) parser)
+                            .getDefinedMacros();
+                    final Vector redefined = new Vector();
+                    for (int i = 0; i < macros.length; i++) {
+                        if (defineNames.containsKey(macros[i])) {
+                            redefined.addElement(macros[i]);
+                        }
+                    }
+                    definedMacros = new String[redefined.size()];
+                    redefined.copyInto(definedMacros);
+                    assumedMacros = ((CParser) parser).getAssumedMacros();
+                }
+            } catch (final IOException ex) {
+                task.log("Error parsing " + source.toString() + ":"
+                        + ex.toString());
+                includes = new String[0];
+                parsed = false;
+            }
+        }
+        final DependencyInfo dependInfo = createDependencyInfo(task, source,
+                includes, guard, includePath, sysIncludePath, envIncludePath,
+                baseDir, includePathIdentifier);
+        //
+        //   the names found evaluating conditionals are only
+        //      valid for the same defines
+        //
+        if (parsed && defines == null) {
+            dependInfo.setIncludeNames(includes);
+        }
+        if (definedMacros != null) {
+            dependInfo.setDefinedMacros(definedMacros);
+            dependInfo.setAssumedMacros(assumedMacros);
+        }
+        return dependInfo;
+    }
+    private static boolean contains(final String[] names, final String name) {
+        if (names != null) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(name)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    /**
+     * Returns dependency info for the specified source file from the names
+     * of the files it includes, recorded when the source was parsed for
+     * another include path, without reading the source.
+     *
+     * @param includeNames
+     *            names as they appear in the include directives
+     * @param guard
+     *            guard against repeated inclusion, may be null
+     * @see #parseIncludes(CCTask, File, File[], File[], File[], File,
+     *      String)
+     */
+    public final DependencyInfo resolveIncludes(final CCTask task,
+            final File source, final String[] includeNames,
+            final String guard, final File[] includePath,
+            final File[] sysIncludePath, final File[] envIncludePath,
+            final File baseDir, final String includePathIdentifier) {
+        final DependencyInfo dependInfo = createDependencyInfo(task, source,
+                includeNames, guard, includePath, sysIncludePath,
+                envIncludePath, baseDir, includePathIdentifier);
+        dependInfo.setIncludeNames(includeNames);
+        return dependInfo;
+    }
+    /**
+     * Resolves the included files on the include paths.
+     */
+    private DependencyInfo createDependencyInfo(final CCTask task,
+            final File source, final String[] includes, final String guard,
+            final File[] includePath, final File[] sysIncludePath,
+            final File[] envIncludePath, final File baseDir,
+            final String includePathIdentifier) {
         //
         //  if any of the include files can not be identified
         //      change the sourceLastModified to Long.MAX_VALUE to
         //      force recompilation of anything that depends on it
-        long sourceLastModified = source.lastModified();
+        final FileStateCache fileState;
+        if (task != null) {
+            fileState = task.getFileStateCache();
+        } else {
+            fileState = new FileStateCache();
+        }
+        long sourceLastModified = fileState.lastModified(source);
         final File[] sourcePath = new File[1];
         sourcePath[0] = new File(source.getParent());
         final Vector onIncludePath = new Vector();
         final Vector onSysIncludePath = new Vector();
         String baseDirPath;
         try {
-            baseDirPath = baseDir.getCanonicalPath();
+            baseDirPath = fileState.getCanonicalPath(baseDir);
         } catch (final IOException ex) {
             baseDirPath = baseDir.toString();
         }
-        final String relativeSource = CUtil.getRelativePath(baseDirPath, source);
-        String[] includes = emptyIncludeArray;
-        if (canParse(source)) {
-            final Parser parser = createParser(source);
-            try {
-                final Reader reader = new BufferedReader(new FileReader(source));
-                parser.parse(reader);
-                includes = parser.getIncludes();
-            } catch (final IOException ex) {
-                task.log("Error parsing " + source.toString() + ":"
-                        + ex.toString());
-                includes = new String[0];
-            }
-        }
+        final String relativeSource = fileState.getRelativePath(baseDirPath, source);
         for (int i = 0; i < includes.length; i++) {
             final String includeName = includes[i];
-            if (!resolveInclude(includeName, sourcePath, onIncludePath)) {
-                if (!resolveInclude(includeName, includePath, onIncludePath)) {
+            if (!resolveInclude(includeName, sourcePath, onIncludePath, fileState)) {
+                if (!resolveInclude(includeName, includePath, onIncludePath, fileState)) {
                     if (!resolveInclude(includeName, sysIncludePath,
-                            onSysIncludePath)) {
+                            onSysIncludePath, fileState)) {
                         if (!resolveInclude(includeName, envIncludePath,
-                                onSysIncludePath)) {
+                                onSysIncludePath, fileState)) {
                             //
                             //  this should be enough to require us to reparse
                             //     the file with the missing include for dependency
@@ -187,24 +318,153 @@ public abstract class AbstractCompiler extends AbstractProcessor
             }
         }
         for (int i = 0; i < onIncludePath.size(); i++) {
-            final String relativeInclude = CUtil.getRelativePath(baseDirPath,
+            final String relativeInclude = fileState.getRelativePath(baseDirPath,
                     (File) onIncludePath.elementAt(i));
             onIncludePath.setElementAt(relativeInclude, i);
         }
         for (int i = 0; i < onSysIncludePath.size(); i++) {
-            final String relativeInclude = CUtil.getRelativePath(baseDirPath,
+            final String relativeInclude = fileState.getRelativePath(baseDirPath,
                     (File) onSysIncludePath.elementAt(i));
             onSysIncludePath.setElementAt(relativeInclude, i);
         }
-        return new DependencyInfo(includePathIdentifier, relativeSource,
-                sourceLastModified, onIncludePath, onSysIncludePath);
+        final DependencyInfo dependInfo = new DependencyInfo(
+                includePathIdentifier, relativeSource, sourceLastModified,
+                onIncludePath, onSysIncludePath);
+        dependInfo.setGuard(guard);
+        return dependInfo;
+    }
+    /**
+     * Returns dependency info for the specified source file from the make
+     * style dependency file written by the compiler when compiling it.
+     *
+     * The info is complete, it lists every file the source depends on.
+     * Files in the directory of the source, on the include path or under
+     * the base directory participate in dependency analysis, files on the
+     * sysinclude or environment include path or found by the compiler
+     * elsewhere are system includes.
+     *
+     * @param dependencyFile
+     *            dependency file, relative names in it are relative to
+     *            its directory
+     * @return dependency info, null if the dependency file can not be read
+     * @see #parseIncludes(CCTask, File, File[], File[], File[], File,
+     *      String)
+     */
+    public final DependencyInfo readDependencyFile(final CCTask task,
+            final File source, final File dependencyFile,
+            final File[] includePath, final File[] sysIncludePath,
+            final File[] envIncludePath, final File baseDir,
+            final String includePathIdentifier) {
+        final FileStateCache fileState;
+        if (task != null) {
+            fileState = task.getFileStateCache();
+        } else {
+            fileState = new FileStateCache();
+        }
+        final MakeDependencyParser parser = new MakeDependencyParser();
+        try {
+            parser.parse(dependencyFile);
+        } catch (final IOException ex) {
+            return null;
+        }
+        final String[] prerequisites = parser.getPrerequisites();
+        String baseDirPath;
+        try {
+            baseDirPath = fileState.getCanonicalPath(baseDir);
+        } catch (final IOException ex) {
+            baseDirPath = baseDir.toString();
+        }
+        final String sourcePath = getCanonicalPath(fileState, source);
+        final String[] sysDirs = getCanonicalDirs(fileState, sysIncludePath,
+                envIncludePath);
+        final String[] userDirs = getCanonicalDirs(fileState, includePath,
+                new File[]{source.getAbsoluteFile().getParentFile(), baseDir});
+        final Vector onIncludePath = new Vector();
+        final Vector onSysIncludePath = new Vector();
+        for (int i = 0; i < prerequisites.length; i++) {
+            File include = new File(prerequisites[i]);
+            if (!include.isAbsolute()) {
+                include = new File(dependencyFile.getAbsoluteFile()
+                        .getParentFile(), prerequisites[i]);
+            }
+            final String includePathName = getCanonicalPath(fileState,
+                    include);
+            if (includePathName.equals(sourcePath)) {
+                continue;
+            }
+            final String relativeInclude = fileState.getRelativePath(
+                    baseDirPath, include);
+            if (!isInDirectory(includePathName, sysDirs)
+                    && isInDirectory(includePathName, userDirs)) {
+                onIncludePath.addElement(relativeInclude);
+            } else {
+                onSysIncludePath.addElement(relativeInclude);
+            }
+        }
+        final DependencyInfo dependInfo = new DependencyInfo(
+                includePathIdentifier, fileState.getRelativePath(baseDirPath,
+                        source), fileState.lastModified(source),
+                onIncludePath, onSysIncludePath);
+        dependInfo.setComplete(true);
+        return dependInfo;
+    }
+    private static String getCanonicalPath(final FileStateCache fileState,
+            final File file) {
+        try {
+            return fileState.getCanonicalPath(file);
+        } catch (final IOException ex) {
+            return file.getAbsolutePath();
+        }
+    }
+    private static String[] getCanonicalDirs(final FileStateCache fileState,
+            final File[] first, final File[] second) {
+        final String[] dirs = new String[first.length + second.length];
+        for (int i = 0; i < first.length; i++) {
+            dirs[i] = getCanonicalPath(fileState, first[i]);
+        }
+        for (int i = 0; i < second.length; i++) {
+            dirs[first.length + i] = getCanonicalPath(fileState, second[i]);
+        }
+        return dirs;
+    }
+    private static boolean isInDirectory(final String path,
+            final String[] dirs) {
+        for (int i = 0; i < dirs.length; i++) {
+            if (path.startsWith(dirs[i]) && path.length() > dirs[i].length()
+                    && (path.charAt(dirs[i].length()) == File.separatorChar
+                    || dirs[i].endsWith(File.separator))) {
+                return true;
+            }
+        }
+        return false;
     }
     protected boolean resolveInclude(final String includeName, final File[] includePath,
             final Vector onThisPath) {
+        return resolveInclude(includeName, includePath, onThisPath,
+                new FileStateCache());
+    }
+    /**
+     * Finds an included file on an include path.
+     *
+     * Each directory is looked up in the listings of the file state cache
+     * rather than checked for the file, so that a miss on a long include
+     * path does not cost a system call per directory.
+     *
+     * @param includeName
+     *            name as it appears in the include directive
+     * @param includePath
+     *            directories to search
+     * @param onThisPath
+     *            receives the file if found
+     * @param fileState
+     *            file states of the current build
+     * @return true if found
+     */
+    protected boolean resolveInclude(final String includeName, final File[] includePath,
+            final Vector onThisPath, final FileStateCache fileState) {
         for (int i = 0; i < includePath.length; i++) {
-            final File includeFile = new File(includePath[i], includeName);
-            if (includeFile.exists()) {
-                onThisPath.addElement(includeFile);
+            if (fileState.exists(includePath[i], includeName)) {
+                onThisPath.addElement(new File(includePath[i], includeName));
                 return true;
             }
         }
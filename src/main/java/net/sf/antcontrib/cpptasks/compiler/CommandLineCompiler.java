@@ -22,14 +22,18 @@ import java.util.Vector;
 import net.sf.antcontrib.cpptasks.CCTask;
 import net.sf.antcontrib.cpptasks.CUtil;
 import net.sf.antcontrib.cpptasks.CompilerDef;
+import net.sf.antcontrib.cpptasks.DependencyInfo;
+import net.sf.antcontrib.cpptasks.DependencyTable;
 import net.sf.antcontrib.cpptasks.ProcessorDef;
 import net.sf.antcontrib.cpptasks.ProcessorParam;
 import net.sf.antcontrib.cpptasks.types.CommandLineArgument;
 import net.sf.antcontrib.cpptasks.types.UndefineArgument;
 import net.sf.antcontrib.cpptasks.TargetDef;
 import net.sf.antcontrib.cpptasks.VersionInfo;
+import net.sf.antcontrib.cpptasks.distributer.Distributer;
 
 import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
 import org.apache.tools.ant.types.Environment;
 import net.sf.antcontrib.cpptasks.OptimizationEnum;;
 /**
@@ -117,7 +121,11 @@ public abstract class CommandLineCompiler extends AbstractCompiler {
         }
     }
     abstract protected void addWarningSwitch(Vector args, int warnings);
-    protected void buildDefineArguments(CompilerDef[] defs, Vector args) {
+    /**
+     * Gets the defines and undefines of a compiler definition merged with
+     * those it inherits.
+     */
+    protected UndefineArgument[] getMergedDefines(CompilerDef[] defs) {
         //
         //   assume that we aren't inheriting defines from containing <cc>
         //
@@ -128,6 +136,10 @@ public abstract class CommandLineCompiler extends AbstractCompiler {
             //      containing defines
             merged = UndefineArgument.merge(defs[i].getActiveDefines(), merged);
         }
+        return merged;
+    }
+    protected void buildDefineArguments(CompilerDef[] defs, Vector args) {
+        UndefineArgument[] merged = getMergedDefines(defs);
         StringBuffer buf = new StringBuffer(30);
         for (int i = 0; i < merged.length; i++) {
             buf.setLength(0);
@@ -171,6 +183,37 @@ public abstract class CommandLineCompiler extends AbstractCompiler {
                     "Command line is over maximum length without specifying source file");
         }
         //
+        //   compile what can be distributed on remote hosts,
+        //      the remaining sources are compiled locally
+        //
+        final Distributer distributer = task == null ? null : task
+                .getDistributer();
+        if (distributer != null && !isLibtool && !isXcoderun) {
+            Vector localFiles = new Vector();
+            for (int i = 0; i < sourceFiles.length; i++) {
+                int retval = distribute(task, distributer, outputDir,
+                        sourceFiles[i], args, endArgs, config);
+                if (retval == Distributer.NOT_DISTRIBUTED) {
+                    distributer.compiledLocally();
+                    localFiles.addElement(sourceFiles[i]);
+                    continue;
+                }
+                if (monitor != null) {
+                    monitor.progress(new String[]{sourceFiles[i]});
+                }
+                if (retval != 0 && exc == null) {
+                    exc = new BuildException(this.getCommand()
+                            + " failed with return code " + retval, task
+                            .getLocation());
+                    if (!relentless) {
+                        throw exc;
+                    }
+                }
+            }
+            sourceFiles = new String[localFiles.size()];
+            localFiles.copyInto(sourceFiles);
+        }
+        //
         //  typically either 1 or Integer.MAX_VALUE
         //
         int maxInputFilesPerCommand = getMaximumInputFilesPerCommand();
@@ -220,6 +263,10 @@ public abstract class CommandLineCompiler extends AbstractCompiler {
                 commandline[index++] = endArgs[j];
             }
             int retval = runCommand(task, outputDir, commandline);
+            if (retval == 0 && config != null && writesDependencyFiles(task)) {
+                readDependencyFiles(task, outputDir, sourceFiles, sourceIndex,
+                        firstFileNextExec, config);
+            }
             if (monitor != null) {
                 String[] fileNames = new String[firstFileNextExec - sourceIndex];
                 for (int j = 0; j < fileNames.length; j++) {
@@ -254,6 +301,89 @@ public abstract class CommandLineCompiler extends AbstractCompiler {
             throw exc;
         }
     }
+    /**
+     * Determines if the compiler writes a dependency file for each source
+     * it compiles.
+     */
+    private boolean writesDependencyFiles(CCTask task) {
+        return task != null && task.getDependencyFiles() && !isLibtool
+                && getDependencyFileArguments() != null;
+    }
+    /**
+     * Records the dependencies reported by the compiler for sources it
+     * compiled, replacing any parsed from the sources.
+     */
+    private void readDependencyFiles(CCTask task, File outputDir,
+            String[] sourceFiles, int start, int end,
+            CommandLineCompilerConfiguration config) {
+        DependencyTable table = task.getDependencyTable();
+        File baseDir = new File(table.getBaseDirPath());
+        for (int i = start; i < end; i++) {
+            File source = new File(sourceFiles[i]);
+            File dependencyFile = new File(outputDir,
+                    getDependencyFileName(sourceFiles[i]));
+            DependencyInfo dependInfo = config.readDependencyFile(task,
+                    baseDir, source, dependencyFile);
+            if (dependInfo == null) {
+                task.log("Unable to read " + dependencyFile.toString(),
+                        Project.MSG_VERBOSE);
+            } else {
+                table.putDependencyInfo(source, dependInfo);
+            }
+        }
+    }
+    /**
+     * Preprocesses a source file locally and compiles it on a remote host.
+     * The dependency file, if any, is written by the local preprocessor.
+     *
+     * @return exit code of the remote compiler, Distributer.NOT_DISTRIBUTED
+     *         if the source should be compiled locally
+     */
+    private int distribute(CCTask task, Distributer distributer,
+            File outputDir, String sourceFile, String[] args,
+            String[] endArgs, CommandLineCompilerConfiguration config) {
+        String extension = getPreprocessedExtension(sourceFile);
+        String[] outputNames = getOutputFileNames(sourceFile, null);
+        //
+        //   avoid preprocessing when every host is busy
+        //
+        if (extension == null || outputNames.length != 1
+                || !distributer.hasFreeSlot()) {
+            return Distributer.NOT_DISTRIBUTED;
+        }
+        File output = new File(outputDir, outputNames[0]).getAbsoluteFile();
+        File preprocessed;
+        try {
+            preprocessed = File.createTempFile(new File(sourceFile)
+                    .getName() + ".", extension, outputDir).getAbsoluteFile();
+        } catch (IOException ex) {
+            return Distributer.NOT_DISTRIBUTED;
+        }
+        try {
+            String[] preprocessCommand = getPreprocessCommand(args, endArgs,
+                    sourceFile, preprocessed.getPath());
+            String[] compileCommand = getPreprocessedCompileCommand(args,
+                    endArgs, preprocessed.getPath(), output.getPath());
+            if (preprocessCommand == null || compileCommand == null) {
+                return Distributer.NOT_DISTRIBUTED;
+            }
+            //
+            //   let the local compiler report preprocessing errors
+            //
+            if (runCommand(task, outputDir, preprocessCommand) != 0) {
+                return Distributer.NOT_DISTRIBUTED;
+            }
+            int retval = distributer.compile(task, compileCommand,
+                    preprocessed, output);
+            if (retval == 0 && config != null && writesDependencyFiles(task)) {
+                readDependencyFiles(task, outputDir, new String[]{sourceFile},
+                        0, 1, config);
+            }
+            return retval;
+        } finally {
+            preprocessed.delete();
+        }
+    }
     protected CompilerConfiguration createConfiguration(final CCTask task,
             final LinkType linkType,
 			final ProcessorDef[] baseDefs,
@@ -371,6 +501,27 @@ public abstract class CommandLineCompiler extends AbstractCompiler {
         addIncludes(baseDirPath, incPath, args, relativeArgs,
                 includePathIdentifier);
         addIncludes(baseDirPath, sysIncPath, args, null, null);
+        //
+        //   when conditional directives are evaluated, the includes
+        //      depend on the defines as much as on the include path
+        //
+        UndefineArgument[] defines = null;
+        if (task != null && task.getEvaluateConditionals()) {
+            defines = getMergedDefines(defaultProviders);
+            for (int i = 0; i < defines.length; i++) {
+                if (defines[i].isDefine()) {
+                    includePathIdentifier.append(" /D");
+                    includePathIdentifier.append(defines[i].getName());
+                    if (defines[i].getValue() != null) {
+                        includePathIdentifier.append('=');
+                        includePathIdentifier.append(defines[i].getValue());
+                    }
+                } else {
+                    includePathIdentifier.append(" /U");
+                    includePathIdentifier.append(defines[i].getName());
+                }
+            }
+        }
         StringBuffer buf = new StringBuffer(getIdentifier());
         for (int i = 0; i < relativeArgs.size(); i++) {
             buf.append(' ');
@@ -381,20 +532,108 @@ public abstract class CommandLineCompiler extends AbstractCompiler {
             buf.append(endArgs[i]);
         }
         String configId = buf.toString();
+        //
+        //   writing dependency files does not change the output
+        //      so is not part of the configuration identifier
+        //
+        if (writesDependencyFiles(task)) {
+            String[] dependencyArgs = getDependencyFileArguments();
+            for (int i = 0; i < dependencyArgs.length; i++) {
+                args.addElement(dependencyArgs[i]);
+            }
+        }
         String[] argArray = new String[args.size()];
         args.copyInto(argArray);
         boolean rebuild = specificDef.getRebuild(baseDefs, 0);
         File[] envIncludePath = getEnvironmentIncludePath();
         return new CommandLineCompilerConfiguration(this, configId, incPath,
                 sysIncPath, envIncludePath, includePathIdentifier.toString(),
-                argArray, paramArray, rebuild, endArgs);
+                argArray, paramArray, rebuild, endArgs, defines);
     }
     protected int getArgumentCountPerInputFile() {
         return 1;
     }
+    /**
+     * Gets the arguments that make the compiler write a make style
+     * dependency file for each source file, named by
+     * getDependencyFileName() in the output directory.
+     *
+     * Default implementation returns null.
+     *
+     * @return arguments, null if dependency files are not supported
+     */
+    protected String[] getDependencyFileArguments() {
+        return null;
+    }
+    /**
+     * Gets the name of the dependency file written for a source file.
+     *
+     * Default implementation returns null.
+     *
+     * @param sourceFile
+     *            source file
+     * @return name relative to the output directory
+     */
+    protected String getDependencyFileName(String sourceFile) {
+        return null;
+    }
     protected final String getCommand() {
         return command;
     }
+    /**
+     * Gets the extension of the preprocessed form of a source file, for
+     * compilers whose preprocessed sources may be compiled on another host.
+     *
+     * Default implementation returns null.
+     *
+     * @param sourceFile
+     *            source file
+     * @return extension such as ".i", null if the source file can not be
+     *         compiled remotely
+     */
+    protected String getPreprocessedExtension(String sourceFile) {
+        return null;
+    }
+    /**
+     * Gets the command line that preprocesses a source file.
+     *
+     * Default implementation returns null.
+     *
+     * @param args
+     *            compiler arguments
+     * @param endArgs
+     *            compiler arguments following the source file
+     * @param sourceFile
+     *            source file
+     * @param preprocessedFile
+     *            preprocessed file to be written
+     * @return command line, null if not supported
+     */
+    protected String[] getPreprocessCommand(String[] args, String[] endArgs,
+            String sourceFile, String preprocessedFile) {
+        return null;
+    }
+    /**
+     * Gets the command line that compiles a preprocessed source file, which
+     * should not contain preprocessor options such as include directories
+     * that have no meaning on another host.
+     *
+     * Default implementation returns null.
+     *
+     * @param args
+     *            compiler arguments
+     * @param endArgs
+     *            compiler arguments following the source file
+     * @param preprocessedFile
+     *            preprocessed source file
+     * @param outputFile
+     *            object file to be written
+     * @return command line, null if not supported
+     */
+    protected String[] getPreprocessedCompileCommand(String[] args,
+            String[] endArgs, String preprocessedFile, String outputFile) {
+        return null;
+    }
     abstract protected void getDefineSwitch(StringBuffer buffer, String define,
             String value);
     protected abstract File[] getEnvironmentIncludePath();
@@ -16,14 +16,19 @@
  */
 package net.sf.antcontrib.cpptasks.compiler;
 import java.io.File;
+import java.util.Vector;
 
 import net.sf.antcontrib.cpptasks.CCTask;
 import net.sf.antcontrib.cpptasks.CompilerParam;
 import net.sf.antcontrib.cpptasks.DependencyInfo;
 import net.sf.antcontrib.cpptasks.ProcessorParam;
 import net.sf.antcontrib.cpptasks.VersionInfo;
+import net.sf.antcontrib.cpptasks.cache.ObjectCache;
+import net.sf.antcontrib.cpptasks.cache.RemoteObjectCache;
+import net.sf.antcontrib.cpptasks.types.UndefineArgument;
 
 import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
 /**
  * A configuration for a C++ compiler
  *
@@ -47,10 +52,31 @@ public final class CommandLineCompilerConfiguration
     private/* final */ProcessorParam[] params;
     private final /* final */boolean rebuild;
     private/* final */File[] sysIncludePath;
+    /**
+     * Defines used to evaluate conditional directives, null if not evaluated.
+     */
+    private final UndefineArgument[] defines;
     public CommandLineCompilerConfiguration(final CommandLineCompiler compiler,
             final String identifier, final File[] includePath, final File[] sysIncludePath,
             final File[] envIncludePath, final String includePathIdentifier, final String[] args,
             final ProcessorParam[] params, final boolean rebuild, final String[] endArgs) {
+        this(compiler, identifier, includePath, sysIncludePath, envIncludePath,
+                includePathIdentifier, args, params, rebuild, endArgs, null);
+    }
+    /**
+     * Creates a configuration whose dependencies are parsed evaluating
+     * conditional directives.
+     *
+     * @param defines
+     *            defines and undefines of the command line, which must be
+     *            part of the includePathIdentifier, null to not evaluate
+     *            conditional directives
+     */
+    public CommandLineCompilerConfiguration(final CommandLineCompiler compiler,
+            final String identifier, final File[] includePath, final File[] sysIncludePath,
+            final File[] envIncludePath, final String includePathIdentifier, final String[] args,
+            final ProcessorParam[] params, final boolean rebuild, final String[] endArgs,
+            final UndefineArgument[] defines) {
         if (compiler == null) {
             throw new NullPointerException("compiler");
         }
@@ -86,6 +112,11 @@ public final class CommandLineCompilerConfiguration
         this.identifier = identifier;
         this.includePathIdentifier = includePathIdentifier;
         this.endArgs = endArgs.clone();
+        if (defines == null) {
+            this.defines = null;
+        } else {
+            this.defines = defines.clone();
+        }
         exceptFiles = null;
         isPrecompiledHeaderGeneration = false;
     }
@@ -100,6 +131,7 @@ public final class CommandLineCompilerConfiguration
         endArgs = base.endArgs.clone();
         envIncludePath = base.envIncludePath.clone();
         includePathIdentifier = base.includePathIdentifier;
+        defines = base.defines;
         if (exceptFiles != null) {
             this.exceptFiles = exceptFiles.clone();
         }
@@ -132,8 +164,98 @@ public final class CommandLineCompilerConfiguration
             monitor.start(this);
         }
         try {
-            compiler.compile(task, outputDir, sourceFiles, args, endArgs,
-                    relentless, this, monitor);
+            String[] misses = sourceFiles;
+            String[] keys = null;
+            final boolean cached = isCached(task);
+            final ObjectCache cache = cached ? task.getObjectCache() : null;
+            final RemoteObjectCache remoteCache = cached ? task
+                    .getRemoteObjectCache() : null;
+            if (cache != null || remoteCache != null) {
+                //
+                //   materialize cached outputs and
+                //      only compile the remaining sources
+                //
+                final String[][] outputNames = new String[sourceFiles.length][];
+                final String[] sourceKeys = new String[sourceFiles.length];
+                final boolean[] found = new boolean[sourceFiles.length];
+                for (int i = 0; i < sourceFiles.length; i++) {
+                    outputNames[i] = getOutputFileNames(sourceFiles[i], null);
+                    sourceKeys[i] = ObjectCache.getKey(task, this,
+                            sourceFiles[i]);
+                    if (cache != null && sourceKeys[i] != null) {
+                        found[i] = cache.fetch(sourceKeys[i], outputDir,
+                                outputNames[i]);
+                    }
+                }
+                if (remoteCache != null) {
+                    final String[] remoteKeys = new String[sourceFiles.length];
+                    for (int i = 0; i < sourceFiles.length; i++) {
+                        if (!found[i]) {
+                            remoteKeys[i] = sourceKeys[i];
+                        }
+                    }
+                    final boolean[] remoteFound = remoteCache.fetch(task,
+                            remoteKeys, outputDir, outputNames);
+                    for (int i = 0; i < sourceFiles.length; i++) {
+                        if (remoteFound[i]) {
+                            found[i] = true;
+                            if (cache != null) {
+                                cache.store(task, sourceKeys[i], outputDir,
+                                        outputNames[i]);
+                            }
+                        }
+                    }
+                }
+                final Vector hits = new Vector();
+                final Vector missed = new Vector();
+                final Vector missedKeys = new Vector();
+                for (int i = 0; i < sourceFiles.length; i++) {
+                    if (found[i]) {
+                        task.log(sourceFiles[i] + " from object cache",
+                                Project.MSG_VERBOSE);
+                        hits.addElement(sourceFiles[i]);
+                    } else {
+                        missed.addElement(sourceFiles[i]);
+                        missedKeys.addElement(sourceKeys[i]);
+                    }
+                }
+                if (hits.size() > 0 && monitor != null) {
+                    final String[] hitFiles = new String[hits.size()];
+                    hits.copyInto(hitFiles);
+                    monitor.progressCached(hitFiles);
+                }
+                misses = new String[missed.size()];
+                missed.copyInto(misses);
+                keys = new String[missedKeys.size()];
+                missedKeys.copyInto(keys);
+            }
+            if (misses.length > 0) {
+                //
+                //   outputs linked to cache entries by an earlier build
+                //      must not be written through
+                //
+                for (int i = 0; i < misses.length; i++) {
+                    ObjectCache.unlinkOutputs(outputDir, getOutputFileNames(
+                            misses[i], null), task.getCacheLink());
+                }
+                compiler.compile(task, outputDir, misses, args, endArgs,
+                        relentless, this, monitor);
+            }
+            if (keys != null) {
+                for (int i = 0; i < misses.length; i++) {
+                    if (keys[i] != null) {
+                        final String[] outputNames = getOutputFileNames(
+                                misses[i], null);
+                        if (cache != null) {
+                            cache.store(task, keys[i], outputDir, outputNames);
+                        }
+                        if (remoteCache != null) {
+                            remoteCache.store(task, keys[i], outputDir,
+                                    outputNames);
+                        }
+                    }
+                }
+            }
             if (monitor != null) {
                 monitor.finish(this, true);
             }
@@ -144,6 +266,18 @@ public final class CommandLineCompilerConfiguration
             throw ex;
         }
     }
+    /**
+     * Determines whether compilations with this configuration may use the
+     * object caches.
+     *
+     * Compilations that generate or use precompiled headers or are always
+     * rebuilt are not cached, since the precompiled header is not recorded
+     * in the dependency table.
+     */
+    private boolean isCached(final CCTask task) {
+        return task != null && !rebuild && !isPrecompiledHeaderGeneration
+                && exceptFiles == null;
+    }
     /**
      *
      * This method may be used to get two distinct compiler configurations, one
@@ -212,8 +346,43 @@ public final class CommandLineCompilerConfiguration
     }
     @Override
     public DependencyInfo parseIncludes(final CCTask task, final File baseDir, final File source) {
+        //
+        //   a macro redefined by any file parsed so far may be
+        //      redefined by a file included before this one
+        //
+        String[] unknownMacros = null;
+        if (defines != null && task != null) {
+            unknownMacros = task.getDependencyTable().getRedefinedMacros();
+        }
         return compiler.parseIncludes(task, source, includePath,
                 sysIncludePath, envIncludePath, baseDir,
+                getIncludePathIdentifier(), defines, unknownMacros);
+    }
+    /**
+     * Resolves recorded include names on the include path of this
+     * configuration, unless conditional directives are evaluated, since
+     * the recorded names include those of every branch.
+     */
+    public DependencyInfo resolveIncludes(final CCTask task,
+            final File baseDir, final File source,
+            final String[] includeNames, final String guard) {
+        if (defines != null) {
+            return null;
+        }
+        return compiler.resolveIncludes(task, source, includeNames, guard,
+                includePath, sysIncludePath, envIncludePath, baseDir,
+                getIncludePathIdentifier());
+    }
+    /**
+     * Returns the dependency info of a source from the dependency file
+     * written by the compiler.
+     *
+     * @return dependency info, null if the dependency file can not be read
+     */
+    public DependencyInfo readDependencyFile(final CCTask task,
+            final File baseDir, final File source, final File dependencyFile) {
+        return compiler.readDependencyFile(task, source, dependencyFile,
+                includePath, sysIncludePath, envIncludePath, baseDir,
                 getIncludePathIdentifier());
     }
     @Override
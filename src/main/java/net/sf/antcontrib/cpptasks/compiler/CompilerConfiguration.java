@@ -61,4 +61,15 @@ public interface CompilerConfiguration extends ProcessorConfiguration {
     public CompilerParam getParam(String name);
     boolean isPrecompileGeneration();
     DependencyInfo parseIncludes(CCTask task, File baseDir, File source);
+    /**
+     * Returns dependency info for a source from the names of the files it
+     * includes, recorded when it was parsed for another include path.
+     * Configurations that can not resolve names return null.
+     *
+     * @return dependency info, null if the source must be parsed again
+     */
+    default DependencyInfo resolveIncludes(CCTask task, File baseDir,
+            File source, String[] includeNames, String guard) {
+        return null;
+    }
 }
@@ -15,11 +15,8 @@
  *  limitations under the License.
  */
 package net.sf.antcontrib.cpptasks.compiler;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.Reader;
 
 import net.sf.antcontrib.cpptasks.parser.Parser;
 
@@ -75,8 +72,7 @@ public abstract class PrecompilingCommandLineCompiler
         Parser parser = createParser(prototype);
         String[] includes;
         try {
-            Reader reader = new BufferedReader(new FileReader(prototype));
-            parser.parse(reader);
+            parser.parse(prototype);
             includes = parser.getIncludes();
         } catch (IOException ex) {
             throw new BuildException(
@@ -27,5 +27,13 @@ public interface ProgressMonitor {
      *  
      */
     void progress(String[] sources);
+    /**
+     * Called to notify monitor of sources whose outputs were taken from a
+     * cache instead of being compiled, so the time taken is not their
+     * compile duration.
+     */
+    default void progressCached(String[] sources) {
+        progress(sources);
+    }
     public void start(ProcessorConfiguration config);
 }
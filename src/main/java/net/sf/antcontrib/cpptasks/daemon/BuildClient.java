@@ -0,0 +1,194 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks.daemon;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Properties;
+
+import org.apache.tools.ant.Main;
+/**
+ * Runs an Ant build in a BuildDaemon if one is running, otherwise in this
+ * process.
+ *
+ * Usage: java net.sf.antcontrib.cpptasks.daemon.BuildClient
+ * [-statefile file] [-stop] [ant options] [targets]
+ */
+public final class BuildClient {
+    /**
+     * Thrown if the request could not be sent to a daemon, in which case no
+     * build was started.
+     */
+    public static final class UnavailableException extends IOException {
+        private static final long serialVersionUID = 1L;
+        public UnavailableException(final String message) {
+            super(message);
+        }
+    }
+    private final File stateFile;
+
+    /**
+     * Constructor.
+     *
+     * @param stateFile state file written by the daemon
+     */
+    public BuildClient(final File stateFile) {
+        if (stateFile == null) {
+            throw new NullPointerException("stateFile");
+        }
+        this.stateFile = stateFile;
+    }
+    /**
+     * Sends a request to the daemon, copying any build output.
+     *
+     * @param command BuildDaemon.BUILD or BuildDaemon.STOP
+     * @param dir working directory for relative file names
+     * @param args Ant command line
+     * @param output destination for build output
+     * @return exit code of the build
+     * @throws UnavailableException if no daemon is running or the request
+     *             could not be sent
+     * @throws IOException if the connection fails once the request was sent
+     */
+    public int execute(final String command, final File dir,
+            final String[] args, final OutputStream output) throws IOException {
+        if (!stateFile.exists()) {
+            throw new UnavailableException("No build daemon running");
+        }
+        final Properties props = new Properties();
+        try {
+            final InputStream stateStream = new FileInputStream(stateFile);
+            try {
+                props.load(stateStream);
+            } finally {
+                stateStream.close();
+            }
+        } catch (final IOException ex) {
+            throw new UnavailableException("Unable to read "
+                    + stateFile.toString() + ": " + ex.getMessage());
+        }
+        final String token = props.getProperty("token");
+        final String port = props.getProperty("port");
+        if (token == null || port == null) {
+            throw new UnavailableException("Invalid state file "
+                    + stateFile.toString());
+        }
+        final Socket socket = new Socket();
+        try {
+            //
+            //   the daemon only starts a build once it has read the
+            //      whole request
+            //
+            try {
+                socket.connect(new InetSocketAddress(InetAddress
+                        .getLoopbackAddress(), Integer.parseInt(port)), 5000);
+                final DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(socket.getOutputStream()));
+                out.writeUTF(BuildDaemon.PROTOCOL);
+                out.writeUTF(token);
+                out.writeUTF(command);
+                out.writeUTF(dir.getAbsolutePath());
+                out.writeInt(args.length);
+                for (int i = 0; i < args.length; i++) {
+                    out.writeUTF(args[i]);
+                }
+                out.flush();
+            } catch (final IOException ex) {
+                throw new UnavailableException("Unable to reach daemon: "
+                        + ex.getMessage());
+            }
+            final DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream()));
+            final byte[] buf = new byte[8192];
+            while (true) {
+                final int frame = in.readByte();
+                final int value = in.readInt();
+                if (frame == BuildDaemon.EXIT_FRAME) {
+                    output.flush();
+                    return value;
+                }
+                if (frame != BuildDaemon.OUTPUT_FRAME || value < 0) {
+                    throw new IOException("Unexpected response from daemon");
+                }
+                int remaining = value;
+                while (remaining > 0) {
+                    final int count = in.read(buf, 0,
+                            Math.min(remaining, buf.length));
+                    if (count < 0) {
+                        throw new IOException("Daemon closed connection");
+                    }
+                    output.write(buf, 0, count);
+                    remaining -= count;
+                }
+                output.flush();
+            }
+        } catch (final NumberFormatException ex) {
+            throw new UnavailableException("Invalid state file "
+                    + stateFile.toString());
+        } finally {
+            socket.close();
+        }
+    }
+    public static void main(String[] args) {
+        File stateFile = BuildDaemon.getDefaultStateFile();
+        if (args.length > 1 && args[0].equals("-statefile")) {
+            stateFile = new File(args[1]);
+            final String[] remaining = new String[args.length - 2];
+            System.arraycopy(args, 2, remaining, 0, remaining.length);
+            args = remaining;
+        }
+        final BuildClient client = new BuildClient(stateFile);
+        final File dir = new File(System.getProperty("user.dir"));
+        if (args.length > 0 && args[0].equals("-stop")) {
+            try {
+                client.execute(BuildDaemon.STOP, dir, new String[0],
+                        System.out);
+            } catch (final IOException ex) {
+                System.err.println(ex.getMessage());
+                System.exit(1);
+            }
+            System.exit(0);
+        }
+        int exitCode;
+        try {
+            exitCode = client.execute(BuildDaemon.BUILD, dir, args, System.out);
+        } catch (final UnavailableException ex) {
+            //
+            //   no usable daemon, build in this process
+            //
+            Main.main(args);
+            return;
+        } catch (final IOException ex) {
+            //
+            //   the daemon may have started the build,
+            //      so it is not run again here
+            //
+            System.err.println("Build daemon failed: " + ex.getMessage());
+            exitCode = 1;
+        }
+        System.exit(exitCode);
+    }
+}
@@ -0,0 +1,405 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks.daemon;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Enumeration;
+import java.util.Properties;
+import java.util.Vector;
+
+import net.sf.antcontrib.cpptasks.BuildStateCache;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.DefaultLogger;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.ProjectHelper;
+/**
+ * Long-lived process that runs Ant builds on behalf of BuildClient.
+ *
+ * Since the classes of the cc task stay loaded between builds, the history
+ * and dependency tables of each object directory (see BuildStateCache) and
+ * the results of toolchain probes such as the gcc specs are kept in memory,
+ * avoiding the cost of parsing history.xml and dependencies.xml on every
+ * incremental build. The cpptasks jar must be on the class path of the
+ * daemon for the tables to be shared.
+ *
+ * The daemon listens on the loopback interface only and writes its port
+ * and a random token to a state file readable only by the owner, by default
+ * .cpptasks/daemon.properties in the user's home directory. Requests that
+ * do not present the token are rejected. Builds are run one at a time.
+ *
+ * Usage: java net.sf.antcontrib.cpptasks.daemon.BuildDaemon [-port n]
+ * [-statefile file] [-idle minutes]
+ */
+public final class BuildDaemon {
+    /** Identifies the protocol, sent first on every connection. */
+    static final String PROTOCOL = "cpptasks-daemon-1";
+    static final String BUILD = "build";
+    static final String STOP = "stop";
+    /** Frame carrying build output. */
+    static final int OUTPUT_FRAME = 'O';
+    /** Frame carrying the exit code, ends the response. */
+    static final int EXIT_FRAME = 'X';
+
+    /**
+     * Sends each write to the client as an output frame.
+     */
+    private static final class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        public FrameOutputStream(final DataOutputStream out) {
+            this.out = out;
+        }
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+        @Override
+        public synchronized void write(final byte[] b, final int off,
+                final int len) throws IOException {
+            out.writeByte(OUTPUT_FRAME);
+            out.writeInt(len);
+            out.write(b, off, len);
+        }
+        @Override
+        public synchronized void flush() throws IOException {
+            out.flush();
+        }
+    }
+
+    private final File stateFile;
+    private final int port;
+    private final long idleTimeout;
+    private ServerSocket server;
+    private String token;
+    private boolean stopped;
+
+    /**
+     * Constructor.
+     *
+     * @param stateFile file to receive the port and token
+     * @param port port to listen on, 0 for any free port
+     * @param idleTimeout milliseconds without requests before the daemon
+     *            exits, 0 to run until stopped
+     */
+    public BuildDaemon(final File stateFile, final int port,
+            final long idleTimeout) {
+        if (stateFile == null) {
+            throw new NullPointerException("stateFile");
+        }
+        this.stateFile = stateFile;
+        this.port = port;
+        this.idleTimeout = idleTimeout;
+    }
+    /**
+     * Gets the default location of the state file.
+     * @return .cpptasks/daemon.properties in the user's home directory
+     */
+    public static File getDefaultStateFile() {
+        return new File(new File(System.getProperty("user.home"), ".cpptasks"),
+                "daemon.properties");
+    }
+    /**
+     * Binds the listening socket and publishes the state file.
+     *
+     * @return port listened on
+     * @throws IOException if the socket or state file can not be created
+     */
+    public synchronized int start() throws IOException {
+        server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        if (idleTimeout > 0) {
+            server.setSoTimeout((int) Math.min(idleTimeout, Integer.MAX_VALUE));
+        }
+        final byte[] random = new byte[16];
+        new SecureRandom().nextBytes(random);
+        final StringBuffer buf = new StringBuffer(32);
+        for (int i = 0; i < random.length; i++) {
+            buf.append(Character.forDigit((random[i] >> 4) & 0xF, 16));
+            buf.append(Character.forDigit(random[i] & 0xF, 16));
+        }
+        token = buf.toString();
+        writeStateFile();
+        BuildStateCache.setEnabled(true);
+        return server.getLocalPort();
+    }
+    private void writeStateFile() throws IOException {
+        final File dir = stateFile.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir.toString());
+        }
+        //
+        //   create the file readable only by the owner before writing
+        //      the token then move it into place
+        //
+        final File tmpFile = new File(dir, stateFile.getName() + ".tmp");
+        tmpFile.delete();
+        try {
+            Files.createFile(tmpFile.toPath(), PosixFilePermissions
+                    .asFileAttribute(PosixFilePermissions.fromString(
+                            "rw-------")));
+        } catch (final UnsupportedOperationException ex) {
+            //
+            //   not a POSIX file system, restrict it before
+            //      anything is written
+            //
+            Files.createFile(tmpFile.toPath());
+            tmpFile.setReadable(false, false);
+            tmpFile.setReadable(true, true);
+            tmpFile.setWritable(false, false);
+            tmpFile.setWritable(true, true);
+        }
+        final FileOutputStream out = new FileOutputStream(tmpFile);
+        try {
+            final Properties props = new Properties();
+            props.setProperty("port", Integer.toString(server.getLocalPort()));
+            props.setProperty("token", token);
+            props.store(out, "cpptasks build daemon");
+        } finally {
+            out.close();
+        }
+        stateFile.delete();
+        if (!tmpFile.renameTo(stateFile)) {
+            throw new IOException("Unable to create " + stateFile.toString());
+        }
+    }
+    /**
+     * Serves requests until stopped or idle.
+     */
+    public void serve() {
+        try {
+            while (!isStopped()) {
+                final Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (final SocketTimeoutException ex) {
+                    break;
+                } catch (final IOException ex) {
+                    if (!isStopped()) {
+                        System.err.println("cpptasks daemon: " + ex.toString());
+                    }
+                    break;
+                }
+                try {
+                    handle(socket);
+                } catch (final IOException ex) {
+                    System.err.println("cpptasks daemon: " + ex.toString());
+                } finally {
+                    try {
+                        socket.close();
+                    } catch (final IOException ex) {
+                    }
+                }
+            }
+        } finally {
+            stop();
+        }
+    }
+    /**
+     * Stops the daemon and removes the state file.
+     */
+    public synchronized void stop() {
+        if (!stopped) {
+            stopped = true;
+            stateFile.delete();
+            BuildStateCache.setEnabled(false);
+            if (server != null) {
+                try {
+                    server.close();
+                } catch (final IOException ex) {
+                }
+            }
+        }
+    }
+    public synchronized boolean isStopped() {
+        return stopped;
+    }
+    private void handle(final Socket socket) throws IOException {
+        //
+        //   do not let a stalled client block the daemon
+        //
+        socket.setSoTimeout(30000);
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(
+                socket.getInputStream()));
+        final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+        if (!PROTOCOL.equals(in.readUTF())
+                || !MessageDigest.isEqual(token.getBytes("UTF-8"), in
+                        .readUTF().getBytes("UTF-8"))) {
+            return;
+        }
+        final String command = in.readUTF();
+        final File dir = new File(in.readUTF());
+        final int argc = in.readInt();
+        if (argc < 0) {
+            return;
+        }
+        final String[] args = new String[argc];
+        for (int i = 0; i < argc; i++) {
+            args[i] = in.readUTF();
+        }
+        socket.setSoTimeout(0);
+        int exitCode = 0;
+        if (STOP.equals(command)) {
+            stop();
+        } else if (BUILD.equals(command)) {
+            final PrintStream output = new PrintStream(new FrameOutputStream(
+                    out), true, "UTF-8");
+            exitCode = runBuild(dir, args, output);
+            output.flush();
+        } else {
+            exitCode = 1;
+        }
+        out.writeByte(EXIT_FRAME);
+        out.writeInt(exitCode);
+        out.flush();
+    }
+    /**
+     * Runs a build, supporting a subset of the command line options of Ant.
+     *
+     * @param dir working directory of the client
+     * @param args command line
+     * @param output destination for build output
+     * @return exit code
+     */
+    int runBuild(final File dir, final String[] args, final PrintStream output) {
+        File buildFile = null;
+        int level = Project.MSG_INFO;
+        boolean keepGoing = false;
+        final Properties userProperties = new Properties();
+        final Vector targets = new Vector();
+        for (int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+            if (arg.equals("-f") || arg.equals("-file")
+                    || arg.equals("-buildfile")) {
+                if (++i >= args.length) {
+                    output.println("Missing build file after " + arg);
+                    return 1;
+                }
+                buildFile = new File(args[i]);
+                if (!buildFile.isAbsolute()) {
+                    buildFile = new File(dir, args[i]);
+                }
+            } else if (arg.startsWith("-D")) {
+                final int equals = arg.indexOf('=');
+                if (equals > 2) {
+                    userProperties.setProperty(arg.substring(2, equals),
+                            arg.substring(equals + 1));
+                } else {
+                    userProperties.setProperty(arg.substring(2), "");
+                }
+            } else if (arg.equals("-q") || arg.equals("-quiet")) {
+                level = Project.MSG_WARN;
+            } else if (arg.equals("-v") || arg.equals("-verbose")) {
+                level = Project.MSG_VERBOSE;
+            } else if (arg.equals("-d") || arg.equals("-debug")) {
+                level = Project.MSG_DEBUG;
+            } else if (arg.equals("-k") || arg.equals("-keep-going")) {
+                keepGoing = true;
+            } else if (arg.startsWith("-")) {
+                output.println("Option " + arg
+                        + " is not supported by the build daemon");
+                return 1;
+            } else {
+                targets.addElement(arg);
+            }
+        }
+        if (buildFile == null) {
+            buildFile = new File(dir, "build.xml");
+        }
+        final DefaultLogger logger = new DefaultLogger();
+        logger.setOutputPrintStream(output);
+        logger.setErrorPrintStream(output);
+        logger.setMessageOutputLevel(level);
+        final Project project = new Project();
+        project.addBuildListener(logger);
+        Throwable error = null;
+        project.fireBuildStarted();
+        try {
+            project.init();
+            project.setKeepGoingMode(keepGoing);
+            final Enumeration names = userProperties.propertyNames();
+            while (names.hasMoreElements()) {
+                final String name = (String) names.nextElement();
+                project.setUserProperty(name, userProperties.getProperty(name));
+            }
+            project.setUserProperty("ant.file", buildFile.getAbsolutePath());
+            ProjectHelper.configureProject(project, buildFile);
+            if (targets.isEmpty() && project.getDefaultTarget() != null) {
+                targets.addElement(project.getDefaultTarget());
+            }
+            project.executeTargets(targets);
+        } catch (final RuntimeException ex) {
+            error = ex;
+        } catch (final Error ex) {
+            error = ex;
+        } finally {
+            project.fireBuildFinished(error);
+        }
+        if (error != null && !(error instanceof BuildException)) {
+            error.printStackTrace(output);
+        }
+        return error == null ? 0 : 1;
+    }
+    public static void main(final String[] args) {
+        File stateFile = getDefaultStateFile();
+        int port = 0;
+        long idleMinutes = 180;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-port") && i + 1 < args.length) {
+                    port = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-statefile") && i + 1 < args.length) {
+                    stateFile = new File(args[++i]);
+                } else if (args[i].equals("-idle") && i + 1 < args.length) {
+                    idleMinutes = Long.parseLong(args[++i]);
+                } else {
+                    throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (final IllegalArgumentException ex) {
+            System.err.println("Usage: BuildDaemon [-port n] [-statefile file]"
+                    + " [-idle minutes]");
+            System.exit(2);
+        }
+        final BuildDaemon daemon = new BuildDaemon(stateFile, port,
+                idleMinutes * 60000L);
+        try {
+            final int localPort = daemon.start();
+            System.out.println("cpptasks daemon listening on port "
+                    + Integer.toString(localPort));
+        } catch (final IOException ex) {
+            System.err.println("Unable to start cpptasks daemon: "
+                    + ex.toString());
+            System.exit(1);
+        }
+        daemon.serve();
+    }
+}
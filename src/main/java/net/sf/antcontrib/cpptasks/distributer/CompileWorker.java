@@ -0,0 +1,393 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks.distributer;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+/**
+ * Server compiling the preprocessed sources sent by the cpptasks protocol
+ * of the distributer, see WorkerClient.
+ *
+ * Started with
+ *
+ * <pre>
+ * java -cp cpptasks.jar net.sf.antcontrib.cpptasks.distributer.CompileWorker
+ *     [-listen address] [-allow address[/bits]]... [-port port]
+ *     [-jobs jobs] [-dir directory]
+ * </pre>
+ *
+ * Each request is compiled in an empty directory by running the command line
+ * built by the compiler adapter of the client, so any compiler installed on
+ * the worker can be used. Since the worker runs whatever command line it is
+ * sent, it only accepts connections from the local host and, like distccd,
+ * from the networks given with -allow. Without -listen, it listens on the
+ * loopback address unless -allow is given.
+ */
+public final class CompileWorker {
+    /** Port of the worker, distinct from that of distccd. */
+    public static final int DEFAULT_PORT = 3641;
+    /** Read timeout in milliseconds. */
+    private static final int IO_TIMEOUT = 300000;
+    private final ServerSocketChannel server;
+    private final ExecutorService executor;
+    private final File dir;
+    private final Thread acceptor;
+    /** Allowed networks as address bytes and prefix length. */
+    private final byte[][] allowedAddresses;
+    private final int[] allowedBits;
+    private int compilations;
+
+    /**
+     * Constructor.
+     *
+     * @param address
+     *            address to listen on, null for all addresses
+     * @param port
+     *            port, 0 for any free port
+     * @param jobs
+     *            maximum number of concurrent compilations
+     * @param dir
+     *            directory for the files of each compilation
+     * @throws IOException
+     *             if the port could not be opened
+     */
+    public CompileWorker(final InetAddress address, final int port,
+            final int jobs, final File dir) throws IOException {
+        this(address, port, jobs, dir, new String[0]);
+    }
+    /**
+     * Constructor.
+     *
+     * @param address
+     *            address to listen on, null for all addresses
+     * @param port
+     *            port, 0 for any free port
+     * @param jobs
+     *            maximum number of concurrent compilations
+     * @param dir
+     *            directory for the files of each compilation
+     * @param allow
+     *            networks, as address or address/bits, from which
+     *            connections are accepted in addition to the local host
+     * @throws IOException
+     *             if the port could not be opened or a network is not valid
+     */
+    public CompileWorker(final InetAddress address, final int port,
+            final int jobs, final File dir, final String[] allow)
+            throws IOException {
+        allowedAddresses = new byte[allow.length][];
+        allowedBits = new int[allow.length];
+        for (int i = 0; i < allow.length; i++) {
+            final int slash = allow[i].indexOf('/');
+            final String host = slash < 0 ? allow[i] : allow[i].substring(0,
+                    slash);
+            allowedAddresses[i] = InetAddress.getByName(host).getAddress();
+            allowedBits[i] = allowedAddresses[i].length * 8;
+            if (slash >= 0) {
+                try {
+                    allowedBits[i] = Integer.parseInt(allow[i]
+                            .substring(slash + 1));
+                } catch (final NumberFormatException ex) {
+                    allowedBits[i] = -1;
+                }
+                if (allowedBits[i] < 0
+                        || allowedBits[i] > allowedAddresses[i].length * 8) {
+                    throw new IOException("Invalid network: " + allow[i]);
+                }
+            }
+        }
+        this.dir = dir;
+        dir.mkdirs();
+        server = ServerSocketChannel.open();
+        server.socket().setReuseAddress(true);
+        server.socket().bind(new InetSocketAddress(address, port), 50);
+        executor = Executors.newFixedThreadPool(Math.max(1, jobs));
+        acceptor = new Thread(new Runnable() {
+            public void run() {
+                accept();
+            }
+        }, "cpptasks-worker");
+    }
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+    /**
+     * Gets the number of requests compiled.
+     *
+     * @return number of requests
+     */
+    public synchronized int getCompilations() {
+        return compilations;
+    }
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        acceptor.start();
+    }
+    /**
+     * Stops accepting requests and waits for running compilations.
+     */
+    public void stop() throws IOException {
+        server.close();
+        try {
+            acceptor.join();
+            executor.shutdown();
+            executor.awaitTermination(IO_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    /**
+     * Determines if connections are accepted from an address.
+     *
+     * @param peer
+     *            address of the client
+     * @return true if the client is the local host or on an allowed
+     *         network
+     */
+    public boolean isAllowed(final InetAddress peer) {
+        if (peer.isLoopbackAddress()) {
+            return true;
+        }
+        final byte[] bytes = peer.getAddress();
+        for (int i = 0; i < allowedAddresses.length; i++) {
+            final byte[] allowed = allowedAddresses[i];
+            if (allowed.length != bytes.length) {
+                continue;
+            }
+            final int bits = allowedBits[i];
+            boolean matches = true;
+            for (int j = 0; j < bits / 8 && matches; j++) {
+                matches = allowed[j] == bytes[j];
+            }
+            if (matches && bits % 8 != 0) {
+                final int mask = 0xFF00 >> (bits % 8);
+                matches = ((allowed[bits / 8] ^ bytes[bits / 8]) & mask) == 0;
+            }
+            if (matches) {
+                return true;
+            }
+        }
+        return false;
+    }
+    private void accept() {
+        try {
+            while (true) {
+                final SocketChannel channel = server.accept();
+                final InetAddress peer = channel.socket().getInetAddress();
+                if (!isAllowed(peer)) {
+                    System.err.println("Rejected request from " + peer);
+                    try {
+                        channel.close();
+                    } catch (final IOException ex) {
+                    }
+                    continue;
+                }
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            serve(channel);
+                        } catch (final IOException ex) {
+                            System.err.println("Request from "
+                                    + channel.socket().getInetAddress()
+                                    + " failed: " + ex.toString());
+                        } finally {
+                            try {
+                                channel.close();
+                            } catch (final IOException ex) {
+                            }
+                        }
+                    }
+                });
+            }
+        } catch (final IOException ex) {
+            //
+            //   closed by stop()
+            //
+        }
+    }
+    /**
+     * Checks that a file name sent by a client names a file of the
+     * compilation directory.
+     */
+    private static String checkName(final String name) throws IOException {
+        if (name.length() == 0 || name.equals(".") || name.equals("..")
+                || name.indexOf('/') >= 0 || name.indexOf('\\') >= 0
+                || name.indexOf(File.separatorChar) >= 0) {
+            throw new IOException("Invalid file name: " + name);
+        }
+        return name;
+    }
+    private void serve(final SocketChannel channel) throws IOException {
+        final Socket socket = channel.socket();
+        socket.setTcpNoDelay(true);
+        socket.setSoTimeout(IO_TIMEOUT);
+        final InputStream in = socket.getInputStream();
+        final DataInputStream request = new DataInputStream(in);
+        final long version = DistccClient.readToken(request, "CPPT");
+        if (version != WorkerClient.PROTOCOL_VERSION) {
+            throw new IOException("Unsupported protocol "
+                    + Long.toString(version));
+        }
+        final boolean compress = DistccClient.readToken(request, "COMP") != 0;
+        final long argc = DistccClient.readToken(request, "ARGC");
+        if (argc <= 0 || argc > 65536) {
+            throw new IOException("Invalid argument count "
+                    + Long.toString(argc));
+        }
+        final String[] args = new String[(int) argc];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = new String(DistccClient.readString(request, "ARGV"),
+                    "UTF-8");
+        }
+        final String sourceName = checkName(new String(DistccClient
+                .readString(request, "NAMI"), "UTF-8"));
+        final String objectName = checkName(new String(DistccClient
+                .readString(request, "NAMO"), "UTF-8"));
+        final File jobDir = Files.createTempDirectory(dir.toPath(), "job")
+                .toFile();
+        try {
+            final long length = DistccClient.readToken(request, "DOTI");
+            WorkerClient.receiveFile(Channels.newChannel(in), length,
+                    new File(jobDir, sourceName), compress);
+            final File stdout = new File(jobDir, "stdout.tmp");
+            final File stderr = new File(jobDir, "stderr.tmp");
+            int exitCode;
+            try {
+                final ProcessBuilder builder = new ProcessBuilder(args);
+                builder.directory(jobDir);
+                builder.redirectOutput(stdout);
+                builder.redirectError(stderr);
+                exitCode = builder.start().waitFor();
+            } catch (final IOException ex) {
+                //
+                //   compiler not found, reported as by a shell
+                //
+                Files.write(stderr.toPath(), ex.toString().getBytes("UTF-8"));
+                exitCode = 127;
+            } catch (final InterruptedException ex) {
+                throw new IOException("Interrupted");
+            }
+            synchronized (this) {
+                compilations++;
+            }
+            final File object = new File(jobDir, objectName);
+            if (exitCode == 0 && !object.isFile()) {
+                Files.write(stderr.toPath(), (objectName + " not written")
+                        .getBytes("UTF-8"));
+                exitCode = 1;
+            }
+            final ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DistccClient.writeToken(header, "DONE",
+                    WorkerClient.PROTOCOL_VERSION);
+            DistccClient.writeToken(header, "STAT", (exitCode & 0xFF) << 8);
+            DistccClient.writeString(header, "SERR", readAll(stderr));
+            DistccClient.writeString(header, "SOUT", readAll(stdout));
+            if (exitCode == 0) {
+                WorkerClient.sendFile(channel, header, "DOTO", object,
+                        compress);
+            } else {
+                DistccClient.writeToken(header, "DOTO", 0);
+                WorkerClient.writeFully(channel, header);
+            }
+        } finally {
+            delete(jobDir);
+        }
+    }
+    private static byte[] readAll(final File file) throws IOException {
+        if (file.exists()) {
+            return Files.readAllBytes(file.toPath());
+        }
+        return new byte[0];
+    }
+    private static void delete(final File dir) {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+        }
+        dir.delete();
+    }
+    /**
+     * Runs a worker until the process is terminated.
+     *
+     * @param args
+     *            -listen address, any number of -allow address[/bits], -port
+     *            port, -jobs jobs and -dir directory, all optional
+     */
+    public static void main(final String[] args) throws IOException {
+        InetAddress address = null;
+        final Vector allow = new Vector();
+        int port = DEFAULT_PORT;
+        int jobs = Runtime.getRuntime().availableProcessors();
+        File dir = new File(System.getProperty("java.io.tmpdir"),
+                "cpptasks-worker");
+        final Vector unknown = new Vector();
+        for (int i = 0; i < args.length; i++) {
+            final boolean hasValue = i + 1 < args.length;
+            if (args[i].equals("-listen") && hasValue) {
+                address = InetAddress.getByName(args[++i]);
+            } else if (args[i].equals("-allow") && hasValue) {
+                allow.addElement(args[++i]);
+            } else if (args[i].equals("-port") && hasValue) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-jobs") && hasValue) {
+                jobs = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-dir") && hasValue) {
+                dir = new File(args[++i]);
+            } else {
+                unknown.addElement(args[i]);
+            }
+        }
+        if (!unknown.isEmpty()) {
+            System.err.println("Usage: CompileWorker [-listen address]"
+                    + " [-allow address[/bits]]... [-port port] [-jobs jobs]"
+                    + " [-dir directory]");
+            System.exit(1);
+        }
+        //
+        //   only reachable from the local host unless
+        //      other hosts are allowed
+        //
+        if (address == null && allow.isEmpty()) {
+            address = InetAddress.getLoopbackAddress();
+        }
+        final String[] allowed = new String[allow.size()];
+        allow.copyInto(allowed);
+        final CompileWorker worker = new CompileWorker(address, port, jobs,
+                dir, allowed);
+        worker.start();
+        System.out.println("Compiling up to " + Integer.toString(jobs)
+                + " sources at a time on port "
+                + Integer.toString(worker.getPort()) + ".");
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks.distributer;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+/**
+ * Client side of version 1 of the distcc protocol.
+ *
+ * A request consists of the DIST, ARGC, ARGV and DOTI tokens, carrying the
+ * compiler command line and the preprocessed source, and the response of
+ * the DONE, STAT, SERR, SOUT and DOTO tokens, carrying the wait status,
+ * diagnostics and object file. Each token is a four character name followed
+ * by a value of eight hexadecimal digits which, for strings, is the length
+ * of the data that follows.
+ */
+public final class DistccClient implements RemoteCompiler {
+    /** Port of distccd. */
+    public static final int DEFAULT_PORT = 3632;
+    private static final int PROTOCOL_VERSION = 1;
+    private final String host;
+    private final int port;
+    private final int connectTimeout;
+    private final int ioTimeout;
+    private final boolean cork;
+
+    /**
+     * Constructor.
+     *
+     * @param host
+     *            host name
+     * @param port
+     *            port
+     * @param connectTimeout
+     *            connection timeout in milliseconds
+     * @param ioTimeout
+     *            timeout in milliseconds for each read, which includes the
+     *            time taken by the remote compilation
+     * @param cork
+     *            if true, the whole request is assembled and sent at once,
+     *            otherwise the header is sent before the source is read
+     */
+    public DistccClient(final String host, final int port,
+            final int connectTimeout, final int ioTimeout, final boolean cork) {
+        if (host == null) {
+            throw new NullPointerException("host");
+        }
+        this.host = host;
+        this.port = port;
+        this.connectTimeout = connectTimeout;
+        this.ioTimeout = ioTimeout;
+        this.cork = cork;
+    }
+    /**
+     * Compiles a preprocessed source on the remote host. The server replaces
+     * the names of the preprocessed source and object file in the command
+     * line by its own temporary files.
+     */
+    public RemoteResult compile(final String[] args, final File source,
+            final File object) throws IOException {
+        final Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(!cork);
+            socket.connect(new InetSocketAddress(host, port), connectTimeout);
+            socket.setSoTimeout(ioTimeout);
+            final long length = source.length();
+            final OutputStream out;
+            if (cork) {
+                //
+                //   hold back partial segments until the request
+                //      is complete, as does TCP_CORK
+                //
+                out = new BufferedOutputStream(socket.getOutputStream(),
+                        (int) Math.min(length + 4096, 1 << 20));
+            } else {
+                out = new BufferedOutputStream(socket.getOutputStream());
+            }
+            writeToken(out, "DIST", PROTOCOL_VERSION);
+            writeToken(out, "ARGC", args.length);
+            for (int i = 0; i < args.length; i++) {
+                writeString(out, "ARGV", args[i].getBytes("UTF-8"));
+            }
+            writeToken(out, "DOTI", length);
+            if (!cork) {
+                out.flush();
+            }
+            final InputStream in = new FileInputStream(source);
+            try {
+                final byte[] buf = new byte[65536];
+                long remaining = length;
+                while (remaining > 0) {
+                    final int count = in.read(buf, 0, (int) Math.min(
+                            buf.length, remaining));
+                    if (count < 0) {
+                        throw new IOException(source + " truncated");
+                    }
+                    out.write(buf, 0, count);
+                    remaining -= count;
+                }
+            } finally {
+                in.close();
+            }
+            out.flush();
+            final DataInputStream response = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream()));
+            final long version = readToken(response, "DONE");
+            if (version != PROTOCOL_VERSION) {
+                throw new IOException(host + " replied with protocol "
+                        + Long.toString(version));
+            }
+            final int status = (int) readToken(response, "STAT");
+            final byte[] stderr = readString(response, "SERR");
+            final byte[] stdout = readString(response, "SOUT");
+            final RemoteResult result = new RemoteResult(status, stdout,
+                    stderr);
+            //
+            //   an empty object file follows a failed compilation
+            //
+            final byte[] content = readString(response, "DOTO");
+            if (result.getExitCode() == 0) {
+                write(object, content);
+            }
+            return result;
+        } finally {
+            socket.close();
+        }
+    }
+    static void writeToken(final OutputStream out, final String name,
+            final long value) throws IOException {
+        final String hex = Long.toHexString(value);
+        final StringBuffer buf = new StringBuffer(12);
+        buf.append(name);
+        for (int i = hex.length(); i < 8; i++) {
+            buf.append('0');
+        }
+        buf.append(hex);
+        out.write(buf.toString().getBytes("US-ASCII"));
+    }
+    static void writeString(final OutputStream out, final String name,
+            final byte[] value) throws IOException {
+        writeToken(out, name, value.length);
+        out.write(value);
+    }
+    /**
+     * Reads a token.
+     *
+     * @return value of the token
+     * @throws IOException
+     *             if the next token does not have the expected name
+     */
+    static long readToken(final DataInputStream in, final String name)
+            throws IOException {
+        final byte[] token = new byte[12];
+        in.readFully(token);
+        final String value = new String(token, "US-ASCII");
+        if (!value.startsWith(name)) {
+            throw new IOException("Expected " + name + " but received "
+                    + value);
+        }
+        try {
+            return Long.parseLong(value.substring(4), 16);
+        } catch (final NumberFormatException ex) {
+            throw new IOException("Invalid " + name + " token: " + value);
+        }
+    }
+    static byte[] readString(final DataInputStream in, final String name)
+            throws IOException {
+        final long length = readToken(in, name);
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException(name + " too long");
+        }
+        final byte[] value = new byte[(int) length];
+        in.readFully(value);
+        return value;
+    }
+    /**
+     * Creates a temporary file next to a file, to be renamed once complete
+     * so that a partial file is never seen under its final name.
+     */
+    static File createTempFile(final File file) throws IOException {
+        return File.createTempFile(file.getName(), ".tmp", file
+                .getAbsoluteFile().getParentFile());
+    }
+    static void rename(final File temp, final File file) throws IOException {
+        file.delete();
+        if (!temp.renameTo(file)) {
+            throw new IOException("Unable to rename " + temp + " to " + file);
+        }
+    }
+    private static void write(final File file, final byte[] content)
+            throws IOException {
+        final File temp = createTempFile(file);
+        try {
+            final FileOutputStream out = new FileOutputStream(temp);
+            try {
+                out.write(content);
+            } finally {
+                out.close();
+            }
+            rename(temp, file);
+        } finally {
+            temp.delete();
+        }
+    }
+}
@@ -0,0 +1,382 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks.distributer;
+import java.io.File;
+import java.io.IOException;
+
+import net.sf.antcontrib.cpptasks.CCTask;
+import net.sf.antcontrib.cpptasks.DistributerDef;
+import net.sf.antcontrib.cpptasks.DistributerMap;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+/**
+ * Dispatches preprocessed sources to the hosts of a distributer using the
+ * distcc protocol, or the cpptasks protocol of CompileWorker.
+ *
+ * Each host runs at most as many compilations as its limit, host/8 in the
+ * hosts attribute allowing eight. Among the hosts with a free slot, the one
+ * expected to finish first given its average compilation time and current
+ * load is chosen. A host that could not be reached is not used again until
+ * a backoff period, which doubles with each consecutive failure, has
+ * elapsed. A source is compiled locally when every host is busy or backing
+ * off. Hosts named localhost only stand for local compilation and are
+ * skipped.
+ *
+ * May be shared by compilations running on several threads.
+ */
+public final class Distributer {
+    /** Returned by compile() when the source was not compiled remotely. */
+    public static final int NOT_DISTRIBUTED = -1;
+    /** Connection timeout in milliseconds. */
+    private static final int CONNECT_TIMEOUT = 5000;
+    /** Read timeout in milliseconds, as used by distcc. */
+    private static final int IO_TIMEOUT = 300000;
+    /** Backoff after the first failure of a host in milliseconds. */
+    private static final long MIN_BACKOFF = 1000;
+    /** Longest backoff in milliseconds. */
+    private static final long MAX_BACKOFF = 60000;
+    /** Weight of the latest compilation time in the average. */
+    private static final double LATENCY_WEIGHT = 0.3;
+    private final DistributerHost[] hosts;
+    private final HostState[] states;
+    private final DistributerMap[] maps;
+    private final boolean cork;
+    private final boolean worker;
+    private int localCompiles;
+
+    /**
+     * Load, health and statistics of a host, guarded by the distributer.
+     */
+    private static final class HostState {
+        private final DistributerHost host;
+        private int active;
+        private int consecutiveFailures;
+        private long backoffUntil;
+        /** Average compilation time in milliseconds, 0 if unknown. */
+        private double latency;
+        private int compiled;
+        private int errors;
+        private int failures;
+        private long busyTime;
+        private long bytes;
+        public HostState(final DistributerHost host) {
+            this.host = host;
+        }
+        /**
+         * Gets the expected time for a new compilation to finish relative to
+         * other hosts.
+         */
+        public double getScore() {
+            return latency * (active + 1) / host.getLimit();
+        }
+        public boolean isAvailable(final long now) {
+            return !host.isLocal() && active < host.getLimit()
+                    && now >= backoffUntil;
+        }
+    }
+
+    /**
+     * Creates a distributer for a distributer definition.
+     *
+     * @param def
+     *            distributer definition
+     */
+    public Distributer(final DistributerDef def) {
+        this(def, def.getProtocol() != null
+                && "cpptasks".equals(def.getProtocol().getValue()));
+    }
+    private Distributer(final DistributerDef def, final boolean worker) {
+        this(DistributerHost.parse(def.getHosts(), worker
+                ? CompileWorker.DEFAULT_PORT
+                : DistccClient.DEFAULT_PORT), def.getMaps(),
+                def.getTcpcork() != 0, worker);
+    }
+    /**
+     * Constructor.
+     *
+     * @param hosts
+     *            hosts
+     * @param maps
+     *            local to remote file name maps
+     * @param cork
+     *            if true, requests are sent in one piece
+     */
+    public Distributer(final DistributerHost[] hosts,
+            final DistributerMap[] maps, final boolean cork) {
+        this(hosts, maps, cork, false);
+    }
+    /**
+     * Constructor.
+     *
+     * @param hosts
+     *            hosts
+     * @param maps
+     *            local to remote file name maps, used with distcc
+     * @param cork
+     *            if true, distcc requests are sent in one piece
+     * @param worker
+     *            if true, hosts run CompileWorker instead of distccd
+     */
+    public Distributer(final DistributerHost[] hosts,
+            final DistributerMap[] maps, final boolean cork,
+            final boolean worker) {
+        this.hosts = hosts.clone();
+        this.maps = maps.clone();
+        this.cork = cork;
+        this.worker = worker;
+        states = new HostState[hosts.length];
+        for (int i = 0; i < hosts.length; i++) {
+            states[i] = new HostState(hosts[i]);
+        }
+    }
+    public DistributerHost[] getHosts() {
+        return hosts.clone();
+    }
+    /**
+     * Converts a local file name to the name of the same file on a host.
+     *
+     * @param host
+     *            host name
+     * @param file
+     *            local file
+     * @return name given by the first applicable map, the file name without
+     *         directory if none applies
+     */
+    public String toRemote(final String host, final File file) {
+        for (int i = 0; i < maps.length; i++) {
+            if (maps[i].getLocal() != null) {
+                final String remote = maps[i].toRemote(host, file);
+                if (remote != null) {
+                    return remote;
+                }
+            }
+        }
+        return file.getName();
+    }
+    /**
+     * Determines if a host has a free slot, so that a source is worth
+     * preprocessing for remote compilation.
+     *
+     * @return true if compile() would currently find a host
+     */
+    public synchronized boolean hasFreeSlot() {
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < states.length; i++) {
+            if (states[i].isAvailable(now)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    /**
+     * Takes a slot of the available host expected to finish first.
+     *
+     * @return host state, null if no host is available
+     */
+    private synchronized HostState acquire() {
+        final long now = System.currentTimeMillis();
+        HostState best = null;
+        for (int i = 0; i < states.length; i++) {
+            final HostState state = states[i];
+            if (state.isAvailable(now)) {
+                if (best == null || state.getScore() < best.getScore()
+                        || (state.getScore() == best.getScore()
+                                && state.active < best.active)) {
+                    best = state;
+                }
+            }
+        }
+        if (best != null) {
+            best.active++;
+        }
+        return best;
+    }
+    private synchronized void release(final HostState state,
+            final boolean reached, final int exitCode, final long elapsed,
+            final long length) {
+        state.active--;
+        if (reached) {
+            state.consecutiveFailures = 0;
+            state.backoffUntil = 0;
+            if (state.latency == 0) {
+                state.latency = elapsed;
+            } else {
+                state.latency += LATENCY_WEIGHT * (elapsed - state.latency);
+            }
+            state.busyTime += elapsed;
+            state.bytes += length;
+            if (exitCode == 0) {
+                state.compiled++;
+            } else {
+                state.errors++;
+            }
+        } else {
+            state.failures++;
+            state.consecutiveFailures++;
+            final long backoff = MIN_BACKOFF
+                    << Math.min(state.consecutiveFailures - 1, 16);
+            state.backoffUntil = System.currentTimeMillis()
+                    + Math.min(backoff, MAX_BACKOFF);
+        }
+    }
+    /**
+     * Records that a source was compiled locally, for the statistics.
+     */
+    public synchronized void compiledLocally() {
+        localCompiles++;
+    }
+    /**
+     * Compiles a preprocessed source on one of the hosts.
+     *
+     * @param task
+     *            task used for logging
+     * @param args
+     *            compiler command line, arguments naming the preprocessed
+     *            source or object file are replaced by their remote names
+     * @param source
+     *            preprocessed source
+     * @param object
+     *            object file to be written
+     * @return exit code of the remote compiler, NOT_DISTRIBUTED if the
+     *         source should be compiled locally
+     */
+    public int compile(final CCTask task, final String[] args,
+            final File source, final File object) {
+        HostState state;
+        while ((state = acquire()) != null) {
+            final DistributerHost host = state.host;
+            final String[] remoteArgs;
+            final RemoteCompiler client;
+            if (worker) {
+                remoteArgs = toWorker(args, source, object);
+                client = new WorkerClient(host.getName(), host.getPort(),
+                        CONNECT_TIMEOUT, IO_TIMEOUT, host.isCompressed());
+            } else {
+                remoteArgs = new String[args.length];
+                for (int j = 0; j < args.length; j++) {
+                    remoteArgs[j] = args[j];
+                    if (args[j].equals(source.getPath())) {
+                        remoteArgs[j] = toRemote(host.getName(), source);
+                    } else if (args[j].equals(object.getPath())) {
+                        remoteArgs[j] = toRemote(host.getName(), object);
+                    }
+                }
+                client = new DistccClient(host.getName(), host.getPort(),
+                        CONNECT_TIMEOUT, IO_TIMEOUT, cork);
+            }
+            final long start = System.currentTimeMillis();
+            boolean reached = false;
+            int exitCode = NOT_DISTRIBUTED;
+            try {
+                task.log("Compiling " + source.getName() + " on " + host,
+                        Project.MSG_VERBOSE);
+                final RemoteResult result = client.compile(remoteArgs,
+                        source, object);
+                reached = true;
+                exitCode = result.getExitCode();
+                log(task, result.getStdout(), Project.MSG_INFO);
+                log(task, result.getStderr(), Project.MSG_ERR);
+                return exitCode;
+            } catch (final IOException ex) {
+                if (reached) {
+                    throw new BuildException(ex);
+                }
+                task.log("Unable to compile on " + host + ": "
+                        + ex.toString(), Project.MSG_VERBOSE);
+            } finally {
+                release(state, reached, exitCode, System.currentTimeMillis()
+                        - start, source.length());
+            }
+        }
+        return NOT_DISTRIBUTED;
+    }
+    /**
+     * Names the preprocessed source and object file without directory, as
+     * the worker compiles in its own directory. Arguments such as /Fo
+     * followed by the object file name are also converted.
+     */
+    private static String[] toWorker(final String[] args, final File source,
+            final File object) {
+        final String sourcePath = source.getPath();
+        final String objectPath = object.getPath();
+        final String[] workerArgs = new String[args.length];
+        for (int i = 0; i < args.length; i++) {
+            workerArgs[i] = args[i];
+            if (args[i].endsWith(sourcePath)) {
+                workerArgs[i] = args[i].substring(0, args[i].length()
+                        - sourcePath.length())
+                        + source.getName();
+            } else if (args[i].endsWith(objectPath)) {
+                workerArgs[i] = args[i].substring(0, args[i].length()
+                        - objectPath.length())
+                        + object.getName();
+            }
+        }
+        return workerArgs;
+    }
+    /**
+     * Logs the number of compilations and the throughput of each host.
+     *
+     * @param task
+     *            task used for logging
+     */
+    public synchronized void finish(final CCTask task) {
+        boolean used = false;
+        for (int i = 0; i < states.length; i++) {
+            final HostState state = states[i];
+            if (state.compiled + state.errors + state.failures == 0) {
+                continue;
+            }
+            used = true;
+            final int count = state.compiled + state.errors;
+            final StringBuffer buf = new StringBuffer("Distributer: ");
+            buf.append(state.host.toString());
+            buf.append(": ");
+            buf.append(state.compiled);
+            buf.append(" compiled, ");
+            buf.append(state.errors);
+            buf.append(" failed, ");
+            buf.append(state.failures);
+            buf.append(" unreachable");
+            if (count > 0) {
+                buf.append(", ");
+                buf.append(state.busyTime / count);
+                buf.append(" ms per source, ");
+                buf.append(state.bytes * 1000 / 1024
+                        / Math.max(1, state.busyTime));
+                buf.append(" KB/s");
+            }
+            buf.append('.');
+            task.log(buf.toString());
+        }
+        if (used || localCompiles > 0) {
+            task.log("Distributer: " + Integer.toString(localCompiles)
+                    + " compiled locally.");
+        }
+    }
+    private static void log(final CCTask task, final byte[] output,
+            final int level) throws IOException {
+        if (output.length > 0) {
+            String text = new String(output, "UTF-8");
+            if (text.endsWith("\n")) {
+                text = text.substring(0, text.length() - 1);
+            }
+            task.log(text, level);
+        }
+    }
+}
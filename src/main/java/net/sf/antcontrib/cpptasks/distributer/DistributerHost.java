@@ -0,0 +1,165 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks.distributer;
+import java.util.StringTokenizer;
+import java.util.Vector;
+
+import org.apache.tools.ant.BuildException;
+/**
+ * A host of a distributer, as listed in the hosts attribute.
+ */
+public final class DistributerHost {
+    /** Name of the host that stands for local compilation. */
+    public static final String LOCALHOST = "localhost";
+    /** Concurrent jobs of a host without an explicit limit. */
+    public static final int DEFAULT_LIMIT = 4;
+    private final String name;
+    private final int port;
+    private final int limit;
+    private final boolean compressed;
+
+    /**
+     * Constructor.
+     *
+     * @param name
+     *            host name
+     * @param port
+     *            port
+     * @param limit
+     *            maximum number of concurrent jobs
+     */
+    public DistributerHost(final String name, final int port, final int limit) {
+        this(name, port, limit, false);
+    }
+    /**
+     * Constructor.
+     *
+     * @param name
+     *            host name
+     * @param port
+     *            port
+     * @param limit
+     *            maximum number of concurrent jobs
+     * @param compressed
+     *            if true, files sent to and from the host are compressed
+     */
+    public DistributerHost(final String name, final int port,
+            final int limit, final boolean compressed) {
+        if (name == null) {
+            throw new NullPointerException("name");
+        }
+        this.name = name;
+        this.port = port;
+        this.limit = limit;
+        this.compressed = compressed;
+    }
+    /**
+     * Parses a host list in the format of DISTCC_HOSTS: hosts separated by
+     * white space, each optionally followed by :port, /limit and ,options.
+     * The lzo option requests compression, which the cpptasks protocol
+     * performs with deflate; other options are ignored.
+     *
+     * @param hosts
+     *            host list, may be null
+     * @param defaultPort
+     *            port of hosts without an explicit port
+     * @return hosts
+     * @throws BuildException
+     *             if a port or limit is not a positive number
+     */
+    public static DistributerHost[] parse(final String hosts,
+            final int defaultPort) {
+        final Vector parsed = new Vector();
+        if (hosts != null) {
+            final StringTokenizer tokens = new StringTokenizer(hosts);
+            while (tokens.hasMoreTokens()) {
+                final String token = tokens.nextToken();
+                String spec = token;
+                boolean compressed = false;
+                final int comma = spec.indexOf(',');
+                if (comma >= 0) {
+                    final StringTokenizer options = new StringTokenizer(spec
+                            .substring(comma + 1), ",");
+                    while (options.hasMoreTokens()) {
+                        if (options.nextToken().equals("lzo")) {
+                            compressed = true;
+                        }
+                    }
+                    spec = spec.substring(0, comma);
+                }
+                int limit = DEFAULT_LIMIT;
+                final int slash = spec.indexOf('/');
+                if (slash >= 0) {
+                    limit = parsePositive(spec.substring(slash + 1), token);
+                    spec = spec.substring(0, slash);
+                }
+                int port = defaultPort;
+                final int colon = spec.indexOf(':');
+                if (colon >= 0) {
+                    port = parsePositive(spec.substring(colon + 1), token);
+                    spec = spec.substring(0, colon);
+                }
+                if (spec.length() == 0) {
+                    throw new BuildException("Invalid host: " + token);
+                }
+                parsed.addElement(new DistributerHost(spec, port, limit,
+                        compressed));
+            }
+        }
+        final DistributerHost[] array = new DistributerHost[parsed.size()];
+        parsed.copyInto(array);
+        return array;
+    }
+    private static int parsePositive(final String value, final String token) {
+        try {
+            final int number = Integer.parseInt(value);
+            if (number > 0) {
+                return number;
+            }
+        } catch (final NumberFormatException ex) {
+        }
+        throw new BuildException("Invalid host: " + token);
+    }
+    public int getLimit() {
+        return limit;
+    }
+    public String getName() {
+        return name;
+    }
+    public int getPort() {
+        return port;
+    }
+    /**
+     * Determines if files sent to and from the host are compressed.
+     *
+     * @return true if compressed
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+    /**
+     * Determines if this entry stands for local compilation.
+     *
+     * @return true if local
+     */
+    public boolean isLocal() {
+        return LOCALHOST.equals(name);
+    }
+    public String toString() {
+        return name + ":" + Integer.toString(port);
+    }
+}
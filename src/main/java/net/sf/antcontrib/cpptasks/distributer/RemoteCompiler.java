@@ -0,0 +1,41 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks.distributer;
+import java.io.File;
+import java.io.IOException;
+/**
+ * Client of a server that compiles preprocessed sources.
+ */
+public interface RemoteCompiler {
+    /**
+     * Compiles a preprocessed source on the server.
+     *
+     * @param args
+     *            compiler command line naming the preprocessed source and
+     *            the object file
+     * @param source
+     *            preprocessed source
+     * @param object
+     *            object file, written only if the compilation succeeded
+     * @return result
+     * @throws IOException
+     *             if the server could not be reached or did not follow the
+     *             protocol
+     */
+    RemoteResult compile(String[] args, File source, File object)
+            throws IOException;
+}
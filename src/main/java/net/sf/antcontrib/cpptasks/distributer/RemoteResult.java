@@ -0,0 +1,62 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks.distributer;
+/**
+ * Result of a remote compilation.
+ */
+public final class RemoteResult {
+    private final int status;
+    private final byte[] stdout;
+    private final byte[] stderr;
+    /**
+     * Constructor.
+     *
+     * @param status
+     *            wait status of the compiler, as returned by waitpid
+     * @param stdout
+     *            standard output of the compiler
+     * @param stderr
+     *            standard error of the compiler
+     */
+    public RemoteResult(final int status, final byte[] stdout,
+            final byte[] stderr) {
+        this.status = status;
+        this.stdout = stdout;
+        this.stderr = stderr;
+    }
+    /**
+     * Gets the exit code of the compiler.
+     *
+     * @return exit code, 0 on success
+     */
+    public int getExitCode() {
+        final int exitCode = (status >> 8) & 0xFF;
+        if (exitCode == 0 && status != 0) {
+            //
+            //   terminated by a signal
+            //
+            return 128 + (status & 0x7F);
+        }
+        return exitCode;
+    }
+    public byte[] getStderr() {
+        return stderr;
+    }
+    public byte[] getStdout() {
+        return stdout;
+    }
+}
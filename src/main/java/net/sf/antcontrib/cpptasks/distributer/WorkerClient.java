@@ -0,0 +1,261 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks.distributer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+/**
+ * Client of CompileWorker.
+ *
+ * The protocol follows the framing of distcc. A request consists of the
+ * CPPT, COMP, ARGC, ARGV, NAMI, NAMO and DOTI tokens, carrying the protocol
+ * version, whether files are compressed, the compiler command line, the
+ * names of the preprocessed source and object file used in the command
+ * line, and the preprocessed source. The response consists of the DONE,
+ * STAT, SERR, SOUT and DOTO tokens as with distcc.
+ *
+ * Uncompressed files are sent with FileChannel.transferTo and received with
+ * FileChannel.transferFrom, sparing copies through the Java heap.
+ * Compressed files use deflate at its fastest level.
+ */
+public final class WorkerClient implements RemoteCompiler {
+    /** Version of the protocol. */
+    static final int PROTOCOL_VERSION = 1;
+    private final String host;
+    private final int port;
+    private final int connectTimeout;
+    private final int ioTimeout;
+    private final boolean compress;
+
+    /**
+     * Constructor.
+     *
+     * @param host
+     *            host name
+     * @param port
+     *            port
+     * @param connectTimeout
+     *            connection timeout in milliseconds
+     * @param ioTimeout
+     *            timeout in milliseconds for each read, which includes the
+     *            time taken by the remote compilation
+     * @param compress
+     *            if true, the preprocessed source and object file are
+     *            compressed
+     */
+    public WorkerClient(final String host, final int port,
+            final int connectTimeout, final int ioTimeout,
+            final boolean compress) {
+        if (host == null) {
+            throw new NullPointerException("host");
+        }
+        this.host = host;
+        this.port = port;
+        this.connectTimeout = connectTimeout;
+        this.ioTimeout = ioTimeout;
+        this.compress = compress;
+    }
+    /**
+     * Compiles a preprocessed source on the worker. The worker compiles in
+     * an empty directory, so the command line should name the preprocessed
+     * source and object file without directory.
+     */
+    public RemoteResult compile(final String[] args, final File source,
+            final File object) throws IOException {
+        final SocketChannel channel = SocketChannel.open();
+        try {
+            final Socket socket = channel.socket();
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(host, port), connectTimeout);
+            socket.setSoTimeout(ioTimeout);
+            final ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DistccClient.writeToken(header, "CPPT", PROTOCOL_VERSION);
+            DistccClient.writeToken(header, "COMP", compress ? 1 : 0);
+            DistccClient.writeToken(header, "ARGC", args.length);
+            for (int i = 0; i < args.length; i++) {
+                DistccClient.writeString(header, "ARGV", args[i]
+                        .getBytes("UTF-8"));
+            }
+            DistccClient.writeString(header, "NAMI", source.getName()
+                    .getBytes("UTF-8"));
+            DistccClient.writeString(header, "NAMO", object.getName()
+                    .getBytes("UTF-8"));
+            sendFile(channel, header, "DOTI", source, compress);
+            //
+            //   the stream of the socket honors the read timeout
+            //      and does not read ahead
+            //
+            final InputStream in = socket.getInputStream();
+            final DataInputStream response = new DataInputStream(in);
+            final long version = DistccClient.readToken(response, "DONE");
+            if (version != PROTOCOL_VERSION) {
+                throw new IOException(host + " replied with protocol "
+                        + Long.toString(version));
+            }
+            final int status = (int) DistccClient.readToken(response, "STAT");
+            final byte[] stderr = DistccClient.readString(response, "SERR");
+            final byte[] stdout = DistccClient.readString(response, "SOUT");
+            final RemoteResult result = new RemoteResult(status, stdout,
+                    stderr);
+            final long length = DistccClient.readToken(response, "DOTO");
+            if (result.getExitCode() == 0) {
+                final File temp = DistccClient.createTempFile(object);
+                try {
+                    receiveFile(Channels.newChannel(in), length, temp,
+                            compress);
+                    DistccClient.rename(temp, object);
+                } finally {
+                    temp.delete();
+                }
+            }
+            return result;
+        } finally {
+            channel.close();
+        }
+    }
+    /**
+     * Sends a header followed by a token and the content of a file.
+     *
+     * @param channel
+     *            destination
+     * @param header
+     *            preceding tokens
+     * @param name
+     *            name of the token giving the length of the file
+     * @param file
+     *            file
+     * @param compress
+     *            if true, the file is compressed
+     */
+    static void sendFile(final WritableByteChannel channel,
+            final ByteArrayOutputStream header, final String name,
+            final File file, final boolean compress) throws IOException {
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            final FileChannel fileChannel = in.getChannel();
+            if (compress) {
+                final ByteArrayOutputStream compressed =
+                        new ByteArrayOutputStream();
+                final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                try {
+                    final OutputStream out = new DeflaterOutputStream(
+                            compressed, deflater, 65536);
+                    copy(in, out);
+                    out.close();
+                } finally {
+                    deflater.end();
+                }
+                DistccClient.writeToken(header, name, compressed.size());
+                compressed.writeTo(header);
+                writeFully(channel, header);
+            } else {
+                final long length = fileChannel.size();
+                DistccClient.writeToken(header, name, length);
+                writeFully(channel, header);
+                long position = 0;
+                while (position < length) {
+                    final long count = fileChannel.transferTo(position, length
+                            - position, channel);
+                    if (count <= 0) {
+                        throw new IOException(file + " truncated");
+                    }
+                    position += count;
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+    static void writeFully(final WritableByteChannel channel,
+            final ByteArrayOutputStream content) throws IOException {
+        final ByteBuffer buf = ByteBuffer.wrap(content.toByteArray());
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+    private static void copy(final InputStream in, final OutputStream out)
+            throws IOException {
+        final byte[] buf = new byte[65536];
+        int count;
+        while ((count = in.read(buf)) >= 0) {
+            out.write(buf, 0, count);
+        }
+    }
+    /**
+     * Receives the content of a file.
+     *
+     * @param channel
+     *            source
+     * @param length
+     *            number of bytes to be read from the source
+     * @param file
+     *            file to be written
+     * @param compressed
+     *            if true, the content is decompressed
+     */
+    static void receiveFile(final ReadableByteChannel channel,
+            final long length, final File file, final boolean compressed)
+            throws IOException {
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            if (compressed) {
+                if (length > Integer.MAX_VALUE) {
+                    throw new IOException(file + " too long");
+                }
+                final ByteBuffer buf = ByteBuffer.allocate((int) length);
+                while (buf.hasRemaining()) {
+                    if (channel.read(buf) < 0) {
+                        throw new IOException(file + " truncated");
+                    }
+                }
+                final InputStream in = new InflaterInputStream(
+                        new ByteArrayInputStream(buf.array()));
+                copy(in, out);
+            } else {
+                final FileChannel fileChannel = out.getChannel();
+                long position = 0;
+                while (position < length) {
+                    final long count = fileChannel.transferFrom(channel,
+                            position, length - position);
+                    if (count <= 0) {
+                        throw new IOException(file + " truncated");
+                    }
+                    position += count;
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
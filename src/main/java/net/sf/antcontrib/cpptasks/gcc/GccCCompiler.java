@@ -199,6 +199,23 @@ public final class GccCCompiler extends GccCompatibleCCompiler {
         }
         return new CParser();
     }
+    /**
+     * Compilers other than g77 write the included files to a dependency
+     * file with -MD.
+     */
+    protected String[] getDependencyFileArguments() {
+        if ("g77".equals(getCommand())) {
+            return null;
+        }
+        return new String[]{"-MD"};
+    }
+    /**
+     * Without -o, the dependency file is named after the source file in the
+     * working directory, which is the output directory.
+     */
+    protected String getDependencyFileName(String sourceFile) {
+        return getBaseOutputName(sourceFile) + ".d";
+    }
     public File[] getEnvironmentIncludePath() {
         if (includePath == null) {
             //
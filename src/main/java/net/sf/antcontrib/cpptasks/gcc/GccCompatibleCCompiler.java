@@ -35,6 +35,26 @@ public abstract class GccCompatibleCCompiler extends CommandLineCCompiler {
             ".inl"};
     private final static String[] sourceExtensions = new String[]{".c", ".cc",
             ".cpp", ".cxx", ".c++", ".i", ".f", ".for"};
+    private final static String[] cppExtensions = new String[]{".cc", ".cpp",
+            ".cxx", ".c++"};
+    /**
+     * Preprocessor options followed by a separate value.
+     */
+    private final static String[] preprocessorOptionsWithValue = new String[]{
+            "-D", "-I", "-U", "-include", "-imacros", "-isystem", "-idirafter",
+            "-iprefix", "-iwithprefix", "-iwithprefixbefore", "-iquote",
+            "-MF", "-MT", "-MQ"};
+    /**
+     * Preprocessor options that also have a form with an attached value.
+     */
+    private final static String[] preprocessorOptionPrefixes = new String[]{
+            "-D", "-I", "-U", "-MF", "-MT", "-MQ", "-Wp,"};
+    /**
+     * Preprocessor options without value.
+     */
+    private final static String[] preprocessorOptions = new String[]{"-M",
+            "-MM", "-MD", "-MMD", "-MG", "-MP", "-nostdinc", "-nostdinc++",
+            "-undef"};
 
     protected GccCompatibleCCompiler(GccCompatibleCCompiler cc, boolean isXcoderun) {
         super(cc, isXcoderun);
@@ -106,6 +126,94 @@ public abstract class GccCompatibleCCompiler extends CommandLineCCompiler {
         }
 
     }
+    /**
+     * Sources of C and C++ are preprocessed to .i and .ii files.
+     */
+    protected String getPreprocessedExtension(String sourceFile) {
+        String lower = sourceFile.toLowerCase();
+        if (lower.endsWith(".c")) {
+            return ".i";
+        }
+        for (int i = 0; i < cppExtensions.length; i++) {
+            if (lower.endsWith(cppExtensions[i])) {
+                return ".ii";
+            }
+        }
+        return null;
+    }
+    protected String[] getPreprocessCommand(String[] args, String[] endArgs,
+            String sourceFile, String preprocessedFile) {
+        Vector cmd = new Vector();
+        cmd.addElement(getCommand());
+        for (int i = 0; i < args.length; i++) {
+            cmd.addElement(args[i]);
+            //
+            //   -MD would write the dependency file after the
+            //      preprocessed file rather than the object
+            //
+            if (args[i].equals("-MD")) {
+                String dependencyFile = getDependencyFileName(sourceFile);
+                if (dependencyFile == null) {
+                    cmd.removeElementAt(cmd.size() - 1);
+                } else {
+                    cmd.addElement("-MF");
+                    cmd.addElement(dependencyFile);
+                }
+            }
+        }
+        cmd.addElement("-E");
+        cmd.addElement(sourceFile);
+        cmd.addElement("-o");
+        cmd.addElement(preprocessedFile);
+        for (int i = 0; i < endArgs.length; i++) {
+            cmd.addElement(endArgs[i]);
+        }
+        String[] array = new String[cmd.size()];
+        cmd.copyInto(array);
+        return array;
+    }
+    /**
+     * Removes the options only used by the preprocessor, as does distcc.
+     */
+    protected String[] getPreprocessedCompileCommand(String[] args,
+            String[] endArgs, String preprocessedFile, String outputFile) {
+        Vector cmd = new Vector();
+        cmd.addElement(getCommand());
+        addCompileArgs(args, cmd);
+        cmd.addElement(preprocessedFile);
+        cmd.addElement("-o");
+        cmd.addElement(outputFile);
+        addCompileArgs(endArgs, cmd);
+        String[] array = new String[cmd.size()];
+        cmd.copyInto(array);
+        return array;
+    }
+    private static void addCompileArgs(String[] args, Vector cmd) {
+        for (int i = 0; i < args.length; i++) {
+            if (isPreprocessorOption(args[i], preprocessorOptionsWithValue)) {
+                i++;
+            } else if (!isPreprocessorOption(args[i], preprocessorOptions)
+                    && !hasPrefix(args[i], preprocessorOptionPrefixes)) {
+                cmd.addElement(args[i]);
+            }
+        }
+    }
+    private static boolean isPreprocessorOption(String arg, String[] options) {
+        for (int i = 0; i < options.length; i++) {
+            if (arg.equals(options[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+    private static boolean hasPrefix(String arg, String[] prefixes) {
+        for (int i = 0; i < prefixes.length; i++) {
+            if (arg.startsWith(prefixes[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
     /**
      * Adds an include path to the command.
      */
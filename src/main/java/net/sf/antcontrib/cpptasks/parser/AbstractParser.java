@@ -15,6 +15,9 @@
  *  limitations under the License.
  */
 package net.sf.antcontrib.cpptasks.parser;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 /**
@@ -31,6 +34,17 @@ public abstract class AbstractParser {
     }
     protected abstract void addFilename(String filename);
     public abstract AbstractParserState getNewLineState();
+    public String getGuard() {
+        return null;
+    }
+    public void parse(File file) throws IOException {
+        Reader reader = new BufferedReader(new FileReader(file));
+        try {
+            parse(reader);
+        } finally {
+            reader.close();
+        }
+    }
     protected void parse(Reader reader) throws IOException {
         char[] buf = new char[4096];
         AbstractParserState newLineState = getNewLineState();
@@ -0,0 +1,850 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks.parser;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+/**
+ * A parser that extracts #include and #import statements from the bytes of
+ * a file, recognizing the same statements as CParser as well as one
+ * following a UTF-8 byte order mark.
+ *
+ * Rather than passing each character through a chain of parser states, the
+ * scanner searches eight bytes at a time for the next '#' and only examines
+ * the bytes around it. Large files are memory mapped, except on Windows,
+ * smaller ones read into a buffer reused between files.
+ *
+ * The scanner also follows the conditional directives to detect whether the
+ * file is guarded against repeated inclusion. If given the macros defined
+ * and undefined on the command line, it evaluates simple conditions and
+ * skips includes in branches that can not be taken. Conditions on other
+ * macros, which may be defined by any included file, are not evaluated.
+ */
+public final class CIncludeScanner implements Parser {
+    /**
+     * Files at least this long are memory mapped.
+     */
+    private static final int MAP_THRESHOLD = 64 * 1024;
+    /**
+     * Windows can not replace or delete a file while it is mapped, and a
+     * mapping is only released when garbage collected, so a header written
+     * later in the same build could not be replaced. There files are read.
+     */
+    private static final boolean MAPPED = System.getProperty("os.name")
+            .indexOf("Windows") < 0;
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+    private static final long HASHES = 0x2323232323232323L;
+    private static final byte[] INCLUDE = "include".getBytes();
+    private static final byte[] IMPORT = "import".getBytes();
+    private static final byte[] IF = "if".getBytes();
+    private static final byte[] IFDEF = "ifdef".getBytes();
+    private static final byte[] IFNDEF = "ifndef".getBytes();
+    private static final byte[] ELIF = "elif".getBytes();
+    private static final byte[] ELSE = "else".getBytes();
+    private static final byte[] ENDIF = "endif".getBytes();
+    private static final byte[] DEFINE = "define".getBytes();
+    private static final byte[] UNDEF = "undef".getBytes();
+    private static final byte[] DEFINED = "defined".getBytes();
+    private static final byte[] PRAGMA = "pragma".getBytes();
+    private static final byte[] ONCE = "once".getBytes();
+    /**
+     * Guard of a file containing #pragma once.
+     */
+    public static final String PRAGMA_ONCE = "#pragma once";
+    /**
+     * Value of a condition that can not be evaluated.
+     */
+    private static final long UNKNOWN = Long.MIN_VALUE;
+    /**
+     * Value in the known macros of an undefined macro.
+     */
+    private static final Object UNDEFINED = new Object();
+    private final Vector includes = new Vector();
+    private String guard;
+    private ByteBuffer readBuffer;
+    private byte[] nameBuffer = new byte[256];
+    //
+    //   state of the current scan
+    //
+    private int directives;
+    private int depth;
+    private boolean guardCandidate;
+    private String guardMacro;
+    private boolean guardDefined;
+    private int guardEnd;
+    private boolean pragmaOnce;
+    //
+    //   conditional compilation state of the current scan,
+    //      for each open conditional whether the enclosing
+    //      lines are compiled and whether a branch has been taken
+    //
+    private Hashtable known;
+    private final Hashtable redefined = new Hashtable();
+    //
+    //   macros the file defines or undefines in any branch and known
+    //      macros whose value decided a condition, which are only
+    //      collected when evaluating conditionals
+    //
+    private final Hashtable definedMacros = new Hashtable();
+    private final Hashtable assumedMacros = new Hashtable();
+    private boolean active;
+    private boolean[] enclosingActive = new boolean[16];
+    private boolean[] taken = new boolean[16];
+    private int exprPos;
+    private int exprEnd;
+    private boolean exprError;
+    public CIncludeScanner() {
+    }
+    /**
+     * Gets the guard of the last file scanned, either the macro of an
+     * #ifndef, #define and #endif enclosing everything but comments or
+     * PRAGMA_ONCE if it contains #pragma once.
+     *
+     * @return guard, null if the file is not guarded
+     */
+    public String getGuard() {
+        return guard;
+    }
+    /**
+     * Sets the macros defined and undefined on the command line, used to
+     * evaluate conditional directives.
+     *
+     * @param names
+     *            macro names, null to not evaluate conditionals
+     * @param values
+     *            macro values, null elements for undefined macros
+     */
+    public void setDefines(final String[] names, final String[] values) {
+        if (names == null) {
+            known = null;
+        } else {
+            known = new Hashtable();
+            for (int i = 0; i < names.length; i++) {
+                if (values[i] == null) {
+                    known.put(names[i], UNDEFINED);
+                } else {
+                    known.put(names[i], values[i]);
+                }
+            }
+        }
+    }
+    public String[] getIncludes() {
+        String[] retval = new String[includes.size()];
+        includes.copyInto(retval);
+        return retval;
+    }
+    /**
+     * Gets the macros defined or undefined by the last file scanned, which
+     * may change conditionals of the files including it, only collected
+     * when conditionals are evaluated.
+     *
+     * @return macro names
+     */
+    public String[] getDefinedMacros() {
+        return getNames(definedMacros);
+    }
+    /**
+     * Gets the macros of the defines whose value was used to evaluate
+     * conditionals of the last file scanned.
+     *
+     * @return macro names
+     */
+    public String[] getAssumedMacros() {
+        return getNames(assumedMacros);
+    }
+    private static String[] getNames(final Hashtable names) {
+        final String[] retval = new String[names.size()];
+        final Enumeration keys = names.keys();
+        for (int i = 0; i < retval.length; i++) {
+            retval[i] = (String) keys.nextElement();
+        }
+        return retval;
+    }
+    /**
+     * Collects the included files from the content of the reader, encoded
+     * with the platform charset.
+     */
+    public void parse(final Reader reader) throws IOException {
+        StringBuffer content = new StringBuffer();
+        char[] buf = new char[4096];
+        int charsRead;
+        while ((charsRead = reader.read(buf, 0, buf.length)) >= 0) {
+            content.append(buf, 0, charsRead);
+        }
+        includes.setSize(0);
+        scan(ByteBuffer.wrap(content.toString().getBytes()));
+    }
+    /**
+     * Collects the included files from the content of the file.
+     */
+    public void parse(final File file) throws IOException {
+        includes.setSize(0);
+        final FileInputStream stream = new FileInputStream(file);
+        try {
+            final FileChannel channel = stream.getChannel();
+            final long size = channel.size();
+            if (MAPPED && size >= MAP_THRESHOLD) {
+                scan(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            } else {
+                if (readBuffer == null || readBuffer.capacity() < size) {
+                    readBuffer = ByteBuffer.allocate(Math.max((int) size,
+                            4096));
+                }
+                readBuffer.clear();
+                readBuffer.limit((int) size);
+                while (readBuffer.hasRemaining()
+                        && channel.read(readBuffer) >= 0) {
+                }
+                readBuffer.flip();
+                scan(readBuffer);
+            }
+        } finally {
+            stream.close();
+        }
+    }
+    private void scan(final ByteBuffer buf) {
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        final int limit = buf.limit();
+        directives = 0;
+        depth = 0;
+        guardCandidate = false;
+        guardMacro = null;
+        guardDefined = false;
+        guardEnd = -1;
+        pragmaOnce = false;
+        active = true;
+        redefined.clear();
+        definedMacros.clear();
+        assumedMacros.clear();
+        scanDirectives(buf, limit);
+        if (guardCandidate && guardDefined && guardEnd >= 0
+                && isCommentOrSpace(buf, guardEnd, limit)) {
+            guard = guardMacro;
+        } else if (pragmaOnce) {
+            guard = PRAGMA_ONCE;
+        } else {
+            guard = null;
+        }
+    }
+    private void scanDirectives(final ByteBuffer buf, final int limit) {
+        int pos = 0;
+        while (pos < limit) {
+            //
+            //   find the next '#' a word at a time, the lowest byte
+            //      of the word equal to '#' is the lowest set high bit
+            //
+            int hash = -1;
+            for (; pos + 8 <= limit; pos += 8) {
+                final long word = buf.getLong(pos) ^ HASHES;
+                final long found = (word - ONES) & ~word & HIGHS;
+                if (found != 0) {
+                    hash = pos + (Long.numberOfTrailingZeros(found) >>> 3);
+                    break;
+                }
+            }
+            if (hash < 0) {
+                for (; pos < limit; pos++) {
+                    if (buf.get(pos) == '#') {
+                        hash = pos;
+                        break;
+                    }
+                }
+                if (hash < 0) {
+                    return;
+                }
+            }
+            pos = scanDirective(buf, hash, limit);
+        }
+    }
+    /**
+     * Reads the directive starting at a '#'.
+     *
+     * @return position at which to continue the search
+     */
+    private int scanDirective(final ByteBuffer buf, final int hash,
+            final int limit) {
+        //
+        //   only whitespace may precede the '#' on its line
+        //
+        int i = hash - 1;
+        while (i >= 0 && isBlank(buf.get(i))) {
+            i--;
+        }
+        if (i >= 0 && buf.get(i) != '\n'
+                && !(i == 2 && hasByteOrderMark(buf))) {
+            return hash + 1;
+        }
+        final int start = skipBlanks(buf, hash + 1, limit);
+        final int end = skipIdentifier(buf, start, limit);
+        directives++;
+        if (directives == 1) {
+            guardCandidate = isCommentOrSpace(buf, 0, hash);
+        }
+        //
+        //   any directive after the #endif of the guard
+        //      means that the guard does not cover the file
+        //
+        if (guardEnd >= 0) {
+            guardCandidate = false;
+        }
+        if (matches(buf, start, end, INCLUDE)
+                || matches(buf, start, end, IMPORT)) {
+            if (!active) {
+                return end;
+            }
+            return scanFilename(buf, end, limit);
+        }
+        if (matches(buf, start, end, IFNDEF)) {
+            if (directives == 1) {
+                guardMacro = readIdentifier(buf, end, limit);
+            }
+            long value = 0;
+            if (active) {
+                value = isDefined(readIdentifier(buf, end, limit));
+                if (value != UNKNOWN) {
+                    value = value == 0 ? 1 : 0;
+                }
+            }
+            openConditional(value);
+        } else if (matches(buf, start, end, IFDEF)) {
+            long value = 0;
+            if (active) {
+                value = isDefined(readIdentifier(buf, end, limit));
+            }
+            openConditional(value);
+        } else if (matches(buf, start, end, IF)) {
+            long value = 0;
+            if (active) {
+                value = evaluate(buf, end, limit);
+            }
+            openConditional(value);
+        } else if (matches(buf, start, end, ENDIF)) {
+            depth--;
+            if (depth >= 0) {
+                active = enclosingActive[depth];
+            }
+            if (depth == 0 && guardEnd < 0) {
+                guardEnd = end;
+            }
+        } else if (matches(buf, start, end, ELSE)
+                || matches(buf, start, end, ELIF)) {
+            if (depth == 1) {
+                guardCandidate = false;
+            }
+            if (depth > 0) {
+                final int level = depth - 1;
+                long value = 0;
+                if (enclosingActive[level] && !taken[level]) {
+                    if (matches(buf, start, end, ELSE)) {
+                        value = 1;
+                    } else {
+                        value = evaluate(buf, end, limit);
+                    }
+                }
+                active = value != 0;
+                taken[level] |= value != 0 && value != UNKNOWN;
+            }
+        } else if (matches(buf, start, end, DEFINE)) {
+            if (directives == 2 && guardMacro != null) {
+                guardDefined = guardMacro.equals(readIdentifier(buf, end,
+                        limit));
+            }
+            redefine(buf, end, limit);
+        } else if (matches(buf, start, end, UNDEF)) {
+            redefine(buf, end, limit);
+        } else if (matches(buf, start, end, PRAGMA)) {
+            final int once = skipBlanks(buf, end, limit);
+            if (matches(buf, once, skipIdentifier(buf, once, limit), ONCE)) {
+                pragmaOnce = true;
+            }
+        }
+        return end;
+    }
+    private void openConditional(final long value) {
+        if (depth >= 0) {
+            if (depth == taken.length) {
+                final boolean[] newActive = new boolean[depth * 2];
+                final boolean[] newTaken = new boolean[depth * 2];
+                System.arraycopy(enclosingActive, 0, newActive, 0, depth);
+                System.arraycopy(taken, 0, newTaken, 0, depth);
+                enclosingActive = newActive;
+                taken = newTaken;
+            }
+            enclosingActive[depth] = active;
+            taken[depth] = value != 0 && value != UNKNOWN;
+        }
+        depth++;
+        active = active && value != 0;
+    }
+    /**
+     * Records a macro defined or undefined by the scanned file, whose value
+     * is then unknown.
+     */
+    private void redefine(final ByteBuffer buf, final int end,
+            final int limit) {
+        if (known != null) {
+            final String name = readIdentifier(buf, end, limit);
+            if (name.length() > 0) {
+                definedMacros.put(name, name);
+            }
+            if (active && known.containsKey(name)) {
+                redefined.put(name, name);
+            }
+        }
+    }
+    /**
+     * Determines whether a macro is defined.
+     *
+     * @return 1 if defined, 0 if not, UNKNOWN if not known
+     */
+    private long isDefined(final String name) {
+        if (known == null || redefined.containsKey(name)) {
+            return UNKNOWN;
+        }
+        final Object value = known.get(name);
+        if (value == null) {
+            return UNKNOWN;
+        }
+        assumedMacros.put(name, name);
+        return value == UNDEFINED ? 0 : 1;
+    }
+    /**
+     * Gets the value of a macro in an #if expression.
+     */
+    private long getValue(final String name) {
+        final long defined = isDefined(name);
+        if (defined == 1) {
+            return parseNumber((String) known.get(name));
+        }
+        return defined;
+    }
+    private static long parseNumber(String number) {
+        number = number.trim();
+        int end = number.length();
+        while (end > 0 && "uUlL".indexOf(number.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        try {
+            return Long.decode(number.substring(0, end)).longValue();
+        } catch (final NumberFormatException ex) {
+            return UNKNOWN;
+        }
+    }
+    /**
+     * Evaluates the expression of an #if or #elif directive.
+     *
+     * @return value, UNKNOWN if the expression is not understood or
+     *         depends on a macro that is not known
+     */
+    private long evaluate(final ByteBuffer buf, final int start,
+            final int limit) {
+        if (known == null) {
+            return UNKNOWN;
+        }
+        exprPos = start;
+        exprEnd = start;
+        //
+        //   the expression ends with the line,
+        //      unless the newline is escaped
+        //
+        while (exprEnd < limit) {
+            if (buf.get(exprEnd) == '\n') {
+                int i = exprEnd - 1;
+                if (i >= 0 && buf.get(i) == '\r') {
+                    i--;
+                }
+                if (i < 0 || buf.get(i) != '\\') {
+                    break;
+                }
+            }
+            exprEnd++;
+        }
+        exprError = false;
+        final long value = parseOr(buf);
+        skipSpace(buf);
+        if (exprError || exprPos != exprEnd) {
+            return UNKNOWN;
+        }
+        return value;
+    }
+    private void skipSpace(final ByteBuffer buf) {
+        while (exprPos < exprEnd) {
+            final byte b = buf.get(exprPos);
+            if (b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == '\\'
+                    || b == '\f') {
+                exprPos++;
+            } else if (b == '/' && exprPos + 1 < exprEnd
+                    && buf.get(exprPos + 1) == '/') {
+                exprPos = exprEnd;
+            } else if (b == '/' && exprPos + 1 < exprEnd
+                    && buf.get(exprPos + 1) == '*') {
+                exprPos += 2;
+                while (exprPos + 1 < exprEnd
+                        && (buf.get(exprPos) != '*'
+                                || buf.get(exprPos + 1) != '/')) {
+                    exprPos++;
+                }
+                exprPos += 2;
+                if (exprPos > exprEnd) {
+                    exprPos = exprEnd;
+                    exprError = true;
+                }
+            } else {
+                break;
+            }
+        }
+    }
+    /**
+     * Consumes an operator if it is next in the expression.
+     */
+    private boolean accept(final ByteBuffer buf, final String operator) {
+        skipSpace(buf);
+        final int length = operator.length();
+        if (exprPos + length > exprEnd) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buf.get(exprPos + i) != operator.charAt(i)) {
+                return false;
+            }
+        }
+        //
+        //   do not take the start of a longer operator
+        //
+        if (exprPos + length < exprEnd) {
+            final byte next = buf.get(exprPos + length);
+            if ((length == 1 && next == '=' && "<>!".indexOf(operator) >= 0)
+                    || (operator.equals("&") && next == '&')
+                    || (operator.equals("|") && next == '|')) {
+                return false;
+            }
+        }
+        exprPos += length;
+        return true;
+    }
+    private long parseOr(final ByteBuffer buf) {
+        long value = parseAnd(buf);
+        while (accept(buf, "||")) {
+            final long right = parseAnd(buf);
+            if ((value != 0 && value != UNKNOWN)
+                    || (right != 0 && right != UNKNOWN)) {
+                value = 1;
+            } else if (value == UNKNOWN || right == UNKNOWN) {
+                value = UNKNOWN;
+            } else {
+                value = 0;
+            }
+        }
+        return value;
+    }
+    private long parseAnd(final ByteBuffer buf) {
+        long value = parseEquality(buf);
+        while (accept(buf, "&&")) {
+            final long right = parseEquality(buf);
+            if (value == 0 || right == 0) {
+                value = 0;
+            } else if (value == UNKNOWN || right == UNKNOWN) {
+                value = UNKNOWN;
+            } else {
+                value = 1;
+            }
+        }
+        return value;
+    }
+    private long parseEquality(final ByteBuffer buf) {
+        long value = parseRelational(buf);
+        for (;;) {
+            final boolean equal;
+            if (accept(buf, "==")) {
+                equal = true;
+            } else if (accept(buf, "!=")) {
+                equal = false;
+            } else {
+                return value;
+            }
+            final long right = parseRelational(buf);
+            if (value == UNKNOWN || right == UNKNOWN) {
+                value = UNKNOWN;
+            } else {
+                value = (value == right) == equal ? 1 : 0;
+            }
+        }
+    }
+    private long parseRelational(final ByteBuffer buf) {
+        long value = parseAdditive(buf);
+        for (;;) {
+            final int op;
+            if (accept(buf, "<=")) {
+                op = 0;
+            } else if (accept(buf, ">=")) {
+                op = 1;
+            } else if (accept(buf, "<")) {
+                op = 2;
+            } else if (accept(buf, ">")) {
+                op = 3;
+            } else {
+                return value;
+            }
+            final long right = parseAdditive(buf);
+            if (value == UNKNOWN || right == UNKNOWN) {
+                value = UNKNOWN;
+            } else {
+                final boolean result;
+                switch (op) {
+                    case 0 :
+                        result = value <= right;
+                        break;
+                    case 1 :
+                        result = value >= right;
+                        break;
+                    case 2 :
+                        result = value < right;
+                        break;
+                    default :
+                        result = value > right;
+                        break;
+                }
+                value = result ? 1 : 0;
+            }
+        }
+    }
+    private long parseAdditive(final ByteBuffer buf) {
+        long value = parseUnary(buf);
+        for (;;) {
+            final boolean add;
+            if (accept(buf, "+")) {
+                add = true;
+            } else if (accept(buf, "-")) {
+                add = false;
+            } else {
+                return value;
+            }
+            final long right = parseUnary(buf);
+            if (value == UNKNOWN || right == UNKNOWN) {
+                value = UNKNOWN;
+            } else {
+                value = add ? value + right : value - right;
+            }
+        }
+    }
+    private long parseUnary(final ByteBuffer buf) {
+        if (accept(buf, "!")) {
+            final long value = parseUnary(buf);
+            if (value == UNKNOWN) {
+                return UNKNOWN;
+            }
+            return value == 0 ? 1 : 0;
+        }
+        if (accept(buf, "-")) {
+            final long value = parseUnary(buf);
+            return value == UNKNOWN ? UNKNOWN : -value;
+        }
+        if (accept(buf, "+")) {
+            return parseUnary(buf);
+        }
+        return parsePrimary(buf);
+    }
+    private long parsePrimary(final ByteBuffer buf) {
+        if (accept(buf, "(")) {
+            final long value = parseOr(buf);
+            if (!accept(buf, ")")) {
+                exprError = true;
+            }
+            return value;
+        }
+        skipSpace(buf);
+        final int start = exprPos;
+        final int end = skipIdentifier(buf, start, exprEnd);
+        if (end == start) {
+            exprError = true;
+            return UNKNOWN;
+        }
+        exprPos = end;
+        final String token = readIdentifier(buf, start, end);
+        final byte first = buf.get(start);
+        if (first >= '0' && first <= '9') {
+            final long value = parseNumber(token);
+            if (value == UNKNOWN) {
+                exprError = true;
+            }
+            return value;
+        }
+        if (matches(buf, start, end, DEFINED)) {
+            final boolean parenthesized = accept(buf, "(");
+            skipSpace(buf);
+            final int nameEnd = skipIdentifier(buf, exprPos, exprEnd);
+            if (nameEnd == exprPos) {
+                exprError = true;
+                return UNKNOWN;
+            }
+            final String name = readIdentifier(buf, exprPos, nameEnd);
+            exprPos = nameEnd;
+            if (parenthesized && !accept(buf, ")")) {
+                exprError = true;
+            }
+            return isDefined(name);
+        }
+        //
+        //   a function-like macro is not evaluated
+        //
+        if (accept(buf, "(")) {
+            exprError = true;
+            return UNKNOWN;
+        }
+        return getValue(token);
+    }
+    /**
+     * Reads the file name of an #include or #import directive.
+     *
+     * @return position at which to continue the search
+     */
+    private int scanFilename(final ByteBuffer buf, int i, final int limit) {
+        i = skipBlanks(buf, i, limit);
+        if (i >= limit) {
+            return i;
+        }
+        final byte terminator;
+        if (buf.get(i) == '<') {
+            terminator = '>';
+        } else if (buf.get(i) == '"') {
+            terminator = '"';
+        } else {
+            return i;
+        }
+        final int start = ++i;
+        for (; i < limit; i++) {
+            final byte b = buf.get(i);
+            if (b == terminator) {
+                addFilename(buf, start, i - start);
+                return i + 1;
+            }
+            if (b == '\n') {
+                return i;
+            }
+        }
+        return i;
+    }
+    private void addFilename(final ByteBuffer buf, final int start,
+            final int length) {
+        if (buf.hasArray()) {
+            includes.addElement(new String(buf.array(), buf.arrayOffset()
+                    + start, length));
+        } else {
+            if (nameBuffer.length < length) {
+                nameBuffer = new byte[length];
+            }
+            for (int i = 0; i < length; i++) {
+                nameBuffer[i] = buf.get(start + i);
+            }
+            includes.addElement(new String(nameBuffer, 0, length));
+        }
+    }
+    private static boolean isBlank(final byte b) {
+        return b == ' ' || b == '\t';
+    }
+    private static int skipBlanks(final ByteBuffer buf, int i,
+            final int limit) {
+        while (i < limit && isBlank(buf.get(i))) {
+            i++;
+        }
+        return i;
+    }
+    private static int skipIdentifier(final ByteBuffer buf, int i,
+            final int limit) {
+        while (i < limit) {
+            final byte b = buf.get(i);
+            if ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z')
+                    || (b >= '0' && b <= '9') || b == '_') {
+                i++;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+    private static String readIdentifier(final ByteBuffer buf, int i,
+            final int limit) {
+        i = skipBlanks(buf, i, limit);
+        final int end = skipIdentifier(buf, i, limit);
+        final byte[] bytes = new byte[end - i];
+        for (int j = 0; j < bytes.length; j++) {
+            bytes[j] = buf.get(i + j);
+        }
+        return new String(bytes);
+    }
+    /**
+     * Determines if the word between start and end is the given word.
+     */
+    private static boolean matches(final ByteBuffer buf, final int start,
+            final int end, final byte[] word) {
+        if (end - start != word.length) {
+            return false;
+        }
+        for (int j = 0; j < word.length; j++) {
+            if (buf.get(start + j) != word[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    private static boolean hasByteOrderMark(final ByteBuffer buf) {
+        return buf.limit() >= 3 && buf.get(0) == (byte) 0xEF
+                && buf.get(1) == (byte) 0xBB && buf.get(2) == (byte) 0xBF;
+    }
+    /**
+     * Determines if a range contains only whitespace, comments and a byte
+     * order mark.
+     */
+    private static boolean isCommentOrSpace(final ByteBuffer buf, int i,
+            final int limit) {
+        if (i == 0 && limit >= 3 && hasByteOrderMark(buf)) {
+            i = 3;
+        }
+        while (i < limit) {
+            final byte b = buf.get(i);
+            if (b == '/' && i + 1 < limit && buf.get(i + 1) == '*') {
+                i += 2;
+                while (i + 1 < limit
+                        && (buf.get(i) != '*' || buf.get(i + 1) != '/')) {
+                    i++;
+                }
+                if (i + 1 >= limit) {
+                    return false;
+                }
+                i += 2;
+            } else if (b == '/' && i + 1 < limit && buf.get(i + 1) == '/') {
+                while (i < limit && buf.get(i) != '\n') {
+                    i++;
+                }
+            } else if (b == ' ' || b == '\t' || b == '\r' || b == '\n'
+                    || b == '\f') {
+                i++;
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+}
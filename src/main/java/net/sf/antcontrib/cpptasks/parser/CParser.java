@@ -15,6 +15,7 @@
  *  limitations under the License.
  */
 package net.sf.antcontrib.cpptasks.parser;
+import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.Vector;
@@ -27,6 +28,12 @@ import java.util.Vector;
 public final class CParser extends AbstractParser implements Parser {
     private final Vector includes = new Vector();
     private AbstractParserState newLineState;
+    private CIncludeScanner scanner;
+    private String guard;
+    private String[] defineNames;
+    private String[] defineValues;
+    private String[] definedMacros = new String[0];
+    private String[] assumedMacros = new String[0];
     /**
      * 
      *  
@@ -68,11 +75,68 @@ public final class CParser extends AbstractParser implements Parser {
         includes.copyInto(retval);
         return retval;
     }
+    /**
+     * Gets the guard of the last file parsed, only detected when parsing a
+     * file.
+     */
+    public String getGuard() {
+        return guard;
+    }
+    /**
+     * Sets the macros defined and undefined on the command line, used to
+     * evaluate conditional directives when parsing a file.
+     *
+     * @see CIncludeScanner#setDefines(String[], String[])
+     */
+    public void setDefines(String[] names, String[] values) {
+        defineNames = names;
+        defineValues = values;
+    }
+    /**
+     * Gets the macros defined or undefined by the last file parsed, only
+     * collected when evaluating conditional directives.
+     *
+     * @see CIncludeScanner#getDefinedMacros()
+     */
+    public String[] getDefinedMacros() {
+        return definedMacros;
+    }
+    /**
+     * Gets the macros of the defines that conditional directives of the
+     * last file parsed were evaluated on.
+     *
+     * @see CIncludeScanner#getAssumedMacros()
+     */
+    public String[] getAssumedMacros() {
+        return assumedMacros;
+    }
     public AbstractParserState getNewLineState() {
         return newLineState;
     }
     public void parse(Reader reader) throws IOException {
         includes.setSize(0);
+        guard = null;
+        definedMacros = new String[0];
+        assumedMacros = new String[0];
         super.parse(reader);
     }
+    /**
+     * Collects the included files of a file using CIncludeScanner, which
+     * works on its bytes rather than decoded characters.
+     */
+    public void parse(File file) throws IOException {
+        if (scanner == null) {
+            scanner = new CIncludeScanner();
+        }
+        scanner.setDefines(defineNames, defineValues);
+        scanner.parse(file);
+        String[] scanned = scanner.getIncludes();
+        guard = scanner.getGuard();
+        definedMacros = scanner.getDefinedMacros();
+        assumedMacros = scanner.getAssumedMacros();
+        includes.setSize(0);
+        for (int i = 0; i < scanned.length; i++) {
+            includes.addElement(scanned[i]);
+        }
+    }
 }
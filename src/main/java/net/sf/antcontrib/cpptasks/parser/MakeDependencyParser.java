@@ -0,0 +1,113 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks.parser;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Vector;
+/**
+ * A parser that extracts the prerequisites of the first rule of a make
+ * style dependency file, as written by gcc -MD.
+ *
+ * Lines are continued by a trailing backslash. Spaces, tabs and '#' in file
+ * names are escaped by a backslash and '$' is doubled, any other backslash,
+ * such as in a Windows path, is part of the name. The colon ending the
+ * targets is followed by whitespace, which distinguishes it from the colon
+ * of a drive letter.
+ */
+public final class MakeDependencyParser {
+    private final Vector prerequisites = new Vector();
+    public MakeDependencyParser() {
+    }
+    /**
+     * Gets the prerequisites of the last file parsed, for a compiler the
+     * source file followed by every file it included.
+     *
+     * @return file names as written
+     */
+    public String[] getPrerequisites() {
+        String[] retval = new String[prerequisites.size()];
+        prerequisites.copyInto(retval);
+        return retval;
+    }
+    public void parse(File file) throws IOException {
+        Reader reader = new BufferedReader(new FileReader(file));
+        try {
+            parse(reader);
+        } finally {
+            reader.close();
+        }
+    }
+    public void parse(Reader reader) throws IOException {
+        prerequisites.setSize(0);
+        StringBuffer content = new StringBuffer();
+        char[] buf = new char[4096];
+        int charsRead;
+        while ((charsRead = reader.read(buf, 0, buf.length)) >= 0) {
+            content.append(buf, 0, charsRead);
+        }
+        int length = content.length();
+        StringBuffer name = new StringBuffer();
+        boolean inPrerequisites = false;
+        for (int i = 0; i < length; i++) {
+            char c = content.charAt(i);
+            char next = i + 1 < length ? content.charAt(i + 1) : '\n';
+            if (c == '\\' && (next == '\n' || next == '\r')) {
+                //
+                //   continued line
+                //
+                addName(name, inPrerequisites);
+                i++;
+                if (next == '\r' && i + 1 < length
+                        && content.charAt(i + 1) == '\n') {
+                    i++;
+                }
+            } else if (c == '\\' && (next == ' ' || next == '\t'
+                    || next == '#')) {
+                name.append(next);
+                i++;
+            } else if (c == '$' && next == '$') {
+                name.append(c);
+                i++;
+            } else if (c == ' ' || c == '\t') {
+                addName(name, inPrerequisites);
+            } else if (c == '\n' || c == '\r') {
+                addName(name, inPrerequisites);
+                if (inPrerequisites) {
+                    break;
+                }
+            } else if (c == ':' && !inPrerequisites
+                    && Character.isWhitespace(next)) {
+                name.setLength(0);
+                inPrerequisites = true;
+            } else {
+                name.append(c);
+            }
+        }
+        addName(name, inPrerequisites);
+    }
+    private void addName(StringBuffer name, boolean inPrerequisites) {
+        if (name.length() > 0) {
+            if (inPrerequisites) {
+                prerequisites.addElement(name.toString());
+            }
+            name.setLength(0);
+        }
+    }
+}
@@ -15,6 +15,7 @@
  *  limitations under the License.
  */
 package net.sf.antcontrib.cpptasks.parser;
+import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
 /**
@@ -24,5 +25,13 @@ import java.io.Reader;
  */
 public interface Parser {
     String[] getIncludes();
+    /**
+     * Gets the guard against repeated inclusion of the last file parsed.
+     *
+     * @return guard, null if the file is not guarded or guards are not
+     *         detected by this parser
+     */
+    String getGuard();
     void parse(Reader reader) throws IOException;
+    void parse(File file) throws IOException;
 }
@@ -16,6 +16,7 @@
  */
 package net.sf.antcontrib.cpptasks.trolltech;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
 
@@ -56,6 +57,14 @@ public final class UserInterfaceParser
     return new String[0];
   }
 
+  /**
+   * Gets guard of parsed file.
+   * @return null, guards are not detected
+   */
+  public String getGuard() {
+    return null;
+  }
+
   /**
    * Parses source file for dependencies.
    *
@@ -64,4 +73,13 @@ public final class UserInterfaceParser
    */
   public void parse(final Reader reader) throws IOException {
   }
+
+  /**
+   * Parses source file for dependencies.
+   *
+   * @param file File source file
+   * @throws IOException if error reading source file
+   */
+  public void parse(final File file) throws IOException {
+  }
 }
@@ -32,23 +32,36 @@ public class TestAllClasses extends TestSuite {
         addTestSuite(net.sf.antcontrib.cpptasks.compiler.TestAbstractCompiler.class);
         addTestSuite(net.sf.antcontrib.cpptasks.compiler.TestAbstractLinker.class);
         addTestSuite(net.sf.antcontrib.cpptasks.compiler.TestAbstractProcessor.class);
+        addTestSuite(net.sf.antcontrib.cpptasks.TestBuildStateCache.class);
+        addTestSuite(net.sf.antcontrib.cpptasks.cache.TestObjectCache.class);
+        addTestSuite(net.sf.antcontrib.cpptasks.cache.TestRemoteObjectCache.class);
+        addTestSuite(net.sf.antcontrib.cpptasks.distributer.TestCompileWorker.class);
+        addTestSuite(net.sf.antcontrib.cpptasks.distributer.TestDistributer.class);
         addTestSuite(net.sf.antcontrib.cpptasks.TestCCTask.class);
+        addTestSuite(net.sf.antcontrib.cpptasks.TestCommitScaling.class);
+        addTestSuite(net.sf.antcontrib.cpptasks.TestCompileExecutor.class);
         addTestSuite(net.sf.antcontrib.cpptasks.TestCompilerEnum.class);
         addTestSuite(net.sf.antcontrib.cpptasks.compiler.TestCommandLineCompilerConfiguration.class);
         addTestSuite(net.sf.antcontrib.cpptasks.TestDependencyTable.class);
+        addTestSuite(net.sf.antcontrib.cpptasks.daemon.TestBuildDaemon.class);
         addTestSuite(net.sf.antcontrib.cpptasks.types.TestDefineArgument.class);
         addTestSuite(net.sf.antcontrib.cpptasks.devstudio.TestDevStudio2005CCompiler.class);
         addTestSuite(net.sf.antcontrib.cpptasks.devstudio.TestDevStudioCCompiler.class);
         addTestSuite(net.sf.antcontrib.cpptasks.devstudio.TestDevStudioLinker.class);
+        addTestSuite(net.sf.antcontrib.cpptasks.TestFileStateCache.class);
         addTestSuite(net.sf.antcontrib.cpptasks.TestLinkerDef.class);
         addTestSuite(net.sf.antcontrib.cpptasks.TestTargetInfo.class);
         addTestSuite(net.sf.antcontrib.cpptasks.types.TestLibrarySet.class);
         addTestSuite(net.sf.antcontrib.cpptasks.TestCompilerDef.class);
         addTestSuite(net.sf.antcontrib.cpptasks.parser.TestCParser.class);
+        addTestSuite(net.sf.antcontrib.cpptasks.parser.TestCIncludeScanner.class);
+        addTestSuite(net.sf.antcontrib.cpptasks.parser.TestMakeDependencyParser.class);
         addTestSuite(net.sf.antcontrib.cpptasks.gcc.TestGccCCompiler.class);
         addTestSuite(net.sf.antcontrib.cpptasks.gcc.TestAbstractLdLinker.class);
         addTestSuite(net.sf.antcontrib.cpptasks.gcc.TestAbstractArLibrarian.class);
+        addTestSuite(net.sf.antcontrib.cpptasks.TestSourceWatcher.class);
         addTestSuite(net.sf.antcontrib.cpptasks.TestTargetHistoryTable.class);
+        addTestSuite(net.sf.antcontrib.cpptasks.TestTargetMatcher.class);
         addTestSuite(net.sf.antcontrib.cpptasks.TestOutputTypeEnum.class);
         addTestSuite(net.sf.antcontrib.cpptasks.compiler.TestLinkType.class);
         addTestSuite(net.sf.antcontrib.cpptasks.TestLinkerEnum.class);
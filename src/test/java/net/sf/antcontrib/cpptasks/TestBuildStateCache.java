@@ -0,0 +1,110 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+/**
+ * Tests for BuildStateCache
+ */
+public class TestBuildStateCache extends TestXMLConsumer {
+    public TestBuildStateCache(final String name) {
+        super(name);
+    }
+    private static TargetHistoryTable getTargetHistoryTable(
+            final CCTask task, final File outputDir) {
+        return BuildStateCache.getTargetHistoryTable(task, outputDir,
+                new FileStateCache());
+    }
+    private static DependencyTable getDependencyTable(final CCTask task,
+            final File baseDir) {
+        return BuildStateCache.getDependencyTable(task, baseDir,
+                new FileStateCache());
+    }
+    protected void tearDown() throws Exception {
+        BuildStateCache.setEnabled(false);
+        deleteTmpFile("history.xml");
+        deleteTmpFile("dependencies.xml");
+        super.tearDown();
+    }
+    /**
+     * Tables should not be retained unless enabled.
+     */
+    public void testDisabled() throws IOException {
+        final File tmpDir = new File(System.getProperty("java.io.tmpdir"));
+        deleteTmpFile("history.xml");
+        final CCTask task = new CCTask();
+        assertNotSame(getTargetHistoryTable(task, tmpDir),
+                getTargetHistoryTable(task, tmpDir));
+        assertNotSame(getDependencyTable(task, tmpDir),
+                getDependencyTable(task, tmpDir));
+    }
+    /**
+     * Tables should be reused while their files are unchanged.
+     */
+    public void testReuse() throws IOException {
+        copyResourceToTmpDir("xerces-c/dependencies.xml", "dependencies.xml");
+        final File tmpDir = new File(System.getProperty("java.io.tmpdir"));
+        deleteTmpFile("history.xml");
+        BuildStateCache.setEnabled(true);
+        final CCTask task = new CCTask();
+        final TargetHistoryTable history = getTargetHistoryTable(task, tmpDir);
+        assertSame(history, getTargetHistoryTable(task, tmpDir));
+        final DependencyTable dependencies = getDependencyTable(task, tmpDir);
+        assertSame(dependencies, getDependencyTable(task, tmpDir));
+    }
+    /**
+     * Tables should be reloaded if their files were changed by another
+     * process.
+     */
+    public void testExternalChange() throws IOException {
+        final File tmpDir = new File(System.getProperty("java.io.tmpdir"));
+        deleteTmpFile("history.xml");
+        BuildStateCache.setEnabled(true);
+        final CCTask task = new CCTask();
+        final TargetHistoryTable history = getTargetHistoryTable(task, tmpDir);
+        final FileOutputStream out = new FileOutputStream(new File(tmpDir,
+                "history.xml"));
+        out.write("<history>\n</history>\n".getBytes("UTF-8"));
+        out.close();
+        assertNotSame(history, getTargetHistoryTable(task, tmpDir));
+    }
+    /**
+     * Records for outputs deleted since the table was loaded should be
+     * discarded on reuse.
+     */
+    public void testRevalidate() throws IOException {
+        final File tmpDir = new File(System.getProperty("java.io.tmpdir"));
+        deleteTmpFile("history.xml");
+        BuildStateCache.setEnabled(true);
+        final CCTask task = new CCTask();
+        final TargetHistoryTable history = getTargetHistoryTable(task, tmpDir);
+        final File compiledFile = new File(tmpDir, "dummy.o");
+        new FileOutputStream(compiledFile).close();
+        try {
+            history.update(
+                    new TestTargetHistoryTable.MockProcessorConfiguration(),
+                    new String[]{"dummy.o"}, null, 10);
+            history.commit();
+            assertNotNull(history.get("Mock Configuration", "dummy.o"));
+        } finally {
+            compiledFile.delete();
+        }
+        assertSame(history, getTargetHistoryTable(task, tmpDir));
+        assertNull(history.get("Mock Configuration", "dummy.o"));
+    }
+}
@@ -149,5 +149,10 @@ File("/foo/bar/something").getCanonicalPath();
      */
     public void testXmlEncode() {
         assertEquals("&lt;&quot;boo&quot;&gt;", CUtil.xmlAttribEncode("<\"boo\">"));
+        String plain = "src/boo.c";
+        assertSame(plain, CUtil.xmlAttribEncode(plain));
+        StringBuffer buf = new StringBuffer("file=\"");
+        CUtil.xmlAttribEncode(buf, "a<b>\"c\"");
+        assertEquals("file=\"a&lt;b&gt;&quot;c&quot;", buf.toString());
     }
 }
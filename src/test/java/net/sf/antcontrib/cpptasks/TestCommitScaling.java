@@ -0,0 +1,244 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Vector;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+/**
+ * Benchmarks the commits of DependencyTable and TargetHistoryTable on the
+ * Xerces-C fixtures, copied under distinct include path and processor
+ * signatures, checking that the time taken grows linearly.
+ */
+public class TestCommitScaling extends TestXMLConsumer {
+    /**
+     * Collects the records of a dependencies.xml or history.xml without
+     * checking the files they name.
+     */
+    private static final class FixtureHandler extends DefaultHandler {
+        private final Vector records = new Vector();
+        private String signature;
+        private String file;
+        private long lastModified;
+        private boolean target;
+        private final Vector includes = new Vector();
+        private final Vector sysIncludes = new Vector();
+        private final Vector sources = new Vector();
+        public void startElement(String namespaceURI, String localName,
+                String qName, Attributes atts) {
+            if (qName.equals("includePath") || qName.equals("processor")) {
+                signature = atts.getValue("signature");
+            } else if (qName.equals("include")) {
+                includes.addElement(atts.getValue("file"));
+            } else if (qName.equals("sysinclude")) {
+                sysIncludes.addElement(atts.getValue("file"));
+            } else if (qName.equals("source") && target) {
+                sources.addElement(new SourceHistory(atts.getValue("file"),
+                        Long.parseLong(atts.getValue("lastModified"), 16)));
+            } else if (qName.equals("source") || qName.equals("target")) {
+                target = qName.equals("target");
+                file = atts.getValue("file");
+                lastModified = Long.parseLong(atts.getValue("lastModified"),
+                        16);
+                includes.setSize(0);
+                sysIncludes.setSize(0);
+                sources.setSize(0);
+            }
+        }
+        public void endElement(String namespaceURI, String localName,
+                String qName) {
+            if (qName.equals("target")) {
+                SourceHistory[] sourceArray = new SourceHistory[sources
+                        .size()];
+                sources.copyInto(sourceArray);
+                records.addElement(new TargetHistory(signature, file,
+                        lastModified, sourceArray));
+                target = false;
+            } else if (qName.equals("source") && !target) {
+                records.addElement(new DependencyInfo(signature, file,
+                        lastModified, includes, sysIncludes));
+            }
+        }
+        public Vector getRecords() {
+            return records;
+        }
+    }
+    private File dir;
+
+    public TestCommitScaling(String name) {
+        super(name);
+    }
+    protected void setUp() throws Exception {
+        super.setUp();
+        dir = new File(System.getProperty("java.io.tmpdir"),
+                "cpptasks-scaling-test");
+        dir.mkdirs();
+    }
+    protected void tearDown() throws Exception {
+        File[] files = dir.listFiles();
+        for (int i = 0; i < files.length; i++) {
+            files[i].delete();
+        }
+        dir.delete();
+        super.tearDown();
+    }
+    private static Vector readFixture(String name) throws Exception {
+        copyResourceToTmpDir("xerces-c/" + name, "scaling-" + name);
+        File file = new File(System.getProperty("java.io.tmpdir"),
+                "scaling-" + name);
+        try {
+            FixtureHandler handler = new FixtureHandler();
+            SAXParserFactory.newInstance().newSAXParser().parse(file,
+                    handler);
+            return handler.getRecords();
+        } finally {
+            file.delete();
+        }
+    }
+    private static int count(File file, String element) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), "UTF-8"));
+        try {
+            int count = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().startsWith(element)) {
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            reader.close();
+        }
+    }
+    /**
+     * Commits a dependency table holding copies of the records.
+     *
+     * @return time taken by the commit in nanoseconds
+     */
+    private long commitDependencies(Vector records, int copies) {
+        DependencyTable table = new DependencyTable(dir);
+        for (int copy = 0; copy < copies; copy++) {
+            String suffix = "#" + Integer.toString(copy);
+            for (int i = 0; i < records.size(); i++) {
+                DependencyInfo record = (DependencyInfo) records.elementAt(i);
+                Vector includes = new Vector();
+                Vector sysIncludes = new Vector();
+                for (int j = 0; j < record.getIncludes().length; j++) {
+                    includes.addElement(record.getIncludes()[j]);
+                }
+                for (int j = 0; j < record.getSysIncludes().length; j++) {
+                    sysIncludes.addElement(record.getSysIncludes()[j]);
+                }
+                table.putDependencyInfo(record.getSource(),
+                        new DependencyInfo(record.getIncludePathIdentifier()
+                                + suffix, record.getSource(), record
+                                .getSourceLastModified(), includes,
+                                sysIncludes));
+            }
+        }
+        long start = System.nanoTime();
+        table.commit(null);
+        return System.nanoTime() - start;
+    }
+    /**
+     * Commits a history table holding copies of the records.
+     *
+     * @return time taken by the commit in nanoseconds
+     */
+    private long commitHistory(Vector records, int copies) throws IOException {
+        TargetHistoryTable table = new TargetHistoryTable(null, dir);
+        for (int copy = 0; copy < copies; copy++) {
+            String prefix = Integer.toString(copy) + "/";
+            for (int i = 0; i < records.size(); i++) {
+                TargetHistory record = (TargetHistory) records.elementAt(i);
+                table.put(new TargetHistory(record.getProcessorConfiguration()
+                        + "#" + Integer.toString(copy), prefix
+                        + record.getOutput(), record.getOutputLastModified(),
+                        record.getSources()));
+            }
+        }
+        long start = System.nanoTime();
+        table.commit();
+        return System.nanoTime() - start;
+    }
+    /**
+     * Gets the shortest of several times, to reduce the effect of
+     * compilation and collection.
+     */
+    private static long min(long[] times) {
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < times.length; i++) {
+            min = Math.min(min, times[i]);
+        }
+        return min;
+    }
+    /**
+     * Asserts that ten times the records take less than thirty times as
+     * long to commit, where a commit scanning all records once per
+     * signature would take a hundred times as long.
+     */
+    private static void assertLinear(String name, long small, long large) {
+        System.out.println(name + ": 10x " + Long.toString(small / 1000000)
+                + " ms, 100x " + Long.toString(large / 1000000) + " ms");
+        assertTrue(name + " does not scale linearly", large < 30 * Math
+                .max(small, 2000000));
+    }
+    /**
+     * Commits of dependencies.xml should grow linearly with the number of
+     * records and include path signatures.
+     */
+    public void testDependencies() throws Exception {
+        Vector records = readFixture("dependencies.xml");
+        assertTrue(records.size() > 500);
+        long[] small = new long[3];
+        long[] large = new long[3];
+        for (int i = 0; i < 3; i++) {
+            small[i] = commitDependencies(records, 10);
+            large[i] = commitDependencies(records, 100);
+        }
+        File file = new File(dir, "dependencies.xml");
+        assertEquals(100 * records.size(), count(file, "<source "));
+        assertEquals(100, count(file, "<includePath "));
+        assertLinear("dependencies.xml", min(small), min(large));
+    }
+    /**
+     * Commits of history.xml should grow linearly with the number of
+     * records and processor signatures.
+     */
+    public void testHistory() throws Exception {
+        Vector records = readFixture("history.xml");
+        assertTrue(records.size() > 200);
+        long[] small = new long[3];
+        long[] large = new long[3];
+        for (int i = 0; i < 3; i++) {
+            small[i] = commitHistory(records, 10);
+            large[i] = commitHistory(records, 100);
+        }
+        File file = new File(dir, "history.xml");
+        assertEquals(100 * records.size(), count(file, "<target "));
+        assertEquals(300, count(file, "<processor "));
+        assertLinear("history.xml", min(small), min(large));
+    }
+}
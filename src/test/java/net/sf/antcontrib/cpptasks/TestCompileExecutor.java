@@ -0,0 +1,359 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks;
+import java.io.File;
+import java.io.IOException;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+import net.sf.antcontrib.cpptasks.compiler.CompilerConfiguration;
+import net.sf.antcontrib.cpptasks.compiler.ProgressMonitor;
+
+import org.apache.tools.ant.BuildException;
+/**
+ * Tests for CompileExecutor
+ */
+public class TestCompileExecutor extends TestCase {
+    /**
+     * Compiler configuration that records the files it was asked to compile
+     * and fails on any file whose name starts with "bad".
+     */
+    public static class MockCompilerConfiguration
+            implements
+                CompilerConfiguration {
+        private final Vector compiled = new Vector();
+        private final long delay;
+        private int running;
+        private int maxRunning;
+        private int invocations;
+        private long firstStart = Long.MAX_VALUE;
+        private long lastEnd = Long.MIN_VALUE;
+        public MockCompilerConfiguration(final long delay) {
+            this.delay = delay;
+        }
+        public void compile(final CCTask task, final File outputDir,
+                final String[] sourceFiles, final boolean relentless,
+                final ProgressMonitor monitor) throws BuildException {
+            synchronized (this) {
+                invocations++;
+                if (firstStart == Long.MAX_VALUE) {
+                    firstStart = System.nanoTime();
+                }
+                running++;
+                if (running > maxRunning) {
+                    maxRunning = running;
+                }
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException ex) {
+            }
+            synchronized (this) {
+                lastEnd = System.nanoTime();
+                running--;
+                for (int i = 0; i < sourceFiles.length; i++) {
+                    compiled.addElement(sourceFiles[i]);
+                }
+            }
+            for (int i = 0; i < sourceFiles.length; i++) {
+                if (sourceFiles[i].startsWith("bad")) {
+                    throw new BuildException("mock failed on "
+                            + sourceFiles[i]);
+                }
+            }
+        }
+        public synchronized Vector getCompiled() {
+            return (Vector) compiled.clone();
+        }
+        public synchronized int getMaxRunning() {
+            return maxRunning;
+        }
+        public synchronized int getInvocations() {
+            return invocations;
+        }
+        public synchronized long getFirstStart() {
+            return firstStart;
+        }
+        public synchronized long getLastEnd() {
+            return lastEnd;
+        }
+        public CompilerConfiguration[] createPrecompileConfigurations(
+                final File prototype, final String[] nonPrecompiledFiles) {
+            return null;
+        }
+        public String getIncludePathIdentifier() {
+            return "";
+        }
+        public CompilerParam getParam(final String name) {
+            return null;
+        }
+        public boolean isPrecompileGeneration() {
+            return false;
+        }
+        public DependencyInfo parseIncludes(final CCTask task,
+                final File baseDir, final File source) {
+            return null;
+        }
+        public int bid(final String filename) {
+            return 100;
+        }
+        public String getIdentifier() {
+            return "Mock Compiler";
+        }
+        public String[] getOutputFileNames(final String inputFile,
+                final VersionInfo versionInfo) {
+            return new String[]{inputFile + ".o"};
+        }
+        public ProcessorParam[] getParams() {
+            return new ProcessorParam[0];
+        }
+        public boolean getRebuild() {
+            return false;
+        }
+    }
+    /**
+     * Compiler configuration that also writes the outputs of the files it
+     * compiles successfully.
+     */
+    private static final class OutputCompilerConfiguration
+            extends
+                MockCompilerConfiguration {
+        public OutputCompilerConfiguration() {
+            super(0);
+        }
+        public void compile(final CCTask task, final File outputDir,
+                final String[] sourceFiles, final boolean relentless,
+                final ProgressMonitor monitor) throws BuildException {
+            for (int i = 0; i < sourceFiles.length; i++) {
+                if (!sourceFiles[i].startsWith("bad")) {
+                    final String[] outputNames = getOutputFileNames(
+                            sourceFiles[i], null);
+                    try {
+                        new File(outputDir, outputNames[0]).createNewFile();
+                    } catch (IOException ex) {
+                        throw new BuildException(ex);
+                    }
+                }
+            }
+            super.compile(task, outputDir, sourceFiles, relentless, monitor);
+        }
+    }
+    private static CompileExecutor.Node[] add(final CompileExecutor executor,
+            final MockCompilerConfiguration config, final String prefix,
+            final int count) {
+        final CompileExecutor.Node[] nodes = new CompileExecutor.Node[count];
+        for (int i = 0; i < count; i++) {
+            nodes[i] = executor.add(config, prefix + Integer.toString(i) + ".c");
+        }
+        return nodes;
+    }
+    public TestCompileExecutor(final String name) {
+        super(name);
+    }
+    /**
+     * Every file should be compiled and no more than the requested number
+     * of invocations should run at once.
+     */
+    public void testParallel() {
+        final MockCompilerConfiguration config = new MockCompilerConfiguration(20);
+        final CompileExecutor executor = new CompileExecutor(new CCTask(),
+                new File("."), 4, false, null);
+        add(executor, config, "a", 16);
+        add(executor, config, "b", 16);
+        assertNull(executor.execute());
+        assertEquals(32, config.getCompiled().size());
+        assertTrue(config.getMaxRunning() > 1);
+        assertTrue(config.getMaxRunning() <= 4);
+    }
+    /**
+     * A single job should compile the ready files of a configuration in one
+     * invocation on the calling thread.
+     */
+    public void testSequential() {
+        final MockCompilerConfiguration config = new MockCompilerConfiguration(0);
+        final MockCompilerConfiguration other = new MockCompilerConfiguration(0);
+        final CompileExecutor executor = new CompileExecutor(new CCTask(),
+                new File("."), 1, false, null);
+        add(executor, config, "a", 5);
+        add(executor, other, "b", 3);
+        assertNull(executor.execute());
+        assertEquals(5, config.getCompiled().size());
+        assertEquals(3, other.getCompiled().size());
+        assertEquals(1, config.getInvocations());
+        assertEquals(1, other.getInvocations());
+    }
+    /**
+     * A node should not start before its prerequisite completes.
+     */
+    public void testPrerequisite() {
+        final MockCompilerConfiguration generator = new MockCompilerConfiguration(30);
+        final MockCompilerConfiguration consumer = new MockCompilerConfiguration(0);
+        final MockCompilerConfiguration independent = new MockCompilerConfiguration(0);
+        final CompileExecutor executor = new CompileExecutor(new CCTask(),
+                new File("."), 4, false, null);
+        final CompileExecutor.Node pch = executor.add(generator, "stdafx.cpp");
+        final CompileExecutor.Node[] consumers = add(executor, consumer, "a", 4);
+        add(executor, independent, "b", 4);
+        for (int i = 0; i < consumers.length; i++) {
+            executor.addDependency(consumers[i], pch);
+        }
+        assertNull(executor.execute());
+        assertEquals(4, consumer.getCompiled().size());
+        assertTrue(consumer.getFirstStart() >= generator.getLastEnd());
+        //
+        //   the independent configuration should not wait for the generator
+        //
+        assertTrue(independent.getFirstStart() < generator.getLastEnd());
+    }
+    /**
+     * Nodes whose prerequisite failed should not be compiled, even when
+     * relentless.
+     */
+    public void testFailedPrerequisite() {
+        final MockCompilerConfiguration config = new MockCompilerConfiguration(0);
+        final CompileExecutor executor = new CompileExecutor(new CCTask(),
+                new File("."), 2, true, null);
+        final CompileExecutor.Node bad = executor.add(config, "bad.c");
+        final CompileExecutor.Node[] others = add(executor, config, "a", 3);
+        executor.addDependency(others[0], bad);
+        assertNotNull(executor.execute());
+        assertEquals(3, config.getCompiled().size());
+        assertFalse(config.getCompiled().contains("a0.c"));
+    }
+    /**
+     * When not relentless, a failure should prevent nodes that have not yet
+     * started from being compiled.
+     */
+    public void testFailureStops() {
+        final MockCompilerConfiguration config = new MockCompilerConfiguration(0);
+        final MockCompilerConfiguration other = new MockCompilerConfiguration(0);
+        final CompileExecutor executor = new CompileExecutor(new CCTask(),
+                new File("."), 1, false, null);
+        executor.add(config, "bad.c");
+        add(executor, other, "a", 5);
+        assertNotNull(executor.execute());
+        assertTrue(executor.isCancelled());
+        assertEquals(0, other.getCompiled().size());
+    }
+    /**
+     * When relentless, every file should be attempted and the first failure
+     * reported.
+     */
+    public void testRelentless() {
+        final MockCompilerConfiguration config = new MockCompilerConfiguration(5);
+        final CompileExecutor executor = new CompileExecutor(new CCTask(),
+                new File("."), 3, true, null);
+        executor.add(config, "bad1.c");
+        executor.add(config, "bad2.c");
+        add(executor, config, "a", 8);
+        final BuildException ex = executor.execute();
+        assertNotNull(ex);
+        assertTrue(ex.getMessage().startsWith("mock failed on bad"));
+        assertEquals(10, config.getCompiled().size());
+    }
+    /**
+     * When an invocation for several files fails, the dependents of the
+     * files that were compiled should still be compiled.
+     */
+    public void testFailedBatch() throws IOException {
+        final File outputDir = new File(System.getProperty("java.io.tmpdir"),
+                "cpptasks-executor-test");
+        outputDir.mkdirs();
+        final File stale = new File(outputDir, "bad.c.o");
+        stale.createNewFile();
+        try {
+            final MockCompilerConfiguration config =
+                    new OutputCompilerConfiguration();
+            final MockCompilerConfiguration other =
+                    new MockCompilerConfiguration(0);
+            final CompileExecutor executor = new CompileExecutor(
+                    new CCTask(), outputDir, 1, true, null);
+            final CompileExecutor.Node bad = executor.add(config, "bad.c");
+            final CompileExecutor.Node[] nodes = add(executor, config, "a", 3);
+            executor.addDependency(executor.add(other, "b.c"), nodes[0]);
+            executor.addDependency(executor.add(other, "c.c"), bad);
+            assertNotNull(executor.execute());
+            assertEquals(1, config.getInvocations());
+            assertEquals(4, config.getCompiled().size());
+            assertTrue(other.getCompiled().contains("b.c"));
+            assertFalse(other.getCompiled().contains("c.c"));
+            assertFalse(stale.exists());
+        } finally {
+            final File[] files = outputDir.listFiles();
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+            outputDir.delete();
+        }
+    }
+    /**
+     * A dependency cycle should be reported rather than hang.
+     */
+    public void testCycle() {
+        final MockCompilerConfiguration config = new MockCompilerConfiguration(0);
+        final CompileExecutor executor = new CompileExecutor(new CCTask(),
+                new File("."), 2, false, null);
+        final CompileExecutor.Node[] nodes = add(executor, config, "a", 2);
+        executor.addDependency(nodes[0], nodes[1]);
+        executor.addDependency(nodes[1], nodes[0]);
+        assertNotNull(executor.execute());
+        assertEquals(0, config.getCompiled().size());
+    }
+    /**
+     * Ready nodes should be started with edited sources first and then
+     * longest expected duration first.
+     */
+    public void testCriticalPathOrder() {
+        final CompileExecutor executor = new CompileExecutor(new CCTask(),
+                new File("."), 1, false, null);
+        final MockCompilerConfiguration shortConfig = new MockCompilerConfiguration(1);
+        final MockCompilerConfiguration unknownConfig = new MockCompilerConfiguration(1);
+        final MockCompilerConfiguration longConfig = new MockCompilerConfiguration(1);
+        final MockCompilerConfiguration editedConfig = new MockCompilerConfiguration(1);
+        executor.add(shortConfig, "short.c").setDuration(10);
+        executor.add(unknownConfig, "unknown.c");
+        executor.add(longConfig, "long.c").setDuration(90000);
+        final CompileExecutor.Node edited = executor.add(editedConfig,
+                "edited.c");
+        edited.setDuration(5);
+        edited.setEdited(true);
+        assertNull(executor.execute());
+        assertTrue(editedConfig.getFirstStart() < longConfig.getFirstStart());
+        assertTrue(longConfig.getFirstStart() < unknownConfig.getFirstStart());
+        assertTrue(unknownConfig.getFirstStart() < shortConfig.getFirstStart());
+    }
+    /**
+     * A quick node should be started before a slow one when a long chain
+     * of compilations waits on it.
+     */
+    public void testLongestChainFirst() {
+        final CompileExecutor executor = new CompileExecutor(new CCTask(),
+                new File("."), 1, false, null);
+        final MockCompilerConfiguration slowConfig = new MockCompilerConfiguration(1);
+        final MockCompilerConfiguration headConfig = new MockCompilerConfiguration(1);
+        final MockCompilerConfiguration tailConfig = new MockCompilerConfiguration(1);
+        executor.add(slowConfig, "slow.c").setDuration(1000);
+        final CompileExecutor.Node head = executor.add(headConfig, "head.c");
+        head.setDuration(10);
+        final CompileExecutor.Node tail = executor.add(tailConfig, "tail.c");
+        tail.setDuration(5000);
+        executor.addDependency(tail, head);
+        assertNull(executor.execute());
+        assertTrue(headConfig.getFirstStart() < slowConfig.getFirstStart());
+        assertTrue(tailConfig.getFirstStart() > headConfig.getLastEnd());
+    }
+}
@@ -16,10 +16,24 @@
  */
 package net.sf.antcontrib.cpptasks;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
 
 import javax.xml.parsers.ParserConfigurationException;
 
+import net.sf.antcontrib.cpptasks.compiler.CompilerConfiguration;
+import net.sf.antcontrib.cpptasks.gcc.GccCCompiler;
+import net.sf.antcontrib.cpptasks.types.UndefineArgument;
+
+import org.apache.tools.ant.Project;
 import org.xml.sax.SAXException;
 /**
  * DependencyTable tests
@@ -70,4 +84,617 @@ public class TestDependencyTable extends TestXMLConsumer {
             deleteTmpFile("dependencies.xml");
         }
     }
+    /**
+     * Dependency infos should be read back from the binary form.
+     */
+    public void testBinaryStore() throws IOException {
+        File file = new File(System.getProperty("java.io.tmpdir"),
+                "dependencies.bin");
+        try {
+            Vector dependInfos = new Vector();
+            for (int i = 0; i < 1000; i++) {
+                Vector includes = new Vector();
+                includes.addElement("include/common.h");
+                includes.addElement("include/file" + Integer.toString(i) + ".h");
+                Vector sysIncludes = new Vector();
+                sysIncludes.addElement("stdio.h");
+                DependencyInfo dependInfo = new DependencyInfo("gcc/include",
+                        "src/file" + Integer.toString(i) + ".c", i * 1000L,
+                        includes, sysIncludes);
+                if (i % 3 == 0) {
+                    dependInfo.setGuard("FILE" + Integer.toString(i) + "_H");
+                }
+                dependInfo.setComplete(i % 5 == 0);
+                if (i % 7 == 0) {
+                    dependInfo.setIncludeNames(new String[]{"common.h",
+                            "file" + Integer.toString(i) + ".h"});
+                } else if (i % 7 == 1) {
+                    dependInfo.setIncludeNames(new String[0]);
+                }
+                if (i % 11 == 0) {
+                    dependInfo.setDefinedMacros(new String[]{"DEBUG"});
+                    dependInfo.setAssumedMacros(new String[]{"LINUX",
+                            "HAVE_" + Integer.toString(i)});
+                }
+                if (i % 2 == 0) {
+                    dependInfo.setIdentity(new FileIdentity(i * 1000000000L,
+                            i, "(dev=801,ino=" + Integer.toString(i) + ")",
+                            i % 4 == 0 ? "0123456789abcdef" : null));
+                }
+                dependInfos.addElement(dependInfo);
+            }
+            DependencyStore.write(file, dependInfos);
+            DependencyStore store = DependencyStore.read(file);
+            assertEquals(1000, store.getRecordCount());
+            assertEquals("src/file999.c", store.getSource(999));
+            DependencyInfo dependInfo = store.getDependencyInfo(4);
+            assertEquals("gcc/include", dependInfo.getIncludePathIdentifier());
+            assertEquals("src/file4.c", dependInfo.getSource());
+            assertEquals(4000L, dependInfo.getSourceLastModified());
+            assertEquals(2, dependInfo.getIncludes().length);
+            assertEquals("include/file4.h", dependInfo.getIncludes()[1]);
+            assertEquals("stdio.h", dependInfo.getSysIncludes()[0]);
+            assertEquals(4000000000L, dependInfo.getIdentity().getModified());
+            assertEquals("(dev=801,ino=4)", dependInfo.getIdentity().getKey());
+            assertEquals("0123456789abcdef", dependInfo.getIdentity()
+                    .getHash());
+            assertNull(store.getDependencyInfo(2).getIdentity().getHash());
+            assertNull(store.getDependencyInfo(3).getIdentity());
+            assertEquals("FILE3_H", store.getDependencyInfo(3).getGuard());
+            assertNull(dependInfo.getGuard());
+            assertFalse(dependInfo.isComplete());
+            assertTrue(store.getDependencyInfo(5).isComplete());
+            assertNull(dependInfo.getIncludeNames());
+            assertEquals("file7.h", store.getDependencyInfo(7)
+                    .getIncludeNames()[1]);
+            assertEquals("stdio.h", store.getDependencyInfo(7)
+                    .getSysIncludes()[0]);
+            assertEquals(0, store.getDependencyInfo(8).getIncludeNames().length);
+            assertEquals(0, dependInfo.getDefinedMacros().length);
+            assertEquals(0, store.getDefinedMacros(4).length);
+            assertEquals("DEBUG", store.getDefinedMacros(77)[0]);
+            dependInfo = store.getDependencyInfo(77);
+            assertEquals("DEBUG", dependInfo.getDefinedMacros()[0]);
+            assertEquals("HAVE_77", dependInfo.getAssumedMacros()[1]);
+            assertEquals("file77.h", dependInfo.getIncludeNames()[1]);
+        } finally {
+            file.delete();
+        }
+    }
+    private static File write(File dir, String name) throws IOException {
+        File file = new File(dir, name);
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(name.getBytes("UTF-8"));
+        out.close();
+        return file;
+    }
+    /**
+     * An existing dependencies.xml should be converted to dependencies.bin,
+     * records not used by a build being carried forward.
+     */
+    public void testBinaryMigration() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"),
+                "cpptasks-dependencies-test");
+        dir.mkdirs();
+        File source = write(dir, "foo.c");
+        File header = write(dir, "foo.h");
+        File xmlFile = new File(dir, "dependencies.xml");
+        File binFile = new File(dir, "dependencies.bin");
+        try {
+            FileOutputStream out = new FileOutputStream(xmlFile);
+            out.write(("<?xml version='1.0' encoding='UTF-8'?>\n"
+                    + "<dependencies>\n<includePath signature=\"gcc\">\n"
+                    + "<source file=\"foo.c\" lastModified=\""
+                    + Long.toHexString(source.lastModified()) + "\">\n"
+                    + "<include file=\"foo.h\"/>\n</source>\n"
+                    + "<source file=\"foo.h\" lastModified=\""
+                    + Long.toHexString(header.lastModified()) + "\">\n"
+                    + "</source>\n</includePath>\n</dependencies>\n")
+                    .getBytes("UTF-8"));
+            out.close();
+            CCTask task = new CCTask();
+            task.setProject(new Project());
+            DependencyTable table = new DependencyTable(dir);
+            table.setBinary(true);
+            table.load();
+            table.commit(task);
+            assertTrue(binFile.exists());
+
+            table = new DependencyTable(dir);
+            table.setBinary(true);
+            table.load();
+            assertTrue(table.isCurrent());
+            //
+            //   a modified header is dropped when used,
+            //      the unused record of foo.c is kept
+            //
+            header.setLastModified(header.lastModified() - 10000);
+            assertNull(table.getDependencyInfo("foo.h", "gcc"));
+            table.commit(task);
+            assertEquals(1, DependencyStore.read(binFile).getRecordCount());
+
+            table = new DependencyTable(dir);
+            table.setBinary(true);
+            table.load();
+            assertNull(table.getDependencyInfo("foo.h", "gcc"));
+            DependencyInfo dependInfo = table.getDependencyInfo("foo.c", "gcc");
+            assertNotNull(dependInfo);
+            assertEquals("foo.h", dependInfo.getIncludes()[0]);
+            assertNull(table.getDependencyInfo("foo.c", "msvc"));
+            //
+            //   a file of another version is replaced
+            //      by the records of dependencies.xml
+            //
+            RandomAccessFile versioned = new RandomAccessFile(binFile, "rw");
+            versioned.seek(4);
+            versioned.writeInt(2);
+            versioned.close();
+            table = new DependencyTable(dir);
+            table.setBinary(true);
+            table.load(task);
+            assertNotNull(table.getDependencyInfo("foo.c", "gcc"));
+            table.commit(task);
+            assertEquals(2, DependencyStore.read(binFile).getRecordCount());
+        } finally {
+            source.delete();
+            header.delete();
+            xmlFile.delete();
+            binFile.delete();
+            dir.delete();
+        }
+    }
+    /**
+     * Records of dependencies.xml should only be checked when requested,
+     * unused records being carried forward even if no longer valid.
+     */
+    public void testLazyLoad() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"),
+                "cpptasks-dependencies-test");
+        dir.mkdirs();
+        File source = write(dir, "foo.c");
+        File header = write(dir, "foo.h");
+        File xmlFile = new File(dir, "dependencies.xml");
+        try {
+            FileOutputStream out = new FileOutputStream(xmlFile);
+            out.write(("<?xml version='1.0' encoding='UTF-8'?>\n"
+                    + "<dependencies>\n<includePath signature=\"gcc\">\n"
+                    + "<source file=\"foo.c\" lastModified=\""
+                    + Long.toHexString(source.lastModified()) + "\">\n"
+                    + "<include file=\"foo.h\"/>\n</source>\n"
+                    + "<source file=\"foo.h\" lastModified=\""
+                    + Long.toHexString(header.lastModified()) + "\">\n"
+                    + "</source>\n"
+                    + "<source file=\"gone.c\" lastModified=\"1\">\n"
+                    + "</source>\n</includePath>\n</dependencies>\n")
+                    .getBytes("UTF-8"));
+            out.close();
+            CCTask task = new CCTask();
+            task.setProject(new Project());
+            DependencyTable table = new DependencyTable(dir);
+            table.load();
+            //
+            //   a modified header is dropped when used,
+            //      the unused records are kept
+            //
+            header.setLastModified(header.lastModified() - 10000);
+            assertNull(table.getDependencyInfo("foo.h", "gcc"));
+            table.commit(task);
+
+            table = new DependencyTable(dir);
+            table.load();
+            assertNull(table.getDependencyInfo("foo.h", "gcc"));
+            assertNotNull(table.getDependencyInfo("foo.c", "gcc"));
+            int count = 0;
+            Enumeration elements = table.elements();
+            while (elements.hasMoreElements()) {
+                elements.nextElement();
+                count++;
+            }
+            assertEquals(1, count);
+            //
+            //   gone.c was only dropped by elements()
+            //
+            table.commit(task);
+            table = new DependencyTable(dir);
+            table.load();
+            assertNull(table.getDependencyInfo("gone.c", "gcc"));
+        } finally {
+            source.delete();
+            header.delete();
+            xmlFile.delete();
+            dir.delete();
+        }
+    }
+    private static DependencyInfo put(DependencyTable table, String source,
+            long lastModified, String[] includes) {
+        Vector includeVector = new Vector();
+        for (int i = 0; i < includes.length; i++) {
+            includeVector.addElement(includes[i]);
+        }
+        DependencyInfo dependInfo = new DependencyInfo("gcc", source,
+                lastModified, includeVector, new Vector());
+        table.putDependencyInfo(source, dependInfo);
+        return dependInfo;
+    }
+    /**
+     * Composite times should cover include cycles and be shared by all
+     * files of a cycle.
+     */
+    public void testCompositeLastModified() {
+        DependencyTable table = new DependencyTable(new File(System
+                .getProperty("java.io.tmpdir")));
+        CompilerConfiguration compiler = (CompilerConfiguration) Proxy
+                .newProxyInstance(getClass().getClassLoader(),
+                        new Class[]{CompilerConfiguration.class},
+                        new InvocationHandler() {
+                            public Object invoke(Object proxy, Method method,
+                                    Object[] args) {
+                                if (method.getName().equals(
+                                        "getIncludePathIdentifier")) {
+                                    return "gcc";
+                                }
+                                throw new UnsupportedOperationException(
+                                        method.getName());
+                            }
+                        });
+        //
+        //   foo.c -> a.h <-> b.h -> c.h, bar.c -> b.h, baz.c -> d.h
+        //
+        DependencyInfo foo = put(table, "foo.c", 1000, new String[]{"a.h"});
+        DependencyInfo a = put(table, "a.h", 2000, new String[]{"b.h"});
+        DependencyInfo b = put(table, "b.h", 3000, new String[]{"a.h",
+                "c.h"});
+        DependencyInfo c = put(table, "c.h", 5000, new String[0]);
+        DependencyInfo bar = put(table, "bar.c", 4000, new String[]{"b.h"});
+        DependencyInfo baz = put(table, "baz.c", 6000, new String[]{"d.h"});
+        put(table, "d.h", 500, new String[0]);
+        assertEquals(5000, table.getCompositeLastModified(null, compiler,
+                foo));
+        assertEquals(5000, a.getCompositeLastModified());
+        assertEquals(5000, b.getCompositeLastModified());
+        assertEquals(5000, c.getCompositeLastModified());
+        assertEquals(5000, table.getCompositeLastModified(null, compiler,
+                bar));
+        assertEquals(6000, table.getCompositeLastModified(null, compiler,
+                baz));
+        //
+        //   kept until revalidated
+        //
+        table.revalidate();
+        assertEquals(Long.MIN_VALUE, a.getCompositeLastModified());
+    }
+    /**
+     * The composite time of dependencies reported by the compiler should
+     * be the latest of the listed files, without parsing them.
+     */
+    public void testCompleteDependencies() throws IOException {
+        File dir = new File(System.getProperty("java.io.tmpdir"),
+                "cpptasks-complete-test");
+        dir.mkdirs();
+        File a = write(dir, "a.h");
+        File b = write(dir, "b.h");
+        try {
+            a.setLastModified(2000000);
+            b.setLastModified(3000000);
+            DependencyTable table = new DependencyTable(dir);
+            CompilerConfiguration compiler = (CompilerConfiguration) Proxy
+                    .newProxyInstance(getClass().getClassLoader(),
+                            new Class[]{CompilerConfiguration.class},
+                            new InvocationHandler() {
+                                public Object invoke(Object proxy,
+                                        Method method, Object[] args) {
+                                    if (method.getName().equals(
+                                            "getIncludePathIdentifier")) {
+                                        return "gcc";
+                                    }
+                                    throw new UnsupportedOperationException(
+                                            method.getName());
+                                }
+                            });
+            DependencyInfo foo = put(table, "foo.c", 1000000, new String[]{
+                    "a.h", "b.h"});
+            foo.setComplete(true);
+            DependencyInfo bar = put(table, "bar.c", 1000000,
+                    new String[]{"foo.c"});
+            assertEquals(b.lastModified(), table.getCompositeLastModified(
+                    null, compiler, bar));
+            assertEquals(b.lastModified(), foo.getCompositeLastModified());
+            //
+            //   a missing file forces a rebuild
+            //
+            b.delete();
+            table.setFileStateCache(new FileStateCache());
+            table.revalidate();
+            assertEquals(Long.MAX_VALUE, table.getCompositeLastModified(null,
+                    compiler, foo));
+        } finally {
+            a.delete();
+            b.delete();
+            dir.delete();
+        }
+    }
+    /**
+     * A source parsed for one include path should only have its include
+     * names resolved for another.
+     */
+    public void testResolveIncludeNames() {
+        final DependencyTable table = new DependencyTable(new File(System
+                .getProperty("java.io.tmpdir")));
+        final Vector calls = new Vector();
+        CompilerConfiguration[] compilers = new CompilerConfiguration[2];
+        for (int i = 0; i < compilers.length; i++) {
+            final String includePath = "gcc" + Integer.toString(i);
+            compilers[i] = (CompilerConfiguration) Proxy.newProxyInstance(
+                    getClass().getClassLoader(),
+                    new Class[]{CompilerConfiguration.class},
+                    new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method,
+                                Object[] args) {
+                            if (method.getName().equals(
+                                    "getIncludePathIdentifier")) {
+                                return includePath;
+                            }
+                            File source = (File) args[2];
+                            Vector includes = new Vector();
+                            includes.addElement(includePath + "/foo.h");
+                            DependencyInfo dependInfo = new DependencyInfo(
+                                    includePath, source.getName(), 1000,
+                                    includes, new Vector());
+                            if (method.getName().equals("parseIncludes")) {
+                                dependInfo.setIncludeNames(new String[]{
+                                        "foo.h"});
+                            } else {
+                                assertEquals("foo.h",
+                                        ((String[]) args[3])[0]);
+                                assertEquals("FOO_H", args[4]);
+                            }
+                            dependInfo.setGuard("FOO_H");
+                            calls.addElement(method.getName());
+                            return dependInfo;
+                        }
+                    });
+        }
+        File source = new File(System.getProperty("java.io.tmpdir"),
+                "foo.c");
+        table.parseIncludes(null, compilers[0], source);
+        DependencyInfo dependInfo = table.parseIncludes(null, compilers[1],
+                source);
+        assertEquals("gcc1/foo.h", dependInfo.getIncludes()[0]);
+        assertEquals(2, calls.size());
+        assertEquals("parseIncludes", calls.elementAt(0));
+        assertEquals("resolveIncludes", calls.elementAt(1));
+        assertSame(dependInfo, table.getDependencyInfo("foo.c", "gcc1"));
+        assertNotNull(table.getDependencyInfo("foo.c", "gcc0"));
+    }
+    /**
+     * A macro of the defines that a header redefines should be unknown to
+     * the conditionals of the sources including it.
+     */
+    public void testRedefinedMacros() throws Exception {
+        final File dir = new File(System.getProperty("java.io.tmpdir"),
+                "cpptasks-macros-test");
+        dir.mkdirs();
+        File source = new File(dir, "foo.c");
+        File header = new File(dir, "foo.h");
+        File conditional = write(dir, "x.h");
+        FileOutputStream out = new FileOutputStream(source);
+        out.write(("#include \"foo.h\"\n#ifdef FOO\n#include \"x.h\"\n"
+                + "#endif\n").getBytes("UTF-8"));
+        out.close();
+        out = new FileOutputStream(header);
+        out.write("#define FOO\n".getBytes("UTF-8"));
+        out.close();
+        final DependencyTable table = new DependencyTable(dir);
+        final UndefineArgument undefine = new UndefineArgument();
+        undefine.setName("FOO");
+        CompilerConfiguration compiler = (CompilerConfiguration) Proxy
+                .newProxyInstance(getClass().getClassLoader(),
+                        new Class[]{CompilerConfiguration.class},
+                        new InvocationHandler() {
+                            public Object invoke(Object proxy, Method method,
+                                    Object[] args) {
+                                if (method.getName().equals(
+                                        "getIncludePathIdentifier")) {
+                                    return "gcc";
+                                }
+                                if (method.getName().equals(
+                                        "resolveIncludes")) {
+                                    return null;
+                                }
+                                return GccCCompiler.getInstance()
+                                        .parseIncludes(null, (File) args[2],
+                                                new File[0], new File[0],
+                                                new File[0], dir, "gcc",
+                                                new UndefineArgument[]{
+                                                        undefine},
+                                                table.getRedefinedMacros());
+                            }
+                        });
+        try {
+            DependencyInfo dependInfo = table.parseIncludes(null, compiler,
+                    source);
+            assertEquals(1, dependInfo.getIncludes().length);
+            assertEquals("FOO", dependInfo.getAssumedMacros()[0]);
+            assertFalse(table.checkRedefinedMacros());
+            table.parseIncludes(null, compiler, header);
+            assertTrue(table.checkRedefinedMacros());
+            assertNull(table.getDependencyInfo("foo.c", "gcc"));
+            dependInfo = table.parseIncludes(null, compiler, source);
+            assertEquals(2, dependInfo.getIncludes().length);
+            assertEquals("x.h", dependInfo.getIncludes()[1]);
+            assertEquals(0, dependInfo.getAssumedMacros().length);
+            //
+            //   the macro stays unknown in the next build
+            //
+            table.commit(null);
+            DependencyTable loaded = new DependencyTable(dir);
+            loaded.load();
+            assertEquals("FOO", loaded.getRedefinedMacros()[0]);
+            assertEquals(2, loaded.getDependencyInfo("foo.c", "gcc")
+                    .getIncludes().length);
+            assertEquals("FOO", loaded.getDependencyInfo("foo.h", "gcc")
+                    .getDefinedMacros()[0]);
+        } finally {
+            source.delete();
+            header.delete();
+            conditional.delete();
+            new File(dir, "dependencies.xml").delete();
+            dir.delete();
+        }
+    }
+    /**
+     * Files without dependency info should each be parsed once by
+     * concurrent parsing, except the includes of changed sources.
+     */
+    public void testParseConcurrently() throws IOException {
+        final File dir = new File(System.getProperty("java.io.tmpdir"),
+                "cpptasks-dependencies-test");
+        dir.mkdirs();
+        final File output = write(dir, "foo.o");
+        final Hashtable parsed = new Hashtable();
+        CompilerConfiguration compiler = (CompilerConfiguration) Proxy
+                .newProxyInstance(getClass().getClassLoader(),
+                        new Class[]{CompilerConfiguration.class},
+                        new InvocationHandler() {
+                            public Object invoke(Object proxy, Method method,
+                                    Object[] args) {
+                                if (method.getName().equals(
+                                        "getIncludePathIdentifier")) {
+                                    return "gcc";
+                                }
+                                if (!method.getName().equals("parseIncludes")) {
+                                    throw new UnsupportedOperationException(
+                                            method.getName());
+                                }
+                                String name = ((File) args[2]).getName();
+                                Integer count = (Integer) parsed.get(name);
+                                parsed.put(name, Integer.valueOf(count == null
+                                        ? 1
+                                        : count.intValue() + 1));
+                                Vector includes = new Vector();
+                                long lastModified = 1000;
+                                if (name.endsWith(".c")) {
+                                    includes.addElement("common.h");
+                                    includes.addElement(name.substring(0,
+                                            name.length() - 2) + ".h");
+                                    if (name.equals("changed.c")) {
+                                        lastModified = output.lastModified()
+                                                + 60000;
+                                    }
+                                }
+                                return new DependencyInfo("gcc", name,
+                                        lastModified, includes, new Vector());
+                            }
+                        });
+        try {
+            CCTask task = new CCTask();
+            task.setProject(new Project());
+            DependencyTable table = new DependencyTable(dir);
+            Vector targets = new Vector();
+            for (int i = 0; i < 200; i++) {
+                targets.addElement(new TargetInfo(compiler, new File[]{
+                        new File(dir, "file" + Integer.toString(i) + ".c")},
+                        null, output, "foo", false));
+            }
+            targets.addElement(new TargetInfo(compiler, new File[]{new File(
+                    dir, "changed.c")}, null, output, "foo", false));
+            table.parseIncludes(task, targets, 4);
+            assertEquals(402, parsed.size());
+            Enumeration counts = parsed.elements();
+            while (counts.hasMoreElements()) {
+                assertEquals(Integer.valueOf(1), counts.nextElement());
+            }
+            assertNotNull(table.getDependencyInfo("file199.h", "gcc"));
+            assertNull(parsed.get("changed.h"));
+        } finally {
+            output.delete();
+            dir.delete();
+        }
+    }
+    /**
+     * A guarded header included again by a translation unit should not be
+     * walked again, and its guard should be written to dependencies.xml.
+     */
+    public void testGuardedWalk() throws IOException {
+        File dir = new File(System.getProperty("java.io.tmpdir"),
+                "cpptasks-guard-test");
+        dir.mkdirs();
+        DependencyTable table = new DependencyTable(dir);
+        CompilerConfiguration compiler = (CompilerConfiguration) Proxy
+                .newProxyInstance(getClass().getClassLoader(),
+                        new Class[]{CompilerConfiguration.class},
+                        new InvocationHandler() {
+                            public Object invoke(Object proxy, Method method,
+                                    Object[] args) {
+                                if (method.getName().equals(
+                                        "getIncludePathIdentifier")) {
+                                    return "gcc";
+                                }
+                                throw new UnsupportedOperationException(
+                                        method.getName());
+                            }
+                        });
+        //
+        //   foo.c -> a.h -> g.h -> x.h, foo.c -> b.h -> g.h,
+        //      bar.c -> a.h -> u.h -> x.h, bar.c -> b.h -> u.h
+        //
+        DependencyInfo foo = put(table, "foo.c", 1000, new String[]{"a.h",
+                "b.h"});
+        put(table, "a.h", 1000, new String[]{"g.h"});
+        put(table, "b.h", 1000, new String[]{"g.h"});
+        put(table, "g.h", 1000, new String[]{"x.h"}).setGuard("G_H");
+        put(table, "x.h", 1000, new String[0]);
+        DependencyInfo bar = put(table, "bar.c", 1000, new String[]{"c.h",
+                "d.h"});
+        put(table, "c.h", 1000, new String[]{"u.h"});
+        put(table, "d.h", 1000, new String[]{"u.h"});
+        put(table, "u.h", 1000, new String[]{"x.h"});
+        final int[] visits = new int[1];
+        DependencyTable.DependencyVisitor visitor =
+                table.new DependencyVisitor() {
+            public boolean preview(DependencyInfo parent,
+                    DependencyInfo[] children) {
+                return true;
+            }
+            public void stackExhausted() {
+            }
+            public boolean visit(DependencyInfo dependInfo) {
+                if (dependInfo.getSource().equals("x.h")) {
+                    visits[0]++;
+                }
+                return true;
+            }
+        };
+        try {
+            table.walkDependencies(null, foo, compiler,
+                    new DependencyInfo[50], visitor);
+            assertEquals(1, visits[0]);
+            visits[0] = 0;
+            table.walkDependencies(null, bar, compiler,
+                    new DependencyInfo[50], visitor);
+            assertEquals(2, visits[0]);
+            //
+            //   walked again by the next translation unit
+            //
+            visits[0] = 0;
+            table.walkDependencies(null, foo, compiler,
+                    new DependencyInfo[50], visitor);
+            assertEquals(1, visits[0]);
+            table.commit(null);
+            File file = new File(dir, "dependencies.xml");
+            byte[] content = new byte[(int) file.length()];
+            FileInputStream in = new FileInputStream(file);
+            try {
+                assertEquals(content.length, in.read(content));
+            } finally {
+                in.close();
+            }
+            assertTrue(new String(content, "UTF-8").indexOf(
+                    "<source file=\"g.h\" lastModified=\"3e8\""
+                            + " guard=\"G_H\">") >= 0);
+        } finally {
+            new File(dir, "dependencies.xml").delete();
+            dir.delete();
+        }
+    }
 }
@@ -0,0 +1,153 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+/**
+ * Tests for FileStateCache
+ */
+public class TestFileStateCache extends TestCase {
+    private File dir;
+
+    public TestFileStateCache(final String name) {
+        super(name);
+    }
+    protected void setUp() throws Exception {
+        super.setUp();
+        dir = new File(System.getProperty("java.io.tmpdir"),
+                "cpptasks-filestate-test");
+        dir.mkdirs();
+    }
+    protected void tearDown() throws Exception {
+        final File[] files = dir.listFiles();
+        for (int i = 0; i < files.length; i++) {
+            files[i].delete();
+        }
+        dir.delete();
+        super.tearDown();
+    }
+    private static void write(final File file, final String content)
+            throws IOException {
+        final FileOutputStream out = new FileOutputStream(file);
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+    }
+    /**
+     * States should be read once and kept until invalidated.
+     */
+    public void testInvalidate() throws IOException {
+        final FileStateCache cache = new FileStateCache();
+        final File file = new File(dir, "foo.o");
+        assertFalse(cache.exists(file));
+        assertEquals(0, cache.lastModified(file));
+        write(file, "foo");
+        assertFalse(cache.exists(file));
+        cache.invalidate(file);
+        assertTrue(cache.exists(file));
+        assertEquals(file.lastModified(), cache.lastModified(file));
+        final long lastModified = file.lastModified();
+        file.setLastModified(lastModified - 60000);
+        assertEquals(lastModified, cache.lastModified(file));
+        cache.invalidate(file);
+        assertEquals(file.lastModified(), cache.lastModified(file));
+    }
+    /**
+     * Lookups in directory listings should agree with File.exists and see
+     * new files once invalidated.
+     */
+    public void testExistsInDirectory() throws IOException {
+        final FileStateCache cache = new FileStateCache();
+        final File sub = new File(dir, "sub");
+        sub.mkdirs();
+        try {
+            write(new File(dir, "foo.h"), "");
+            write(new File(sub, "bar.h"), "");
+            assertTrue(cache.exists(dir, "foo.h"));
+            assertTrue(cache.exists(dir, "sub/bar.h"));
+            assertTrue(cache.exists(dir, "sub"));
+            assertTrue(cache.exists(dir, "./foo.h"));
+            assertTrue(cache.exists(sub, "../foo.h"));
+            assertFalse(cache.exists(dir, "bar.h"));
+            assertFalse(cache.exists(dir, "foo.h/bar.h"));
+            assertFalse(cache.exists(dir, "none/bar.h"));
+            assertFalse(cache.exists(new File(dir, "none"), "foo.h"));
+            //
+            //   names differing in case depend on the volume
+            //
+            assertEquals(new File(dir, "FOO.h").exists(),
+                    cache.exists(dir, "FOO.h"));
+            assertEquals(new File(dir, "Sub/bar.h").exists(),
+                    cache.exists(dir, "Sub/bar.h"));
+            final File baz = new File(sub, "baz.h");
+            assertFalse(cache.exists(dir, "sub/baz.h"));
+            write(baz, "");
+            assertFalse(cache.exists(dir, "sub/baz.h"));
+            cache.invalidate(baz);
+            assertTrue(cache.exists(dir, "sub/baz.h"));
+            baz.delete();
+        } finally {
+            new File(sub, "bar.h").delete();
+            sub.delete();
+        }
+    }
+    /**
+     * Relative paths should match those of CUtil.getRelativePath.
+     */
+    public void testGetRelativePath() throws IOException {
+        final FileStateCache cache = new FileStateCache();
+        final String base = dir.getCanonicalPath();
+        final File[] files = new File[]{new File(dir, "foo.c"),
+                new File(dir, "../bar/foo.c"), dir,
+                new File(dir, "sub/./baz.h")};
+        for (int i = 0; i < files.length; i++) {
+            final String expected = CUtil.getRelativePath(base, files[i]);
+            assertEquals(expected, cache.getRelativePath(base, files[i]));
+            assertEquals(expected, cache.getRelativePath(base, files[i]));
+        }
+        assertEquals(new File(dir, "foo.c").getCanonicalPath(),
+                cache.getCanonicalPath(new File(dir, "./foo.c")));
+    }
+    /**
+     * Content should only be hashed when the identity changed and files
+     * with the same content should be recognized.
+     */
+    public void testUnchangedIdentity() throws IOException {
+        final File file = new File(dir, "foo.h");
+        write(file, "int foo;\n");
+        final FileIdentity recorded = new FileStateCache()
+                .getContentIdentity(file);
+        assertNotNull(recorded.getHash());
+        assertEquals(file.length(), recorded.getSize());
+        assertSame(recorded, new FileStateCache().getUnchangedIdentity(file,
+                recorded));
+        write(file, "int foo;\n");
+        file.setLastModified(file.lastModified() + 60000);
+        final FileIdentity current = new FileStateCache()
+                .getUnchangedIdentity(file, recorded);
+        assertNotNull(current);
+        assertNotSame(recorded, current);
+        assertEquals(recorded.getHash(), current.getHash());
+        write(file, "int bar;\n");
+        file.setLastModified(file.lastModified() + 120000);
+        assertNull(new FileStateCache().getUnchangedIdentity(file, recorded));
+        assertNull(new FileStateCache().getUnchangedIdentity(file, recorded
+                .withHash(null)));
+    }
+}
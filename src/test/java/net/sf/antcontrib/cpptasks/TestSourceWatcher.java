@@ -0,0 +1,136 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+/**
+ * Tests for SourceWatcher
+ */
+public class TestSourceWatcher extends TestCase {
+    private File dir;
+    private SourceWatcher watcher;
+
+    public TestSourceWatcher(final String name) {
+        super(name);
+    }
+    protected void setUp() throws Exception {
+        super.setUp();
+        dir = new File(System.getProperty("java.io.tmpdir"),
+                "cpptasks-watcher-test");
+        dir.mkdirs();
+        watcher = new SourceWatcher();
+    }
+    protected void tearDown() throws Exception {
+        watcher.close();
+        final File[] files = dir.listFiles();
+        for (int i = 0; i < files.length; i++) {
+            final File[] children = files[i].listFiles();
+            if (children != null) {
+                for (int j = 0; j < children.length; j++) {
+                    children[j].delete();
+                }
+            }
+            files[i].delete();
+        }
+        dir.delete();
+        super.tearDown();
+    }
+    private static void write(final File file, final String content)
+            throws IOException {
+        final FileOutputStream out = new FileOutputStream(file);
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+    }
+    /**
+     * Modification times should be reported as by File.lastModified() and
+     * updated once the file changes.
+     */
+    public void testLastModified() throws IOException {
+        final File file = new File(dir, "foo.c");
+        assertEquals(0, watcher.lastModified(file));
+        write(file, "int foo;\n");
+        watcher.sync(dir);
+        assertEquals(file.lastModified(), watcher.lastModified(file));
+        file.setLastModified(file.lastModified() - 60000);
+        watcher.sync(dir);
+        assertEquals(file.lastModified(), watcher.lastModified(file));
+        file.delete();
+        watcher.sync(dir);
+        assertEquals(0, watcher.lastModified(file));
+    }
+    /**
+     * Changes should be collected until drained.
+     */
+    public void testDrainChanges() throws IOException {
+        assertTrue(watcher.watch(dir));
+        watcher.drainChanges();
+        final File file = new File(dir, "bar.h");
+        write(file, "#define BAR\n");
+        watcher.sync(dir);
+        final String[] changes = watcher.drainChanges();
+        assertTrue(changes.length > 0);
+        assertEquals(file.getAbsolutePath(), changes[0]);
+        assertEquals(0, watcher.drainChanges().length);
+    }
+    /**
+     * Waiting for changes should ignore changes within ignored
+     * directories and return once a relevant change is made.
+     */
+    public void testWaitForChanges() throws Exception {
+        final File objDir = new File(dir, "obj");
+        objDir.mkdirs();
+        assertTrue(watcher.watch(dir));
+        assertTrue(watcher.watch(objDir));
+        final File source = new File(dir, "main.c");
+        final Thread writer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    write(new File(objDir, "main.o"), "object");
+                    Thread.sleep(300);
+                    write(source, "int main() { return 0; }\n");
+                } catch (final Exception ex) {
+                }
+            }
+        });
+        writer.start();
+        final String[] changes = watcher.waitForChanges(new File[]{objDir},
+                50);
+        writer.join();
+        assertEquals(1, changes.length);
+        assertEquals(source.getAbsolutePath(), changes[0]);
+    }
+    /**
+     * Closing the watcher should release a waiting thread.
+     */
+    public void testClose() throws Exception {
+        final Thread closer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (final InterruptedException ex) {
+                }
+                watcher.close();
+            }
+        });
+        closer.start();
+        assertEquals(0, watcher.waitForChanges(new File[0], 50).length);
+        closer.join();
+    }
+}
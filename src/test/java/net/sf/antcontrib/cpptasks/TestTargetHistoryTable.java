@@ -18,9 +18,14 @@ package net.sf.antcontrib.cpptasks;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Vector;
 
 import net.sf.antcontrib.cpptasks.compiler.ProcessorConfiguration;
 import net.sf.antcontrib.cpptasks.VersionInfo;
+
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.Project;
 /**
  * Tests for TargetHistoryTable
  * 
@@ -138,4 +143,248 @@ public class TestTargetHistoryTable extends TestXMLConsumer {
             }
         }
     }
+    /**
+     * Tests that compile durations are written to and read from the
+     * history file.
+     *
+     * @throws IOException
+     */
+    public void testDuration() throws IOException {
+        File compiledFile = null;
+        String tempDir = System.getProperty("java.io.tmpdir");
+        File historyFile = new File(tempDir, "history.xml");
+        try {
+            if (historyFile.exists()) {
+                historyFile.delete();
+            }
+            TargetHistoryTable table = new TargetHistoryTable(null, new File(
+                    tempDir));
+            compiledFile = new File(tempDir, "dummy.o");
+            FileOutputStream compiledStream = new FileOutputStream(compiledFile);
+            compiledStream.close();
+            table.update(new MockProcessorConfiguration(),
+                    new String[]{"dummy.o"}, null, 90000);
+            assertEquals(90000, table.getDuration("dummy.o"));
+            table.commit();
+            TargetHistoryTable reloaded = new TargetHistoryTable(null,
+                    new File(tempDir));
+            assertEquals(90000, reloaded.getDuration("dummy.o"));
+            assertEquals(90000, reloaded.get("Mock Configuration", "dummy.o")
+                    .getDuration());
+            assertEquals(-1, reloaded.getDuration("missing.o"));
+            //
+            //   an unknown duration, as for an output taken from
+            //      a cache, keeps the recorded one
+            //
+            reloaded.update(new MockProcessorConfiguration(),
+                    new String[]{"dummy.o"}, null, -1);
+            assertEquals(90000, reloaded.getDuration("dummy.o"));
+        } finally {
+            if (compiledFile != null && compiledFile.exists()) {
+                compiledFile.delete();
+            }
+            historyFile.delete();
+        }
+    }
+    private static void write(File file, String content, long lastModified)
+            throws IOException {
+        FileOutputStream stream = new FileOutputStream(file);
+        stream.write(content.getBytes("UTF-8"));
+        stream.close();
+        file.setLastModified(lastModified);
+    }
+    private static boolean mustRebuild(File dir, boolean contentHash,
+            ProcessorConfiguration config, File source, File output) {
+        TargetHistoryTable table = new TargetHistoryTable(null, dir);
+        table.setContentHash(contentHash);
+        TargetInfo target = new TargetInfo(config, new File[]{source}, null,
+                output, output.getName(), false);
+        table.markForRebuild(target);
+        return target.getRebuild();
+    }
+    /**
+     * Tests that a source rewritten with the same content is only
+     * considered changed if content hashing is disabled.
+     *
+     * @throws IOException
+     */
+    public void testContentHash() throws IOException {
+        String tempDir = System.getProperty("java.io.tmpdir");
+        File dir = new File(tempDir);
+        File historyFile = new File(tempDir, "history.xml");
+        File source = new File(tempDir, "hashed.c");
+        File output = new File(tempDir, "hashed.o");
+        ProcessorConfiguration config = new MockProcessorConfiguration() {
+            public String[] getOutputFileNames(String baseName,
+                    VersionInfo versionInfo) {
+                return new String[]{"hashed.o"};
+            }
+            public String toString() {
+                return getIdentifier();
+            }
+        };
+        try {
+            if (historyFile.exists()) {
+                historyFile.delete();
+            }
+            long lastModified = System.currentTimeMillis() - 600000;
+            write(source, "int foo;\n", lastModified);
+            TargetHistoryTable table = new TargetHistoryTable(null, dir);
+            table.setContentHash(true);
+            write(output, "", System.currentTimeMillis());
+            table.update(config, new String[]{source.getAbsolutePath()}, null);
+            table.commit();
+            assertFalse(mustRebuild(dir, true, config, source, output));
+            //
+            //   same content, later time
+            //
+            write(source, "int foo;\n", lastModified + 60000);
+            assertFalse(mustRebuild(dir, true, config, source, output));
+            assertTrue(mustRebuild(dir, false, config, source, output));
+            //
+            //   same size, different content
+            //
+            write(source, "int bar;\n", lastModified + 120000);
+            assertTrue(mustRebuild(dir, true, config, source, output));
+        } finally {
+            source.delete();
+            output.delete();
+            historyFile.delete();
+        }
+    }
+    /**
+     * Tests that records are kept in the journal until committed and
+     * that an incomplete last record is ignored.
+     *
+     * @throws IOException
+     */
+    public void testJournal() throws IOException {
+        String tempDir = System.getProperty("java.io.tmpdir");
+        File dir = new File(tempDir);
+        File historyFile = new File(tempDir, "history.xml");
+        File journalFile = new File(tempDir, "history.journal");
+        File compiledFile = new File(tempDir, "journaled.o");
+        try {
+            historyFile.delete();
+            journalFile.delete();
+            TargetHistoryTable table = new TargetHistoryTable(null, dir);
+            long historyLength = historyFile.length();
+            write(compiledFile, "", System.currentTimeMillis());
+            table.update(new MockProcessorConfiguration(),
+                    new String[]{"journaled.o"}, null, 500);
+            assertTrue(journalFile.length() > 0);
+            assertEquals(historyLength, historyFile.length());
+            assertTrue(table.isCurrent());
+            //
+            //   as after an interrupted build
+            //
+            FileOutputStream stream = new FileOutputStream(journalFile, true);
+            stream.write("   <processor signature=\"Mock\">\n      <targ"
+                    .getBytes("UTF-8"));
+            stream.close();
+            assertFalse(table.isCurrent());
+            TargetHistoryTable reloaded = new TargetHistoryTable(null, dir);
+            assertEquals(500, reloaded.get("Mock Configuration", "journaled.o")
+                    .getDuration());
+            reloaded.commit();
+            assertFalse(journalFile.exists());
+            assertTrue(historyFile.length() > historyLength);
+            TargetHistoryTable compacted = new TargetHistoryTable(null, dir);
+            assertEquals(500, compacted.getDuration("journaled.o"));
+        } finally {
+            compiledFile.delete();
+            journalFile.delete();
+            historyFile.delete();
+        }
+    }
+    /**
+     * Tests that a journal that can not be written is reported once and
+     * the records are still written by commit.
+     *
+     * @throws IOException
+     */
+    public void testJournalFailure() throws IOException {
+        String tempDir = System.getProperty("java.io.tmpdir");
+        File dir = new File(tempDir);
+        File historyFile = new File(tempDir, "history.xml");
+        File journalFile = new File(tempDir, "history.journal");
+        File compiledFile = new File(tempDir, "journaled.o");
+        try {
+            historyFile.delete();
+            journalFile.delete();
+            //
+            //   a directory can not be appended to
+            //
+            journalFile.mkdir();
+            CCTask task = new CCTask();
+            Project project = new Project();
+            MockBuildListener listener = new MockBuildListener();
+            project.addBuildListener(listener);
+            task.setProject(project);
+            TargetHistoryTable table = new TargetHistoryTable(task, dir);
+            write(compiledFile, "", System.currentTimeMillis());
+            table.update(new MockProcessorConfiguration(),
+                    new String[]{"journaled.o"}, null, 500);
+            table.update(new MockProcessorConfiguration(),
+                    new String[]{"journaled.o"}, null, 500);
+            int warnings = 0;
+            Vector events = listener.getMessageLoggedEvents();
+            for (int i = 0; i < events.size(); i++) {
+                BuildEvent event = (BuildEvent) events.elementAt(i);
+                if (event.getPriority() == Project.MSG_WARN) {
+                    warnings++;
+                }
+            }
+            assertEquals(1, warnings);
+            journalFile.delete();
+            table.commit();
+            TargetHistoryTable reloaded = new TargetHistoryTable(null, dir);
+            assertEquals(500, reloaded.getDuration("journaled.o"));
+        } finally {
+            compiledFile.delete();
+            journalFile.delete();
+            historyFile.delete();
+        }
+    }
+    /**
+     * Tests that records are only checked against their output when
+     * requested and that unused records are carried forward.
+     *
+     * @throws IOException
+     */
+    public void testLazyLoad() throws IOException {
+        String tempDir = System.getProperty("java.io.tmpdir");
+        File dir = new File(tempDir);
+        File historyFile = new File(tempDir, "history.xml");
+        File compiledFile = new File(tempDir, "lazy.o");
+        try {
+            write(compiledFile, "", System.currentTimeMillis() - 60000);
+            write(historyFile, "<history>\n"
+                    + "<processor signature=\"Mock Configuration\">\n"
+                    + "<target file=\"lazy.o\" lastModified=\""
+                    + Long.toHexString(compiledFile.lastModified())
+                    + "\"/>\n"
+                    + "<target file=\"stale.o\" lastModified=\"1\"/>\n"
+                    + "<target file=\"unused.o\" lastModified=\"1\"/>\n"
+                    + "</processor>\n</history>\n", System
+                    .currentTimeMillis());
+            TargetHistoryTable table = new TargetHistoryTable(null, dir);
+            assertNotNull(table.get("Mock Configuration", "lazy.o"));
+            assertNull(table.get("Mock Configuration", "stale.o"));
+            table.commit();
+            TargetHistoryTable reloaded = new TargetHistoryTable(null, dir);
+            assertNotNull(reloaded.get("Mock Configuration", "lazy.o"));
+            assertNull(reloaded.get("Mock Configuration", "stale.o"));
+            //
+            //   kept, as never requested
+            //
+            String content = new String(Files.readAllBytes(historyFile
+                    .toPath()), "UTF-8");
+            assertTrue(content.indexOf("unused.o") >= 0);
+            assertTrue(content.indexOf("stale.o") < 0);
+        } finally {
+            compiledFile.delete();
+            historyFile.delete();
+        }
+    }
 }
@@ -0,0 +1,106 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks;
+import java.io.File;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+import net.sf.antcontrib.cpptasks.compiler.ProcessorConfiguration;
+
+import org.apache.tools.ant.BuildException;
+/**
+ * Tests for TargetMatcher
+ */
+public class TestTargetMatcher extends TestCase {
+    /**
+     * Compiler configuration whose output names ignore the directory of the
+     * source file, so that sources of the same name conflict.
+     */
+    private static final class FlatCompilerConfiguration
+            extends
+                TestCompileExecutor.MockCompilerConfiguration {
+        public FlatCompilerConfiguration() {
+            super(0);
+        }
+        public String[] getOutputFileNames(final String inputFile,
+                final VersionInfo versionInfo) {
+            return new String[]{new File(inputFile).getName() + ".o"};
+        }
+    }
+    public TestTargetMatcher(final String name) {
+        super(name);
+    }
+    private static Hashtable match(final String[] names, final int jobs) {
+        final Hashtable targets = new Hashtable();
+        final TargetMatcher matcher = new TargetMatcher(null,
+                new File("obj"),
+                new ProcessorConfiguration[]{new FlatCompilerConfiguration()},
+                null, new Vector(), targets, null, jobs);
+        final File dir = new File("src");
+        for (int i = 0; i < names.length; i++) {
+            matcher.visit(dir, names[i]);
+        }
+        matcher.finish();
+        return targets;
+    }
+    private static String getConflict(final String[] names, final int jobs) {
+        try {
+            match(names, jobs);
+        } catch (final BuildException ex) {
+            return ex.getMessage();
+        }
+        return null;
+    }
+    /**
+     * Matching on several threads should produce the same targets.
+     */
+    public void testParallelTargets() {
+        final String[] names = new String[2000];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "foo" + Integer.toString(i) + ".c";
+        }
+        final Hashtable serial = match(names, 1);
+        final Hashtable parallel = match(names, 4);
+        assertEquals(names.length, parallel.size());
+        assertEquals(serial.keySet(), parallel.keySet());
+        final TargetInfo target = (TargetInfo) parallel.get("foo1234.c.o");
+        assertEquals(new File("src", "foo1234.c"), target.getSources()[0]);
+        assertEquals(new File("obj", "foo1234.c.o"), target.getOutput());
+    }
+    /**
+     * Output filename conflicts should be reported for the same pair of
+     * files regardless of the number of threads.
+     */
+    public void testConflict() {
+        final String[] names = new String[2000];
+        for (int i = 0; i < 1500; i++) {
+            names[i] = "a" + File.separator + "foo" + Integer.toString(i)
+                    + ".c";
+        }
+        for (int i = 1500; i < names.length; i++) {
+            names[i] = "b" + File.separator + "foo"
+                    + Integer.toString(i - 1000) + ".c";
+        }
+        final String expected = getConflict(names, 1);
+        assertNotNull(expected);
+        assertTrue(expected.startsWith("Output filename conflict: foo500.c.o"));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(expected, getConflict(names, 4));
+        }
+    }
+}
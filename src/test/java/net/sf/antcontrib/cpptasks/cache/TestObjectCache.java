@@ -0,0 +1,221 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks.cache;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+import net.sf.antcontrib.cpptasks.CCTask;
+import net.sf.antcontrib.cpptasks.DependencyInfo;
+import net.sf.antcontrib.cpptasks.TestCompileExecutor;
+
+import org.apache.tools.ant.Project;
+/**
+ * Tests for ObjectCache
+ */
+public class TestObjectCache extends TestCase {
+    /**
+     * Compiler configuration whose sources include a single header.
+     */
+    private static final class IncludingCompilerConfiguration
+            extends
+                TestCompileExecutor.MockCompilerConfiguration {
+        private final String include;
+        public IncludingCompilerConfiguration(final String include) {
+            super(0);
+            this.include = include;
+        }
+        public DependencyInfo parseIncludes(final CCTask task,
+                final File baseDir, final File source) {
+            final Vector includes = new Vector();
+            if (!source.getName().equals(include)) {
+                includes.addElement(include);
+            }
+            return new DependencyInfo("", source.getName(), source
+                    .lastModified(), includes, new Vector());
+        }
+    }
+    private File dir;
+    private File cacheDir;
+    private File objDir;
+
+    public TestObjectCache(final String name) {
+        super(name);
+    }
+    protected void setUp() throws Exception {
+        super.setUp();
+        dir = new File(System.getProperty("java.io.tmpdir"),
+                "cpptasks-objectcache-test");
+        cacheDir = new File(dir, "cache");
+        objDir = new File(dir, "obj");
+        objDir.mkdirs();
+    }
+    protected void tearDown() throws Exception {
+        delete(dir);
+        super.tearDown();
+    }
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (int i = 0; i < children.length; i++) {
+                delete(children[i]);
+            }
+        }
+        file.delete();
+    }
+    private static void write(final File file, final String content)
+            throws IOException {
+        final FileOutputStream out = new FileOutputStream(file);
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+    }
+    private String getKey(final File source) {
+        return getKey(dir, objDir, source);
+    }
+    private static String getKey(final File baseDir, final File objDir,
+            final File source) {
+        final CCTask task = new CCTask();
+        final Project project = new Project();
+        project.setBasedir(baseDir.getAbsolutePath());
+        task.setProject(project);
+        task.setObjdir(objDir);
+        return ObjectCache.getKey(task, new IncludingCompilerConfiguration(
+                "foo.h"), source.toString());
+    }
+    /**
+     * Keys should change with the content of the source and its includes.
+     */
+    public void testKey() throws IOException {
+        final File source = new File(objDir, "foo.c");
+        final File header = new File(objDir, "foo.h");
+        write(source, "#include \"foo.h\"\n");
+        write(header, "int foo;\n");
+        final String key = getKey(source);
+        assertNotNull(key);
+        assertEquals(key, getKey(source));
+        write(header, "int bar;\n");
+        final String changed = getKey(source);
+        assertFalse(key.equals(changed));
+        write(header, "int foo;\n");
+        header.setLastModified(header.lastModified() + 60000);
+        assertEquals(key, getKey(source));
+        header.delete();
+        assertNull(getKey(source));
+    }
+    /**
+     * Keys should not depend on the location of the project.
+     */
+    public void testKeyLocation() throws IOException {
+        final File[] baseDirs = new File[]{new File(dir, "x"),
+                new File(new File(dir, "deeper"), "y")};
+        final String[] keys = new String[baseDirs.length];
+        for (int i = 0; i < baseDirs.length; i++) {
+            final File obj = new File(baseDirs[i], "obj");
+            obj.mkdirs();
+            final File source = new File(obj, "foo.c");
+            write(source, "#include \"foo.h\"\n");
+            write(new File(obj, "foo.h"), "int foo;\n");
+            keys[i] = getKey(baseDirs[i], obj, source);
+        }
+        assertNotNull(keys[0]);
+        assertEquals(keys[0], keys[1]);
+    }
+    /**
+     * Outputs hard linked to cache entries should be deleted before they
+     * are compiled again.
+     */
+    public void testUnlinkOutputs() throws IOException {
+        final ObjectCache cache = new ObjectCache(cacheDir, 1000000, true);
+        final String key = "0123456789abcdef0123456789abcdef01234567";
+        final File output = new File(objDir, "foo.o");
+        final File other = new File(objDir, "bar.o");
+        final String[] names = new String[]{"foo.o", "bar.o"};
+        write(output, "object");
+        write(other, "object");
+        cache.store(null, key, objDir, names);
+        assertTrue(cache.fetch(key, objDir, names));
+        ObjectCache.unlinkOutputs(objDir, new String[]{"foo.o"}, true);
+        assertFalse(output.exists());
+        assertTrue(other.exists());
+        ObjectCache.unlinkOutputs(objDir, new String[]{"bar.o"}, false);
+        assertTrue(cache.fetch(key, objDir, names));
+        assertEquals("object".length(), output.length());
+    }
+    /**
+     * Stored outputs should be materialized with a current modification
+     * time.
+     */
+    public void testStoreFetch() throws IOException {
+        final ObjectCache cache = new ObjectCache(cacheDir, 1000000, false);
+        final String key = "0123456789abcdef0123456789abcdef01234567";
+        final File output = new File(objDir, "foo.o");
+        final String[] names = new String[]{"foo.o"};
+        assertFalse(cache.fetch(key, objDir, names));
+        write(output, "object");
+        cache.store(null, key, objDir, names);
+        output.delete();
+        output.getParentFile().mkdirs();
+        assertTrue(cache.fetch(key, objDir, names));
+        assertEquals("object".length(), output.length());
+        assertTrue(output.lastModified() > System.currentTimeMillis() - 60000);
+        assertFalse(cache.fetch(key, objDir, new String[]{"foo.obj"}));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.getStores());
+        //
+        //   a second build storing the same entry should leave it intact
+        //
+        final ObjectCache other = new ObjectCache(cacheDir, 1000000, true);
+        write(output, "other");
+        other.store(null, key, objDir, names);
+        assertEquals(0, other.getStores());
+        assertTrue(other.fetch(key, objDir, names));
+        assertEquals("object".length(), output.length());
+    }
+    /**
+     * The least recently used entries should be removed when the cache
+     * exceeds its maximum size.
+     */
+    public void testTrim() throws IOException {
+        final ObjectCache cache = new ObjectCache(cacheDir, 2500, false);
+        final String[] names = new String[]{"foo.o"};
+        final File output = new File(objDir, "foo.o");
+        final String[] keys = new String[]{
+                "aa23456789abcdef0123456789abcdef01234567",
+                "bb23456789abcdef0123456789abcdef01234567",
+                "cc23456789abcdef0123456789abcdef01234567"};
+        final char[] content = new char[1000];
+        Arrays.fill(content, 'x');
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < keys.length; i++) {
+            write(output, new String(content));
+            cache.store(null, keys[i], objDir, names);
+            new File(new File(cacheDir, keys[i].substring(0, 2)), keys[i])
+                    .setLastModified(now - 60000 * (keys.length - i));
+        }
+        assertTrue(cache.fetch(keys[0], objDir, names));
+        final CCTask task = new CCTask();
+        task.setProject(new Project());
+        cache.trim(task);
+        assertTrue(cache.fetch(keys[0], objDir, names));
+        assertFalse(cache.fetch(keys[1], objDir, names));
+        assertTrue(cache.fetch(keys[2], objDir, names));
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks.cache;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Hashtable;
+
+import junit.framework.TestCase;
+import net.sf.antcontrib.cpptasks.CCTask;
+
+import org.apache.tools.ant.Project;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+/**
+ * Tests for RemoteObjectCache against a local stand-in server
+ */
+public class TestRemoteObjectCache extends TestCase {
+    /**
+     * Minimal HTTP server storing the content of PUT requests in memory.
+     */
+    private static final class StandInServer implements HttpHandler {
+        private final HttpServer server;
+        private final Hashtable resources = new Hashtable();
+        private volatile long delay;
+        public StandInServer() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0),
+                    0);
+            server.createContext("/", this);
+            server.start();
+        }
+        public URL getURL() throws IOException {
+            return new URL("http://127.0.0.1:"
+                    + Integer.toString(server.getAddress().getPort())
+                    + "/cache/");
+        }
+        public void setDelay(final long delay) {
+            this.delay = delay;
+        }
+        public int size() {
+            return resources.size();
+        }
+        public void stop() {
+            server.stop(0);
+        }
+        public void handle(final HttpExchange exchange) throws IOException {
+            try {
+                Thread.sleep(delay);
+            } catch (final InterruptedException ex) {
+            }
+            final String path = exchange.getRequestURI().getPath();
+            final InputStream in = exchange.getRequestBody();
+            final ByteArrayOutputStream body = new ByteArrayOutputStream();
+            final byte[] buf = new byte[4096];
+            int count;
+            while ((count = in.read(buf)) >= 0) {
+                body.write(buf, 0, count);
+            }
+            in.close();
+            if (exchange.getRequestMethod().equals("PUT")) {
+                resources.put(path, body.toByteArray());
+                exchange.sendResponseHeaders(201, -1);
+            } else {
+                final byte[] content = (byte[]) resources.get(path);
+                if (content == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                } else {
+                    exchange.sendResponseHeaders(200, content.length);
+                    final OutputStream out = exchange.getResponseBody();
+                    out.write(content);
+                    out.close();
+                }
+            }
+            exchange.close();
+        }
+    }
+    private StandInServer server;
+    private File dir;
+    private CCTask task;
+
+    public TestRemoteObjectCache(final String name) {
+        super(name);
+    }
+    protected void setUp() throws Exception {
+        super.setUp();
+        server = new StandInServer();
+        dir = new File(System.getProperty("java.io.tmpdir"),
+                "cpptasks-remotecache-test");
+        dir.mkdirs();
+        task = new CCTask();
+        task.setProject(new Project());
+    }
+    protected void tearDown() throws Exception {
+        server.stop();
+        final File[] files = dir.listFiles();
+        for (int i = 0; i < files.length; i++) {
+            files[i].delete();
+        }
+        dir.delete();
+        super.tearDown();
+    }
+    private static void write(final File file, final String content)
+            throws IOException {
+        final FileOutputStream out = new FileOutputStream(file);
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+    }
+    /**
+     * Uploaded outputs should be downloaded by a later build.
+     */
+    public void testStoreFetch() throws IOException {
+        final String[] keys = new String[]{"0123abcd", "4567abcd", null};
+        final String[][] names = new String[][]{new String[]{"foo.o"},
+                new String[]{"bar.o"}, new String[]{"baz.o"}};
+        final File foo = new File(dir, "foo.o");
+        write(foo, "foo object");
+        final RemoteObjectCache uploader = new RemoteObjectCache(server
+                .getURL(), 5000, 2, true);
+        uploader.store(task, keys[0], dir, names[0]);
+        uploader.finish(task, 5000);
+        assertEquals(1, uploader.getUploads());
+        assertEquals(1, server.size());
+        foo.delete();
+        final RemoteObjectCache cache = new RemoteObjectCache(server.getURL(),
+                5000, 2, true);
+        final boolean[] found = cache.fetch(task, keys, dir, names);
+        assertTrue(found[0]);
+        assertFalse(found[1]);
+        assertFalse(found[2]);
+        assertEquals("foo object".length(), foo.length());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertTrue(cache.isAvailable());
+        cache.finish(task, 5000);
+    }
+    /**
+     * A slow server should not delay compilation beyond the timeout.
+     */
+    public void testTimeout() throws IOException {
+        server.setDelay(3000);
+        final RemoteObjectCache cache = new RemoteObjectCache(server.getURL(),
+                500, 2, true);
+        final long start = System.currentTimeMillis();
+        final boolean[] found = cache.fetch(task, new String[]{"0123abcd",
+                "4567abcd"}, dir, new String[][]{new String[]{"foo.o"},
+                new String[]{"bar.o"}});
+        assertTrue(System.currentTimeMillis() - start < 2500);
+        assertFalse(found[0]);
+        assertFalse(found[1]);
+        assertEquals(2, cache.getMisses());
+        assertTrue(cache.getTimeouts() > 0 || !cache.isAvailable());
+        cache.finish(task, 0);
+    }
+    /**
+     * An unreachable server should disable the cache for the build.
+     */
+    public void testUnavailable() throws IOException {
+        final URL url = server.getURL();
+        server.stop();
+        final RemoteObjectCache cache = new RemoteObjectCache(url, 1000, 2,
+                true);
+        final boolean[] found = cache.fetch(task, new String[]{"0123abcd"},
+                dir, new String[][]{new String[]{"foo.o"}});
+        assertFalse(found[0]);
+        assertFalse(cache.isAvailable());
+        write(new File(dir, "foo.o"), "foo object");
+        cache.store(task, "0123abcd", dir, new String[]{"foo.o"});
+        cache.finish(task, 1000);
+        assertEquals(0, cache.getUploads());
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks.daemon;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import net.sf.antcontrib.cpptasks.BuildStateCache;
+/**
+ * Tests for BuildDaemon and BuildClient
+ */
+public class TestBuildDaemon extends TestCase {
+    private File dir;
+    private File stateFile;
+    private BuildDaemon daemon;
+    private Thread thread;
+
+    public TestBuildDaemon(final String name) {
+        super(name);
+    }
+    protected void setUp() throws Exception {
+        super.setUp();
+        dir = new File(System.getProperty("java.io.tmpdir"),
+                "cpptasks-daemon-test");
+        dir.mkdirs();
+        stateFile = new File(dir, "daemon.properties");
+        final FileOutputStream out = new FileOutputStream(new File(dir,
+                "build.xml"));
+        out.write(("<project default='hello'>\n"
+                + "<target name='hello'><echo message='hello ${who}'/></target>\n"
+                + "<target name='broken'><fail message='broken'/></target>\n"
+                + "</project>\n").getBytes("UTF-8"));
+        out.close();
+        daemon = new BuildDaemon(stateFile, 0, 0);
+        daemon.start();
+        thread = new Thread(new Runnable() {
+            public void run() {
+                daemon.serve();
+            }
+        });
+        thread.start();
+    }
+    protected void tearDown() throws Exception {
+        daemon.stop();
+        thread.join(10000);
+        new File(dir, "build.xml").delete();
+        stateFile.delete();
+        dir.delete();
+        super.tearDown();
+    }
+    /**
+     * A build should run in the daemon with its output returned.
+     */
+    public void testBuild() throws IOException {
+        assertTrue(stateFile.exists());
+        assertTrue(BuildStateCache.isEnabled());
+        final BuildClient client = new BuildClient(stateFile);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final int exitCode = client.execute(BuildDaemon.BUILD, dir,
+                new String[]{"-Dwho=daemon"}, output);
+        final String text = output.toString("UTF-8");
+        assertEquals(text, 0, exitCode);
+        assertTrue(text, text.indexOf("hello daemon") >= 0);
+        assertTrue(text, text.indexOf("BUILD SUCCESSFUL") >= 0);
+    }
+    /**
+     * A failed build should return a non-zero exit code.
+     */
+    public void testFailure() throws IOException {
+        final BuildClient client = new BuildClient(stateFile);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertEquals(1, client.execute(BuildDaemon.BUILD, dir,
+                new String[]{"broken"}, output));
+        assertTrue(output.toString("UTF-8").indexOf("BUILD FAILED") >= 0);
+    }
+    /**
+     * Stopping the daemon should remove its state file.
+     */
+    public void testStop() throws Exception {
+        final BuildClient client = new BuildClient(stateFile);
+        client.execute(BuildDaemon.STOP, dir, new String[0],
+                new ByteArrayOutputStream());
+        thread.join(10000);
+        assertTrue(daemon.isStopped());
+        assertFalse(stateFile.exists());
+        assertFalse(BuildStateCache.isEnabled());
+        try {
+            client.execute(BuildDaemon.BUILD, dir, new String[0],
+                    new ByteArrayOutputStream());
+            fail("expected UnavailableException");
+        } catch (final BuildClient.UnavailableException ex) {
+        }
+    }
+    /**
+     * The state file should only be readable by its owner.
+     */
+    public void testStateFilePermissions() throws IOException {
+        try {
+            final Set permissions = Files.getPosixFilePermissions(stateFile
+                    .toPath());
+            assertEquals(PosixFilePermissions.fromString("rw-------"),
+                    permissions);
+        } catch (final UnsupportedOperationException ex) {
+        }
+    }
+    /**
+     * A connection lost once the request was sent should not be reported
+     * as an unavailable daemon, since the build may have started.
+     */
+    public void testConnectionLost() throws Exception {
+        daemon.stop();
+        thread.join(10000);
+        final ServerSocket server = new ServerSocket(0, 1, InetAddress
+                .getLoopbackAddress());
+        final Thread closer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    final Socket socket = server.accept();
+                    final InputStream in = socket.getInputStream();
+                    while (in.available() == 0) {
+                        Thread.sleep(10);
+                    }
+                    socket.close();
+                } catch (final Exception ex) {
+                }
+            }
+        });
+        closer.start();
+        try {
+            final FileOutputStream out = new FileOutputStream(stateFile);
+            out.write(("port=" + Integer.toString(server.getLocalPort())
+                    + "\ntoken=0\n").getBytes("UTF-8"));
+            out.close();
+            final BuildClient client = new BuildClient(stateFile);
+            try {
+                client.execute(BuildDaemon.BUILD, dir, new String[0],
+                        new ByteArrayOutputStream());
+                fail("expected IOException");
+            } catch (final BuildClient.UnavailableException ex) {
+                fail("connection lost after the request was sent");
+            } catch (final IOException ex) {
+            }
+        } finally {
+            closer.join(10000);
+            server.close();
+        }
+    }
+}
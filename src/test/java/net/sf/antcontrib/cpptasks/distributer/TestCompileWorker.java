@@ -0,0 +1,244 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks.distributer;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.util.StringTokenizer;
+
+import junit.framework.TestCase;
+import net.sf.antcontrib.cpptasks.CCTask;
+import net.sf.antcontrib.cpptasks.DistributerMap;
+
+import org.apache.tools.ant.Project;
+/**
+ * Tests for CompileWorker with several workers on local ports
+ */
+public class TestCompileWorker extends TestCase {
+    private CompileWorker[] workers;
+    private File dir;
+    private CCTask task;
+
+    public TestCompileWorker(final String name) {
+        super(name);
+    }
+    /**
+     * Stand-in compiler run by the workers, which writes the reversed
+     * source to the file given by -o or /Fo and fails sources containing
+     * "error".
+     *
+     * @param args
+     *            source file, -o file or /Fofile
+     */
+    public static void main(final String[] args) throws IOException {
+        String source = null;
+        String object = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-o")) {
+                object = args[++i];
+            } else if (args[i].startsWith("/Fo")) {
+                object = args[i].substring(3);
+            } else {
+                source = args[i];
+            }
+        }
+        final byte[] content = Files.readAllBytes(new File(source).toPath());
+        for (int i = 0; i + 5 <= content.length; i++) {
+            if (new String(content, i, 5, "UTF-8").equals("error")) {
+                System.err.println(source + ":1: error");
+                System.exit(3);
+            }
+        }
+        final byte[] reversed = new byte[content.length];
+        for (int i = 0; i < content.length; i++) {
+            reversed[i] = content[content.length - 1 - i];
+        }
+        final FileOutputStream out = new FileOutputStream(object);
+        out.write(reversed);
+        out.close();
+        System.out.println("compiled " + source);
+    }
+    protected void setUp() throws Exception {
+        super.setUp();
+        dir = new File(System.getProperty("java.io.tmpdir"),
+                "cpptasks-worker-test");
+        dir.mkdirs();
+        workers = new CompileWorker[2];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new CompileWorker(InetAddress.getByName("127.0.0.1"),
+                    0, 2, new File(dir, "worker" + Integer.toString(i)));
+            workers[i].start();
+        }
+        task = new CCTask();
+        task.setProject(new Project());
+    }
+    protected void tearDown() throws Exception {
+        for (int i = 0; i < workers.length; i++) {
+            workers[i].stop();
+            new File(dir, "worker" + Integer.toString(i)).delete();
+        }
+        final File[] files = dir.listFiles();
+        for (int i = 0; i < files.length; i++) {
+            files[i].delete();
+        }
+        dir.delete();
+        super.tearDown();
+    }
+    /**
+     * Gets the command line running main() of this class.
+     */
+    private static String[] getCommand(final String[] args) {
+        final StringBuffer classpath = new StringBuffer();
+        final StringTokenizer entries = new StringTokenizer(System
+                .getProperty("java.class.path"), File.pathSeparator);
+        while (entries.hasMoreTokens()) {
+            if (classpath.length() > 0) {
+                classpath.append(File.pathSeparatorChar);
+            }
+            classpath.append(new File(entries.nextToken()).getAbsolutePath());
+        }
+        final String[] command = new String[args.length + 4];
+        command[0] = new File(new File(System.getProperty("java.home"), "bin"),
+                "java").getPath();
+        command[1] = "-cp";
+        command[2] = classpath.toString();
+        command[3] = TestCompileWorker.class.getName();
+        System.arraycopy(args, 0, command, 4, args.length);
+        return command;
+    }
+    private File write(final String name, final String content)
+            throws IOException {
+        final File file = new File(dir, name);
+        final FileOutputStream out = new FileOutputStream(file);
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+        return file;
+    }
+    private Distributer create(final String options) {
+        final StringBuffer hosts = new StringBuffer();
+        for (int i = 0; i < workers.length; i++) {
+            hosts.append("127.0.0.1:");
+            hosts.append(workers[i].getPort());
+            hosts.append(options);
+            hosts.append(' ');
+        }
+        return new Distributer(DistributerHost.parse(hosts.toString(),
+                CompileWorker.DEFAULT_PORT), new DistributerMap[0], false,
+                true);
+    }
+    private void testCompile(final String options) throws IOException {
+        final StringBuffer content = new StringBuffer();
+        for (int i = 0; i < 20000; i++) {
+            content.append("int foo");
+            content.append(i);
+            content.append(";\n");
+        }
+        final Distributer distributer = create(options);
+        for (int i = 0; i < 4; i++) {
+            final File source = write("foo" + Integer.toString(i) + ".i",
+                    content.toString());
+            final File object = new File(dir, "foo" + Integer.toString(i)
+                    + ".o");
+            final int exitCode = distributer.compile(task, getCommand(
+                    new String[]{source.getPath(), "-o", object.getPath()}),
+                    source, object);
+            assertEquals(0, exitCode);
+            assertEquals(content.reverse().toString(), new String(Files
+                    .readAllBytes(object.toPath()), "UTF-8"));
+            content.reverse();
+        }
+        assertEquals(4, workers[0].getCompilations()
+                + workers[1].getCompilations());
+        assertTrue(workers[1].getCompilations() > 0);
+    }
+    /**
+     * Files should be transferred intact to and from the workers.
+     */
+    public void testCompile() throws IOException {
+        testCompile("/2");
+    }
+    /**
+     * Compressed files should be transferred intact.
+     */
+    public void testCompileCompressed() throws IOException {
+        testCompile("/2,lzo");
+    }
+    /**
+     * Options ending with the object file should be converted.
+     */
+    public void testObjectOption() throws IOException {
+        final File source = write("foo.i", "int foo;");
+        final File object = new File(dir, "foo.obj");
+        final int exitCode = create("").compile(task, getCommand(new String[]{
+                source.getPath(), "/Fo" + object.getPath()}), source, object);
+        assertEquals(0, exitCode);
+        assertEquals(";oof tni", new String(Files.readAllBytes(object
+                .toPath()), "UTF-8"));
+    }
+    /**
+     * A failed compilation should return the exit code and leave no object.
+     */
+    public void testCompileError() throws IOException {
+        final File source = write("foo.i", "error");
+        final File object = new File(dir, "foo.o");
+        final int exitCode = create(",lzo").compile(task, getCommand(
+                new String[]{source.getPath(), "-o", object.getPath()}),
+                source, object);
+        assertEquals(3, exitCode);
+        assertFalse(object.exists());
+    }
+    /**
+     * A missing compiler should be reported as a failed compilation.
+     */
+    public void testMissingCompiler() throws IOException {
+        final File source = write("foo.i", "int foo;");
+        final File object = new File(dir, "foo.o");
+        final int exitCode = create("").compile(task, new String[]{
+                "cpptasks-no-such-compiler", source.getPath(), "-o",
+                object.getPath()}, source, object);
+        assertEquals(127, exitCode);
+        assertFalse(object.exists());
+    }
+    /**
+     * Only the local host and the allowed networks should be served.
+     */
+    public void testAllowed() throws IOException {
+        final CompileWorker worker = new CompileWorker(InetAddress
+                .getByName("127.0.0.1"), 0, 1, new File(dir, "allow"),
+                new String[]{"192.168.1.0/24", "10.1.2.3", "172.16.0.0/12"});
+        try {
+            assertTrue(worker.isAllowed(InetAddress.getByName("127.0.0.1")));
+            assertTrue(worker.isAllowed(InetAddress.getByName("::1")));
+            assertTrue(worker.isAllowed(InetAddress
+                    .getByName("192.168.1.200")));
+            assertFalse(worker.isAllowed(InetAddress
+                    .getByName("192.168.2.1")));
+            assertTrue(worker.isAllowed(InetAddress.getByName("10.1.2.3")));
+            assertFalse(worker.isAllowed(InetAddress.getByName("10.1.2.4")));
+            assertTrue(worker.isAllowed(InetAddress
+                    .getByName("172.31.255.1")));
+            assertFalse(worker.isAllowed(InetAddress.getByName("172.32.0.1")));
+            assertFalse(workers[0].isAllowed(InetAddress
+                    .getByName("192.168.1.200")));
+        } finally {
+            worker.stop();
+            new File(dir, "allow").delete();
+        }
+    }
+}
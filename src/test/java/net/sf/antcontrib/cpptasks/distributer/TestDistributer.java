@@ -0,0 +1,367 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks.distributer;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+import net.sf.antcontrib.cpptasks.CCTask;
+import net.sf.antcontrib.cpptasks.DistributerMap;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+/**
+ * Tests for Distributer against a local stand-in distcc server
+ */
+public class TestDistributer extends TestCase {
+    /**
+     * Minimal distcc server whose object file is the reversed source and
+     * which fails sources containing "error".
+     */
+    private static final class StandInServer implements Runnable {
+        private final ServerSocket server;
+        private final Thread thread;
+        private final Vector requests = new Vector();
+        private volatile long delay;
+        public StandInServer() throws IOException {
+            server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            thread = new Thread(this, "distccd-standin");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        public int getPort() {
+            return server.getLocalPort();
+        }
+        public void setDelay(final long delay) {
+            this.delay = delay;
+        }
+        /**
+         * Gets the command lines received.
+         */
+        public Vector getRequests() {
+            return requests;
+        }
+        /**
+         * Closes the server socket. Waits for the accepting thread, which
+         * keeps the socket listening until it wakes up.
+         */
+        public void stop() throws IOException {
+            server.close();
+            try {
+                thread.join();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        public void run() {
+            try {
+                while (true) {
+                    final Socket socket = server.accept();
+                    try {
+                        serve(socket);
+                    } catch (final IOException ex) {
+                    } finally {
+                        socket.close();
+                    }
+                }
+            } catch (final IOException ex) {
+            }
+        }
+        private void serve(final Socket socket) throws IOException {
+            final DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream()));
+            DistccClient.readToken(in, "DIST");
+            final String[] args = new String[(int) DistccClient.readToken(in,
+                    "ARGC")];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = new String(DistccClient.readString(in, "ARGV"),
+                        "UTF-8");
+            }
+            requests.addElement(args);
+            try {
+                Thread.sleep(delay);
+            } catch (final InterruptedException ex) {
+            }
+            final String source = new String(DistccClient.readString(in,
+                    "DOTI"), "UTF-8");
+            final OutputStream out = socket.getOutputStream();
+            final ByteArrayOutputStream response = new ByteArrayOutputStream();
+            writeToken(response, "DONE", 1);
+            if (source.indexOf("error") >= 0) {
+                writeToken(response, "STAT", 1 << 8);
+                writeString(response, "SERR", "foo.i:1: error");
+                writeString(response, "SOUT", "");
+                writeString(response, "DOTO", "");
+            } else {
+                writeToken(response, "STAT", 0);
+                writeString(response, "SERR", "");
+                writeString(response, "SOUT", "compiled");
+                writeString(response, "DOTO", new StringBuffer(source)
+                        .reverse().toString());
+            }
+            out.write(response.toByteArray());
+            out.flush();
+        }
+        private static void writeToken(final OutputStream out,
+                final String name, final int value) throws IOException {
+            final String hex = "0000000" + Integer.toHexString(value);
+            out.write((name + hex.substring(hex.length() - 8))
+                    .getBytes("US-ASCII"));
+        }
+        private static void writeString(final OutputStream out,
+                final String name, final String value) throws IOException {
+            final byte[] bytes = value.getBytes("UTF-8");
+            writeToken(out, name, bytes.length);
+            out.write(bytes);
+        }
+    }
+    private StandInServer server;
+    private File dir;
+    private CCTask task;
+
+    public TestDistributer(final String name) {
+        super(name);
+    }
+    protected void setUp() throws Exception {
+        super.setUp();
+        server = new StandInServer();
+        dir = new File(System.getProperty("java.io.tmpdir"),
+                "cpptasks-distributer-test");
+        dir.mkdirs();
+        task = new CCTask();
+        task.setProject(new Project());
+    }
+    protected void tearDown() throws Exception {
+        server.stop();
+        final File[] files = dir.listFiles();
+        for (int i = 0; i < files.length; i++) {
+            files[i].delete();
+        }
+        dir.delete();
+        super.tearDown();
+    }
+    private File write(final String name, final String content)
+            throws IOException {
+        final File file = new File(dir, name);
+        final FileOutputStream out = new FileOutputStream(file);
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+        return file;
+    }
+    private Distributer create(final DistributerMap[] maps, final boolean cork) {
+        return create("127.0.0.1:" + Integer.toString(server.getPort()), maps,
+                cork);
+    }
+    private static Distributer create(final String hosts,
+            final DistributerMap[] maps, final boolean cork) {
+        return new Distributer(DistributerHost.parse(hosts,
+                DistccClient.DEFAULT_PORT), maps, cork);
+    }
+    private int compile(final Distributer distributer, final String name)
+            throws IOException {
+        final File source = write(name + ".i", "int " + name + ";");
+        final File object = new File(dir, name + ".o");
+        return distributer.compile(task, new String[]{"gcc", "-c",
+                source.getPath(), "-o", object.getPath()}, source, object);
+    }
+    private static int getUnusedPort() throws IOException {
+        final ServerSocket socket = new ServerSocket(0, 1, InetAddress
+                .getByName("127.0.0.1"));
+        final int port = socket.getLocalPort();
+        socket.close();
+        return port;
+    }
+    private void testCompile(final boolean cork) throws IOException {
+        final File source = write("foo.i", "int foo;");
+        final File object = new File(dir, "foo.o");
+        final Distributer distributer = create(new DistributerMap[0], cork);
+        final int exitCode = distributer.compile(task, new String[]{"gcc",
+                "-c", source.getPath(), "-o", object.getPath()}, source, object);
+        assertEquals(0, exitCode);
+        assertEquals(";oof tni", new String(Files.readAllBytes(object
+                .toPath()), "UTF-8"));
+        final String[] args = (String[]) server.getRequests().elementAt(0);
+        assertEquals(5, args.length);
+        assertEquals("foo.i", args[2]);
+        assertEquals("foo.o", args[4]);
+    }
+    /**
+     * The object file should be written from the response.
+     */
+    public void testCompile() throws IOException {
+        testCompile(false);
+    }
+    /**
+     * Requests sent in one piece should be understood the same way.
+     */
+    public void testCompileCork() throws IOException {
+        testCompile(true);
+    }
+    /**
+     * A failed compilation should return the exit code and leave no object.
+     */
+    public void testCompileError() throws IOException {
+        final File source = write("foo.i", "error");
+        final File object = new File(dir, "foo.o");
+        final int exitCode = create(new DistributerMap[0], false).compile(task,
+                new String[]{"gcc", "-c", source.getPath()}, source, object);
+        assertEquals(1, exitCode);
+        assertFalse(object.exists());
+    }
+    /**
+     * File names should be converted by the maps.
+     */
+    public void testMap() throws IOException {
+        final File source = write("foo.i", "int foo;");
+        final File object = new File(dir, "foo.o");
+        final DistributerMap map = new DistributerMap();
+        map.setProject(task.getProject());
+        map.setLocal(dir);
+        map.setRemote("/remote");
+        final int exitCode = create(new DistributerMap[]{map}, false).compile(
+                task, new String[]{"gcc", "-c", source.getPath()}, source,
+                object);
+        assertEquals(0, exitCode);
+        final String[] args = (String[]) server.getRequests().elementAt(0);
+        assertEquals("/remote/foo.i", args[2]);
+    }
+    /**
+     * Sources should be compiled locally if no host can be reached.
+     */
+    public void testUnreachable() throws IOException {
+        final File source = write("foo.i", "int foo;");
+        final File object = new File(dir, "foo.o");
+        final Distributer distributer = create(new DistributerMap[0], false);
+        server.stop();
+        assertEquals(Distributer.NOT_DISTRIBUTED, distributer.compile(task,
+                new String[]{"gcc", "-c", source.getPath()}, source, object));
+        assertFalse(object.exists());
+    }
+    /**
+     * Hosts named localhost should compile locally.
+     */
+    public void testLocalhost() throws IOException {
+        final File source = write("foo.i", "int foo;");
+        final Distributer distributer = new Distributer(DistributerHost.parse(
+                "localhost", DistccClient.DEFAULT_PORT), new DistributerMap[0],
+                false);
+        assertEquals(Distributer.NOT_DISTRIBUTED, distributer.compile(task,
+                new String[]{"gcc", "-c", source.getPath()}, source, new File(
+                        dir, "foo.o")));
+        assertEquals(0, server.getRequests().size());
+    }
+    /**
+     * Sources should be compiled locally when every slot is taken.
+     */
+    public void testSlots() throws Exception {
+        server.setDelay(1000);
+        final Distributer distributer = create("127.0.0.1:"
+                + Integer.toString(server.getPort()) + "/1",
+                new DistributerMap[0], false);
+        final int[] exitCode = new int[1];
+        final Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    exitCode[0] = compile(distributer, "foo");
+                } catch (final IOException ex) {
+                    exitCode[0] = -2;
+                }
+            }
+        });
+        thread.start();
+        while (server.getRequests().size() == 0) {
+            Thread.sleep(10);
+        }
+        assertFalse(distributer.hasFreeSlot());
+        assertEquals(Distributer.NOT_DISTRIBUTED, compile(distributer, "bar"));
+        thread.join();
+        assertEquals(0, exitCode[0]);
+        assertTrue(distributer.hasFreeSlot());
+        assertEquals(1, server.getRequests().size());
+    }
+    /**
+     * A host that could not be reached should not be retried immediately.
+     */
+    public void testBackoff() throws IOException {
+        final Distributer distributer = create("127.0.0.1:"
+                + Integer.toString(getUnusedPort()) + " 127.0.0.1:"
+                + Integer.toString(server.getPort()), new DistributerMap[0],
+                false);
+        assertEquals(0, compile(distributer, "foo"));
+        assertEquals(0, compile(distributer, "bar"));
+        assertEquals(2, server.getRequests().size());
+        final Distributer dead = create("127.0.0.1:"
+                + Integer.toString(getUnusedPort()), new DistributerMap[0],
+                false);
+        assertTrue(dead.hasFreeSlot());
+        assertEquals(Distributer.NOT_DISTRIBUTED, compile(dead, "foo"));
+        assertFalse(dead.hasFreeSlot());
+    }
+    /**
+     * Faster hosts should be preferred.
+     */
+    public void testLatency() throws IOException {
+        final StandInServer slow = new StandInServer();
+        try {
+            slow.setDelay(200);
+            final Distributer distributer = create("127.0.0.1:"
+                    + Integer.toString(slow.getPort()) + " 127.0.0.1:"
+                    + Integer.toString(server.getPort()),
+                    new DistributerMap[0], false);
+            for (int i = 0; i < 6; i++) {
+                assertEquals(0, compile(distributer, "foo"
+                        + Integer.toString(i)));
+            }
+            assertEquals(1, slow.getRequests().size());
+            assertEquals(5, server.getRequests().size());
+            distributer.finish(task);
+        } finally {
+            slow.stop();
+        }
+    }
+    /**
+     * Tests parsing of the DISTCC_HOSTS syntax.
+     */
+    public void testParseHosts() {
+        final DistributerHost[] hosts = DistributerHost.parse(
+                " alpha beta:4000 gamma/8,lzo delta:4001/2 ", 3632);
+        assertEquals(4, hosts.length);
+        assertEquals("alpha:3632", hosts[0].toString());
+        assertEquals(DistributerHost.DEFAULT_LIMIT, hosts[0].getLimit());
+        assertEquals(4000, hosts[1].getPort());
+        assertEquals("gamma", hosts[2].getName());
+        assertEquals(8, hosts[2].getLimit());
+        assertEquals(4001, hosts[3].getPort());
+        assertEquals(2, hosts[3].getLimit());
+        assertEquals(0, DistributerHost.parse(null, 3632).length);
+        try {
+            DistributerHost.parse("alpha:port", 3632);
+            fail("Expected BuildException");
+        } catch (final BuildException ex) {
+        }
+    }
+}
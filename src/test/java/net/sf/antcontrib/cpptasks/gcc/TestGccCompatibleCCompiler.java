@@ -15,6 +15,7 @@
  *  limitations under the License.
  */
 package net.sf.antcontrib.cpptasks.gcc;
+import java.util.Arrays;
 import java.util.Vector;
 
 import junit.framework.TestCase;
@@ -102,4 +103,38 @@ public abstract class TestGccCompatibleCCompiler extends TestCase {
         assertEquals("-W", args.elementAt(1));
         assertEquals("-Wall", args.elementAt(2));
     }
+    /**
+     * Tests the command lines used to distribute compilations
+     */
+    public void testPreprocessedCompileCommand() {
+        GccCompatibleCCompiler compiler = create();
+        assertEquals(".i", compiler.getPreprocessedExtension("foo.c"));
+        assertEquals(".ii", compiler.getPreprocessedExtension("foo.CPP"));
+        assertNull(compiler.getPreprocessedExtension("foo.f"));
+        String[] args = new String[]{"-c", "-g", "-DFOO", "-I", "inc",
+                "-isystem", "sys", "-MD", "-Wp,-MD,foo.d", "-O2"};
+        String[] preprocess = compiler.getPreprocessCommand(args,
+                new String[]{"-Iend"}, "foo.c", "foo.i");
+        Vector preprocessArgs = new Vector(Arrays.asList(preprocess));
+        assertTrue(preprocessArgs.contains("-DFOO"));
+        assertTrue(preprocessArgs.contains("-Wp,-MD,foo.d"));
+        //
+        //   the dependency file is named after the source, not foo.i
+        //
+        int md = preprocessArgs.indexOf("-MD");
+        assertEquals("-MF", preprocessArgs.elementAt(md + 1));
+        assertEquals("foo.d", preprocessArgs.elementAt(md + 2));
+        int source = preprocessArgs.indexOf("foo.c");
+        assertEquals("-E", preprocessArgs.elementAt(source - 1));
+        assertEquals("foo.i", preprocessArgs.elementAt(source + 2));
+        assertEquals("-Iend", preprocess[preprocess.length - 1]);
+        String[] compile = compiler.getPreprocessedCompileCommand(args,
+                new String[]{"-Iend", "-fPIC"}, "foo.i", "foo.o");
+        String[] expected = new String[]{preprocess[0], "-c", "-g",
+                "-O2", "foo.i", "-o", "foo.o", "-fPIC"};
+        assertEquals(expected.length, compile.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], compile[i]);
+        }
+    }
 }
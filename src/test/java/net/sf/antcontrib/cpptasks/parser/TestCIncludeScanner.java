@@ -0,0 +1,393 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks.parser;
+
+import java.io.BufferedReader;
+import java.io.CharArrayReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the CIncludeScanner class.
+ */
+public final class TestCIncludeScanner
+    extends TestCase {
+  /**
+   * Sources that CIncludeScanner should parse as CParser does.
+   */
+  private static final String[] SOURCES = new String[] {
+      "#import <foo.h> nowhatever  ",
+      "#include     \"foo.h\"   ",
+      "#include <foo.h   ",
+      "#include foo.h  ",
+      "//#include \"foo.h\"",
+      " #include     \"foo.h\"   ",
+      "\t#include     \"foo.h\"   ",
+      "#  include <foo.h>\n# \timport \"bar.h\"\n",
+      "#includefoo.h\n#include<foo.h>\n#include\"bar.h\"",
+      "#include <foo.h\n#include <bar.h>\n",
+      "#include \"foo.h>\"\n#include <bar.h\">\n",
+      "#include \"\"\n#include <>",
+      "int a; #include <foo.h>\n#define X #include <bar.h>\n",
+      "# # include <foo.h>\n##include <bar.h>\n#if\n#ifdef X\n",
+      "#include <a.h>\r\n#include <b.h>\r\n  #include <c.h> // c\r\n",
+      "#inc",
+      "#include",
+      "#include <",
+      "",
+      "#",
+      "\n\n\n#include <foo.h>"
+  };
+
+  /**
+   * Constructor.
+   * @param name String test name
+   */
+  public TestCIncludeScanner(final String name) {
+    super(name);
+  }
+
+  /**
+   * Writes content to a temporary file.
+   * @param content file content
+   * @return temporary file
+   * @throws IOException if unable to write file
+   */
+  private static File writeTempFile(final String content)
+      throws IOException {
+    File file = File.createTempFile("scanner", ".h");
+    FileOutputStream stream = new FileOutputStream(file);
+    try {
+      stream.write(content.getBytes());
+    } finally {
+      stream.close();
+    }
+    return file;
+  }
+
+  /**
+   * Parses content with CParser.
+   * @param content file content
+   * @return included files
+   * @throws IOException test fails on IOException
+   */
+  private static String[] parseWithCParser(final String content)
+      throws IOException {
+    CParser parser = new CParser();
+    parser.parse(new CharArrayReader(content.toCharArray()));
+    return parser.getIncludes();
+  }
+
+  /**
+   * Asserts that two arrays of included files are equal.
+   * @param source parsed source
+   * @param expected expected includes
+   * @param actual actual includes
+   */
+  private static void assertIncludes(final String source,
+                                     final String[] expected,
+                                     final String[] actual) {
+    StringBuffer expectedBuf = new StringBuffer();
+    StringBuffer actualBuf = new StringBuffer();
+    for (int i = 0; i < expected.length; i++) {
+      expectedBuf.append('[').append(expected[i]).append(']');
+    }
+    for (int i = 0; i < actual.length; i++) {
+      actualBuf.append('[').append(actual[i]).append(']');
+    }
+    assertEquals(source, expectedBuf.toString(), actualBuf.toString());
+  }
+
+  /**
+   * Checks that parsing a reader finds the same includes as CParser.
+   * @throws IOException test fails on IOException
+   */
+  public void testParseReader() throws IOException {
+    CIncludeScanner scanner = new CIncludeScanner();
+    for (int i = 0; i < SOURCES.length; i++) {
+      scanner.parse(new CharArrayReader(SOURCES[i].toCharArray()));
+      assertIncludes(SOURCES[i], parseWithCParser(SOURCES[i]),
+                     scanner.getIncludes());
+    }
+  }
+
+  /**
+   * Checks that parsing a file finds the same includes as CParser,
+   * including files long enough to be memory mapped. The padding is
+   * compared with CParser's includes for the unpadded source, since
+   * CParser treats the start of each buffer it reads as a new line.
+   * @throws IOException test fails on IOException
+   */
+  public void testParseFile() throws IOException {
+    CIncludeScanner scanner = new CIncludeScanner();
+    StringBuffer padding = new StringBuffer();
+    while (padding.length() < 100000) {
+      padding.append("/* # ## #include <no.h> */ int x;\n");
+    }
+    for (int i = 0; i < SOURCES.length; i++) {
+      String[] contents = new String[] {
+          SOURCES[i], padding + SOURCES[i], SOURCES[i] + "\n" + padding
+      };
+      for (int j = 0; j < contents.length; j++) {
+        File file = writeTempFile(contents[j]);
+        try {
+          scanner.parse(file);
+          assertIncludes(SOURCES[i], parseWithCParser(SOURCES[i]),
+                         scanner.getIncludes());
+        } finally {
+          file.delete();
+        }
+      }
+    }
+  }
+
+  /**
+   * Checks that CParser uses the scanner when parsing a file.
+   * @throws IOException test fails on IOException
+   */
+  public void testCParserParseFile() throws IOException {
+    File file = writeTempFile("#include <foo.h>\n#import \"bar.h\"\n");
+    try {
+      CParser parser = new CParser();
+      parser.parse(file);
+      assertIncludes(file.toString(), new String[] {"foo.h", "bar.h"},
+                     parser.getIncludes());
+    } finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * Scans content for its guard.
+   * @param content file content
+   * @return guard
+   * @throws IOException test fails on IOException
+   */
+  private static String scanGuard(final String content) throws IOException {
+    CIncludeScanner scanner = new CIncludeScanner();
+    scanner.parse(new CharArrayReader(content.toCharArray()));
+    return scanner.getGuard();
+  }
+
+  /**
+   * Checks detection of include guards and #pragma once.
+   * @throws IOException test fails on IOException
+   */
+  public void testGuard() throws IOException {
+    assertEquals("FOO_H", scanGuard(
+        "/*\n * Copyright\n */\n// foo\n#ifndef FOO_H\n#define FOO_H\n"
+        + "#include <bar.h>\n#if X\n#else\n#endif\nint foo;\n"
+        + "#endif /* FOO_H */\n\n"));
+    assertEquals("FOO_H", scanGuard(
+        "  # ifndef FOO_H\r\n # define FOO_H 1\r\n#endif // FOO_H"));
+    assertEquals(CIncludeScanner.PRAGMA_ONCE, scanGuard(
+        "// foo\n#pragma once\n#include <bar.h>\n"));
+    assertEquals(CIncludeScanner.PRAGMA_ONCE, scanGuard(
+        "int x;\n#pragma  once\n#ifndef FOO_H\n#define FOO_H\n#endif\n"));
+    assertNull(scanGuard("int foo;\n"));
+    assertNull(scanGuard("#include <bar.h>\n"));
+    assertNull(scanGuard("#pragma pack\n"));
+    assertNull(scanGuard(
+        "int x;\n#ifndef FOO_H\n#define FOO_H\n#endif\n"));
+    assertNull(scanGuard(
+        "#ifndef FOO_H\n#define FOO_H\n#endif\nint x;\n"));
+    assertNull(scanGuard(
+        "#ifndef FOO_H\n#define FOO_H\n#endif\n#include <bar.h>\n"));
+    assertNull(scanGuard(
+        "#ifndef FOO_H\n#define FOO_H\n#else\nint x;\n#endif\n"));
+    assertNull(scanGuard(
+        "#ifndef FOO_H\n#define BAR_H\n#endif\n"));
+    assertNull(scanGuard(
+        "#ifndef FOO_H\n#include <bar.h>\n#define FOO_H\n#endif\n"));
+    assertNull(scanGuard("#ifndef FOO_H\n#define FOO_H\n"));
+    assertNull(scanGuard(
+        "/* open\n#ifndef FOO_H\n#define FOO_H\n#endif\n"));
+    //
+    //   UTF-8 byte order mark
+    //
+    File file = File.createTempFile("scanner", ".h");
+    FileOutputStream stream = new FileOutputStream(file);
+    try {
+      stream.write(new byte[] {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF});
+      stream.write("#ifndef FOO_H\n#define FOO_H\n#endif\n".getBytes());
+      stream.close();
+      CIncludeScanner scanner = new CIncludeScanner();
+      scanner.parse(file);
+      assertEquals("FOO_H", scanner.getGuard());
+    } finally {
+      stream.close();
+      file.delete();
+    }
+  }
+
+  /**
+   * Scans content evaluating conditionals.
+   * @param content file content
+   * @return included files separated by spaces
+   * @throws IOException test fails on IOException
+   */
+  private static String scanDefined(final String content)
+      throws IOException {
+    CIncludeScanner scanner = new CIncludeScanner();
+    scanner.setDefines(new String[] {"LINUX", "VERSION", "NAME", "_WIN32"},
+                       new String[] {"1", "0x0203", "linux", null});
+    scanner.parse(new CharArrayReader(content.toCharArray()));
+    String[] includes = scanner.getIncludes();
+    StringBuffer buf = new StringBuffer();
+    for (int i = 0; i < includes.length; i++) {
+      if (i > 0) {
+        buf.append(' ');
+      }
+      buf.append(includes[i]);
+    }
+    return buf.toString();
+  }
+
+  /**
+   * Checks that includes in branches excluded by the defines are skipped
+   * and that conditions on other macros keep all branches.
+   * @throws IOException test fails on IOException
+   */
+  public void testConditionals() throws IOException {
+    assertEquals("a.h c.h", scanDefined(
+        "#include <a.h>\n#ifdef _WIN32\n#include <b.h>\n#endif\n"
+        + "#include <c.h>\n"));
+    assertEquals("b.h c.h", scanDefined(
+        "#ifndef LINUX\n#include <a.h>\n#else\n#include <b.h>\n#endif\n"
+        + "#ifndef _WIN32\n#include <c.h>\n#endif\n"));
+    assertEquals("a.h b.h", scanDefined(
+        "#ifdef HAVE_A\n#include <a.h>\n#else\n#include <b.h>\n#endif\n"));
+    assertEquals("b.h", scanDefined(
+        "#if defined(_WIN32)\n#include <a.h>\n"
+        + "#elif defined LINUX && VERSION >= 0x0200\n#include <b.h>\n"
+        + "#elif 1\n#include <c.h>\n#else\n#include <d.h>\n#endif\n"));
+    assertEquals("b.h c.h d.h", scanDefined(
+        "#if defined(_WIN32)\n#include <a.h>\n"
+        + "#elif defined(HAVE_B)\n#include <b.h>\n"
+        + "#elif !(VERSION == 0x203) || _WIN32\n#include <x.h>\n"
+        + "#elif OTHER > 2\n#include <c.h>\n#else\n#include <d.h>\n"
+        + "#endif\n"));
+    assertEquals("", scanDefined(
+        "#if !LINUX\n#if HAVE_A\n#include <a.h>\n#else\n#include <b.h>\n"
+        + "#endif\n#elif 0 /* never */\n#include <c.h>\n#endif\n"));
+    //
+    //   not evaluated, so both branches are kept
+    //
+    assertEquals("a.h b.h c.h d.h e.h f.h", scanDefined(
+        "#if NAME == 1\n#include <a.h>\n#endif\n"
+        + "#if LINUX(2)\n#include <b.h>\n#endif\n"
+        + "#if LINUX ? 1 : 0\n#include <c.h>\n#endif\n"
+        + "#if defined(_WIN32) || \\\n HAVE_D\n#include <d.h>\n#endif\n"
+        + "#undef _WIN32\n#ifdef _WIN32\n#include <e.h>\n#endif\n"
+        + "#if (LINUX\n#include <f.h>\n#endif\n"));
+    //
+    //   guards are detected regardless
+    //
+    CIncludeScanner scanner = new CIncludeScanner();
+    scanner.setDefines(new String[] {"FOO_H"}, new String[] {"1"});
+    scanner.parse(new CharArrayReader(
+        "#ifndef FOO_H\n#define FOO_H\n#include <a.h>\n#endif\n"
+        .toCharArray()));
+    assertEquals("FOO_H", scanner.getGuard());
+    assertEquals(0, scanner.getIncludes().length);
+    scanner.setDefines(null, null);
+    scanner.parse(new CharArrayReader(
+        "#ifdef _WIN32\n#include <a.h>\n#endif\n".toCharArray()));
+    assertEquals(1, scanner.getIncludes().length);
+  }
+
+  /**
+   * Times a scan of a large header with each parser, taking the shortest
+   * of several runs to reduce the effect of compilation and collection.
+   * @throws IOException test fails on IOException
+   */
+  /**
+   * Tests the macros a file redefines and those its conditionals were
+   * evaluated on.
+   */
+  public void testMacros() throws IOException {
+    CIncludeScanner scanner = new CIncludeScanner();
+    scanner.setDefines(new String[] {"LINUX", "_WIN32"},
+                       new String[] {"1", null});
+    scanner.parse(new CharArrayReader(
+        ("#ifdef _WIN32\n#define FOO\n#endif\n#undef LINUX\n"
+         + "#if defined(HAVE_A) && LINUX\n#include <a.h>\n#endif\n")
+        .toCharArray()));
+    Vector defined = new Vector(Arrays.asList(scanner.getDefinedMacros()));
+    assertEquals(2, defined.size());
+    assertTrue(defined.contains("FOO"));
+    assertTrue(defined.contains("LINUX"));
+    String[] assumed = scanner.getAssumedMacros();
+    assertEquals(1, assumed.length);
+    assertEquals("_WIN32", assumed[0]);
+    //
+    //   not collected without defines
+    //
+    scanner.setDefines(null, null);
+    scanner.parse(new CharArrayReader("#define FOO\n".toCharArray()));
+    assertEquals(0, scanner.getDefinedMacros().length);
+  }
+  public void testLargeHeader() throws IOException {
+    StringBuffer content = new StringBuffer();
+    for (int i = 0; content.length() < 4000000; i++) {
+      content.append("#include \"header").append(i).append(".h\"\n");
+      content.append("#define MACRO").append(i).append("(a, b) ((a) + (b))\n");
+      content.append("/*\n * Adds two values.\n */\n");
+      content.append("static inline int add").append(i)
+          .append("(int a, int b) {\n    return MACRO").append(i)
+          .append("(a, b);\n}\n\n");
+    }
+    File file = writeTempFile(content.toString());
+    try {
+      long parserTime = Long.MAX_VALUE;
+      long scannerTime = Long.MAX_VALUE;
+      CParser parser = new CParser();
+      CIncludeScanner scanner = new CIncludeScanner();
+      for (int i = 0; i < 5; i++) {
+        long start = System.nanoTime();
+        Reader reader = new BufferedReader(new FileReader(file));
+        try {
+          parser.parse(reader);
+        } finally {
+          reader.close();
+        }
+        parserTime = Math.min(parserTime, System.nanoTime() - start);
+        start = System.nanoTime();
+        scanner.parse(file);
+        scannerTime = Math.min(scannerTime, System.nanoTime() - start);
+      }
+      assertIncludes(file.toString(), parser.getIncludes(),
+                     scanner.getIncludes());
+      //
+      //   timings are only reported, a loaded machine would
+      //   make an assertion on them fail at random
+      //
+      System.out.println("CParser " + Long.toString(parserTime / 1000)
+                         + " us, CIncludeScanner "
+                         + Long.toString(scannerTime / 1000) + " us");
+    } finally {
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ *
+ * Copyright 2026 The Ant-Contrib project
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.antcontrib.cpptasks.parser;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Tests for the MakeDependencyParser class.
+ */
+public final class TestMakeDependencyParser
+    extends TestCase {
+  /**
+   * Constructor.
+   * @param name String test name
+   */
+  public TestMakeDependencyParser(final String name) {
+    super(name);
+  }
+
+  /**
+   * Parses a dependency file.
+   * @param content content of the dependency file
+   * @return prerequisites
+   * @throws IOException test fails on IOException
+   */
+  private static String[] parse(final String content) throws IOException {
+    MakeDependencyParser parser = new MakeDependencyParser();
+    parser.parse(new StringReader(content));
+    return parser.getPrerequisites();
+  }
+
+  /**
+   * Checks continued lines as written by gcc -MD.
+   * @throws IOException test fails on IOException
+   */
+  public void testContinuedLines() throws IOException {
+    String[] prerequisites = parse("a.o: /src/a.c /usr/include/stdio.h \\\n"
+        + " /inc/x.h \\\r\n /inc/y.h\n");
+    assertEquals(4, prerequisites.length);
+    assertEquals("/src/a.c", prerequisites[0]);
+    assertEquals("/usr/include/stdio.h", prerequisites[1]);
+    assertEquals("/inc/x.h", prerequisites[2]);
+    assertEquals("/inc/y.h", prerequisites[3]);
+  }
+
+  /**
+   * Checks escaped spaces, '#' and '$' in file names.
+   * @throws IOException test fails on IOException
+   */
+  public void testEscapes() throws IOException {
+    String[] prerequisites = parse(
+        "b\\ c.o: /src/b\\ c.c /inc/\\#x.h /inc/$$y.h");
+    assertEquals(3, prerequisites.length);
+    assertEquals("/src/b c.c", prerequisites[0]);
+    assertEquals("/inc/#x.h", prerequisites[1]);
+    assertEquals("/inc/$y.h", prerequisites[2]);
+  }
+
+  /**
+   * Checks Windows paths, whose drive letter is followed by a colon and
+   * whose separators are backslashes.
+   * @throws IOException test fails on IOException
+   */
+  public void testWindowsPaths() throws IOException {
+    String[] prerequisites = parse(
+        "C:\\obj\\a.o: C:\\src\\a.c c:/inc/x.h\r\n");
+    assertEquals(2, prerequisites.length);
+    assertEquals("C:\\src\\a.c", prerequisites[0]);
+    assertEquals("c:/inc/x.h", prerequisites[1]);
+  }
+
+  /**
+   * Checks that only the first rule is read, not phony targets of -MP.
+   * @throws IOException test fails on IOException
+   */
+  public void testFirstRule() throws IOException {
+    String[] prerequisites = parse("a.o: a.c x.h\n\nx.h:\n");
+    assertEquals(2, prerequisites.length);
+    assertEquals("x.h", prerequisites[1]);
+    assertEquals(0, parse("").length);
+  }
+}